@@ -0,0 +1,521 @@
+package org.lmx.framework.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lmx.framework.redis.base.AbstractTemplate;
+import org.lmx.framework.redis.cache.CacheInvalidationBus;
+import org.lmx.framework.redis.cache.NearCache;
+import org.lmx.framework.redis.codec.ValueCodec;
+import org.lmx.framework.redis.codec.ValueCodecs;
+import org.lmx.framework.redis.codec.ValueCompressor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.ReactiveRedisCallback;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 功能描述: 响应式Redis工具类，{@link RedisClientTemplate} 的非阻塞版本
+ *
+ * <pre>
+ *     基于 {@link ReactiveStringRedisTemplate}（Lettuce响应式连接），所有方法返回 Mono/Flux，不阻塞调用线程，供WebFlux服务使用。
+ *     与 {@link RedisClientTemplate} 继承同一个 {@link AbstractTemplate}：hashKey/BKDRHashCode 压缩模式、值编解码器、值压缩完全一致，
+ *     两个模板写入的数据可以互相读取。
+ *     写操作同样使本地近端缓存失效并通过响应式连接广播失效消息；读操作不经过近端缓存。
+ *     异常时记录日志并返回 false/0/空，不向下游传播错误；计数与过期时间类命令（incr/decr/hIncr/getExpire）
+ *     及 hmGet 失败时为空的Mono，避免把失败当成真实的计数值或空表。参数校验失败仍以错误信号返回。
+ *
+ *     Lettuce 的响应式连接是共享的，同时发出的多个命令在同一连接上自动流水线发送，
+ *     pipeline* 方法即同时发出各条命令后合并结果。
+ *
+ *     批量读写接受 Flux 输入：mGet/mGetByZip/mSet 以 flatMap 限制同时在途的命令数为 maxInFlight，
+ *     下游请求多少才向上游取多少，慢的消费者不会导致内存中堆积结果；
+ *     writeAllByZip 按 pipelineBatchSize 分批，每批按bucket合并为HMSET，与 {@link ZipBulkWriter} 的存储结构一致。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/13 9:30
+ */
+@Slf4j
+@Component
+@ConditionalOnClass(name = "reactor.core.publisher.Flux")
+@ConditionalOnExpression("${demo.redis.enabled:false}")
+public final class ReactiveRedisClientTemplate extends AbstractTemplate {
+    private final ReactiveStringRedisTemplate reactiveTemplate;
+
+    @Autowired(required = false)
+    private CacheInvalidationBus invalidationBus;
+
+    /**
+     * 批量写入单个HMSET批次的最大条目数
+     */
+    private int pipelineBatchSize = 100;
+
+    /**
+     * 批量读写时同时在途的最大命令数
+     */
+    @Value("${demo.redis.reactive.max-in-flight:256}")
+    private int maxInFlight = 256;
+
+    public ReactiveRedisClientTemplate(@Value("${demo.redis.hash-key-enabled:false}") Boolean isHashKey, @Value("${demo.redis.hash-key-count:0}") Integer keyCount, ReactiveStringRedisTemplate reactiveTemplate) {
+        super(isHashKey, keyCount);
+        this.reactiveTemplate = reactiveTemplate;
+    }
+
+    @Value("${demo.redis.codec:json}")
+    public void setCodecName(String codecName) {
+        setCodec(ValueCodecs.forName(codecName));
+    }
+
+    /**
+     * 不大于0时分批循环无法推进，启动时直接失败
+     */
+    @Value("${demo.redis.pipeline-batch-size:100}")
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        if (pipelineBatchSize < 1) {
+            throw new IllegalArgumentException("demo.redis.pipeline-batch-size must be at least 1: " + pipelineBatchSize);
+        }
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+
+    @Autowired
+    public void configureCompressor(@Value("${demo.redis.compression.enabled:false}") boolean enabled,
+                                    @Value("${demo.redis.compression.threshold:4096}") int threshold,
+                                    @Value("${demo.redis.compression.level:1}") int level) {
+        setCompressor(new ValueCompressor(enabled, threshold, level));
+    }
+
+    // =============================common============================
+
+    private <T> Mono<T> execute(ReactiveRedisCallback<T> callback) {
+        return reactiveTemplate.execute(callback).next();
+    }
+
+    /**
+     * 与 StringRedisTemplate 使用同一个String序列化器
+     */
+    private ByteBuffer rawString(String value) {
+        return reactiveTemplate.getSerializationContext().getStringSerializationPair().write(value);
+    }
+
+    /**
+     * 解码；不存在的key由Lettuce以空的Mono表示，不会走到这里。
+     * 空值是真实存储的空串（JSON编解码器原样写入""），与阻塞模板一样解码为""（非String类型为null），不视为不存在
+     */
+    private <T> T decodeBuffer(ByteBuffer buffer, Class<T> clazz) {
+        if (buffer == null) {
+            return null;
+        }
+        return decode(ByteUtils.getBytes(buffer), clazz);
+    }
+
+    private static <T> Mono<T> fallback(String command, Throwable e, T value) {
+        log.error("Redis reactive client call {}() Error:", command, e);
+        return Mono.justOrEmpty(value);
+    }
+
+    /**
+     * 使近端缓存失效，field为null时整个Key失效；总线只入队不发起网络调用，不会阻塞
+     */
+    private Mono<Void> invalidate(String redisKey, String field) {
+        if (invalidationBus == null) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> invalidationBus.publish(NearCache.entryKey(redisKey, field)));
+    }
+
+    public Mono<Boolean> expire(String key, long time, TimeUnit unit) {
+        if (time <= 0) {
+            return Mono.just(true);
+        }
+        String k = hashKey(key);
+        return reactiveTemplate.expire(k, Duration.ofMillis(unit.toMillis(time)))
+                .flatMap(success -> invalidate(k, null).thenReturn(success))
+                .onErrorResume(e -> fallback("expire", e, false));
+    }
+
+    /**
+     * 指定缓存失效时间
+     *
+     * @param key  键
+     * @param time 时间(秒)
+     */
+    public Mono<Boolean> expire(String key, long time) {
+        return expire(key, time, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 根据key 获取过期时间
+     *
+     * @param key 键 不能为null
+     * @return 时间(秒)
+     */
+    public Mono<Long> getExpire(String key) {
+        return reactiveTemplate.getExpire(hashKey(key)).map(Duration::getSeconds)
+                .onErrorResume(e -> fallback("getExpire", e, null));
+    }
+
+    public Mono<Boolean> hasKey(String key) {
+        return reactiveTemplate.hasKey(hashKey(key))
+                .onErrorResume(e -> fallback("hasKey", e, false));
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key 可以传一个值 或多个
+     * @return 是否全部删除
+     */
+    public Mono<Boolean> del(String... key) {
+        if (key == null || key.length == 0) {
+            return Mono.just(false);
+        }
+        String[] ks = new String[key.length];
+        for (int i = 0; i < key.length; i++) {
+            ks[i] = hashKey(key[i]);
+        }
+        return reactiveTemplate.delete(ks)
+                .flatMap(count -> Flux.fromArray(ks).concatMap(k -> invalidate(k, null)).then(Mono.just(count == key.length)))
+                .onErrorResume(e -> fallback("del", e, false));
+    }
+
+    // ============================String=============================
+
+    public Mono<Boolean> setNx(String key, Object value, int seconds, TimeUnit unit) {
+        String k = hashKey(key);
+        ByteBuffer rawValue = ByteBuffer.wrap(encode(value));
+        return execute(connection -> connection.stringCommands().set(rawString(k), rawValue, Expiration.from(seconds, unit), SetOption.ifAbsent()))
+                .flatMap(success -> success ? invalidate(k, null).thenReturn(true) : Mono.just(false))
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> fallback("setNx", e, false));
+    }
+
+    public Mono<Boolean> setNx(String key, Object value, int seconds) {
+        return setNx(key, value, seconds, TimeUnit.SECONDS);
+    }
+
+    public Mono<Boolean> setEx(String key, Object value, int seconds) {
+        return setEx(key, value, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * set值并设置超时时间
+     */
+    public Mono<Boolean> setEx(String key, Object value, int seconds, TimeUnit unit) {
+        String k = hashKey(key);
+        ByteBuffer rawValue = ByteBuffer.wrap(encode(value));
+        return execute(connection -> connection.stringCommands().set(rawString(k), rawValue, Expiration.from(seconds, unit), SetOption.upsert()))
+                .flatMap(success -> invalidate(k, null).thenReturn(true))
+                .onErrorResume(e -> fallback("setEx", e, false));
+    }
+
+    public <T> Mono<T> get(String key, Class<T> clazz) {
+        if (key == null) {
+            return Mono.empty();
+        }
+        ByteBuffer rawKey = rawString(hashKey(key));
+        return execute(connection -> connection.stringCommands().get(rawKey))
+                .flatMap(buffer -> Mono.justOrEmpty(decodeBuffer(buffer, clazz)))
+                .onErrorResume(e -> fallback("get", e, null));
+    }
+
+    public Mono<String> get(String key) {
+        return get(key, String.class);
+    }
+
+    public Mono<Boolean> set(String key, Object value) {
+        return set(key, value, 0, codec);
+    }
+
+    public Mono<Boolean> set(String key, Object value, long time) {
+        return set(key, value, time, codec);
+    }
+
+    /**
+     * 使用指定编解码器放入缓存
+     *
+     * @param time 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     */
+    public Mono<Boolean> set(String key, Object value, long time, ValueCodec codec) {
+        String k = hashKey(key);
+        ByteBuffer rawValue = ByteBuffer.wrap(encode(value, codec));
+        return execute(connection -> time > 0
+                ? connection.stringCommands().set(rawString(k), rawValue, Expiration.seconds(time), SetOption.upsert())
+                : connection.stringCommands().set(rawString(k), rawValue))
+                .flatMap(success -> invalidate(k, null).thenReturn(true))
+                .onErrorResume(e -> fallback("set", e, false));
+    }
+
+    public Mono<Long> incr(String key, long delta) {
+        if (delta < 0) {
+            return Mono.error(new RuntimeException("递增因子必须大于0"));
+        }
+        String k = hashKey(key);
+        return reactiveTemplate.opsForValue().increment(k, delta)
+                .flatMap(value -> invalidate(k, null).thenReturn(value))
+                .onErrorResume(e -> fallback("incr", e, null));
+    }
+
+    public Mono<Long> decr(String key, long delta) {
+        if (delta < 0) {
+            return Mono.error(new RuntimeException("递减因子必须大于0"));
+        }
+        String k = hashKey(key);
+        return reactiveTemplate.opsForValue().decrement(k, delta)
+                .flatMap(value -> invalidate(k, null).thenReturn(value))
+                .onErrorResume(e -> fallback("decr", e, null));
+    }
+
+    // ================================Map=================================
+
+    public <T> Mono<T> hGet(String key, String item, Class<T> clazz) {
+        return readHashValue(hashKey(key), item, clazz)
+                .onErrorResume(e -> fallback("hGet", e, null));
+    }
+
+    public Mono<String> hGet(String key, String item) {
+        return hGet(key, item, String.class);
+    }
+
+    private <T> Mono<T> readHashValue(String redisKey, String field, Class<T> clazz) {
+        ByteBuffer rawKey = rawString(redisKey);
+        ByteBuffer rawField = rawString(field);
+        return execute(connection -> connection.hashCommands().hGet(rawKey, rawField))
+                .flatMap(buffer -> Mono.justOrEmpty(decodeBuffer(buffer, clazz)));
+    }
+
+    /**
+     * 获取hashKey对应的所有键值，值按String解码（与 hGet(key, item) 一致）
+     */
+    public Mono<Map<Object, Object>> hmGet(String key) {
+        return hmGet(key, String.class).map(LinkedHashMap::new);
+    }
+
+    /**
+     * 获取hashKey对应的所有键值，值与 hGet 一样经编解码器解码
+     */
+    public <T> Mono<Map<String, T>> hmGet(String key, Class<T> clazz) {
+        ByteBuffer rawKey = rawString(hashKey(key));
+        return reactiveTemplate.execute(connection -> connection.hashCommands().hGetAll(rawKey))
+                .collect(() -> new LinkedHashMap<String, T>(), (map, entry) ->
+                        map.put(new String(ByteUtils.getBytes(entry.getKey()), StandardCharsets.UTF_8), decodeBuffer(entry.getValue(), clazz)))
+                .<Map<String, T>>map(map -> map)
+                .onErrorResume(e -> fallback("hmGet", e, null));
+    }
+
+    /**
+     * HashSet，值与 hSet 一样经模板编解码器编码、超过阈值时压缩
+     */
+    public Mono<Boolean> hmSet(String key, Map<String, String> map) {
+        String k = hashKey(key);
+        Map<ByteBuffer, ByteBuffer> hashes = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            hashes.put(rawString(entry.getKey()), ByteBuffer.wrap(encode(entry.getValue())));
+        }
+        return execute(connection -> connection.hashCommands().hMSet(rawString(k), hashes))
+                .flatMap(success -> invalidate(k, null).thenReturn(true))
+                .onErrorResume(e -> fallback("hmSet", e, false));
+    }
+
+    public Mono<Boolean> hSet(String key, String item, Object value) {
+        return hSet(key, item, value, codec);
+    }
+
+    /**
+     * 使用指定编解码器向一张hash表中放入数据
+     */
+    public Mono<Boolean> hSet(String key, String item, Object value, ValueCodec codec) {
+        String k = hashKey(key);
+        return putHashValue(k, item, encode(value, codec))
+                .onErrorResume(e -> fallback("hSet", e, false));
+    }
+
+    private Mono<Boolean> putHashValue(String redisKey, String field, byte[] value) {
+        ByteBuffer rawKey = rawString(redisKey);
+        ByteBuffer rawField = rawString(field);
+        return execute(connection -> connection.hashCommands().hSet(rawKey, rawField, ByteBuffer.wrap(value)))
+                .flatMap(success -> invalidate(redisKey, field).thenReturn(true));
+    }
+
+    /**
+     * 删除hash表中的值
+     *
+     * @return 删除的项数
+     */
+    public Mono<Long> hDel(String key, String... item) {
+        String k = hashKey(key);
+        return reactiveTemplate.opsForHash().remove(k, (Object[]) item)
+                .flatMap(count -> Flux.fromArray(item).concatMap(i -> invalidate(k, i)).then(Mono.just(count)))
+                .onErrorResume(e -> fallback("hDel", e, 0L));
+    }
+
+    public Mono<Boolean> hHasKey(String key, String item) {
+        return reactiveTemplate.opsForHash().hasKey(hashKey(key), item)
+                .onErrorResume(e -> fallback("hHasKey", e, false));
+    }
+
+    public Mono<Double> hIncr(String key, String item, double by) {
+        String k = hashKey(key);
+        return reactiveTemplate.<String, String>opsForHash().increment(k, item, by)
+                .flatMap(value -> invalidate(k, item).thenReturn(value))
+                .onErrorResume(e -> fallback("hIncr", e, null));
+    }
+
+    public Mono<Double> hDecr(String key, String item, double by) {
+        return hIncr(key, item, -by);
+    }
+
+    // ===============================高级特性=================================
+
+    /**
+     * 功能描述: hMSet 与 expire 同时发出，在共享连接上流水线执行
+     *
+     * @return expire的结果
+     */
+    public Mono<Boolean> pipelineHMSet(final String hKey, Map<byte[], byte[]> hashes, final long timeout, final TimeUnit unit) {
+        return pipelineHMSet(ByteBuffer.wrap(hKey.getBytes()), hashes, timeout, unit)
+                .flatMap(result -> invalidate(hKey, null).thenReturn(result));
+    }
+
+    public Mono<Boolean> pipelineHMSetByZip(final String hKey, Map<byte[], byte[]> hashes, final long timeout, final TimeUnit unit) {
+        return pipelineHMSet(ByteBuffer.wrap(hashKeyBytes(hKey)), hashes, timeout, unit)
+                .flatMap(result -> invalidate(hashKey(hKey), null).thenReturn(result));
+    }
+
+    private Mono<Boolean> pipelineHMSet(ByteBuffer rawKey, Map<byte[], byte[]> hashes, long timeout, TimeUnit unit) {
+        Map<ByteBuffer, ByteBuffer> rawHashes = new LinkedHashMap<>(hashes.size() * 2);
+        for (Map.Entry<byte[], byte[]> entry : hashes.entrySet()) {
+            rawHashes.put(ByteBuffer.wrap(entry.getKey()), ByteBuffer.wrap(entry.getValue()));
+        }
+        return execute(connection -> Mono.zip(
+                connection.hashCommands().hMSet(rawKey.duplicate(), rawHashes),
+                connection.keyCommands().expire(rawKey.duplicate(), Duration.ofMillis(unit.toMillis(timeout))),
+                (set, expired) -> expired));
+    }
+
+    /**
+     * 功能描述: hSet 与 expire 同时发出，在共享连接上流水线执行
+     *
+     * @return expire的结果
+     */
+    public Mono<Boolean> pipelineHSet(final String hKey, final String item, String value, final long timeout, final TimeUnit unit) {
+        ByteBuffer rawKey = ByteBuffer.wrap(hKey.getBytes());
+        ByteBuffer rawField = ByteBuffer.wrap(item.getBytes());
+        ByteBuffer rawValue = ByteBuffer.wrap(value.getBytes());
+        return execute(connection -> Mono.zip(
+                connection.hashCommands().hSet(rawKey.duplicate(), rawField, rawValue),
+                connection.keyCommands().expire(rawKey.duplicate(), Duration.ofMillis(unit.toMillis(timeout))),
+                (set, expired) -> expired))
+                .flatMap(result -> invalidate(hKey, item).thenReturn(result));
+    }
+
+    /**
+     * 功能描述: 压缩方式存储的Set，语义同 {@link RedisClientTemplate#setByZip}
+     */
+    public Mono<Boolean> setByZip(final String hKey, final String item, Object value) {
+        return setByZip(hKey, item, value, codec);
+    }
+
+    public Mono<Boolean> setByZip(final String hKey, final String item, Object value, ValueCodec codec) {
+        return putHashValue(super.hashKey(hKey), super.BKDRHashCode(item), encode(value, codec))
+                .onErrorResume(e -> fallback("setByZip", e, false));
+    }
+
+    /**
+     * 功能描述: 压缩方式存储Get，语义同 {@link RedisClientTemplate#getByZip}
+     */
+    public <T> Mono<T> getByZip(final String hKey, final String item, Class<T> clazz) {
+        return readHashValue(super.hashKey(hKey), super.BKDRHashCode(item), clazz)
+                .onErrorResume(e -> fallback("getByZip", e, null));
+    }
+
+    // ===============================批量操作=================================
+
+    /**
+     * 功能描述: 批量获取String值
+     *
+     * @param keys  键，按下游请求量拉取
+     * @param clazz 值类型
+     * @return 与keys顺序一致的 键-值，不存在的键值为null
+     */
+    public <T> Flux<Map.Entry<String, T>> mGet(Flux<String> keys, Class<T> clazz) {
+        return keys.flatMapSequential(key -> get(key, clazz)
+                        .map(value -> entry(key, value))
+                        .defaultIfEmpty(entry(key, null)),
+                maxInFlight);
+    }
+
+    /**
+     * 功能描述: 压缩方式批量Get，多个hKey下的同一项
+     *
+     * @return 与hKeys顺序一致的 hKey-值，不存在的值为null
+     */
+    public <T> Flux<Map.Entry<String, T>> mGetByZip(Flux<String> hKeys, final String item, Class<T> clazz) {
+        String field = super.BKDRHashCode(item);
+        return hKeys.flatMapSequential(hKey -> readHashValue(super.hashKey(hKey), field, clazz)
+                        .onErrorResume(e -> fallback("mGetByZip", e, null))
+                        .map(value -> entry(hKey, value))
+                        .defaultIfEmpty(entry(hKey, null)),
+                maxInFlight);
+    }
+
+    /**
+     * 功能描述: 批量写入String值
+     *
+     * @param values 键值对，按在途命令数拉取
+     * @param time   时间(秒) time小于等于0 将设置无限期
+     * @return 写入成功的条数
+     */
+    public Mono<Long> mSet(Flux<? extends Map.Entry<String, ?>> values, long time) {
+        return values.flatMap(entry -> set(entry.getKey(), entry.getValue(), time), maxInFlight)
+                .filter(Boolean::booleanValue)
+                .count();
+    }
+
+    /**
+     * 功能描述: 压缩方式流式批量写入，存储结构同 {@link ZipBulkWriter}
+     * <pre>
+     *  每 pipelineBatchSize 条为一批，批内按bucket合并为一条HMSET（同一field后写覆盖先写），
+     *  同时在途的批次数为 maxInFlight / pipelineBatchSize。
+     * </pre>
+     *
+     * @return 写入的条数
+     */
+    public <T> Mono<Long> writeAllByZip(Flux<T> source, Function<? super T, String> hKeyMapper,
+                                        Function<? super T, String> itemMapper, Function<? super T, ?> valueMapper) {
+        return source.buffer(pipelineBatchSize)
+                .flatMap(batch -> writeBatchByZip(batch, hKeyMapper, itemMapper, valueMapper), Math.max(1, maxInFlight / pipelineBatchSize))
+                .reduce(0L, Long::sum);
+    }
+
+    private <T> Mono<Long> writeBatchByZip(List<T> batch, Function<? super T, String> hKeyMapper,
+                                           Function<? super T, String> itemMapper, Function<? super T, ?> valueMapper) {
+        Map<String, Map<ByteBuffer, ByteBuffer>> buckets = new HashMap<>();
+        for (T t : batch) {
+            buckets.computeIfAbsent(super.hashKey(hKeyMapper.apply(t)), b -> new LinkedHashMap<>())
+                    .put(rawString(super.BKDRHashCode(itemMapper.apply(t))), ByteBuffer.wrap(encode(valueMapper.apply(t))));
+        }
+        return Flux.fromIterable(buckets.entrySet())
+                .flatMap(bucket -> execute(connection -> connection.hashCommands().hMSet(rawString(bucket.getKey()), bucket.getValue()))
+                        .flatMap(success -> invalidate(bucket.getKey(), null).thenReturn((long) bucket.getValue().size())))
+                .onErrorResume(e -> fallback("writeAllByZip", e, 0L))
+                .reduce(0L, Long::sum);
+    }
+
+    private static <T> Map.Entry<String, T> entry(String key, T value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
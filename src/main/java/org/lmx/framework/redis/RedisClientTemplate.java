@@ -2,24 +2,52 @@ package org.lmx.framework.redis;
 
 import lombok.extern.slf4j.Slf4j;
 import org.lmx.framework.redis.base.AbstractTemplate;
+import org.lmx.framework.redis.cache.CacheInvalidationBus;
+import org.lmx.framework.redis.cache.NearCache;
+import org.lmx.framework.redis.codec.ValueCodec;
+import org.lmx.framework.redis.codec.ValueCodecs;
+import org.lmx.framework.redis.codec.ValueCompressor;
+import org.lmx.framework.redis.lock.DistributedLock;
+import org.lmx.framework.redis.metrics.LoadStats;
+import org.lmx.framework.redis.metrics.RedisCommandStats;
+import org.lmx.framework.redis.metrics.RedisOperation;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.TimeoutUtils;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 /**
  * 功能描述: Redis工具类
  *
  * <pre>
  *     通过{demo.redis.hash-key-enabled}配置项可以开启压缩模式。
+ *     通过{demo.redis.near-cache.enabled}配置项可以开启近端缓存，get/hGet/getByZip优先读取进程内缓存，经由本模板的写操作会使其失效。
+ *     通过{demo.redis.codec}配置项选择值编解码器（json/binary），读取时按类型头自动识别，新旧格式可混合读取。
+ *     incr/decr 依赖Redis数值字符串，计数器类的Key请使用json编解码器写入。
+ *     通过{demo.redis.compression.enabled}配置项开启值压缩，编码后超过阈值的值以Deflate压缩存储，未压缩的历史数据照常读取。
+ *     通过{demo.redis.stats.enabled}配置项开启按方法的耗时、流量、错误统计与慢命令日志，见 {@link RedisCommandStats}。
+ *     getEntry/setEntry 供缓存切面使用，可缓存null（负缓存），见 {@link org.lmx.framework.redis.annotation.RedisCacheable}。
+ *     getOrLoad 未命中时每个key在本节点只回源一次，可通过{demo.redis.load.*}配置项开启跨节点加锁与XFetch提前刷新，见 {@link LoadStats}。
  * </pre>
  *
  * @author LM.X
@@ -29,26 +57,216 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 @Component
 @ConditionalOnExpression("${demo.redis.enabled:false}")
-public final class RedisClientTemplate extends AbstractTemplate {
+public final class RedisClientTemplate extends AbstractTemplate implements SmartInitializingSingleton {
     //    private final RedisTemplate<String, Object> jacksonRedisTemplate;
     private final StringRedisTemplate redisTemplate;
 
+    /**
+     * 近端缓存，未开启时为null
+     */
+    @Autowired(required = false)
+    private NearCache nearCache;
+
+    /**
+     * 失效总线，开启近端缓存时一并开启；本节点的近端缓存在发布时同步失效，其它节点在下一个合并窗口收到
+     */
+    @Autowired(required = false)
+    private CacheInvalidationBus invalidationBus;
+
+    /**
+     * 按方法的耗时、流量与错误统计，未开启时为 {@link RedisCommandStats#DISABLED}
+     */
+    private RedisCommandStats commandStats = RedisCommandStats.DISABLED;
+
+    /**
+     * 批量操作时单个pipeline内的最大命令数
+     */
+    private int pipelineBatchSize = 100;
+
+    /**
+     * 压缩模式批量写入单次刷新的最大条目数
+     */
+    @Value("${demo.redis.zip-bulk.max-entries:10000}")
+    private int zipBulkMaxEntries = 10000;
+
+    /**
+     * 压缩模式批量写入单次刷新的最大缓冲字节数
+     */
+    @Value("${demo.redis.zip-bulk.max-bytes:8388608}")
+    private long zipBulkMaxBytes = 8 * 1024 * 1024;
+
+    /**
+     * getOrLoad 正在加载的key，同一key的并发未命中等待同一个结果
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    private final LoadStats loadStats = new LoadStats(loading::size);
+
+    /**
+     * getOrLoad 跨节点加锁使用，未配置锁实现时只在本节点合并
+     */
+    private DistributedLock distributedLock;
+
+    private boolean distributedLoad;
+    private long loadLockWaitMillis = 3000;
+    private long loadLockLeaseMillis = 10000;
+
+    /**
+     * XFetch提前刷新系数，越大越早刷新，不大于0时不提前刷新
+     */
+    private double xfetchBeta = 1.0;
+
+    @Autowired(required = false)
+    private BeanFactory beanFactory;
+
     public RedisClientTemplate(@Value("${demo.redis.hash-key-enabled:false}") Boolean isHashKey, @Value("${demo.redis.hash-key-count:0}") Integer keyCount, StringRedisTemplate redisTemplate) {
         super(isHashKey, keyCount);
         this.redisTemplate = redisTemplate;
     }
 
+    @Value("${demo.redis.codec:json}")
+    public void setCodecName(String codecName) {
+        setCodec(ValueCodecs.forName(codecName));
+    }
+
+    /**
+     * 不大于0时分批循环无法推进，启动时直接失败
+     */
+    @Value("${demo.redis.pipeline-batch-size:100}")
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        if (pipelineBatchSize < 1) {
+            throw new IllegalArgumentException("demo.redis.pipeline-batch-size must be at least 1: " + pipelineBatchSize);
+        }
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+
+    @Autowired
+    public void configureCompressor(@Value("${demo.redis.compression.enabled:false}") boolean enabled,
+                                    @Value("${demo.redis.compression.threshold:4096}") int threshold,
+                                    @Value("${demo.redis.compression.level:1}") int level) {
+        setCompressor(new ValueCompressor(enabled, threshold, level));
+    }
+
+    @Autowired(required = false)
+    public void setCommandStats(RedisCommandStats commandStats) {
+        this.commandStats = commandStats;
+    }
+
+    @Autowired(required = false)
+    public void setDistributedLock(DistributedLock distributedLock) {
+        this.distributedLock = distributedLock;
+    }
+
+    @Autowired
+    public void configureLoad(@Value("${demo.redis.load.distributed:false}") boolean distributed,
+                              @Value("${demo.redis.load.lock-wait-millis:3000}") long lockWaitMillis,
+                              @Value("${demo.redis.load.lock-lease-millis:10000}") long lockLeaseMillis,
+                              @Value("${demo.redis.load.xfetch-beta:1.0}") double xfetchBeta) {
+        this.distributedLoad = distributed;
+        this.loadLockWaitMillis = lockWaitMillis;
+        this.loadLockLeaseMillis = lockLeaseMillis;
+        this.xfetchBeta = xfetchBeta;
+    }
+
+    public LoadStats getLoadStats() {
+        return loadStats;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        loadStats.bind(beanFactory);
+    }
+
+    // =============================near cache============================
+
+    /**
+     * 近端缓存中的值，未开启或未命中时为null
+     * <pre>
+     *  命中时调用方以 commandStats.nearHit(operation) 的返回值替换开始时间，
+     *  该次调用只计入近端缓存命中数，不计入Redis耗时与慢命令。
+     * </pre>
+     */
+    private byte[] nearValue(String redisKey, String field) {
+        return nearCache == null ? null : nearCache.get(redisKey, field);
+    }
+
+    /**
+     * 从Redis读取并回填近端缓存，调用方已先查过 {@link #nearValue}
+     *
+     * @param operation 统计从Redis读取的字节数
+     */
+    private byte[] readValue(String redisKey, RedisOperation operation) {
+        final byte[] rawKey = rawString(redisKey);
+        if (nearCache == null) {
+            return countIn(operation, redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey)));
+        }
+        long stamp = nearCache.stamp(redisKey);
+        byte[] value = countIn(operation, redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey)));
+        nearCache.put(redisKey, null, value, stamp);
+        return value;
+    }
+
+    private byte[] readHashValue(String redisKey, String field, RedisOperation operation) {
+        final byte[] rawKey = rawString(redisKey);
+        final byte[] rawField = rawString(field);
+        if (nearCache == null) {
+            return countIn(operation, redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hGet(rawKey, rawField)));
+        }
+        long stamp = nearCache.stamp(redisKey);
+        byte[] value = countIn(operation, redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hGet(rawKey, rawField)));
+        nearCache.put(redisKey, field, value, stamp);
+        return value;
+    }
+
+    private byte[] countIn(RedisOperation operation, byte[] value) {
+        if (value != null) {
+            commandStats.bytesIn(operation, value.length);
+        }
+        return value;
+    }
+
+    /**
+     * 使近端缓存失效，field为null时整个Key失效
+     */
+    void invalidate(String redisKey, String field) {
+        if (invalidationBus != null) {
+            invalidationBus.publish(NearCache.entryKey(redisKey, field));
+        } else if (nearCache != null) {
+            nearCache.invalidate(Collections.singletonList(NearCache.entryKey(redisKey, field)));
+        }
+    }
+
+    /**
+     * 批量使近端缓存失效，entryKeys由 {@link NearCache#entryKey} 生成，合并为一次发布
+     */
+    void invalidate(List<String> entryKeys) {
+        if (entryKeys.isEmpty()) {
+            return;
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(entryKeys);
+        } else if (nearCache != null) {
+            nearCache.invalidate(entryKeys);
+        }
+    }
+
     // =============================common============================
 
     public boolean expire(String key, long time, TimeUnit unit) {
+        long start = commandStats.start();
         try {
             if (time > 0) {
-                redisTemplate.expire(hashKey(key), time, unit);
+                String k = hashKey(key);
+                redisTemplate.expire(k, time, unit);
+                invalidate(k, null);
             }
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.EXPIRE);
             log.error("Redis Client expire Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.EXPIRE, key, start);
         }
     }
 
@@ -60,7 +278,7 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public boolean expire(String key, long time) {
-        return expire(hashKey(key), time, TimeUnit.SECONDS);
+        return expire(key, time, TimeUnit.SECONDS);
     }
 
     /**
@@ -70,7 +288,15 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return 时间(秒) 返回0代表为永久有效
      */
     public long getExpire(String key) {
-        return redisTemplate.getExpire(hashKey(key), TimeUnit.SECONDS);
+        long start = commandStats.start();
+        try {
+            return redisTemplate.getExpire(hashKey(key), TimeUnit.SECONDS);
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.GET_EXPIRE);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.GET_EXPIRE, key, start);
+        }
     }
 
     /**
@@ -80,11 +306,15 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return true 存在 false不存在
      */
     public boolean hasKey(String key) {
+        long start = commandStats.start();
         try {
             return redisTemplate.hasKey(hashKey(key));
         } catch (Exception e) {
+            commandStats.error(RedisOperation.HAS_KEY);
             log.error("Redis client call hasKey() Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.HAS_KEY, key, start);
         }
     }
 
@@ -96,15 +326,27 @@ public final class RedisClientTemplate extends AbstractTemplate {
     @SuppressWarnings("unchecked")
     public boolean del(String... key) {
         if (key != null && key.length > 0) {
-            if (key.length == 1) {
-                return redisTemplate.delete(hashKey(key[0]));
-            } else {
-                List<String> ks = new ArrayList<>();
-                for (String k : key) {
-                    ks.add(hashKey(k));
+            long start = commandStats.start();
+            try {
+                if (key.length == 1) {
+                    String k = hashKey(key[0]);
+                    Boolean deleted = redisTemplate.delete(k);
+                    invalidate(k, null);
+                    return deleted;
+                } else {
+                    List<String> ks = new ArrayList<>();
+                    for (String k : key) {
+                        ks.add(hashKey(k));
+                    }
+                    Long delCount = redisTemplate.delete(ks);
+                    invalidate(ks);
+                    return key.length == delCount;
                 }
-                Long delCount = redisTemplate.delete(ks);
-                return key.length == delCount;
+            } catch (RuntimeException e) {
+                commandStats.error(RedisOperation.DEL);
+                throw e;
+            } finally {
+                commandStats.stop(RedisOperation.DEL, key[0], start);
             }
         }
         return false;
@@ -114,20 +356,33 @@ public final class RedisClientTemplate extends AbstractTemplate {
 
 
     public boolean setNx(String key, Object value, int seconds, TimeUnit unit) {
+        long start = commandStats.start();
         try {
-            return redisTemplate.opsForValue().setIfAbsent(hashKey(key), serializer(value), seconds, unit);
+            String k = hashKey(key);
+            final byte[] rawKey = rawString(k);
+            final byte[] rawValue = encode(value);
+            commandStats.bytesOut(RedisOperation.SET_NX, rawValue.length);
+            Boolean success = redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                    connection.set(rawKey, rawValue, Expiration.from(seconds, unit), SetOption.ifAbsent()));
+            if (success != null && success) {
+                invalidate(k, null);
+            }
+            return success != null && success;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.SET_NX);
             log.error("Redis Client setNx Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.SET_NX, key, start);
         }
     }
 
     public boolean setNx(String key, Object value, int seconds) {
-        return setNx(hashKey(key), serializer(value), seconds, TimeUnit.SECONDS);
+        return setNx(key, value, seconds, TimeUnit.SECONDS);
     }
 
     public boolean setEx(String key, Object value, int seconds) {
-        return setEx(hashKey(key), serializer(value), seconds, TimeUnit.SECONDS);
+        return setEx(key, value, seconds, TimeUnit.SECONDS);
     }
 
     /**
@@ -140,21 +395,45 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return true Or false
      */
     public boolean setEx(String key, Object value, int seconds, TimeUnit unit) {
+        long start = commandStats.start();
         try {
-            redisTemplate.opsForValue().set(hashKey(key), serializer(value), seconds, unit);
+            String k = hashKey(key);
+            final byte[] rawKey = rawString(k);
+            final byte[] rawValue = encode(value);
+            commandStats.bytesOut(RedisOperation.SET_EX, rawValue.length);
+            redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                    connection.set(rawKey, rawValue, Expiration.from(seconds, unit), SetOption.upsert()));
+            invalidate(k, null);
         } catch (Exception e) {
+            commandStats.error(RedisOperation.SET_EX);
             log.error(e.getMessage(), e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.SET_EX, key, start);
         }
         return true;
     }
 
     public <T> T get(String key, Class<T> clazz) {
+        if (key == null) {
+            return null;
+        }
+        long start = commandStats.start();
         try {
-            return (key == null) ? null : deserializer(redisTemplate.opsForValue().get(hashKey(key)), clazz);
+            String k = hashKey(key);
+            byte[] value = nearValue(k, null);
+            if (value != null) {
+                start = commandStats.nearHit(RedisOperation.GET);
+            } else {
+                value = readValue(k, RedisOperation.GET);
+            }
+            return decode(value, clazz);
         } catch (Exception e) {
+            commandStats.error(RedisOperation.GET);
             log.error("Redis client call get(T) Error:", e);
             return null;
+        } finally {
+            commandStats.stop(RedisOperation.GET, key, start);
         }
     }
 
@@ -165,11 +444,232 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return 值
      */
     public String get(String key) {
+        if (key == null) {
+            return null;
+        }
+        long start = commandStats.start();
         try {
-            return (key == null) ? null : redisTemplate.opsForValue().get(hashKey(key));
+            String k = hashKey(key);
+            byte[] value = nearValue(k, null);
+            if (value != null) {
+                start = commandStats.nearHit(RedisOperation.GET);
+            } else {
+                value = readValue(k, RedisOperation.GET);
+            }
+            return decode(value, String.class);
         } catch (Exception e) {
+            commandStats.error(RedisOperation.GET);
             log.error("Redis client call get() Error:", e);
             return null;
+        } finally {
+            commandStats.stop(RedisOperation.GET, key, start);
+        }
+    }
+
+    // =============================load============================
+
+    /**
+     * 记录回源耗时的Key后缀，与值使用相同的过期时间
+     */
+    private static final String LOAD_DELTA_SUFFIX = ":load-delta";
+
+    /**
+     * 跨节点回源锁的Key前缀
+     */
+    private static final String LOAD_LOCK_PREFIX = "load-lock:";
+
+    /**
+     * getOrLoad 读到的缓存值
+     */
+    private static final class CachedValue {
+        private static final CachedValue MISS = new CachedValue(null, -1, -1);
+
+        private final byte[] value;
+        private final long ttlMillis;
+        private final long deltaMillis;
+
+        private CachedValue(byte[] value, long ttlMillis, long deltaMillis) {
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+            this.deltaMillis = deltaMillis;
+        }
+
+        /**
+         * XFetch：剩余时间不大于 -delta * beta * ln(random) 时提前刷新，回源越慢、越接近过期，越可能提前刷新
+         */
+        private boolean refreshEarly(double beta) {
+            return beta > 0 && ttlMillis > 0 && deltaMillis > 0
+                    && -deltaMillis * beta * Math.log(ThreadLocalRandom.current().nextDouble()) >= ttlMillis;
+        }
+    }
+
+    /**
+     * 功能描述: 读取缓存，未命中时调用loader加载并写回
+     * <pre>
+     *  本节点同一key的并发未命中只调用一次loader，其余调用等待同一个结果（loader抛出的异常同样传给等待方）。
+     *  demo.redis.load.distributed 开启时，加载前以 lock-lease-millis 为租期获取分布式锁，最多等待 lock-wait-millis，
+     *  获取后（或等待超时后）再读一次Redis，其它节点已写回时直接返回；仍未命中时才调用loader。
+     *
+     *  xfetch-beta 大于0时，读取同时取出剩余过期时间与上次回源耗时，按XFetch算法在过期前随机提前刷新：
+     *  提前刷新由一个调用方同步完成，其余调用方（包括其它节点）继续返回旧值。此时读取不经过近端缓存。
+     *  loader返回null时不写回。loader内不要再对同一key调用 getOrLoad。
+     * </pre>
+     *
+     * @param key    键
+     * @param ttl    时间(秒) 小于等于0时不过期
+     * @param clazz  值类型
+     * @param loader 回源加载
+     * @return 值
+     * @author LM.X
+     * @date 2020/8/21 10:30
+     */
+    public <T> T getOrLoad(String key, long ttl, Class<T> clazz, Supplier<T> loader) {
+        String k = hashKey(key);
+        CachedValue cached = readForLoad(k, key);
+        boolean early = cached.value != null;
+        if (early && !cached.refreshEarly(xfetchBeta)) {
+            return decode(cached.value, clazz);
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = loading.putIfAbsent(key, future);
+        if (running != null) {
+            loadStats.coalesced();
+            return early ? decode(cached.value, clazz) : clazz.cast(await(running));
+        }
+        try {
+            T value = load(key, k, ttl, clazz, loader, cached);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private <T> T load(String key, String k, long ttl, Class<T> clazz, Supplier<T> loader, CachedValue cached) {
+        boolean early = cached.value != null;
+        Object lock = null;
+        if (distributedLoad && distributedLock != null) {
+            // 提前刷新不等待，其它节点正在刷新时直接返回旧值
+            lock = distributedLock.tryLock(LOAD_LOCK_PREFIX + key, early ? 0 : loadLockWaitMillis, loadLockLeaseMillis, TimeUnit.MILLISECONDS);
+            if (lock == null && early) {
+                loadStats.coalesced();
+                return decode(cached.value, clazz);
+            }
+            if (!early) {
+                byte[] current = readForLoad(k, key).value;
+                if (current != null) {
+                    loadStats.remoteHit();
+                    if (lock != null) {
+                        distributedLock.unlock(lock);
+                    }
+                    return decode(current, clazz);
+                }
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            T value = loader.get();
+            if (value != null) {
+                store(k, key, value, ttl, System.nanoTime() - start);
+            }
+            return value;
+        } catch (RuntimeException | Error e) {
+            loadStats.failed();
+            throw e;
+        } finally {
+            loadStats.loaded(System.nanoTime() - start, early);
+            if (lock != null) {
+                distributedLock.unlock(lock);
+            }
+        }
+    }
+
+    /**
+     * Redis读取失败时按未命中处理
+     */
+    private CachedValue readForLoad(String k, String key) {
+        long start = commandStats.start();
+        try {
+            if (xfetchBeta <= 0) {
+                byte[] value = nearValue(k, null);
+                if (value != null) {
+                    start = commandStats.nearHit(RedisOperation.GET);
+                } else {
+                    value = readValue(k, RedisOperation.GET);
+                }
+                return value == null ? CachedValue.MISS : new CachedValue(value, -1, -1);
+            }
+            final byte[] rawKey = rawString(k);
+            final byte[] rawDeltaKey = rawString(k + LOAD_DELTA_SUFFIX);
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.get(rawKey);
+                connection.pTtl(rawKey);
+                connection.get(rawDeltaKey);
+                return null;
+            }, RedisSerializer.byteArray());
+            byte[] value = countIn(RedisOperation.GET, (byte[]) results.get(0));
+            if (value == null) {
+                return CachedValue.MISS;
+            }
+            byte[] delta = (byte[]) results.get(2);
+            return new CachedValue(value, (Long) results.get(1),
+                    delta == null ? -1 : Long.parseLong(new String(delta, StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            commandStats.error(RedisOperation.GET);
+            log.error("Redis client call getOrLoad() Error:", e);
+            return CachedValue.MISS;
+        } finally {
+            commandStats.stop(RedisOperation.GET, key, start);
+        }
+    }
+
+    /**
+     * 值与回源耗时在同一个pipeline内写入，写入失败只记录日志
+     */
+    private void store(String k, String key, Object value, long ttl, long loadNanos) {
+        long start = commandStats.start();
+        try {
+            final byte[] rawKey = rawString(k);
+            final byte[] rawValue = encode(value);
+            final byte[] rawDeltaKey = rawString(k + LOAD_DELTA_SUFFIX);
+            final byte[] rawDelta = rawString(String.valueOf(Math.max(TimeUnit.NANOSECONDS.toMillis(loadNanos), 1)));
+            commandStats.bytesOut(RedisOperation.SET, rawValue.length);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                if (ttl > 0) {
+                    connection.set(rawKey, rawValue, Expiration.seconds(ttl), SetOption.upsert());
+                } else {
+                    connection.set(rawKey, rawValue);
+                }
+                if (xfetchBeta > 0 && ttl > 0) {
+                    connection.set(rawDeltaKey, rawDelta, Expiration.seconds(ttl), SetOption.upsert());
+                }
+                return null;
+            });
+            invalidate(k, null);
+        } catch (Exception e) {
+            commandStats.error(RedisOperation.SET);
+            log.error("Redis client call getOrLoad() Error:", e);
+        } finally {
+            commandStats.stop(RedisOperation.SET, key, start);
         }
     }
 
@@ -181,13 +681,7 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return true成功 false失败
      */
     public boolean set(String key, Object value) {
-        try {
-            redisTemplate.opsForValue().set(hashKey(key), serializer(value));
-            return true;
-        } catch (Exception e) {
-            log.error("Redis client call set(T) Error:", e);
-            return false;
-        }
+        return set(key, value, 0, codec);
     }
 
     /**
@@ -199,16 +693,36 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return true成功 false 失败
      */
     public boolean set(String key, Object value, long time) {
+        return set(key, value, time, codec);
+    }
+
+    /**
+     * 使用指定编解码器放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     * @param codec 值编解码器
+     * @return true成功 false 失败
+     */
+    public boolean set(String key, Object value, long time, ValueCodec codec) {
+        long start = commandStats.start();
         try {
-            if (time > 0) {
-                redisTemplate.opsForValue().set(hashKey(key), serializer(value), time, TimeUnit.SECONDS);
-            } else {
-                set(key, value);
-            }
+            String k = hashKey(key);
+            final byte[] rawKey = rawString(k);
+            final byte[] rawValue = encode(value, codec);
+            commandStats.bytesOut(RedisOperation.SET, rawValue.length);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> time > 0
+                    ? connection.set(rawKey, rawValue, Expiration.seconds(time), SetOption.upsert())
+                    : connection.set(rawKey, rawValue));
+            invalidate(k, null);
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.SET);
             log.error("Redis client call set(2) Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.SET, key, start);
         }
     }
 
@@ -223,7 +737,18 @@ public final class RedisClientTemplate extends AbstractTemplate {
         if (delta < 0) {
             throw new RuntimeException("递增因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(hashKey(key), delta);
+        long start = commandStats.start();
+        try {
+            String k = hashKey(key);
+            Long value = redisTemplate.opsForValue().increment(k, delta);
+            invalidate(k, null);
+            return value;
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.INCR);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.INCR, key, start);
+        }
     }
 
     /**
@@ -237,7 +762,18 @@ public final class RedisClientTemplate extends AbstractTemplate {
         if (delta < 0) {
             throw new RuntimeException("递减因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(hashKey(key), -delta);
+        long start = commandStats.start();
+        try {
+            String k = hashKey(key);
+            Long value = redisTemplate.opsForValue().increment(k, -delta);
+            invalidate(k, null);
+            return value;
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.DECR);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.DECR, key, start);
+        }
     }
     // ================================Map=================================
 
@@ -249,38 +785,96 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return 值
      */
     public <T> T hGet(String key, String item, Class<T> clazz) {
-        Object o = redisTemplate.opsForHash().get(hashKey(key), item);
-        return deserializer(o.toString(), clazz);
+        long start = commandStats.start();
+        try {
+            String k = hashKey(key);
+            byte[] value = nearValue(k, item);
+            if (value != null) {
+                start = commandStats.nearHit(RedisOperation.H_GET);
+            } else {
+                value = readHashValue(k, item, RedisOperation.H_GET);
+            }
+            return decode(value, clazz);
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.H_GET);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.H_GET, key, start);
+        }
     }
 
     public Object hGet(String key, String item) {
-        return redisTemplate.opsForHash().get(hashKey(key), item);
+        return hGet(key, item, String.class);
     }
 
     /**
-     * 获取hashKey对应的所有键值
+     * 获取hashKey对应的所有键值，值按String解码（与 hGet(key, item) 一致）
      *
      * @param key 键
      * @return 对应的多个键值
      */
     public Map<Object, Object> hmGet(String key) {
-        return redisTemplate.opsForHash().entries(hashKey(key));
+        return new LinkedHashMap<>(hmGet(key, String.class));
     }
 
     /**
-     * HashSet
+     * 获取hashKey对应的所有键值，值与 hGet 一样经编解码器解码
+     *
+     * @param key   键
+     * @param clazz 值类型
+     * @return field -> 值，key不存在时为空Map
+     */
+    public <T> Map<String, T> hmGet(String key, Class<T> clazz) {
+        long start = commandStats.start();
+        try {
+            final byte[] rawKey = rawString(hashKey(key));
+            Map<byte[], byte[]> entries = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection -> connection.hGetAll(rawKey));
+            Map<String, T> values = new LinkedHashMap<>();
+            if (entries != null) {
+                for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+                    values.put(new String(entry.getKey(), StandardCharsets.UTF_8),
+                            decode(countIn(RedisOperation.HM_GET, entry.getValue()), clazz));
+                }
+            }
+            return values;
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.HM_GET);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.HM_GET, key, start);
+        }
+    }
+
+    /**
+     * HashSet，值与 hSet 一样经模板编解码器编码、超过阈值时压缩
      *
      * @param key 键
      * @param map 对应多个键值
      * @return true 成功 false 失败
      */
     public boolean hmSet(String key, Map<String, String> map) {
+        long start = commandStats.start();
         try {
-            redisTemplate.opsForHash().putAll(hashKey(key), map);
+            String k = hashKey(key);
+            final byte[] rawKey = rawString(k);
+            final Map<byte[], byte[]> hashes = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                byte[] rawValue = encode(entry.getValue());
+                commandStats.bytesOut(RedisOperation.HM_SET, rawValue.length);
+                hashes.put(rawString(entry.getKey()), rawValue);
+            }
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.hMSet(rawKey, hashes);
+                return null;
+            });
+            invalidate(k, null);
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.HM_SET);
             log.error("Redis client call hmSet() Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.HM_SET, key, start);
         }
     }
 
@@ -293,15 +887,42 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return true 成功 false失败
      */
     public boolean hSet(String key, String item, Object value) {
+        return hSet(key, item, value, codec);
+    }
+
+    /**
+     * 使用指定编解码器向一张hash表中放入数据
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @param codec 值编解码器
+     * @return true 成功 false失败
+     */
+    public boolean hSet(String key, String item, Object value, ValueCodec codec) {
+        long start = commandStats.start();
         try {
-            redisTemplate.opsForHash().put(hashKey(key), item, serializer(value));
+            String k = hashKey(key);
+            byte[] rawValue = encode(value, codec);
+            commandStats.bytesOut(RedisOperation.H_SET, rawValue.length);
+            putHashValue(k, item, rawValue);
+            invalidate(k, item);
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.H_SET);
             log.error("Redis client call hSet() Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.H_SET, key, start);
         }
     }
 
+    private void putHashValue(String redisKey, String field, byte[] value) {
+        final byte[] rawKey = rawString(redisKey);
+        final byte[] rawField = rawString(field);
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.hSet(rawKey, rawField, value));
+    }
+
     /**
      * 删除hash表中的值
      *
@@ -309,7 +930,21 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @param item 项 可以使多个 不能为null
      */
     public void hDel(String key, String... item) {
-        redisTemplate.opsForHash().delete(hashKey(key), item);
+        long start = commandStats.start();
+        try {
+            String k = hashKey(key);
+            redisTemplate.opsForHash().delete(k, item);
+            List<String> entryKeys = new ArrayList<>(item.length);
+            for (String i : item) {
+                entryKeys.add(NearCache.entryKey(k, i));
+            }
+            invalidate(entryKeys);
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.H_DEL);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.H_DEL, key, start);
+        }
     }
 
     /**
@@ -320,7 +955,15 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return true 存在 false不存在
      */
     public boolean hHasKey(String key, String item) {
-        return redisTemplate.opsForHash().hasKey(hashKey(key), item);
+        long start = commandStats.start();
+        try {
+            return redisTemplate.opsForHash().hasKey(hashKey(key), item);
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.H_HAS_KEY);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.H_HAS_KEY, key, start);
+        }
     }
 
     /**
@@ -332,7 +975,18 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public double hIncr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(hashKey(key), item, by);
+        long start = commandStats.start();
+        try {
+            String k = hashKey(key);
+            Double value = redisTemplate.opsForHash().increment(k, item, by);
+            invalidate(k, item);
+            return value;
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.H_INCR);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.H_INCR, key, start);
+        }
     }
 
     /**
@@ -344,7 +998,18 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public double hDecr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(hashKey(key), item, -by);
+        long start = commandStats.start();
+        try {
+            String k = hashKey(key);
+            Double value = redisTemplate.opsForHash().increment(k, item, -by);
+            invalidate(k, item);
+            return value;
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.H_DECR);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.H_DECR, key, start);
+        }
     }
 
     // ============================set=============================
@@ -356,11 +1021,24 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public Set<String> sGet(String key) {
+        long start = commandStats.start();
         try {
-            return redisTemplate.opsForSet().members(hashKey(key));
+            final byte[] rawKey = rawString(hashKey(key));
+            Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection -> connection.sMembers(rawKey));
+            if (members == null) {
+                return null;
+            }
+            Set<String> values = new LinkedHashSet<>(members.size() * 4 / 3 + 1);
+            for (byte[] member : members) {
+                values.add(decode(countIn(RedisOperation.S_GET, member), String.class));
+            }
+            return values;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.S_GET);
             log.error("Redis client call sGet() Error:", e);
             return null;
+        } finally {
+            commandStats.stop(RedisOperation.S_GET, key, start);
         }
     }
 
@@ -372,11 +1050,18 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return true 存在 false不存在
      */
     public boolean sHasKey(String key, Object value) {
+        long start = commandStats.start();
         try {
-            return redisTemplate.opsForSet().isMember(hashKey(key), serializer(value));
+            final byte[] rawKey = rawString(hashKey(key));
+            final byte[] rawValue = encode(value);
+            commandStats.bytesOut(RedisOperation.S_HAS_KEY, rawValue.length);
+            return Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.sIsMember(rawKey, rawValue)));
         } catch (Exception e) {
+            commandStats.error(RedisOperation.S_HAS_KEY);
             log.error("Redis client call Key(Str() Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.S_HAS_KEY, key, start);
         }
     }
 
@@ -387,11 +1072,15 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public long sGetSetSize(String key) {
+        long start = commandStats.start();
         try {
             return redisTemplate.opsForSet().size(hashKey(key));
         } catch (Exception e) {
+            commandStats.error(RedisOperation.S_GET_SET_SIZE);
             log.error("Redis client call sGetSetSize() Error:", e);
             return 0;
+        } finally {
+            commandStats.stop(RedisOperation.S_GET_SET_SIZE, key, start);
         }
     }
 
@@ -403,12 +1092,18 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return 移除的个数
      */
     public long setRemove(String key, String... values) {
+        long start = commandStats.start();
         try {
-            Long count = redisTemplate.opsForSet().remove(hashKey(key), values);
-            return count;
+            final byte[] rawKey = rawString(hashKey(key));
+            final byte[][] rawValues = encodeAll(RedisOperation.SET_REMOVE, Arrays.asList(values));
+            Long count = redisTemplate.execute((RedisCallback<Long>) connection -> connection.sRem(rawKey, rawValues));
+            return count == null ? 0 : count;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.SET_REMOVE);
             log.error("Redis client call setRemove() Error:", e);
             return 0;
+        } finally {
+            commandStats.stop(RedisOperation.SET_REMOVE, key, start);
         }
     }
     // ===============================list=================================
@@ -422,11 +1117,37 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public List<String> lGet(String key, long start, long end) {
+        return lGet(key, start, end, String.class);
+    }
+
+    /**
+     * 获取list缓存的内容并解码为指定类型
+     *
+     * @param key   键
+     * @param start 开始
+     * @param end   结束 0 到 -1代表所有值
+     * @param clazz 值类型
+     * @return
+     */
+    public <T> List<T> lGet(String key, long start, long end, Class<T> clazz) {
+        long begin = commandStats.start();
         try {
-            return redisTemplate.opsForList().range(hashKey(key), start, end);
+            final byte[] rawKey = rawString(hashKey(key));
+            List<byte[]> items = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.lRange(rawKey, start, end));
+            if (items == null) {
+                return null;
+            }
+            List<T> values = new ArrayList<>(items.size());
+            for (byte[] item : items) {
+                values.add(decode(countIn(RedisOperation.L_GET, item), clazz));
+            }
+            return values;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_GET);
             log.error("Redis client call lGet() Error:", e);
             return null;
+        } finally {
+            commandStats.stop(RedisOperation.L_GET, key, begin);
         }
     }
 
@@ -437,11 +1158,15 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public long lGetListSize(String key) {
+        long start = commandStats.start();
         try {
             return redisTemplate.opsForList().size(hashKey(key));
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_GET_LIST_SIZE);
             log.error("Redis client call lGetListSize() Error:", e);
             return 0;
+        } finally {
+            commandStats.stop(RedisOperation.L_GET_LIST_SIZE, key, start);
         }
     }
 
@@ -453,11 +1178,29 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public Object lGetIndex(String key, long index) {
+        return lGetIndex(key, index, String.class);
+    }
+
+    /**
+     * 通过索引 获取list中的值并解码为指定类型
+     *
+     * @param key   键
+     * @param index 索引 index>=0时， 0 表头，1 第二个元素，依次类推；index<0时，-1，表尾，-2倒数第二个元素，依次类推
+     * @param clazz 值类型
+     * @return
+     */
+    public <T> T lGetIndex(String key, long index, Class<T> clazz) {
+        long start = commandStats.start();
         try {
-            return redisTemplate.opsForList().index(hashKey(key), index);
+            final byte[] rawKey = rawString(hashKey(key));
+            byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.lIndex(rawKey, index));
+            return decode(countIn(RedisOperation.L_GET_INDEX, value), clazz);
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_GET_INDEX);
             log.error("Redis client call lGetIndex() Error:", e);
             return null;
+        } finally {
+            commandStats.stop(RedisOperation.L_GET_INDEX, key, start);
         }
     }
 
@@ -469,12 +1212,16 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public boolean lSet(String key, Object value) {
+        long start = commandStats.start();
         try {
-            redisTemplate.opsForList().rightPush(hashKey(key), serializer(value));
+            rightPushAll(hashKey(key), Collections.singletonList(value));
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_SET);
             log.error("Redis client call lSet(1) Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.L_SET, key, start);
         }
     }
 
@@ -487,16 +1234,20 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public boolean lSet(String key, Object value, long time) {
+        long start = commandStats.start();
         try {
-            key = hashKey(key);
-            redisTemplate.opsForList().rightPush(key, serializer(value));
+            String k = hashKey(key);
+            rightPushAll(k, Collections.singletonList(value));
             if (time > 0) {
-                expire(key, time);
+                expire(k, time);
             }
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_SET);
             log.error("Redis client call lSet(2) Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.L_SET, key, start);
         }
     }
 
@@ -508,12 +1259,16 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public boolean lSet(String key, List<String> value) {
+        long start = commandStats.start();
         try {
-            redisTemplate.opsForList().rightPushAll(hashKey(key), value);
+            rightPushAll(hashKey(key), value);
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_SET);
             log.error("Redis client call lSet() Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.L_SET, key, start);
         }
     }
 
@@ -526,16 +1281,20 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public boolean lSet(String key, List<String> value, long time) {
+        long start = commandStats.start();
         try {
-            key = hashKey(key);
-            redisTemplate.opsForList().rightPushAll(key, value);
+            String k = hashKey(key);
+            rightPushAll(k, value);
             if (time > 0) {
-                expire(key, time);
+                expire(k, time);
             }
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_SET);
             log.error("Redis client call lSet() Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.L_SET, key, start);
         }
     }
 
@@ -548,12 +1307,22 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return
      */
     public boolean lUpdateIndex(String key, long index, Object value) {
+        long start = commandStats.start();
         try {
-            redisTemplate.opsForList().set(hashKey(key), index, serializer(value));
+            final byte[] rawKey = rawString(hashKey(key));
+            final byte[] rawValue = encode(value);
+            commandStats.bytesOut(RedisOperation.L_UPDATE_INDEX, rawValue.length);
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.lSet(rawKey, index, rawValue);
+                return null;
+            });
             return true;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_UPDATE_INDEX);
             log.error("Redis client call lUpdateIndex() Error:", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.L_UPDATE_INDEX, key, start);
         }
     }
 
@@ -566,14 +1335,41 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @return 移除的个数
      */
     public long lRemove(String key, long count, Object value) {
+        long start = commandStats.start();
         try {
-            Long remove = redisTemplate.opsForList().remove(hashKey(key), count, serializer(value));
-            return remove;
+            final byte[] rawKey = rawString(hashKey(key));
+            final byte[] rawValue = encode(value);
+            commandStats.bytesOut(RedisOperation.L_REMOVE, rawValue.length);
+            Long remove = redisTemplate.execute((RedisCallback<Long>) connection -> connection.lRem(rawKey, count, rawValue));
+            return remove == null ? 0 : remove;
         } catch (Exception e) {
+            commandStats.error(RedisOperation.L_REMOVE);
             log.error("Redis client call lRemove() Error:", e);
             return 0;
+        } finally {
+            commandStats.stop(RedisOperation.L_REMOVE, key, start);
         }
     }
+
+    /**
+     * 逐个编码后以一条RPUSH写入，与 {@link #lGet(String, long, long, Class)} 使用同一编解码器
+     */
+    private void rightPushAll(String k, Collection<?> values) {
+        final byte[] rawKey = rawString(k);
+        final byte[][] rawValues = encodeAll(RedisOperation.L_SET, values);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.rPush(rawKey, rawValues));
+    }
+
+    private byte[][] encodeAll(RedisOperation operation, Collection<?> values) {
+        byte[][] rawValues = new byte[values.size()][];
+        int i = 0;
+        for (Object value : values) {
+            rawValues[i] = encode(value);
+            commandStats.bytesOut(operation, rawValues[i].length);
+            i++;
+        }
+        return rawValues;
+    }
     // ===============================高级特性=================================
 
     /*
@@ -603,31 +1399,53 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @date 2020/7/15 17:29
      */
     public List<Object> pipelineHMSet(final String hKey, Map<byte[], byte[]> hashes, final long timeout, final TimeUnit unit) {
-        // RedisCallback 不支持事务  SessionCallback 支持事务
-        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-                    //开启事物
-                    byte[] hKeyBytes = hKey.getBytes();
-                    connection.hMSet(hKeyBytes, hashes);
-                    connection.expire(hKeyBytes, TimeoutUtils.toSeconds(timeout, unit));
-
-                    // 返回值自动装配
-                    return null;
-                }, // 自定义序列化
-                redisTemplate.getKeySerializer());
+        long start = commandStats.start();
+        try {
+            commandStats.bytesOut(RedisOperation.PIPELINE_HM_SET, valueBytes(hashes));
+            // RedisCallback 不支持事务  SessionCallback 支持事务
+            List<Object> result = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        //开启事物
+                        byte[] hKeyBytes = hKey.getBytes();
+                        connection.hMSet(hKeyBytes, hashes);
+                        connection.expire(hKeyBytes, TimeoutUtils.toSeconds(timeout, unit));
+
+                        // 返回值自动装配
+                        return null;
+                    }, // 自定义序列化
+                    redisTemplate.getKeySerializer());
+            invalidate(hKey, null);
+            return result;
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.PIPELINE_HM_SET);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.PIPELINE_HM_SET, hKey, start);
+        }
     }
 
     public List<Object> pipelineHMSetByZip(final String hKey, Map<byte[], byte[]> hashes, final long timeout, final TimeUnit unit) {
-        // RedisCallback 不支持事务  SessionCallback 支持事务
-        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-                    //开启事物
-                    byte[] hKeyBytes = hashKey(hKey).getBytes();
-                    connection.hMSet(hKeyBytes, hashes);
-                    connection.expire(hKeyBytes, TimeoutUtils.toSeconds(timeout, unit));
-
-                    // 返回值自动装配
-                    return null;
-                }, // 自定义序列化
-                redisTemplate.getKeySerializer());
+        long start = commandStats.start();
+        try {
+            commandStats.bytesOut(RedisOperation.PIPELINE_HM_SET_BY_ZIP, valueBytes(hashes));
+            // RedisCallback 不支持事务  SessionCallback 支持事务
+            List<Object> result = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        //开启事物
+                        byte[] hKeyBytes = hashKeyBytes(hKey);
+                        connection.hMSet(hKeyBytes, hashes);
+                        connection.expire(hKeyBytes, TimeoutUtils.toSeconds(timeout, unit));
+
+                        // 返回值自动装配
+                        return null;
+                    }, // 自定义序列化
+                    redisTemplate.getKeySerializer());
+            invalidate(hashKey(hKey), null);
+            return result;
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.PIPELINE_HM_SET_BY_ZIP);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.PIPELINE_HM_SET_BY_ZIP, hKey, start);
+        }
     }
 
     /**
@@ -643,17 +1461,27 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @date 2020/7/15 18:11
      */
     public List<Object> pipelineHSet(final String hKey, final String item, String value, final long timeout, final TimeUnit unit) {
-        // RedisCallback 不支持事务  SessionCallback 支持事务
-        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-                    //开启事物
-                    byte[] hKeyBytes = hKey.getBytes();
-                    connection.hSet(hKeyBytes, item.getBytes(), value.getBytes());
-                    connection.expire(hKeyBytes, TimeoutUtils.toSeconds(timeout, unit));
-
-                    // 返回值自动装配
-                    return null;
-                }, // 自定义序列化
-                redisTemplate.getKeySerializer());
+        long start = commandStats.start();
+        try {
+            // RedisCallback 不支持事务  SessionCallback 支持事务
+            List<Object> result = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        //开启事物
+                        byte[] hKeyBytes = hKey.getBytes();
+                        connection.hSet(hKeyBytes, item.getBytes(), value.getBytes());
+                        connection.expire(hKeyBytes, TimeoutUtils.toSeconds(timeout, unit));
+
+                        // 返回值自动装配
+                        return null;
+                    }, // 自定义序列化
+                    redisTemplate.getKeySerializer());
+            invalidate(hKey, item);
+            return result;
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.PIPELINE_H_SET);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.PIPELINE_H_SET, hKey, start);
+        }
     }
 
     /**
@@ -672,11 +1500,35 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @date 2020/7/16 13:51
      */
     public boolean setByZip(final String hKey, final String item, Object value) {
+        return setByZip(hKey, item, value, codec);
+    }
+
+    /**
+     * 功能描述: 使用指定编解码器以压缩方式存储
+     *
+     * @param hKey
+     * @param item
+     * @param value
+     * @param codec 值编解码器
+     * @return boolean
+     * @author LM.X
+     * @date 2020/7/24 14:30
+     */
+    public boolean setByZip(final String hKey, final String item, Object value, ValueCodec codec) {
+        long start = commandStats.start();
         try {
-            redisTemplate.opsForHash().put(super.hashKey(hKey), super.BKDRHashCode(item), super.serializer(value));
+            String k = super.hashKey(hKey);
+            String field = super.BKDRHashCode(item);
+            byte[] rawValue = encode(value, codec);
+            commandStats.bytesOut(RedisOperation.SET_BY_ZIP, rawValue.length);
+            putHashValue(k, field, rawValue);
+            invalidate(k, field);
         } catch (Exception e) {
+            commandStats.error(RedisOperation.SET_BY_ZIP);
             log.error("Redis client call setByZip() Error：", e);
             return false;
+        } finally {
+            commandStats.stop(RedisOperation.SET_BY_ZIP, hKey, start);
         }
         return true;
     }
@@ -691,12 +1543,566 @@ public final class RedisClientTemplate extends AbstractTemplate {
      * @date 2020/7/16 14:13
      */
     public <T> T getByZip(final String hKey, final String item, Class<T> clazz) {
+        long start = commandStats.start();
         try {
-            Object obj = redisTemplate.opsForHash().get(super.hashKey(hKey), super.BKDRHashCode(item));
-            return deserializer(obj.toString(), clazz);
+            String k = super.hashKey(hKey);
+            String field = super.BKDRHashCode(item);
+            byte[] value = nearValue(k, field);
+            if (value != null) {
+                start = commandStats.nearHit(RedisOperation.GET_BY_ZIP);
+            } else {
+                value = readHashValue(k, field, RedisOperation.GET_BY_ZIP);
+            }
+            return decode(value, clazz);
         } catch (Exception e) {
+            commandStats.error(RedisOperation.GET_BY_ZIP);
             log.error("Redis client call getByZip() Error:", e);
             return null;
+        } finally {
+            commandStats.stop(RedisOperation.GET_BY_ZIP, hKey, start);
+        }
+    }
+
+    /**
+     * 功能描述: 压缩方式批量删除，hKeys 与 items 一一对应，同一bucket的field合并为一条HDEL并按pipeline发送
+     *
+     * @param hKeys 与 setByZip 的 hKey 相同
+     * @param items 与 setByZip 的 item 相同
+     * @author LM.X
+     * @date 2020/8/24 10:00
+     */
+    public void delByZip(List<String> hKeys, List<String> items) {
+        if (hKeys.isEmpty()) {
+            return;
+        }
+        long start = commandStats.start();
+        try {
+            Map<String, List<String>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < hKeys.size(); i++) {
+                groups.computeIfAbsent(super.hashKey(hKeys.get(i)), b -> new ArrayList<>()).add(super.BKDRHashCode(items.get(i)));
+            }
+            List<Map.Entry<String, List<String>>> entries = new ArrayList<>(groups.entrySet());
+            pipelined(entries, (connection, entry) -> {
+                List<String> fields = entry.getValue();
+                byte[][] rawFields = new byte[fields.size()][];
+                for (int i = 0; i < rawFields.length; i++) {
+                    rawFields[i] = rawString(fields.get(i));
+                }
+                connection.hDel(rawString(entry.getKey()), rawFields);
+            });
+            List<String> entryKeys = new ArrayList<>(hKeys.size());
+            for (Map.Entry<String, List<String>> entry : entries) {
+                for (String field : entry.getValue()) {
+                    entryKeys.add(NearCache.entryKey(entry.getKey(), field));
+                }
+            }
+            invalidate(entryKeys);
+        } catch (RuntimeException e) {
+            commandStats.error(RedisOperation.DEL_BY_ZIP);
+            throw e;
+        } finally {
+            commandStats.stop(RedisOperation.DEL_BY_ZIP, hKeys.get(0), start);
+        }
+    }
+
+    // =============================cache-aside============================
+
+    /**
+     * 功能描述: getEntry / getEntryByZip 读到的缓存条目
+     */
+    public static final class CacheEntry<T> {
+        private final T value;
+        private final long ttlMillis;
+
+        private CacheEntry(T value, long ttlMillis) {
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+        }
+
+        /**
+         * 缓存的值，负缓存时为null
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * 剩余过期时间(毫秒)，未读取或不过期时小于0
+         */
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+    }
+
+    /**
+     * 功能描述: 读取缓存条目，区分未命中与缓存的null
+     *
+     * @param key     键
+     * @param clazz   值类型
+     * @param withTtl 是否在同一个pipeline内读取剩余过期时间，此时不经过近端缓存
+     * @return 未命中或读取失败时为null
+     * @author LM.X
+     * @date 2020/8/24 10:10
+     */
+    public <T> CacheEntry<T> getEntry(String key, Class<T> clazz, boolean withTtl) {
+        return getEntry(key, (Type) clazz, withTtl);
+    }
+
+    /**
+     * 功能描述: 读取缓存条目，值按泛型类型（如 {@code List<User>}）解码，集合元素同样转换为目标类型
+     *
+     * @param key     键
+     * @param type    值类型
+     * @param withTtl 是否在同一个pipeline内读取剩余过期时间，此时不经过近端缓存
+     * @return 未命中或读取失败时为null
+     */
+    public <T> CacheEntry<T> getEntry(String key, Type type, boolean withTtl) {
+        long start = commandStats.start();
+        try {
+            String k = hashKey(key);
+            if (!withTtl) {
+                byte[] value = nearValue(k, null);
+                if (value != null) {
+                    start = commandStats.nearHit(RedisOperation.GET);
+                } else {
+                    value = readValue(k, RedisOperation.GET);
+                }
+                return value == null ? null : new CacheEntry<>(this.<T>decode(value, type), -1);
+            }
+            final byte[] rawKey = rawString(k);
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.get(rawKey);
+                connection.pTtl(rawKey);
+                return null;
+            }, RedisSerializer.byteArray());
+            byte[] value = countIn(RedisOperation.GET, (byte[]) results.get(0));
+            return value == null ? null : new CacheEntry<>(this.<T>decode(value, type), (Long) results.get(1));
+        } catch (Exception e) {
+            commandStats.error(RedisOperation.GET);
+            log.error("Redis client call getEntry() Error:", e);
+            return null;
+        } finally {
+            commandStats.stop(RedisOperation.GET, key, start);
+        }
+    }
+
+    /**
+     * 功能描述: 写入缓存条目，value为null时写入负缓存占位
+     *
+     * @param key   键
+     * @param value 值，可以为null
+     * @param time  时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     * @return true成功 false 失败
+     * @author LM.X
+     * @date 2020/8/24 10:20
+     */
+    public boolean setEntry(String key, Object value, long time) {
+        long start = commandStats.start();
+        try {
+            String k = hashKey(key);
+            final byte[] rawKey = rawString(k);
+            final byte[] rawValue = value == null ? ValueCodecs.nullValue() : encode(value);
+            commandStats.bytesOut(RedisOperation.SET, rawValue.length);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> time > 0
+                    ? connection.set(rawKey, rawValue, Expiration.seconds(time), SetOption.upsert())
+                    : connection.set(rawKey, rawValue));
+            invalidate(k, null);
+            return true;
+        } catch (Exception e) {
+            commandStats.error(RedisOperation.SET);
+            log.error("Redis client call setEntry() Error:", e);
+            return false;
+        } finally {
+            commandStats.stop(RedisOperation.SET, key, start);
+        }
+    }
+
+    /**
+     * 功能描述: 压缩方式读取缓存条目
+     * <pre>
+     *  bucket内的条目没有单独的过期时间，setEntryByZip 把过期时间写在值里，读取时已过期按未命中处理；
+     *  剩余过期时间按写入方的时钟计算，没有过期时间的条目为-1。
+     * </pre>
+     *
+     * @return 未命中、已过期或读取失败时为null
+     * @author LM.X
+     * @date 2020/8/24 10:30
+     */
+    public <T> CacheEntry<T> getEntryByZip(final String hKey, final String item, Class<T> clazz) {
+        return getEntryByZip(hKey, item, (Type) clazz);
+    }
+
+    /**
+     * 功能描述: 压缩方式读取缓存条目，值按泛型类型（如 {@code List<User>}）解码
+     *
+     * @return 未命中、已过期或读取失败时为null
+     */
+    public <T> CacheEntry<T> getEntryByZip(final String hKey, final String item, Type type) {
+        long start = commandStats.start();
+        try {
+            String k = super.hashKey(hKey);
+            String field = super.BKDRHashCode(item);
+            byte[] value = nearValue(k, field);
+            if (value != null) {
+                start = commandStats.nearHit(RedisOperation.GET_BY_ZIP);
+            } else {
+                value = readHashValue(k, field, RedisOperation.GET_BY_ZIP);
+            }
+            if (value == null) {
+                return null;
+            }
+            long ttlMillis = -1;
+            if (ValueCodecs.isExpiring(value)) {
+                ttlMillis = ValueCodecs.expireAt(value) - System.currentTimeMillis();
+                if (ttlMillis <= 0) {
+                    return null;
+                }
+            }
+            return new CacheEntry<>(this.<T>decode(value, type), ttlMillis);
+        } catch (Exception e) {
+            commandStats.error(RedisOperation.GET_BY_ZIP);
+            log.error("Redis client call getEntryByZip() Error:", e);
+            return null;
+        } finally {
+            commandStats.stop(RedisOperation.GET_BY_ZIP, hKey, start);
+        }
+    }
+
+    /**
+     * 功能描述: 压缩方式写入不过期的缓存条目，value为null时写入负缓存占位
+     *
+     * @author LM.X
+     * @date 2020/8/24 10:40
+     */
+    public boolean setEntryByZip(final String hKey, final String item, Object value) {
+        return setEntryByZip(hKey, item, value, 0);
+    }
+
+    /**
+     * 功能描述: 压缩方式写入缓存条目，value为null时写入负缓存占位
+     * <pre>
+     *  bucket内的条目没有单独的过期时间，time大于0时把过期时间写在值里（{@link ValueCodecs#withExpiry}），由 getEntryByZip 检查；
+     *  过期的条目留在bucket中，直到被重新写入或删除。
+     * </pre>
+     *
+     * @param time 时间(秒) 小于等于0时不过期
+     * @author LM.X
+     * @date 2020/8/26 14:00
+     */
+    public boolean setEntryByZip(final String hKey, final String item, Object value, long time) {
+        long start = commandStats.start();
+        try {
+            String k = super.hashKey(hKey);
+            String field = super.BKDRHashCode(item);
+            byte[] rawValue = value == null ? ValueCodecs.nullValue() : encode(value);
+            if (time > 0) {
+                rawValue = ValueCodecs.withExpiry(rawValue, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(time));
+            }
+            commandStats.bytesOut(RedisOperation.SET_BY_ZIP, rawValue.length);
+            putHashValue(k, field, rawValue);
+            invalidate(k, field);
+        } catch (Exception e) {
+            commandStats.error(RedisOperation.SET_BY_ZIP);
+            log.error("Redis client call setEntryByZip() Error：", e);
+            return false;
+        } finally {
+            commandStats.stop(RedisOperation.SET_BY_ZIP, hKey, start);
+        }
+        return true;
+    }
+
+    // ===============================批量操作=================================
+
+    /**
+     * 功能描述: 创建压缩模式批量写入器，刷新阈值取自 demo.redis.zip-bulk 配置
+     *
+     * @return org.lmx.framework.redis.ZipBulkWriter
+     * @author LM.X
+     * @date 2020/7/22 9:50
+     */
+    public ZipBulkWriter zipBulkWriter() {
+        return zipBulkWriter(zipBulkMaxEntries, zipBulkMaxBytes);
+    }
+
+    /**
+     * 功能描述: 创建压缩模式批量写入器
+     *
+     * @param maxEntries 单次刷新的最大条目数
+     * @param maxBytes   单次刷新的最大缓冲字节数
+     * @return org.lmx.framework.redis.ZipBulkWriter
+     * @author LM.X
+     * @date 2020/7/22 9:52
+     */
+    public ZipBulkWriter zipBulkWriter(int maxEntries, long maxBytes) {
+        return new ZipBulkWriter(this, redisTemplate, maxEntries, maxBytes, pipelineBatchSize);
+    }
+
+    byte[] encodeValue(Object value) {
+        return encode(value);
+    }
+
+    RedisCommandStats commandStats() {
+        return commandStats;
+    }
+
+    /**
+     * 功能描述: 批量获取String值，按pipelineBatchSize分批通过pipeline发送GET
+     *
+     * @param keys  键集合
+     * @param clazz 值类型
+     * @return 与keys顺序一致的值列表，不存在的键对应null；异常时返回null
+     * @author LM.X
+     * @date 2020/7/21 10:05
+     */
+    public <T> List<T> mGet(Collection<String> keys, Class<T> clazz) {
+        long start = commandStats.start();
+        try {
+            List<String> ks = new ArrayList<>(keys.size());
+            for (String k : keys) {
+                ks.add(hashKey(k));
+            }
+            byte[][] raw = new byte[ks.size()][];
+            List<Integer> misses = new ArrayList<>(ks.size());
+            long[] stamps = new long[ks.size()];
+            for (int i = 0; i < raw.length; i++) {
+                if (nearCache != null) {
+                    raw[i] = nearCache.get(ks.get(i), null);
+                    if (raw[i] != null) {
+                        continue;
+                    }
+                    stamps[i] = nearCache.stamp(ks.get(i));
+                }
+                misses.add(i);
+            }
+            if (misses.isEmpty()) {
+                start = commandStats.nearHits(RedisOperation.M_GET, raw.length);
+            } else {
+                commandStats.nearHits(RedisOperation.M_GET, raw.length - misses.size());
+            }
+            List<Object> fetched = pipelined(misses, (connection, i) -> connection.get(rawString(ks.get(i))));
+            for (int m = 0; m < fetched.size(); m++) {
+                int i = misses.get(m);
+                raw[i] = countIn(RedisOperation.M_GET, (byte[]) fetched.get(m));
+                if (nearCache != null) {
+                    nearCache.put(ks.get(i), null, raw[i], stamps[i]);
+                }
+            }
+            List<T> values = new ArrayList<>(raw.length);
+            for (byte[] value : raw) {
+                values.add(decode(value, clazz));
+            }
+            return values;
+        } catch (Exception e) {
+            commandStats.error(RedisOperation.M_GET);
+            log.error("Redis client call mGet() Error:", e);
+            return null;
+        } finally {
+            commandStats.stop(RedisOperation.M_GET, null, start);
+        }
+    }
+
+    /**
+     * 功能描述: 批量写入String值，按pipelineBatchSize分批通过pipeline发送SET/SETEX
+     *
+     * @param values 键值对
+     * @param time   时间(秒) time小于等于0 将设置无限期
+     * @return true成功 false失败
+     * @author LM.X
+     * @date 2020/7/21 10:12
+     */
+    public boolean mSet(Map<String, Object> values, long time) {
+        long start = commandStats.start();
+        try {
+            List<Map.Entry<String, byte[]>> entries = new ArrayList<>(values.size());
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                byte[] rawValue = encode(entry.getValue());
+                commandStats.bytesOut(RedisOperation.M_SET, rawValue.length);
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(hashKey(entry.getKey()), rawValue));
+            }
+            pipelined(entries, (connection, entry) -> {
+                if (time > 0) {
+                    connection.setEx(rawString(entry.getKey()), time, entry.getValue());
+                } else {
+                    connection.set(rawString(entry.getKey()), entry.getValue());
+                }
+            });
+            List<String> entryKeys = new ArrayList<>(entries.size());
+            for (Map.Entry<String, byte[]> entry : entries) {
+                entryKeys.add(entry.getKey());
+            }
+            invalidate(entryKeys);
+            return true;
+        } catch (Exception e) {
+            commandStats.error(RedisOperation.M_SET);
+            log.error("Redis client call mSet() Error:", e);
+            return false;
+        } finally {
+            commandStats.stop(RedisOperation.M_SET, null, start);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 功能描述: 批量获取多张hash表中同一项的值
+     *
+     * @param keys  键集合
+     * @param item  项
+     * @param clazz 值类型
+     * @return 与keys顺序一致的值列表；异常时返回null
+     * @author LM.X
+     * @date 2020/7/21 10:20
+     */
+    public <T> List<T> hGetMulti(Collection<String> keys, String item, Class<T> clazz) {
+        List<String> buckets = new ArrayList<>(keys.size());
+        for (String k : keys) {
+            buckets.add(hashKey(k));
+        }
+        return pipelineHashGet(buckets, Collections.nCopies(buckets.size(), item), clazz, RedisOperation.H_GET_MULTI);
+    }
+
+    /**
+     * 功能描述: 批量获取一张hash表中多项的值
+     *
+     * @param key   键
+     * @param items 项集合
+     * @param clazz 值类型
+     * @return 与items顺序一致的值列表；异常时返回null
+     * @author LM.X
+     * @date 2020/7/21 10:22
+     */
+    public <T> List<T> hGetMulti(String key, Collection<String> items, Class<T> clazz) {
+        return pipelineHashGet(Collections.nCopies(items.size(), hashKey(key)), new ArrayList<>(items), clazz, RedisOperation.H_GET_MULTI);
+    }
+
+    /**
+     * 功能描述: 压缩方式批量Get，多个hKey下的同一项
+     * <pre>
+     *     各hKey先经hashKey()映射到bucket，落在同一bucket的项合并为一条HMGET。
+     * </pre>
+     *
+     * @param hKeys 键集合
+     * @param item  项
+     * @param clazz 值类型
+     * @return 与hKeys顺序一致的值列表；异常时返回null
+     * @author LM.X
+     * @date 2020/7/21 10:30
+     */
+    public <T> List<T> mGetByZip(Collection<String> hKeys, final String item, Class<T> clazz) {
+        String field = super.BKDRHashCode(item);
+        List<String> buckets = new ArrayList<>(hKeys.size());
+        for (String hKey : hKeys) {
+            buckets.add(super.hashKey(hKey));
+        }
+        return pipelineHashGet(buckets, Collections.nCopies(buckets.size(), field), clazz, RedisOperation.M_GET_BY_ZIP);
+    }
+
+    /**
+     * 功能描述: 压缩方式批量Get，同一hKey下的多项
+     *
+     * @param hKey  键
+     * @param items 项集合
+     * @param clazz 值类型
+     * @return 与items顺序一致的值列表；异常时返回null
+     * @author LM.X
+     * @date 2020/7/21 10:32
+     */
+    public <T> List<T> mGetByZip(final String hKey, Collection<String> items, Class<T> clazz) {
+        List<String> fields = new ArrayList<>(items.size());
+        for (String item : items) {
+            fields.add(super.BKDRHashCode(item));
+        }
+        return pipelineHashGet(Collections.nCopies(fields.size(), super.hashKey(hKey)), fields, clazz, RedisOperation.M_GET_BY_ZIP);
+    }
+
+    /**
+     * 先查近端缓存，未命中的按bucket分组后每组一条HMGET，结果按输入顺序还原并回填近端缓存
+     */
+    private <T> List<T> pipelineHashGet(List<String> buckets, List<String> fields, Class<T> clazz, RedisOperation operation) {
+        long start = commandStats.start();
+        try {
+            byte[][] values = new byte[buckets.size()][];
+            long[] stamps = new long[buckets.size()];
+            int misses = 0;
+            Map<String, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.size(); i++) {
+                if (nearCache != null) {
+                    values[i] = nearCache.get(buckets.get(i), fields.get(i));
+                    if (values[i] != null) {
+                        continue;
+                    }
+                    stamps[i] = nearCache.stamp(buckets.get(i));
+                }
+                groups.computeIfAbsent(buckets.get(i), b -> new ArrayList<>()).add(i);
+                misses++;
+            }
+            if (misses == 0) {
+                start = commandStats.nearHits(operation, values.length);
+            } else {
+                commandStats.nearHits(operation, values.length - misses);
+            }
+            List<Map.Entry<String, List<Integer>>> entries = new ArrayList<>(groups.entrySet());
+            List<Object> raw = pipelined(entries, (connection, entry) -> {
+                List<Integer> indexes = entry.getValue();
+                byte[][] rawFields = new byte[indexes.size()][];
+                for (int i = 0; i < rawFields.length; i++) {
+                    rawFields[i] = rawString(fields.get(indexes.get(i)));
+                }
+                connection.hMGet(rawString(entry.getKey()), rawFields);
+            });
+
+            for (int g = 0; g < entries.size(); g++) {
+                List<Integer> indexes = entries.get(g).getValue();
+                List<?> groupValues = (List<?>) raw.get(g);
+                for (int i = 0; i < indexes.size(); i++) {
+                    int index = indexes.get(i);
+                    values[index] = countIn(operation, (byte[]) groupValues.get(i));
+                    if (nearCache != null) {
+                        nearCache.put(buckets.get(index), fields.get(index), values[index], stamps[index]);
+                    }
+                }
+            }
+            List<T> result = new ArrayList<>(values.length);
+            for (byte[] value : values) {
+                result.add(decode(value, clazz));
+            }
+            return result;
+        } catch (Exception e) {
+            commandStats.error(operation);
+            log.error("Redis client call {}() Error:", operation.getMethod(), e);
+            return null;
+        } finally {
+            commandStats.stop(operation, buckets.isEmpty() ? null : buckets.get(0), start);
+        }
+    }
+
+    /**
+     * 按pipelineBatchSize分批执行pipeline，返回与entries顺序一致的原始命令结果（值为byte[]）
+     */
+    private <E> List<Object> pipelined(List<E> entries, BiConsumer<RedisConnection, E> command) {
+        List<Object> results = new ArrayList<>(entries.size());
+        for (int from = 0; from < entries.size(); from += pipelineBatchSize) {
+            final List<E> batch = entries.subList(from, Math.min(from + pipelineBatchSize, entries.size()));
+            results.addAll(redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (E entry : batch) {
+                    command.accept(connection, entry);
+                }
+                return null;
+            }, RedisSerializer.byteArray()));
+        }
+        return results;
+    }
+
+    private long valueBytes(Map<byte[], byte[]> hashes) {
+        if (!commandStats.isEnabled()) {
+            return 0;
+        }
+        long bytes = 0;
+        for (byte[] value : hashes.values()) {
+            bytes += value.length;
+        }
+        return bytes;
+    }
+
+    private byte[] rawString(String value) {
+        return redisTemplate.getStringSerializer().serialize(value);
+    }
+}
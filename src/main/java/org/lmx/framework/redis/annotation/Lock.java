@@ -5,6 +5,12 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * 功能描述: 分布式锁注解
+ * <pre>
+ *  返回 CompletableFuture/CompletionStage 或 Mono 的方法在 locker 支持异步加锁时异步加锁，结果完成时才释放锁。
+ *  CompletionStage 方法：加锁立即完成时方法在调用线程上执行；需要等待时切换到 lockAspectExecutor 执行器的线程上执行，
+ *  调用线程上的事务、安全上下文与MDC等线程绑定的状态不会传递过去，方法内需要时自行传递。
+ *  Mono 方法在加锁完成的线程上订阅执行，需要时由调用方通过 publishOn/subscribeOn 指定调度器。
+ * </pre>
  *
  * @author LM.X
  * @date 2020/7/10 13:50
@@ -14,9 +20,15 @@ import java.util.concurrent.TimeUnit;
 @Documented
 public @interface Lock {
     /**
-     * 锁的key
+     * 锁的key，支持SpEL表达式
      */
-    String key();
+    String key() default "";
+
+    /**
+     * 同时加锁的多个key，支持SpEL表达式；与 {@code key} 一起排序去重后一次性全部加锁，超时时全部释放。
+     * 不支持公平锁与异步方法
+     */
+    String[] keys() default {};
 
     /**
      * 获取锁的最大尝试时间(单位 {@code unit})
@@ -39,4 +51,10 @@ public @interface Lock {
      * 是否公平锁
      */
     boolean isFair() default false;
+
+    /**
+     * 锁模式，READ/WRITE 使用读写锁，同一key的读锁之间不互斥。
+     * 读写锁不支持公平锁、多key与异步方法；同一个key不要混用互斥锁与读写锁
+     */
+    LockMode mode() default LockMode.EXCLUSIVE;
 }
@@ -0,0 +1,24 @@
+package org.lmx.framework.redis.annotation;
+
+/**
+ * 功能描述: 锁模式
+ *
+ * @author LM.X
+ * @date 2020/8/6 9:30
+ */
+public enum LockMode {
+    /**
+     * 互斥锁
+     */
+    EXCLUSIVE,
+
+    /**
+     * 读锁，多个读锁可以同时持有，与写锁互斥
+     */
+    READ,
+
+    /**
+     * 写锁，与读锁、写锁都互斥
+     */
+    WRITE
+}
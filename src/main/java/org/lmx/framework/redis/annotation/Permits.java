@@ -0,0 +1,47 @@
+package org.lmx.framework.redis.annotation;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述: 分布式信号量注解，限制方法在集群内的并发调用数
+ *
+ * @author LM.X
+ * @date 2020/8/7 11:00
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Permits {
+    /**
+     * 信号量的key，支持SpEL表达式
+     */
+    String key();
+
+    /**
+     * 许可总数，即同一key在集群内允许的最大并发数
+     */
+    int permits();
+
+    /**
+     * 每次调用占用的许可数
+     */
+    int count() default 1;
+
+    /**
+     * 获取许可的最大尝试时间(单位 {@code unit})
+     * 该值大于0则使用 tryAcquire 方法获取，否则一直等待
+     */
+    long waitTime() default 0;
+
+    /**
+     * 许可的租期(单位 {@code unit})，超过这个时间后许可自动归还，避免调用方宕机导致许可泄漏；
+     * 如果leaseTime为-1，则许可不会自动归还
+     */
+    long leaseTime() default 60;
+
+    /**
+     * 参数的时间单位
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
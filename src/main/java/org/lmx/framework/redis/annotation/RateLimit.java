@@ -0,0 +1,52 @@
+package org.lmx.framework.redis.annotation;
+
+import org.lmx.framework.redis.limiter.RateLimitAlgorithm;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述: 集群限流注解，超过限制时抛出 {@link org.lmx.framework.redis.exception.RateLimitException}
+ *
+ * @author LM.X
+ * @date 2020/8/10 11:00
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RateLimit {
+    /**
+     * 限流的key，支持SpEL表达式，如 "'tenant:' + #tenantId"
+     */
+    String key();
+
+    /**
+     * 每个 {@code interval} 允许通过的请求数
+     */
+    long limit();
+
+    /**
+     * 时间窗口(单位 {@code unit})
+     */
+    long interval() default 1;
+
+    /**
+     * 参数的时间单位
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * 限流算法
+     */
+    RateLimitAlgorithm algorithm() default RateLimitAlgorithm.TOKEN_BUCKET;
+
+    /**
+     * 每次调用消耗的令牌数
+     */
+    int permits() default 1;
+
+    /**
+     * 本地预取的令牌数，0表示每次调用都访问Redis
+     */
+    int prefetch() default 0;
+}
@@ -0,0 +1,30 @@
+package org.lmx.framework.redis.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 功能描述: 缓存删除注解，默认在方法正常返回后删除
+ *
+ * @author LM.X
+ * @date 2020/8/24 9:40
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RedisCacheEvict {
+    /**
+     * 删除的key，支持SpEL表达式；表达式的值为集合或数组时删除其中的每个元素，如 "#ids.![ 'user:' + #this ]"。
+     * 全部key合并为一条DEL（zip为每个bucket一条HDEL并按pipeline发送）
+     */
+    String[] keys();
+
+    /**
+     * 是否为压缩模式写入的缓存，与 {@link RedisCacheable#zip()} 一致
+     */
+    boolean zip() default false;
+
+    /**
+     * 是否在方法执行前删除，方法抛出异常时也会删除
+     */
+    boolean beforeInvocation() default false;
+}
@@ -0,0 +1,50 @@
+package org.lmx.framework.redis.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 功能描述: 缓存注解，先读Redis，未命中时执行方法并写回
+ * <pre>
+ *  返回值按方法声明的返回类型解码；json编解码器不保留泛型元素类型，返回泛型集合时请使用binary编解码器。
+ *  不支持返回 CompletionStage / Mono 的异步方法。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/24 9:30
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RedisCacheable {
+    /**
+     * 缓存的key，支持SpEL表达式，如 "'user:' + #id"
+     */
+    String key();
+
+    /**
+     * 过期时间(秒)，小于等于0时不过期；zip为true时写在值里，读取时检查
+     */
+    long ttl() default 300;
+
+    /**
+     * 是否存入压缩模式的bucket（setEntryByZip / getEntryByZip），bucket内的条目没有单独的过期时间，过期时间写在值里，
+     * 过期条目在重新写入或通过 {@link RedisCacheEvict} 删除之前仍占用bucket空间
+     */
+    boolean zip() default false;
+
+    /**
+     * 是否缓存方法返回的null（负缓存），防止不存在的数据反复穿透到数据源
+     */
+    boolean cacheNull() default false;
+
+    /**
+     * 负缓存的过期时间(秒)
+     */
+    long nullTtl() default 60;
+
+    /**
+     * 提前刷新比例 0~1，命中时剩余时间小于 ttl * refreshAhead 则由一个调用方同步执行方法刷新缓存并返回新值，
+     * 同时命中的其它调用方仍返回旧值；0为不提前刷新
+     */
+    double refreshAhead() default 0;
+}
@@ -0,0 +1,165 @@
+package org.lmx.framework.redis.aspect;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.util.ClassUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 功能描述: 切面注解中key表达式的解析与求值
+ * <pre>
+ *  注解中含 # 的key按SpEL解析，首次求值后立即编译为字节码（{@link SpelCompilerMode#IMMEDIATE}）；
+ *  解析结果 {@link KeyTemplate} 由各切面按方法缓存，每次调用只在 {@link LockEvaluationContext} 上求值。
+ *  表达式求值为null时抛出 {@link IllegalArgumentException}，异常信息包含注解、表达式与方法，不区分是哪个切面调用。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/7 9:30
+ */
+final class KeyExpressionEvaluator {
+
+    /**
+     * 用于SpEL表达式解析，表达式在首次求值后立即编译为字节码.
+     */
+    private final SpelExpressionParser spelExpressionParser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, ClassUtils.getDefaultClassLoader()));
+    /**
+     * 用于获取方法参数定义名字.
+     */
+    private final DefaultParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 一个方法上解析后的一组key
+     */
+    static final class KeyTemplate {
+        /**
+         * 注解名，用于异常信息
+         */
+        private final String annotation;
+        private final String[] keys;
+        /**
+         * 与 keys 一一对应，key不含#时为null，直接使用原值
+         */
+        private final Expression[] expressions;
+        private final Map<String, Integer> paramIndex;
+
+        private KeyTemplate(String annotation, String[] keys, Expression[] expressions, Map<String, Integer> paramIndex) {
+            this.annotation = annotation;
+            this.keys = keys;
+            this.expressions = expressions;
+            this.paramIndex = paramIndex;
+        }
+
+        int size() {
+            return keys.length;
+        }
+    }
+
+    KeyTemplate parse(Class<? extends Annotation> annotation, Method method, String... keys) {
+        Expression[] expressions = new Expression[keys.length];
+        Map<String, Integer> paramIndex = null;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].contains("#")) {
+                expressions[i] = spelExpressionParser.parseExpression(keys[i]);
+                if (paramIndex == null) {
+                    //获取方法形参名数组
+                    paramIndex = LockEvaluationContext.paramIndex(nameDiscoverer.getParameterNames(method), method.getParameterCount());
+                }
+            }
+        }
+        return new KeyTemplate("@" + annotation.getSimpleName(), keys, expressions, paramIndex);
+    }
+
+    /**
+     * 求第一个key的值
+     */
+    static String resolve(KeyTemplate template, Method method, ProceedingJoinPoint point) {
+        if (template.expressions[0] == null) {
+            return template.keys[0];
+        }
+        return evaluate(template, 0, method, newContext(template, method, point));
+    }
+
+    /**
+     * 求全部key的值
+     */
+    static List<String> resolveAll(KeyTemplate template, Method method, ProceedingJoinPoint point) {
+        List<String> values = new ArrayList<>(template.keys.length);
+        LockEvaluationContext context = null;
+        for (int i = 0; i < template.keys.length; i++) {
+            if (template.expressions[i] == null) {
+                values.add(template.keys[i]);
+            } else {
+                if (context == null) {
+                    context = newContext(template, method, point);
+                }
+                values.add(evaluate(template, i, method, context));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 求全部key的值，值为集合或数组时展开为其中的每个元素
+     */
+    static List<String> resolveExpanded(KeyTemplate template, Method method, ProceedingJoinPoint point) {
+        List<String> values = new ArrayList<>(template.keys.length);
+        LockEvaluationContext context = null;
+        for (int i = 0; i < template.keys.length; i++) {
+            if (template.expressions[i] == null) {
+                values.add(template.keys[i]);
+                continue;
+            }
+            if (context == null) {
+                context = newContext(template, method, point);
+            }
+            Object value = template.expressions[i].getValue(context);
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    addKey(values, element, template, i, method);
+                }
+            } else if (value instanceof Object[]) {
+                for (Object element : (Object[]) value) {
+                    addKey(values, element, template, i, method);
+                }
+            } else {
+                addKey(values, value, template, i, method);
+            }
+        }
+        return values;
+    }
+
+    private static void addKey(List<String> values, Object value, KeyTemplate template, int index, Method method) {
+        if (value == null) {
+            throw nullKey(template, index, method);
+        }
+        values.add(value.toString());
+    }
+
+    private static LockEvaluationContext newContext(KeyTemplate template, Method method, ProceedingJoinPoint point) {
+        return new LockEvaluationContext(
+                new LockEvaluationContext.LockExpressionRoot(method, point.getArgs(), point.getTarget()), template.paramIndex);
+    }
+
+    private static String evaluate(KeyTemplate template, int index, Method method, LockEvaluationContext context) {
+        Object value = template.expressions[index].getValue(context);
+        if (value == null) {
+            throw nullKey(template, index, method);
+        }
+        return value.toString();
+    }
+
+    private static IllegalArgumentException nullKey(KeyTemplate template, int index, Method method) {
+        return new IllegalArgumentException(template.annotation + " key表达式的值为null：" + template.keys[index] + "，方法：" + method);
+    }
+}
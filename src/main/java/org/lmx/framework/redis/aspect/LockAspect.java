@@ -6,18 +6,45 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.lmx.framework.redis.annotation.Lock;
+import org.lmx.framework.redis.annotation.LockMode;
+import org.lmx.framework.redis.config.ExecutorConfiguration;
 import org.lmx.framework.redis.exception.LockException;
+import org.lmx.framework.redis.lock.AsyncDistributedLock;
 import org.lmx.framework.redis.lock.DistributedLock;
+import org.lmx.framework.redis.metrics.LockMetrics;
+import org.lmx.framework.redis.metrics.LockStats;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.DefaultParameterNameDiscoverer;
-import org.springframework.expression.EvaluationContext;
-import org.springframework.expression.Expression;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * 功能描述: Redis锁AOP 切面
+ * <pre>
+ *  返回 CompletableFuture/CompletionStage 或 Mono 的方法，在 locker 实现了 {@link AsyncDistributedLock} 时异步加锁，
+ *  并在异步结果完成（成功、异常或取消订阅）时才释放锁，而不是在方法返回时释放。
+ *  CompletionStage 方法在加锁立即完成时直接在调用线程上执行；需要等待时在 {@link ExecutorConfiguration#LOCK_ASPECT_EXECUTOR}
+ *  执行器上执行，调用线程上的事务、安全上下文与MDC不会带过去。
+ *
+ *  每个 方法+目标类 的注解、返回值类型以及编译后的key表达式（{@link KeyExpressionEvaluator}）只解析一次并缓存，
+ *  之后的调用只需对缓存的表达式求值。
+ *
+ *  容器中有 {@link LockMetrics} 时，按注解上的key模板记录获取耗时、持有时间、超时、解锁失败与当前等待数。
+ * </pre>
  *
  * @author LM.X
  * @date 2020/7/10 13:51
@@ -28,42 +55,115 @@ public class LockAspect {
     @Autowired(required = false)
     private DistributedLock locker;
 
+    @Autowired(required = false)
+    private LockMetrics lockMetrics;
+
+    /**
+     * 用于key表达式解析.
+     */
+    private final KeyExpressionEvaluator keyEvaluator = new KeyExpressionEvaluator();
+
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono", LockAspect.class.getClassLoader());
+
+    /**
+     * 异步加锁需要等待时执行业务方法的专用执行器，避免业务代码运行在Redis客户端的IO线程或 commonPool 上；
+     * 为null（脱离容器使用）时在完成加锁的线程上执行
+     */
+    private Executor asyncExecutor;
+
+    /**
+     * 方法+目标类 -> 锁元数据
+     */
+    private final Map<AnnotatedElementKey, LockMetadata> metadataCache = new ConcurrentHashMap<>(256);
+
+    private static final int RETURN_SYNC = 0;
+    private static final int RETURN_COMPLETION_STAGE = 1;
+    private static final int RETURN_MONO = 2;
+
     /**
-     * 用于SpEL表达式解析.
+     * 每个被拦截方法只解析一次的元数据
      */
-    private SpelExpressionParser spelExpressionParser = new SpelExpressionParser();
+    private static final class LockMetadata {
+        private final Lock lock;
+        private final KeyExpressionEvaluator.KeyTemplate keys;
+        private final int returnKind;
+        /**
+         * 是否使用了 keys 多key加锁
+         */
+        private final boolean multi;
+        /**
+         * 指标中的锁名，即未求值的key模板
+         */
+        private final String name;
+
+        private LockMetadata(Lock lock, KeyExpressionEvaluator.KeyTemplate keys, int returnKind, boolean multi, String name) {
+            this.lock = lock;
+            this.keys = keys;
+            this.returnKind = returnKind;
+            this.multi = multi;
+            this.name = name;
+        }
+    }
+
     /**
-     * 用于获取方法参数定义名字.
+     * 异步加锁得到的锁对象及拿到锁的时间
      */
-    private DefaultParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+    private static final class AcquiredLock {
+        private final Object lock;
+        private final long acquiredAt;
+
+        private AcquiredLock(Object lock, long acquiredAt) {
+            this.lock = lock;
+            this.acquiredAt = acquiredAt;
+        }
+    }
+
+    @Autowired(required = false)
+    public void setAsyncExecutor(@Qualifier(ExecutorConfiguration.LOCK_ASPECT_EXECUTOR) Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
 
     @Around("@within(lock) || @annotation(lock)")
     public Object aroundLock(ProceedingJoinPoint point, Lock lock) throws Throwable {
-        Object lockObj = null;
-        if (lock == null) {
-            // 获取类上的注解
-            lock = point.getTarget().getClass().getDeclaredAnnotation(Lock.class);
-        }
-        String lockKey = lock.key();
         if (locker == null) {
             throw new LockException("DistributedLock is null");
         }
-        if (StringUtils.isEmpty(lockKey)) {
-            throw new LockException("lockKey is null");
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        Class<?> targetClass = point.getTarget().getClass();
+        LockMetadata metadata = getMetadata(method, targetClass, lock);
+        Lock annotation = metadata.lock;
+        LockStats stats = lockMetrics == null ? null : lockMetrics.stats(metadata.name);
+        if (metadata.multi) {
+            return aroundMultiLock(point, annotation, KeyExpressionEvaluator.resolveAll(metadata.keys, method, point), stats);
         }
+        String lockKey = KeyExpressionEvaluator.resolve(metadata.keys, method, point);
 
-        if (lockKey.contains("#")) {
-            MethodSignature methodSignature = (MethodSignature) point.getSignature();
-            //获取方法参数值
-            Object[] args = point.getArgs();
-            lockKey = getValBySpEL(lockKey, methodSignature, args);
+        if (metadata.returnKind != RETURN_SYNC && locker instanceof AsyncDistributedLock) {
+            if (metadata.returnKind == RETURN_COMPLETION_STAGE) {
+                return aroundCompletionStage(point, annotation, lockKey, (AsyncDistributedLock) locker, stats);
+            }
+            return ReactiveLockSupport.aroundMono(point, annotation, lockKey, (AsyncDistributedLock) locker, stats);
         }
+        return proceedLocked(point, stats, () -> acquire(annotation, lockKey));
+    }
+
+    /**
+     * 加锁、执行、解锁，stats不为null时记录指标
+     */
+    private Object proceedLocked(ProceedingJoinPoint point, LockStats stats, Supplier<Object> acquirer) throws Throwable {
+        Object lockObj = null;
+        long acquiredAt = 0;
         try {
             //加锁
-            if (lock.waitTime() > 0) {
-                lockObj = locker.tryLock(lockKey, lock.waitTime(), lock.leaseTime(), lock.unit(), lock.isFair());
+            if (stats == null) {
+                lockObj = acquirer.get();
             } else {
-                lockObj = locker.lock(lockKey, lock.leaseTime(), lock.unit(), lock.isFair());
+                long start = stats.beginAcquire();
+                try {
+                    lockObj = acquirer.get();
+                } finally {
+                    acquiredAt = stats.endAcquire(start, lockObj != null);
+                }
             }
 
             if (lockObj != null) {
@@ -72,26 +172,163 @@ public class LockAspect {
                 throw new LockException("锁等待超时");
             }
         } finally {
-            locker.unlock(lockObj);
+            boolean unlocked = locker.unlock(lockObj);
+            if (stats != null && lockObj != null) {
+                stats.released(acquiredAt, unlocked);
+            }
+        }
+    }
+
+    private Object acquire(Lock lock, String lockKey) {
+        switch (lock.mode()) {
+            case READ:
+                if (lock.waitTime() > 0) {
+                    return locker.tryReadLock(lockKey, lock.waitTime(), lock.leaseTime(), lock.unit());
+                }
+                return locker.readLock(lockKey, lock.leaseTime(), lock.unit());
+            case WRITE:
+                if (lock.waitTime() > 0) {
+                    return locker.tryWriteLock(lockKey, lock.waitTime(), lock.leaseTime(), lock.unit());
+                }
+                return locker.writeLock(lockKey, lock.leaseTime(), lock.unit());
+            default:
+                if (lock.waitTime() > 0) {
+                    return locker.tryLock(lockKey, lock.waitTime(), lock.leaseTime(), lock.unit(), lock.isFair());
+                }
+                return locker.lock(lockKey, lock.leaseTime(), lock.unit(), lock.isFair());
+        }
+    }
+
+    /**
+     * 多key：排序后一次性全部加锁
+     */
+    private Object aroundMultiLock(ProceedingJoinPoint point, Lock lock, List<String> lockKeys, LockStats stats) throws Throwable {
+        return proceedLocked(point, stats, () -> lock.waitTime() > 0
+                ? locker.tryLockAll(lockKeys, lock.waitTime(), lock.leaseTime(), lock.unit())
+                : locker.lockAll(lockKeys, lock.leaseTime(), lock.unit()));
+    }
+
+    private static CompletableFuture<Object> acquireAsync(AsyncDistributedLock asyncLocker, Lock lock, String lockKey) {
+        if (lock.waitTime() > 0) {
+            return asyncLocker.tryLockAsync(lockKey, lock.waitTime(), lock.leaseTime(), lock.unit(), lock.isFair());
+        }
+        return asyncLocker.lockAsync(lockKey, lock.leaseTime(), lock.unit(), lock.isFair());
+    }
+
+    /**
+     * 异步加锁并记录获取耗时，超时时结果为null
+     */
+    private static CompletableFuture<AcquiredLock> acquireTimed(AsyncDistributedLock asyncLocker, Lock lock, String lockKey, LockStats stats) {
+        long start = stats == null ? 0 : stats.beginAcquire();
+        return acquireAsync(asyncLocker, lock, lockKey).handle((lockObj, e) -> {
+            long acquiredAt = stats == null ? 0 : stats.endAcquire(start, lockObj != null);
+            if (e != null) {
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            return lockObj == null ? null : new AcquiredLock(lockObj, acquiredAt);
+        });
+    }
+
+    private static CompletableFuture<Boolean> releaseAsync(AsyncDistributedLock asyncLocker, AcquiredLock acquired, LockStats stats) {
+        CompletableFuture<Boolean> future = asyncLocker.unlockAsync(acquired.lock);
+        if (stats == null) {
+            return future;
+        }
+        return future.whenComplete((unlocked, e) -> stats.released(acquired.acquiredAt, Boolean.TRUE.equals(unlocked)));
+    }
+
+    /**
+     * 异步方法：加锁完成后执行，返回的CompletionStage完成时释放锁。
+     * 加锁立即完成时在调用线程上执行，否则切换到 asyncExecutor
+     */
+    @SuppressWarnings("unchecked")
+    private Object aroundCompletionStage(ProceedingJoinPoint point, Lock lock, String lockKey, AsyncDistributedLock asyncLocker, LockStats stats) {
+        CompletableFuture<AcquiredLock> acquiring = acquireTimed(asyncLocker, lock, lockKey, stats);
+        Function<AcquiredLock, CompletionStage<Object>> proceed = acquired -> {
+            if (acquired == null) {
+                throw new LockException("锁等待超时");
+            }
+            CompletionStage<?> result;
+            try {
+                result = (CompletionStage<?>) point.proceed();
+            } catch (Throwable e) {
+                releaseAsync(asyncLocker, acquired, stats);
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            if (result == null) {
+                releaseAsync(asyncLocker, acquired, stats);
+                return CompletableFuture.completedFuture(null);
+            }
+            return ((CompletionStage<Object>) result).whenComplete((r, e) -> releaseAsync(asyncLocker, acquired, stats));
+        };
+        Executor executor = asyncExecutor;
+        if (acquiring.isDone() || executor == null) {
+            return acquiring.thenCompose(proceed);
         }
+        return acquiring.thenComposeAsync(proceed, executor);
     }
 
     /**
-     * 解析spEL表达式
+     * Mono 支持，独立成类避免未引入reactor时加载失败
      */
-    private String getValBySpEL(String spEL, MethodSignature methodSignature, Object[] args) {
-        //获取方法形参名数组
-        String[] paramNames = nameDiscoverer.getParameterNames(methodSignature.getMethod());
-        if (paramNames != null && paramNames.length > 0) {
-            Expression expression = spelExpressionParser.parseExpression(spEL);
-            // spring的表达式上下文对象
-            EvaluationContext context = new StandardEvaluationContext();
-            // 给上下文赋值
-            for (int i = 0; i < args.length; i++) {
-                context.setVariable(paramNames[i], args[i]);
+    private static final class ReactiveLockSupport {
+        private static Object aroundMono(ProceedingJoinPoint point, Lock lock, String lockKey, AsyncDistributedLock asyncLocker, LockStats stats) {
+            return Mono.usingWhen(
+                    Mono.defer(() -> Mono.fromFuture(acquireTimed(asyncLocker, lock, lockKey, stats)))
+                            .switchIfEmpty(Mono.defer(() -> Mono.error(new LockException("锁等待超时")))),
+                    acquired -> Mono.defer(() -> {
+                        try {
+                            Mono<?> result = (Mono<?>) point.proceed();
+                            return result == null ? Mono.empty() : result;
+                        } catch (Throwable e) {
+                            return Mono.error(e);
+                        }
+                    }),
+                    acquired -> Mono.fromFuture(releaseAsync(asyncLocker, acquired, stats)));
+        }
+    }
+
+    private LockMetadata getMetadata(Method method, Class<?> targetClass, Lock lock) {
+        AnnotatedElementKey cacheKey = new AnnotatedElementKey(method, targetClass);
+        LockMetadata metadata = metadataCache.get(cacheKey);
+        if (metadata == null) {
+            metadata = metadataCache.computeIfAbsent(cacheKey, k -> buildMetadata(method, targetClass, lock));
+        }
+        return metadata;
+    }
+
+    private LockMetadata buildMetadata(Method method, Class<?> targetClass, Lock lock) {
+        if (lock == null) {
+            // 获取类上的注解
+            lock = targetClass.getDeclaredAnnotation(Lock.class);
+        }
+        boolean multi = lock.keys().length > 0;
+        List<String> keyList = new ArrayList<>(lock.keys().length + 1);
+        if (!StringUtils.isEmpty(lock.key())) {
+            keyList.add(lock.key());
+        }
+        for (String key : lock.keys()) {
+            if (!StringUtils.isEmpty(key)) {
+                keyList.add(key);
             }
-            return expression.getValue(context).toString();
         }
-        return null;
+        if (keyList.isEmpty()) {
+            throw new LockException("lockKey is null");
+        }
+        KeyExpressionEvaluator.KeyTemplate keys = keyEvaluator.parse(Lock.class, method, keyList.toArray(new String[0]));
+        Class<?> returnType = method.getReturnType();
+        int returnKind = RETURN_SYNC;
+        if (CompletionStage.class.isAssignableFrom(returnType)) {
+            returnKind = RETURN_COMPLETION_STAGE;
+        } else if (REACTOR_PRESENT && Mono.class.isAssignableFrom(returnType)) {
+            returnKind = RETURN_MONO;
+        }
+        if (multi && returnKind != RETURN_SYNC) {
+            throw new LockException("@Lock keys 不支持异步方法：" + method);
+        }
+        if (lock.mode() != LockMode.EXCLUSIVE && (multi || returnKind != RETURN_SYNC)) {
+            throw new LockException("@Lock 读写锁不支持多key与异步方法：" + method);
+        }
+        return new LockMetadata(lock, keys, returnKind, multi, String.join(",", keyList));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,170 @@
+package org.lmx.framework.redis.aspect;
+
+import org.springframework.expression.*;
+import org.springframework.expression.spel.support.*;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 功能描述: 锁key表达式的轻量求值上下文
+ * <pre>
+ *  取代每次调用都新建的 StandardEvaluationContext：
+ *
+ *      1、解析器、类型转换器等无状态组件全部共享；
+ *      2、#参数名 直接按缓存的参数下标从实参数组读取，不再逐个 setVariable；
+ *         也支持 #p0 / #a0 按位置引用，未保留参数名编译时同样可用；
+ *      3、根对象为 {@link LockExpressionRoot}，可通过 #root.method / #root.args / #root.target 访问。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/4 9:30
+ */
+final class LockEvaluationContext implements EvaluationContext {
+
+    private static final List<PropertyAccessor> PROPERTY_ACCESSORS =
+            Collections.singletonList(new ReflectivePropertyAccessor());
+
+    private static final List<MethodResolver> METHOD_RESOLVERS =
+            Collections.singletonList(new ReflectiveMethodResolver());
+
+    private static final List<ConstructorResolver> CONSTRUCTOR_RESOLVERS =
+            Collections.singletonList(new ReflectiveConstructorResolver());
+
+    private static final TypeLocator TYPE_LOCATOR = new StandardTypeLocator();
+
+    private static final TypeConverter TYPE_CONVERTER = new StandardTypeConverter();
+
+    private static final TypeComparator TYPE_COMPARATOR = new StandardTypeComparator();
+
+    private static final OperatorOverloader OPERATOR_OVERLOADER = new StandardOperatorOverloader();
+
+    /**
+     * 表达式根对象
+     */
+    static final class LockExpressionRoot {
+        private final Method method;
+        private final Object[] args;
+        private final Object target;
+
+        LockExpressionRoot(Method method, Object[] args, Object target) {
+            this.method = method;
+            this.args = args;
+            this.target = target;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public Object[] getArgs() {
+            return args;
+        }
+
+        public Object getTarget() {
+            return target;
+        }
+    }
+
+    private final TypedValue root;
+
+    private final Object[] args;
+
+    private final Map<String, Integer> paramIndex;
+
+    /**
+     * 表达式中赋值产生的变量，极少使用，按需创建
+     */
+    private Map<String, Object> variables;
+
+    LockEvaluationContext(LockExpressionRoot root, Map<String, Integer> paramIndex) {
+        this.root = new TypedValue(root);
+        this.args = root.args;
+        this.paramIndex = paramIndex;
+    }
+
+    @Override
+    public TypedValue getRootObject() {
+        return root;
+    }
+
+    @Override
+    public List<PropertyAccessor> getPropertyAccessors() {
+        return PROPERTY_ACCESSORS;
+    }
+
+    @Override
+    public List<ConstructorResolver> getConstructorResolvers() {
+        return CONSTRUCTOR_RESOLVERS;
+    }
+
+    @Override
+    public List<MethodResolver> getMethodResolvers() {
+        return METHOD_RESOLVERS;
+    }
+
+    @Override
+    public BeanResolver getBeanResolver() {
+        return null;
+    }
+
+    @Override
+    public TypeLocator getTypeLocator() {
+        return TYPE_LOCATOR;
+    }
+
+    @Override
+    public TypeConverter getTypeConverter() {
+        return TYPE_CONVERTER;
+    }
+
+    @Override
+    public TypeComparator getTypeComparator() {
+        return TYPE_COMPARATOR;
+    }
+
+    @Override
+    public OperatorOverloader getOperatorOverloader() {
+        return OPERATOR_OVERLOADER;
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        if (variables == null) {
+            variables = new HashMap<>(4);
+        }
+        variables.put(name, value);
+    }
+
+    @Override
+    public Object lookupVariable(String name) {
+        if (variables != null && variables.containsKey(name)) {
+            return variables.get(name);
+        }
+        Integer index = paramIndex.get(name);
+        if (index != null && index < args.length) {
+            return args[index];
+        }
+        return null;
+    }
+
+    /**
+     * 参数名 -> 参数下标，包含 p0/a0 形式的位置别名
+     */
+    static Map<String, Integer> paramIndex(String[] paramNames, int paramCount) {
+        Map<String, Integer> index = new HashMap<>(paramCount * 4);
+        for (int i = 0; i < paramCount; i++) {
+            index.put("p" + i, i);
+            index.put("a" + i, i);
+        }
+        if (paramNames != null) {
+            for (int i = 0; i < paramNames.length; i++) {
+                index.put(paramNames[i], i);
+            }
+        }
+        return index;
+    }
+}
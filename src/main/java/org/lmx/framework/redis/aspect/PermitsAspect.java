@@ -0,0 +1,108 @@
+package org.lmx.framework.redis.aspect;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.lmx.framework.redis.annotation.Permits;
+import org.lmx.framework.redis.exception.LockException;
+import org.lmx.framework.redis.lock.DistributedSemaphore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能描述: 分布式信号量AOP 切面
+ * <pre>
+ *  方法执行前获取许可，执行结束（含异常）后归还；key表达式与 {@link LockAspect} 一样按方法解析并缓存。
+ *  许可在方法返回时归还，因此不支持返回 CompletableFuture/Mono 的异步方法。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/7 11:10
+ */
+@Slf4j
+@Aspect
+public class PermitsAspect {
+    @Autowired(required = false)
+    private DistributedSemaphore semaphore;
+
+    /**
+     * 用于key表达式解析.
+     */
+    private final KeyExpressionEvaluator keyEvaluator = new KeyExpressionEvaluator();
+
+    /**
+     * 方法+目标类 -> 元数据
+     */
+    private final Map<AnnotatedElementKey, PermitsMetadata> metadataCache = new ConcurrentHashMap<>(256);
+
+    private static final class PermitsMetadata {
+        private final Permits permits;
+        private final KeyExpressionEvaluator.KeyTemplate key;
+
+        private PermitsMetadata(Permits permits, KeyExpressionEvaluator.KeyTemplate key) {
+            this.permits = permits;
+            this.key = key;
+        }
+    }
+
+    @Around("@within(permits) || @annotation(permits)")
+    public Object aroundPermits(ProceedingJoinPoint point, Permits permits) throws Throwable {
+        Object permit = null;
+        if (semaphore == null) {
+            throw new LockException("DistributedSemaphore is null");
+        }
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        PermitsMetadata metadata = getMetadata(method, point.getTarget().getClass(), permits);
+        permits = metadata.permits;
+        String key = KeyExpressionEvaluator.resolve(metadata.key, method, point);
+        try {
+            if (permits.waitTime() > 0) {
+                permit = semaphore.tryAcquire(key, permits.permits(), permits.count(), permits.waitTime(), permits.leaseTime(), permits.unit());
+            } else {
+                permit = semaphore.acquire(key, permits.permits(), permits.count(), permits.leaseTime(), permits.unit());
+            }
+
+            if (permit != null) {
+                return point.proceed();
+            } else {
+                throw new LockException("许可等待超时");
+            }
+        } finally {
+            if (permit != null) {
+                semaphore.release(permit);
+            }
+        }
+    }
+
+    private PermitsMetadata getMetadata(Method method, Class<?> targetClass, Permits permits) {
+        AnnotatedElementKey cacheKey = new AnnotatedElementKey(method, targetClass);
+        PermitsMetadata metadata = metadataCache.get(cacheKey);
+        if (metadata == null) {
+            metadata = metadataCache.computeIfAbsent(cacheKey, k -> buildMetadata(method, targetClass, permits));
+        }
+        return metadata;
+    }
+
+    private PermitsMetadata buildMetadata(Method method, Class<?> targetClass, Permits permits) {
+        if (permits == null) {
+            // 获取类上的注解
+            permits = targetClass.getDeclaredAnnotation(Permits.class);
+        }
+        if (StringUtils.isEmpty(permits.key())) {
+            throw new LockException("permits key is null");
+        }
+        if (CompletionStage.class.isAssignableFrom(method.getReturnType())
+                || "reactor.core.publisher.Mono".equals(method.getReturnType().getName())) {
+            throw new LockException("@Permits 不支持异步方法：" + method);
+        }
+        return new PermitsMetadata(permits, keyEvaluator.parse(Permits.class, method, permits.key()));
+    }
+}
@@ -0,0 +1,93 @@
+package org.lmx.framework.redis.aspect;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.lmx.framework.redis.annotation.RateLimit;
+import org.lmx.framework.redis.exception.RateLimitException;
+import org.lmx.framework.redis.limiter.RateLimitRule;
+import org.lmx.framework.redis.limiter.RateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能描述: 集群限流AOP 切面
+ * <pre>
+ *  方法执行前按注解的规则申请令牌，未获放行时抛出 {@link RateLimitException}，方法不执行；
+ *  key表达式与 {@link LockAspect} 一样按方法解析并缓存。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/10 11:10
+ */
+@Slf4j
+@Aspect
+public class RateLimitAspect {
+    @Autowired(required = false)
+    private RateLimiter rateLimiter;
+
+    /**
+     * 用于key表达式解析.
+     */
+    private final KeyExpressionEvaluator keyEvaluator = new KeyExpressionEvaluator();
+
+    /**
+     * 方法+目标类 -> 元数据
+     */
+    private final Map<AnnotatedElementKey, RateLimitMetadata> metadataCache = new ConcurrentHashMap<>(256);
+
+    private static final class RateLimitMetadata {
+        private final RateLimitRule rule;
+        private final int permits;
+        private final KeyExpressionEvaluator.KeyTemplate key;
+
+        private RateLimitMetadata(RateLimitRule rule, int permits, KeyExpressionEvaluator.KeyTemplate key) {
+            this.rule = rule;
+            this.permits = permits;
+            this.key = key;
+        }
+    }
+
+    @Around("@within(rateLimit) || @annotation(rateLimit)")
+    public Object aroundRateLimit(ProceedingJoinPoint point, RateLimit rateLimit) throws Throwable {
+        if (rateLimiter == null) {
+            throw new RateLimitException("RateLimiter is null");
+        }
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        RateLimitMetadata metadata = getMetadata(method, point.getTarget().getClass(), rateLimit);
+        String key = KeyExpressionEvaluator.resolve(metadata.key, method, point);
+        if (!rateLimiter.tryAcquire(key, metadata.rule, metadata.permits)) {
+            throw new RateLimitException("请求过于频繁，key：" + key);
+        }
+        return point.proceed();
+    }
+
+    private RateLimitMetadata getMetadata(Method method, Class<?> targetClass, RateLimit rateLimit) {
+        AnnotatedElementKey cacheKey = new AnnotatedElementKey(method, targetClass);
+        RateLimitMetadata metadata = metadataCache.get(cacheKey);
+        if (metadata == null) {
+            metadata = metadataCache.computeIfAbsent(cacheKey, k -> buildMetadata(method, targetClass, rateLimit));
+        }
+        return metadata;
+    }
+
+    private RateLimitMetadata buildMetadata(Method method, Class<?> targetClass, RateLimit rateLimit) {
+        if (rateLimit == null) {
+            // 获取类上的注解
+            rateLimit = targetClass.getDeclaredAnnotation(RateLimit.class);
+        }
+        if (StringUtils.isEmpty(rateLimit.key())) {
+            throw new RateLimitException("rateLimit key is null");
+        }
+        RateLimitRule rule = new RateLimitRule(rateLimit.algorithm(), rateLimit.limit(), rateLimit.interval(),
+                rateLimit.unit(), rateLimit.prefetch());
+        return new RateLimitMetadata(rule, rateLimit.permits(), keyEvaluator.parse(RateLimit.class, method, rateLimit.key()));
+    }
+}
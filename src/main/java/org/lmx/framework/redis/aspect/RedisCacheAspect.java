@@ -0,0 +1,217 @@
+package org.lmx.framework.redis.aspect;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.annotation.RedisCacheEvict;
+import org.lmx.framework.redis.annotation.RedisCacheable;
+import org.lmx.framework.redis.exception.CacheException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述: 缓存注解AOP 切面
+ * <pre>
+ *  {@link RedisCacheable}：先通过 {@link RedisClientTemplate#getEntry} 读取，命中（包括负缓存）时直接返回，未命中时执行方法并写回。
+ *  开启 refreshAhead 时读取同时取出剩余过期时间，低于阈值则由一个调用方在自身线程上重新执行方法并写回，
+ *  事务、安全上下文等线程绑定的状态与正常调用一致；同一key同时只有一个调用方刷新，其余调用方继续返回旧值，刷新失败时也返回旧值。
+ *  zip 模式的bucket条目没有单独的过期时间，ttl / nullTtl 写在值里，由 {@link RedisClientTemplate#getEntryByZip} 检查。
+ *  {@link RedisCacheEvict}：全部key展开后一次删除。
+ *
+ *  key表达式与 {@link LockAspect} 一样按方法解析、编译并缓存。容器中没有 RedisClientTemplate 时直接执行方法。
+ *  Redis读取失败按未命中处理，写回失败只记录日志。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/24 11:00
+ */
+@Slf4j
+@Aspect
+public class RedisCacheAspect {
+    @Autowired(required = false)
+    private RedisClientTemplate redisClientTemplate;
+
+    /**
+     * 用于key表达式解析.
+     */
+    private final KeyExpressionEvaluator keyEvaluator = new KeyExpressionEvaluator();
+
+    /**
+     * 正在提前刷新的key
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 方法+目标类 -> 元数据
+     */
+    private final Map<AnnotatedElementKey, CacheableMetadata> cacheableCache = new ConcurrentHashMap<>(256);
+    private final Map<AnnotatedElementKey, CacheEvictMetadata> evictCache = new ConcurrentHashMap<>(256);
+
+    private static final class CacheableMetadata {
+        private final RedisCacheable cacheable;
+        private final KeyExpressionEvaluator.KeyTemplate key;
+        /**
+         * 解码类型，参数化的返回值类型（如 {@code List<User>}）保留泛型参数
+         */
+        private final Type returnType;
+        /**
+         * 剩余时间低于该值(毫秒)时提前刷新，0为不提前刷新
+         */
+        private final long refreshAheadMillis;
+
+        private CacheableMetadata(RedisCacheable cacheable, KeyExpressionEvaluator.KeyTemplate key, Type returnType, long refreshAheadMillis) {
+            this.cacheable = cacheable;
+            this.key = key;
+            this.returnType = returnType;
+            this.refreshAheadMillis = refreshAheadMillis;
+        }
+    }
+
+    private static final class CacheEvictMetadata {
+        private final RedisCacheEvict cacheEvict;
+        private final KeyExpressionEvaluator.KeyTemplate keys;
+
+        private CacheEvictMetadata(RedisCacheEvict cacheEvict, KeyExpressionEvaluator.KeyTemplate keys) {
+            this.cacheEvict = cacheEvict;
+            this.keys = keys;
+        }
+    }
+
+    @Around("@annotation(cacheable)")
+    public Object aroundCacheable(ProceedingJoinPoint point, RedisCacheable cacheable) throws Throwable {
+        if (redisClientTemplate == null) {
+            return point.proceed();
+        }
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        CacheableMetadata metadata = getCacheableMetadata(method, point.getTarget().getClass(), cacheable);
+        String key = KeyExpressionEvaluator.resolve(metadata.key, method, point);
+
+        RedisClientTemplate.CacheEntry<?> entry = metadata.cacheable.zip()
+                ? redisClientTemplate.getEntryByZip(key, key, metadata.returnType)
+                : redisClientTemplate.getEntry(key, metadata.returnType, metadata.refreshAheadMillis > 0);
+        if (entry != null) {
+            if (entry.getValue() != null && entry.getTtlMillis() >= 0 && entry.getTtlMillis() < metadata.refreshAheadMillis
+                    && refreshing.add(key)) {
+                return refresh(point, metadata, key, entry.getValue());
+            }
+            return entry.getValue();
+        }
+        Object value = point.proceed();
+        store(metadata, key, value);
+        return value;
+    }
+
+    @Around("@annotation(cacheEvict)")
+    public Object aroundCacheEvict(ProceedingJoinPoint point, RedisCacheEvict cacheEvict) throws Throwable {
+        if (redisClientTemplate == null) {
+            return point.proceed();
+        }
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        CacheEvictMetadata metadata = getEvictMetadata(method, point.getTarget().getClass(), cacheEvict);
+        List<String> keys = KeyExpressionEvaluator.resolveExpanded(metadata.keys, method, point);
+        if (metadata.cacheEvict.beforeInvocation()) {
+            evict(metadata.cacheEvict, keys);
+            return point.proceed();
+        }
+        Object result = point.proceed();
+        evict(metadata.cacheEvict, keys);
+        return result;
+    }
+
+    private void store(CacheableMetadata metadata, String key, Object value) {
+        RedisCacheable cacheable = metadata.cacheable;
+        if (value == null && !cacheable.cacheNull()) {
+            return;
+        }
+        if (cacheable.zip()) {
+            redisClientTemplate.setEntryByZip(key, key, value, value == null ? cacheable.nullTtl() : cacheable.ttl());
+        } else {
+            redisClientTemplate.setEntry(key, value, value == null ? cacheable.nullTtl() : cacheable.ttl());
+        }
+    }
+
+    /**
+     * 在调用方线程上重新执行方法并写回，调用方已登记到 refreshing；失败时返回仍未过期的旧值
+     */
+    private Object refresh(ProceedingJoinPoint point, CacheableMetadata metadata, String key, Object cached) {
+        try {
+            Object value = point.proceed();
+            store(metadata, key, value);
+            return value;
+        } catch (Throwable e) {
+            log.error("缓存 {} 提前刷新失败，返回旧值", key, e);
+            return cached;
+        } finally {
+            refreshing.remove(key);
+        }
+    }
+
+    private void evict(RedisCacheEvict cacheEvict, List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (cacheEvict.zip()) {
+            redisClientTemplate.delByZip(keys, keys);
+        } else {
+            redisClientTemplate.del(keys.toArray(new String[0]));
+        }
+    }
+
+    private CacheableMetadata getCacheableMetadata(Method method, Class<?> targetClass, RedisCacheable cacheable) {
+        AnnotatedElementKey cacheKey = new AnnotatedElementKey(method, targetClass);
+        CacheableMetadata metadata = cacheableCache.get(cacheKey);
+        if (metadata == null) {
+            metadata = cacheableCache.computeIfAbsent(cacheKey, k -> buildCacheableMetadata(method, cacheable));
+        }
+        return metadata;
+    }
+
+    private CacheableMetadata buildCacheableMetadata(Method method, RedisCacheable cacheable) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class || CompletionStage.class.isAssignableFrom(returnType)
+                || "reactor.core.publisher.Mono".equals(returnType.getName())) {
+            throw new CacheException("@RedisCacheable 不支持无返回值或异步方法：" + method);
+        }
+        if (cacheable.refreshAhead() < 0 || cacheable.refreshAhead() >= 1) {
+            throw new CacheException("@RedisCacheable refreshAhead 取值范围为 [0, 1)：" + method);
+        }
+        if (cacheable.refreshAhead() > 0 && cacheable.ttl() <= 0) {
+            throw new CacheException("@RedisCacheable refreshAhead 需要ttl：" + method);
+        }
+        long refreshAheadMillis = (long) (TimeUnit.SECONDS.toMillis(cacheable.ttl()) * cacheable.refreshAhead());
+        // 按原始类型解码时集合元素会是JSONObject，调用方拿到后转换为元素类型会抛出ClassCastException
+        Type genericReturnType = method.getGenericReturnType();
+        Type valueType = genericReturnType instanceof ParameterizedType
+                ? genericReturnType : ClassUtils.resolvePrimitiveIfNecessary(returnType);
+        return new CacheableMetadata(cacheable, keyEvaluator.parse(RedisCacheable.class, method, cacheable.key()),
+                valueType, refreshAheadMillis);
+    }
+
+    private CacheEvictMetadata getEvictMetadata(Method method, Class<?> targetClass, RedisCacheEvict cacheEvict) {
+        AnnotatedElementKey cacheKey = new AnnotatedElementKey(method, targetClass);
+        CacheEvictMetadata metadata = evictCache.get(cacheKey);
+        if (metadata == null) {
+            metadata = evictCache.computeIfAbsent(cacheKey, k -> {
+                if (cacheEvict.keys().length == 0) {
+                    throw new CacheException("@RedisCacheEvict keys 不能为空：" + method);
+                }
+                return new CacheEvictMetadata(cacheEvict, keyEvaluator.parse(RedisCacheEvict.class, method, cacheEvict.keys()));
+            });
+        }
+        return metadata;
+    }
+}
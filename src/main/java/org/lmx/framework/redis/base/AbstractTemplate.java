@@ -1,7 +1,14 @@
 package org.lmx.framework.redis.base;
 
 import com.alibaba.fastjson.JSON;
+import org.lmx.framework.redis.codec.JsonValueCodec;
+import org.lmx.framework.redis.codec.ValueCodec;
+import org.lmx.framework.redis.codec.ValueCodecs;
+import org.lmx.framework.redis.codec.ValueCompressor;
 
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.zip.CRC32;
 
 /**
@@ -46,6 +53,65 @@ public abstract class AbstractTemplate {
         return JSON.parseObject(value, clazz);
     }
 
+    /**
+     * 值编解码器，默认与历史格式一致的JSON，可通过{demo.redis.codec}配置项切换
+     */
+    protected ValueCodec codec = JsonValueCodec.INSTANCE;
+
+    public void setCodec(ValueCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * 值压缩，默认不压缩写入但可以读取压缩数据
+     */
+    protected ValueCompressor compressor = ValueCompressor.disabled();
+
+    public void setCompressor(ValueCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public ValueCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * 使用模板默认编解码器编码
+     * @param value
+     * @return
+     */
+    protected byte[] encode(Object value) {
+        return encode(value, codec);
+    }
+
+    /**
+     * 使用指定编解码器编码，超过阈值时压缩
+     * @param value
+     * @param codec
+     * @return
+     */
+    protected byte[] encode(Object value, ValueCodec codec) {
+        return compressor.compress(codec.encode(value));
+    }
+
+    /**
+     * 根据类型头解压、解码，兼容历史的JSON/字符串数据；带过期时间的条目忽略过期时间直接解码
+     * @param bytes
+     * @param clazz
+     * @param <T>
+     * @return
+     */
+    protected <T> T decode(byte[] bytes, Class<T> clazz) {
+        return ValueCodecs.decode(compressor.decompress(ValueCodecs.unwrapExpiry(bytes)), clazz);
+    }
+
+    /**
+     * 同 {@link #decode(byte[], Class)}，按泛型类型（如 {@code List<User>}）解码
+     */
+    protected <T> T decode(byte[] bytes, Type type) {
+        return ValueCodecs.decode(compressor.decompress(ValueCodecs.unwrapExpiry(bytes)), type);
+    }
+
 
     /**
      * 启用 hashKey时生效。
@@ -65,11 +131,43 @@ public abstract class AbstractTemplate {
 
     protected Boolean isHashKey;
 
+    /**
+     * String.getBytes() 使用平台默认字符集，只有默认字符集为UTF-8时才能走逐字符编码的快速路径，
+     * 否则退回原实现以保证bucket分配与历史数据一致。
+     */
+    private static final boolean DEFAULT_CHARSET_UTF8 = StandardCharsets.UTF_8.equals(Charset.defaultCharset());
+
+    /**
+     * 线程私有的CRC32及编码缓冲区，避免热路径上的对象分配
+     */
+    private static final ThreadLocal<HashBuffer> HASH_BUFFER = ThreadLocal.withInitial(HashBuffer::new);
+
+    /**
+     * 预先生成的bucket名称表，下标即bucket序号，bucket数量启动后固定不变
+     */
+    private final String[] bucketNames;
+
+    /**
+     * 与 bucketNames 一一对应的字节形式，供直接操作连接的pipeline使用，调用方不得修改
+     */
+    private final byte[][] bucketNameBytes;
+
     public AbstractTemplate(boolean isHashKey, int keyCount) {
         this.isHashKey = isHashKey;
         if (keyCount > KEY_COUNT) {
             this.KEY_COUNT = keyCount;
         }
+        if (isHashKey) {
+            this.bucketNames = new String[KEY_COUNT];
+            this.bucketNameBytes = new byte[KEY_COUNT][];
+            for (int i = 0; i < KEY_COUNT; i++) {
+                bucketNames[i] = String.valueOf(i).intern();
+                bucketNameBytes[i] = bucketNames[i].getBytes(StandardCharsets.UTF_8);
+            }
+        } else {
+            this.bucketNames = null;
+            this.bucketNameBytes = null;
+        }
     }
 
     /**
@@ -87,9 +185,47 @@ public abstract class AbstractTemplate {
         if (!isHashKey) {
             return key;
         }
-        CRC32 crc32 = new CRC32();
-        crc32.update(key.getBytes());
-        return crc32.getValue() % KEY_COUNT + "";
+        return bucketNames[bucketIndex(key)];
+    }
+
+    /**
+     * 功能描述: hashKey 的字节形式，返回预先生成的共享数组，调用方不得修改
+     *
+     * @param key 原哈希键
+     * @return byte[]
+     * @author LM.X
+     * @date 2020/7/23 10:20
+     */
+    public byte[] hashKeyBytes(String key) {
+        if (!isHashKey) {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+        return bucketNameBytes[bucketIndex(key)];
+    }
+
+    /**
+     * 功能描述: 计算key所在的bucket序号
+     * <pre>
+     *  与 crc32(key.getBytes()) % KEY_COUNT 结果一致：逐字符按UTF-8编码进线程私有缓冲区后计算CRC32，不产生垃圾对象。
+     * </pre>
+     *
+     * @param key 原哈希键
+     * @return bucket序号
+     * @author LM.X
+     * @date 2020/7/23 10:05
+     */
+    protected int bucketIndex(String key) {
+        if (!DEFAULT_CHARSET_UTF8) {
+            CRC32 crc32 = new CRC32();
+            crc32.update(key.getBytes());
+            return (int) (crc32.getValue() % KEY_COUNT);
+        }
+        HashBuffer buffer = HASH_BUFFER.get();
+        int length = buffer.encode(key);
+        CRC32 crc32 = buffer.crc32;
+        crc32.reset();
+        crc32.update(buffer.bytes, 0, length);
+        return (int) (crc32.getValue() % KEY_COUNT);
     }
 
     /**
@@ -100,6 +236,9 @@ public abstract class AbstractTemplate {
      * 该算法可以将字符串转化成一个Long整形的数字。
      *
      * 原则上，Key-Value存储时，往往Key是被设计成唯一不重复的，故碰撞的概率非常小。
+     *
+     * 开启hashKey时每次调用都会分配一个十进制字符串（field本身就是Redis命令参数，无法避免）；
+     * 只需要比较或分组而不需要写入Redis时，使用不产生对象的 {@link #BKDRHash(String)}。
      * </pre>
      *
      * @param field
@@ -111,12 +250,72 @@ public abstract class AbstractTemplate {
         if (!isHashKey) {
             return field;
         }
+        return Integer.toString(BKDRHash(field));
+    }
+
+    /**
+     * 功能描述: BKDRHash 的数值形式，不产生任何对象
+     *
+     * @param field
+     * @return BKDRHash
+     * @author LM.X
+     * @date 2020/7/23 10:10
+     */
+    public static int BKDRHash(String field) {
         //  31, 131, 1313, 13131, 131313 etc.. 一个质数，值越大哈希越零散
         int seed = 31;
         int hash = 0;
         for (int i = 0; i < field.length(); i++) {
             hash = hash * seed + field.charAt(i);
         }
-        return String.valueOf(hash);
+        return hash;
+    }
+
+    /**
+     * 线程私有的哈希计算缓冲
+     */
+    private static final class HashBuffer {
+        private final CRC32 crc32 = new CRC32();
+        private byte[] bytes = new byte[256];
+
+        /**
+         * 按UTF-8编码写入缓冲区，非法代理对按 String.getBytes() 的规则替换为'?'
+         *
+         * @return 编码后的字节数
+         */
+        private int encode(String s) {
+            int length = s.length();
+            if (bytes.length < length * 3) {
+                bytes = new byte[length * 3];
+            }
+            byte[] b = bytes;
+            int n = 0;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    b[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[n++] = (byte) (0xC0 | (c >> 6));
+                    b[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    char low;
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(low = s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, low);
+                        b[n++] = (byte) (0xF0 | (cp >> 18));
+                        b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        b[n++] = (byte) (0x80 | (cp & 0x3F));
+                        i++;
+                    } else {
+                        b[n++] = '?';
+                    }
+                } else {
+                    b[n++] = (byte) (0xE0 | (c >> 12));
+                    b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    b[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
     }
 }
@@ -0,0 +1,55 @@
+package org.lmx.framework.redis.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 功能描述: 按key前缀查找的字典树
+ * <pre>
+ *  查找沿key逐字符下降，耗时只与key长度有关，与注册的前缀数量无关。构建后只读，可以被多个线程同时查找。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/18 9:40
+ */
+public final class KeyPrefixTrie<T> {
+
+    private static final class Node<T> {
+        private final Map<Character, Node<T>> children = new HashMap<>(4);
+        private final List<T> values = new ArrayList<>(1);
+    }
+
+    private final Node<T> root = new Node<>();
+
+    private int size;
+
+    public void put(String prefix, T value) {
+        Node<T> node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node<>());
+        }
+        node.values.add(value);
+        size++;
+    }
+
+    /**
+     * 功能描述: 查找前缀匹配key的所有值，按前缀由短到长追加到out
+     */
+    public void match(String key, List<T> out) {
+        Node<T> node = root;
+        out.addAll(node.values);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.get(key.charAt(i));
+            if (node == null) {
+                return;
+            }
+            out.addAll(node.values);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,388 @@
+package org.lmx.framework.redis.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lmx.framework.redis.base.KeyPrefixTrie;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述: 基于Redis pub/sub的缓存失效总线
+ * <pre>
+ *  发布方调用 {@link #publish} 只把key放入队列（本节点的缓存同步失效），刷新线程每 windowMillis 取出队列中的全部key，
+ *  去重后每 maxBatch 个合并为一条消息发送到 {@link #CHANNEL}。
+ *  消息体：nodeId + 分隔符 + 序号 [+ 分隔符 + key]...，序号按发送方递增，本节点发出的消息会被忽略。
+ *
+ *  订阅方按 {@link InvalidationListener#prefix()} 把key分发给本地缓存，并按发送方记录收到的最大序号：
+ *  序号不连续（消息丢失、断线重连期间的消息等）时先清空全部本地缓存，再处理本条消息。
+ *  发送方空闲超过 heartbeatMillis 时发送只带当前序号的心跳，使订阅方无需等到下一次失效就能发现丢失。
+ *
+ *  {@link #subscribe} 使用独立的消息监听器容器，在订阅连接的线程上按到达顺序同步投递，
+ *  收到的消息再交给单个接收线程依次处理，不会因共享容器的线程池并发投递而乱序（进而误判丢失、清空缓存）。
+ *  接收队列满时丢弃该消息并立即清空全部本地缓存。
+ *
+ *  {@link org.lmx.framework.redis.RedisClientTemplate} 写入时的近端缓存失效同样经由本总线发布，{@link NearCache} 作为监听器注册。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/20 10:00
+ */
+@Slf4j
+public class CacheInvalidationBus implements MessageListener, DisposableBean {
+    /**
+     * 失效广播频道
+     */
+    public static final String CHANNEL = "demo:cache:invalidate";
+
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * 接收队列容量
+     */
+    private static final int RECEIVE_QUEUE_CAPACITY = 10000;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final StringRedisTemplate redisTemplate;
+    private final int maxBatch;
+    private final long heartbeatMillis;
+
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 本节点已发送的最大序号，只在刷新线程上递增
+     */
+    private final AtomicLong sequence = new AtomicLong();
+    private long lastSendMillis = System.currentTimeMillis();
+
+    /**
+     * 发送方nodeId -> 收到的最大序号
+     */
+    private final ConcurrentHashMap<String, Publisher> publishers = new ConcurrentHashMap<>();
+
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 由 listeners 构建，注册时整体替换
+     */
+    private volatile KeyPrefixTrie<InvalidationListener> listenerTrie = new KeyPrefixTrie<>();
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * 单线程依次处理收到的消息
+     */
+    private final ThreadPoolExecutor receiver;
+
+    /**
+     * {@link #subscribe} 创建的专用容器
+     */
+    private volatile RedisMessageListenerContainer container;
+
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder sentKeyCount = new LongAdder();
+    private final LongAdder sentMessageCount = new LongAdder();
+    private final LongAdder receivedKeyCount = new LongAdder();
+    private final LongAdder gapCount = new LongAdder();
+
+    /**
+     * 一个发送方的接收状态
+     */
+    private static final class Publisher {
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private volatile long lastSeenMillis;
+    }
+
+    /**
+     * @param redisTemplate   StringRedisTemplate
+     * @param windowMillis    合并窗口，同一窗口内重复的key只发送一次
+     * @param maxBatch        单条消息的最大key数量
+     * @param heartbeatMillis 空闲时的心跳间隔
+     */
+    public CacheInvalidationBus(StringRedisTemplate redisTemplate, long windowMillis, int maxBatch, long heartbeatMillis) {
+        this.redisTemplate = redisTemplate;
+        this.maxBatch = Math.max(maxBatch, 1);
+        this.heartbeatMillis = Math.max(heartbeatMillis, windowMillis);
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "cache-invalidation-bus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long window = Math.max(windowMillis, 1);
+        executor.scheduleWithFixedDelay(this::tick, window, window, TimeUnit.MILLISECONDS);
+        this.receiver = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(RECEIVE_QUEUE_CAPACITY), r -> {
+            Thread thread = new Thread(r, "cache-invalidation-bus-receiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 功能描述: 订阅 {@link #CHANNEL}，使用专用容器保证按到达顺序投递；由本总线负责启动与关闭
+     */
+    public void subscribe(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.setTaskExecutor(new SyncTaskExecutor());
+        listenerContainer.setSubscriptionExecutor(new SimpleAsyncTaskExecutor("cache-invalidation-bus-subscription-"));
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        this.container = listenerContainer;
+    }
+
+    @Autowired(required = false)
+    public void setListeners(List<InvalidationListener> listeners) {
+        for (InvalidationListener listener : listeners) {
+            register(listener);
+        }
+    }
+
+    /**
+     * 功能描述: 注册本地缓存
+     */
+    public void register(InvalidationListener listener) {
+        listeners.add(listener);
+        KeyPrefixTrie<InvalidationListener> trie = new KeyPrefixTrie<>();
+        for (InvalidationListener l : listeners) {
+            trie.put(l.prefix() == null ? "" : l.prefix(), l);
+        }
+        listenerTrie = trie;
+    }
+
+    /**
+     * 功能描述: 使key失效：本节点缓存立即失效，其它节点在下一个合并窗口收到
+     */
+    public void publish(String key) {
+        dispatch(Collections.singletonList(key));
+        pending.offer(key);
+        publishedCount.increment();
+    }
+
+    /**
+     * 功能描述: 批量使key失效
+     */
+    public void publish(Collection<String> keys) {
+        dispatch(keys instanceof List ? (List<String>) keys : new ArrayList<>(keys));
+        pending.addAll(keys);
+        publishedCount.add(keys.size());
+    }
+
+    private void tick() {
+        try {
+            flush();
+            pruneIdlePublishers();
+        } catch (RuntimeException e) {
+            log.error("缓存失效总线刷新失败", e);
+        }
+    }
+
+    /**
+     * 取出队列中的全部key，去重后分批发送；没有key且空闲超过心跳间隔时发送心跳
+     */
+    private void flush() {
+        Set<String> keys = new LinkedHashSet<>();
+        String key;
+        while ((key = pending.poll()) != null) {
+            keys.add(key);
+            if (keys.size() >= maxBatch) {
+                send(keys);
+                keys.clear();
+            }
+        }
+        if (!keys.isEmpty()) {
+            send(keys);
+        } else if (System.currentTimeMillis() - lastSendMillis >= heartbeatMillis) {
+            send(Collections.emptySet());
+        }
+    }
+
+    /**
+     * 发送失败的序号同样被占用，订阅方在下一条消息或心跳时发现丢失并清空缓存
+     */
+    private void send(Set<String> keys) {
+        long seq = keys.isEmpty() ? sequence.get() : sequence.incrementAndGet();
+        StringBuilder body = new StringBuilder(nodeId.length() + 24 + keys.size() * 32);
+        body.append(nodeId).append(SEPARATOR).append(seq);
+        for (String key : keys) {
+            body.append(SEPARATOR).append(key);
+        }
+        lastSendMillis = System.currentTimeMillis();
+        try {
+            redisTemplate.convertAndSend(CHANNEL, body.toString());
+            sentKeyCount.add(keys.size());
+            sentMessageCount.increment();
+        } catch (Exception e) {
+            log.error("缓存失效广播失败，key数量：{}", keys.size(), e);
+        }
+    }
+
+    private void pruneIdlePublishers() {
+        long expireBefore = System.currentTimeMillis() - heartbeatMillis * 10;
+        publishers.values().removeIf(p -> p.lastSeenMillis < expireBefore);
+    }
+
+    /**
+     * 在订阅线程上调用，只把消息交给接收线程
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        byte[] body = message.getBody();
+        try {
+            receiver.execute(() -> receive(new String(body, StandardCharsets.UTF_8)));
+        } catch (RejectedExecutionException e) {
+            if (receiver.isShutdown()) {
+                return;
+            }
+            gapCount.increment();
+            log.warn("缓存失效消息接收队列已满，清空本地缓存");
+            invalidateAll();
+        }
+    }
+
+    private void receive(String body) {
+        int seqStart = body.indexOf(SEPARATOR);
+        if (seqStart < 0 || (seqStart == nodeId.length() && body.startsWith(nodeId))) {
+            return;
+        }
+        int keyStart = body.indexOf(SEPARATOR, seqStart + 1);
+        long seq = Long.parseLong(keyStart < 0 ? body.substring(seqStart + 1) : body.substring(seqStart + 1, keyStart));
+        boolean heartbeat = keyStart < 0;
+
+        Publisher publisher = publishers.computeIfAbsent(body.substring(0, seqStart), k -> new Publisher());
+        publisher.lastSeenMillis = System.currentTimeMillis();
+        long previous = publisher.sequence.getAndAccumulate(seq, Math::max);
+        // 心跳带的是已发送的最大序号，消息带的是新序号；第一次收到某个发送方时以序号0为起点
+        long expected = Math.max(previous, 0) + (heartbeat ? 0 : 1);
+        if (seq > expected) {
+            gapCount.increment();
+            log.warn("缓存失效消息丢失，发送方：{} 期望序号：{} 收到：{}，清空本地缓存", body.substring(0, seqStart), expected, seq);
+            invalidateAll();
+        }
+        if (heartbeat) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>();
+        int start = keyStart + 1;
+        int end;
+        while ((end = body.indexOf(SEPARATOR, start)) >= 0) {
+            keys.add(body.substring(start, end));
+            start = end + 1;
+        }
+        keys.add(body.substring(start));
+        receivedKeyCount.add(keys.size());
+        dispatch(keys);
+    }
+
+    private void invalidateAll() {
+        for (InvalidationListener listener : listeners) {
+            try {
+                listener.invalidateAll();
+            } catch (RuntimeException e) {
+                log.error("本地缓存 {} 清空失败", listener.getClass().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 按前缀分组后每个缓存调用一次
+     */
+    private void dispatch(List<String> keys) {
+        KeyPrefixTrie<InvalidationListener> trie = listenerTrie;
+        if (trie.size() == 0) {
+            return;
+        }
+        Map<InvalidationListener, List<String>> grouped = new IdentityHashMap<>();
+        List<InvalidationListener> matched = new ArrayList<>(4);
+        for (String key : keys) {
+            trie.match(key, matched);
+            for (InvalidationListener listener : matched) {
+                grouped.computeIfAbsent(listener, l -> new ArrayList<>()).add(key);
+            }
+            matched.clear();
+        }
+        for (Map.Entry<InvalidationListener, List<String>> entry : grouped.entrySet()) {
+            try {
+                entry.getKey().invalidate(entry.getValue());
+            } catch (RuntimeException e) {
+                log.error("本地缓存 {} 失效失败", entry.getKey().getClass().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 停止前发送队列中剩余的key
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (container != null) {
+            container.destroy();
+        }
+        receiver.shutdown();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * 调用 publish 的key数量（含重复）
+     */
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+
+    /**
+     * 实际发送的key数量，与 publishedCount 的差即合并掉的重复
+     */
+    public long getSentKeyCount() {
+        return sentKeyCount.sum();
+    }
+
+    public long getSentMessageCount() {
+        return sentMessageCount.sum();
+    }
+
+    public long getReceivedKeyCount() {
+        return receivedKeyCount.sum();
+    }
+
+    /**
+     * 发现消息丢失（并清空本地缓存）的次数
+     */
+    public long getGapCount() {
+        return gapCount.sum();
+    }
+}
@@ -0,0 +1,36 @@
+package org.lmx.framework.redis.cache;
+
+import java.util.List;
+
+/**
+ * 功能描述: 本地缓存的失效回调，注册到 {@link CacheInvalidationBus}
+ * <pre>
+ *  注册为Spring Bean即可（或调用 {@link CacheInvalidationBus#register}），按 {@link #prefix()} 分发：
+ *  失效的key以该前缀开头时交给该缓存。本节点发布的失效在发布时同步回调，其它节点发布的在总线的接收线程上按到达顺序回调。
+ *  RedisClientTemplate 写入产生的失效key为 {@link NearCache#entryKey} 的结果（hash field 带分隔符），前缀为空串的缓存同样会收到。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/20 9:30
+ */
+public interface InvalidationListener {
+
+    /**
+     * 功能描述: 关注的key前缀，空串表示所有key
+     *
+     * @return key前缀
+     */
+    String prefix();
+
+    /**
+     * 功能描述: 使一批key失效
+     *
+     * @param keys 失效的key，已去重
+     */
+    void invalidate(List<String> keys);
+
+    /**
+     * 功能描述: 清空整个缓存，在发现漏收失效消息（序号不连续）时调用
+     */
+    void invalidateAll();
+}
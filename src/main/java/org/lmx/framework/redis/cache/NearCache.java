@@ -0,0 +1,361 @@
+package org.lmx.framework.redis.cache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 功能描述: 进程内近端缓存（L1）
+ * <pre>
+ *  位于 {@link org.lmx.framework.redis.RedisClientTemplate} 之前，缓存热点Key编码后的原始字节，读命中时免去一次网络往返。
+ *
+ *  1、按Redis Key分段（segment），每段是一个按访问顺序排列的LinkedHashMap，容量满时淘汰最久未访问的条目；
+ *  2、每个条目写入时记录过期时间，读取时发现过期即淘汰；
+ *  3、同一Redis Key下的所有field落在同一分段，分段内按Redis Key索引其field，整Key失效只移除该Key自己的条目；
+ *  4、每个分段按Redis Key分条维护失效戳，每次失效都使戳递增。未命中时调用方先取 {@link #stamp}，
+ *     读完Redis再带着戳回填，期间该Key有过失效（本节点写入或总线消息）则放弃回填，避免把读到的旧值装回缓存。
+ *
+ *  缓存只保存原始字节，解码仍在调用方完成，避免多个调用方共享同一个可变对象；调用方不得修改返回的数组。
+ *
+ *  作为 {@link InvalidationListener} 注册到 {@link CacheInvalidationBus}，接收所有key：
+ *  失效key由 {@link #entryKey} 生成，带field分隔符的只使该field失效，否则整个Redis Key（含所有field）失效。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/20 10:12
+ */
+public class NearCache implements InvalidationListener {
+    /**
+     * 分段数，必须为2的幂
+     */
+    private static final int SEGMENT_COUNT = 16;
+
+    /**
+     * 每个分段的失效戳条数，必须为2的幂
+     */
+    private static final int STAMP_STRIPES = 64;
+
+    /**
+     * Key与field之间的分隔符，不能与失效总线消息的分隔符相同
+     */
+    private static final char FIELD_SEPARATOR = '\u0001';
+
+    private final Segment[] segments;
+
+    private final long ttlNanos;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder staleFillCount = new LongAdder();
+
+    /**
+     * @param maxSize 最大条目数
+     * @param ttl     条目存活时间
+     * @param unit    {@code ttl} 的时间单位
+     */
+    public NearCache(int maxSize, long ttl, TimeUnit unit) {
+        int segmentSize = Math.max(1, maxSize / SEGMENT_COUNT);
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * 读取缓存值
+     *
+     * @param key   Redis Key（已经过hashKey映射）
+     * @param field hash结构的field，String结构传null
+     * @return 命中返回原值，未命中或已过期返回null
+     */
+    public byte[] get(String key, String field) {
+        byte[] value = segmentFor(key).get(cacheKey(key, field), System.nanoTime());
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 读取Redis之前取得Key的失效戳，回填时交给 {@link #put(String, String, byte[], long)}
+     *
+     * @param key Redis Key（已经过hashKey映射）
+     */
+    public long stamp(String key) {
+        return segmentFor(key).stamp(key);
+    }
+
+    /**
+     * 回填缓存值，null值不缓存
+     *
+     * @param stamp 读取Redis之前 {@link #stamp} 的返回值，此后该Key有过失效时放弃回填
+     */
+    public void put(String key, String field, byte[] value, long stamp) {
+        if (value == null) {
+            return;
+        }
+        if (!segmentFor(key).put(key, field, value, System.nanoTime() + ttlNanos, stamp)) {
+            staleFillCount.increment();
+        }
+    }
+
+    /**
+     * 使单个条目失效
+     */
+    public void invalidate(String key, String field) {
+        segmentFor(key).remove(key, cacheKey(key, field));
+    }
+
+    /**
+     * 使某个Redis Key及其所有field失效
+     */
+    public void invalidateKey(String key) {
+        segmentFor(key).removeKey(key);
+    }
+
+    /**
+     * 功能描述: 失效总线上代表一个条目的key
+     *
+     * @param key   Redis Key（已经过hashKey映射）
+     * @param field hash结构的field，为null时代表整个Redis Key
+     */
+    public static String entryKey(String key, String field) {
+        return cacheKey(key, field);
+    }
+
+    @Override
+    public String prefix() {
+        return "";
+    }
+
+    @Override
+    public void invalidate(List<String> keys) {
+        for (String entryKey : keys) {
+            int separator = entryKey.indexOf(FIELD_SEPARATOR);
+            if (separator < 0) {
+                invalidateKey(entryKey);
+            } else {
+                String key = entryKey.substring(0, separator);
+                segmentFor(key).remove(key, entryKey);
+            }
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    @Override
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 读取期间Key被失效而放弃回填的次数
+     */
+    public long staleFillCount() {
+        return staleFillCount.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[spread(key) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static int spread(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static String cacheKey(String key, String field) {
+        return field == null ? key : key + FIELD_SEPARATOR + field;
+    }
+
+    private static final class Entry {
+        /**
+         * hash field条目所属的Redis Key，String结构的条目为null
+         */
+        private final String key;
+        private final byte[] value;
+        private final long expireAt;
+
+        private Entry(String key, byte[] value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Entry> map;
+
+        /**
+         * Redis Key -> 该Key在本分段中缓存的field条目
+         */
+        private final Map<String, Set<String>> fields = new HashMap<>();
+
+        /**
+         * 按Redis Key分条的失效戳，只在持有lock时修改
+         */
+        private final long[] stamps = new long[STAMP_STRIPES];
+
+        private Segment(final int maxSize) {
+            this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if (size() > maxSize) {
+                        evictionCount.increment();
+                        unindex(eldest.getKey(), eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private int stripe(String key) {
+            return (spread(key) >>> 4) & (STAMP_STRIPES - 1);
+        }
+
+        private long stamp(String key) {
+            lock.lock();
+            try {
+                return stamps[stripe(key)];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private byte[] get(String cacheKey, long now) {
+            lock.lock();
+            try {
+                Entry entry = map.get(cacheKey);
+                if (entry == null) {
+                    return null;
+                }
+                if (entry.expireAt - now <= 0) {
+                    map.remove(cacheKey);
+                    unindex(cacheKey, entry);
+                    evictionCount.increment();
+                    return null;
+                }
+                return entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return 取得stamp之后该Key有过失效时返回false，不写入
+         */
+        private boolean put(String key, String field, byte[] value, long expireAt, long stamp) {
+            lock.lock();
+            try {
+                if (stamps[stripe(key)] != stamp) {
+                    return false;
+                }
+                String cacheKey = cacheKey(key, field);
+                if (field == null) {
+                    map.put(cacheKey, new Entry(null, value, expireAt));
+                } else {
+                    map.put(cacheKey, new Entry(key, value, expireAt));
+                    fields.computeIfAbsent(key, k -> new HashSet<>()).add(cacheKey);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(String key, String cacheKey) {
+            lock.lock();
+            try {
+                stamps[stripe(key)]++;
+                unindex(cacheKey, map.remove(cacheKey));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void removeKey(String key) {
+            lock.lock();
+            try {
+                stamps[stripe(key)]++;
+                map.remove(key);
+                Set<String> cacheKeys = fields.remove(key);
+                if (cacheKeys != null) {
+                    for (String cacheKey : cacheKeys) {
+                        map.remove(cacheKey);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void unindex(String cacheKey, Entry entry) {
+            if (entry == null || entry.key == null) {
+                return;
+            }
+            Set<String> cacheKeys = fields.get(entry.key);
+            if (cacheKeys != null && cacheKeys.remove(cacheKey) && cacheKeys.isEmpty()) {
+                fields.remove(entry.key);
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                for (int i = 0; i < stamps.length; i++) {
+                    stamps[i]++;
+                }
+                map.clear();
+                fields.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return map.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
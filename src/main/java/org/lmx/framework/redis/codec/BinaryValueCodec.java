@@ -0,0 +1,425 @@
+package org.lmx.framework.redis.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.serializer.JavaBeanSerializer;
+import com.alibaba.fastjson.serializer.ObjectSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 功能描述: 紧凑二进制编解码器
+ * <pre>
+ *  无模式（schema-less）的标签格式：每个值以1字节标签开头，整数使用zigzag变长编码，字符串为 变长长度 + UTF-8。
+ *  JavaBean 通过FastJSON的 JavaBeanSerializer 逐个读取属性后直接写出（不构造中间的JSONObject树），
+ *  属性的取舍与 JSON.toJSON 一致；解码时再由FastJSON映射回目标类型，因此与JSON编解码器支持的类型一致。
+ *  同一条消息内重复出现的Map键（如对象列表的属性名）只写一次，之后以序号引用。
+ *  不支持循环引用：正在写出的Map、集合、数组与JavaBean按对象身份记录，再次遇到时抛出 IllegalArgumentException。
+ *
+ *  存储格式：MAGIC(0xC1) + id(1) + 值
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/24 10:00
+ */
+public final class BinaryValueCodec implements ValueCodec {
+    public static final BinaryValueCodec INSTANCE = new BinaryValueCodec();
+
+    private static final byte ID = 1;
+
+    private static final int T_NULL = 0;
+    private static final int T_TRUE = 1;
+    private static final int T_FALSE = 2;
+    private static final int T_INT = 3;
+    private static final int T_LONG = 4;
+    private static final int T_DOUBLE = 5;
+    private static final int T_FLOAT = 6;
+    private static final int T_STRING = 7;
+    private static final int T_STRING_REF = 8;
+    private static final int T_BYTES = 9;
+    private static final int T_DECIMAL = 10;
+    private static final int T_BIG_INTEGER = 11;
+    private static final int T_MAP = 12;
+    private static final int T_LIST = 13;
+
+    /**
+     * 线程私有的输出缓冲，编码完成后只复制一次
+     */
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(Output::new);
+
+    private BinaryValueCodec() {
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Output out = OUTPUT.get();
+        out.reset();
+        out.writeByte(MAGIC);
+        out.writeByte(ID);
+        out.writeValue(value);
+        return out.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, Class<T> clazz) {
+        Object node = new Input(bytes, 2).readValue();
+        if (node == null || clazz == Object.class || clazz.isInstance(node)) {
+            return (T) node;
+        }
+        if (node instanceof JSONObject) {
+            return ((JSONObject) node).toJavaObject(clazz);
+        }
+        if (node instanceof JSONArray) {
+            return ((JSONArray) node).toJavaObject(clazz);
+        }
+        return TypeUtils.cast(node, clazz, ParserConfig.getGlobalInstance());
+    }
+
+    private static final class Output {
+        private byte[] buf = new byte[512];
+        private int pos;
+        private final Map<String, Integer> keyTable = new HashMap<>();
+        /**
+         * 当前写出路径上的容器对象（按身份比较），用于发现循环引用
+         */
+        private final Set<Object> writing = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private void reset() {
+            pos = 0;
+            keyTable.clear();
+            // 上次编码抛出异常时可能残留
+            writing.clear();
+            if (buf.length > 64 * 1024) {
+                // 避免偶发的大对象让缓冲区长期占用内存
+                buf = new byte[512];
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        private void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void writeFixed(long v, int bytes) {
+            ensure(bytes);
+            for (int i = 0; i < bytes; i++) {
+                buf[pos++] = (byte) (v >>> (i << 3));
+            }
+        }
+
+        private void writeUtf8(String s) {
+            int length = s.length();
+            int utf8Length = 0;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    utf8Length += 1;
+                } else if (c < 0x800) {
+                    utf8Length += 2;
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        utf8Length += 4;
+                        i++;
+                    } else {
+                        utf8Length += 1;
+                    }
+                } else {
+                    utf8Length += 3;
+                }
+            }
+            writeVarLong(utf8Length);
+            ensure(utf8Length);
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    char low;
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(low = s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, low);
+                        buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                        buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                        i++;
+                    } else {
+                        // 非法代理字符按 String.getBytes 的规则替换为'?'
+                        buf[pos++] = '?';
+                    }
+                } else {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void writeString(String s) {
+            writeByte(T_STRING);
+            writeUtf8(s);
+        }
+
+        private void writeKey(String key) {
+            Integer ref = keyTable.get(key);
+            if (ref != null) {
+                writeByte(T_STRING_REF);
+                writeVarLong(ref);
+            } else {
+                keyTable.put(key, keyTable.size());
+                writeString(key);
+            }
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                writeByte(T_NULL);
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? T_TRUE : T_FALSE);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                int v = ((Number) value).intValue();
+                writeByte(T_INT);
+                writeVarLong(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+            } else if (value instanceof Long) {
+                long v = (Long) value;
+                writeByte(T_LONG);
+                writeVarLong((v << 1) ^ (v >> 63));
+            } else if (value instanceof Double) {
+                writeByte(T_DOUBLE);
+                writeFixed(Double.doubleToRawLongBits((Double) value), 8);
+            } else if (value instanceof Float) {
+                writeByte(T_FLOAT);
+                writeFixed(Float.floatToRawIntBits((Float) value), 4);
+            } else if (value instanceof BigDecimal) {
+                writeByte(T_DECIMAL);
+                writeUtf8(value.toString());
+            } else if (value instanceof BigInteger) {
+                writeByte(T_BIG_INTEGER);
+                writeUtf8(value.toString());
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                writeByte(T_BYTES);
+                writeVarLong(bytes.length);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buf, pos, bytes.length);
+                pos += bytes.length;
+            } else if (value instanceof Character || value instanceof Enum) {
+                writeString(value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+            } else if (value instanceof Date) {
+                long v = ((Date) value).getTime();
+                writeByte(T_LONG);
+                writeVarLong((v << 1) ^ (v >> 63));
+            } else if (value instanceof Map) {
+                enter(value);
+                writeMap((Map<?, ?>) value);
+                writing.remove(value);
+            } else if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                enter(value);
+                writeByte(T_LIST);
+                writeVarLong(collection.size());
+                for (Object o : collection) {
+                    writeValue(o);
+                }
+                writing.remove(value);
+            } else if (value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                enter(value);
+                writeByte(T_LIST);
+                writeVarLong(length);
+                for (int i = 0; i < length; i++) {
+                    writeValue(Array.get(value, i));
+                }
+                writing.remove(value);
+            } else {
+                ObjectSerializer serializer = SerializeConfig.getGlobalInstance().getObjectWriter(value.getClass());
+                if (serializer instanceof JavaBeanSerializer) {
+                    enter(value);
+                    writeBean((JavaBeanSerializer) serializer, value);
+                    writing.remove(value);
+                    return;
+                }
+                Object tree = JSON.toJSON(value);
+                if (tree == value) {
+                    writeString(value.toString());
+                } else {
+                    writeValue(tree);
+                }
+            }
+        }
+
+        private void enter(Object value) {
+            if (!writing.add(value)) {
+                throw new IllegalArgumentException("binary encode error: circular reference to " + value.getClass().getName());
+            }
+        }
+
+        private void writeMap(Map<?, ?> map) {
+            writeByte(T_MAP);
+            writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeKey(String.valueOf(entry.getKey()));
+                writeValue(entry.getValue());
+            }
+        }
+
+        /**
+         * 属性值经getter读出后直接写出，嵌套的对象、集合同样逐层直接写出
+         */
+        private void writeBean(JavaBeanSerializer serializer, Object bean) {
+            Map<String, Object> properties;
+            try {
+                properties = serializer.getFieldValuesMap(bean);
+            } catch (Exception e) {
+                throw new JSONException("binary encode error: " + bean.getClass().getName(), e);
+            }
+            writeMap(properties);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buf;
+        private int pos;
+        private final List<String> keyTable = new ArrayList<>();
+
+        private Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        private long readVarLong() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return v;
+        }
+
+        private long readFixed(int bytes) {
+            long v = 0;
+            for (int i = 0; i < bytes; i++) {
+                v |= (long) (buf[pos++] & 0xFF) << (i << 3);
+            }
+            return v;
+        }
+
+        private String readUtf8() {
+            int length = (int) readVarLong();
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        private String readKey() {
+            int tag = buf[pos++];
+            if (tag == T_STRING_REF) {
+                return keyTable.get((int) readVarLong());
+            }
+            String key = readUtf8();
+            keyTable.add(key);
+            return key;
+        }
+
+        private Object readValue() {
+            int tag = buf[pos++];
+            switch (tag) {
+                case T_NULL:
+                    return null;
+                case T_TRUE:
+                    return Boolean.TRUE;
+                case T_FALSE:
+                    return Boolean.FALSE;
+                case T_INT: {
+                    int v = (int) readVarLong();
+                    return (v >>> 1) ^ -(v & 1);
+                }
+                case T_LONG: {
+                    long v = readVarLong();
+                    return (v >>> 1) ^ -(v & 1);
+                }
+                case T_DOUBLE:
+                    return Double.longBitsToDouble(readFixed(8));
+                case T_FLOAT:
+                    return Float.intBitsToFloat((int) readFixed(4));
+                case T_STRING:
+                    return readUtf8();
+                case T_DECIMAL:
+                    return new BigDecimal(readUtf8());
+                case T_BIG_INTEGER:
+                    return new BigInteger(readUtf8());
+                case T_BYTES: {
+                    int length = (int) readVarLong();
+                    byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+                    pos += length;
+                    return bytes;
+                }
+                case T_MAP: {
+                    int size = (int) readVarLong();
+                    JSONObject map = new JSONObject(size * 4 / 3 + 1, true);
+                    for (int i = 0; i < size; i++) {
+                        String key = readKey();
+                        map.put(key, readValue());
+                    }
+                    return map;
+                }
+                case T_LIST: {
+                    int size = (int) readVarLong();
+                    JSONArray list = new JSONArray(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                default:
+                    throw new IllegalStateException("未知的二进制标签：" + tag);
+            }
+        }
+    }
+}
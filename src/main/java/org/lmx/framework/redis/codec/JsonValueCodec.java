@@ -0,0 +1,59 @@
+package org.lmx.framework.redis.codec;
+
+import com.alibaba.fastjson.JSON;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 功能描述: FastJSON编解码器
+ * <pre>
+ *  与 {@link org.lmx.framework.redis.base.AbstractTemplate#serializer} 的历史格式完全一致：字符串原样存储，其它对象存储为JSON，不写类型头。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/24 9:20
+ */
+public final class JsonValueCodec implements ValueCodec {
+    public static final JsonValueCodec INSTANCE = new JsonValueCodec();
+
+    private JsonValueCodec() {
+    }
+
+    @Override
+    public byte id() {
+        return 0;
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+        return JSON.toJSONBytes(value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, Class<T> clazz) {
+        if (clazz == String.class) {
+            // 字符串写入时未经JSON编码，原样返回
+            return (T) new String(bytes, StandardCharsets.UTF_8);
+        }
+        return JSON.parseObject(bytes, clazz);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, Type type) {
+        if (type instanceof Class) {
+            return decode(bytes, (Class<T>) type);
+        }
+        return JSON.parseObject(bytes, type);
+    }
+}
@@ -0,0 +1,71 @@
+package org.lmx.framework.redis.codec;
+
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+
+import java.lang.reflect.Type;
+
+/**
+ * 功能描述: 值编解码器SPI
+ * <pre>
+ *  负责对象与Redis存储字节之间的转换，可按模板（demo.redis.codec）或按调用选择。
+ *
+ *  除兼容历史数据的JSON编解码器外，其它编解码器写出的字节必须以 {@link #MAGIC} + {@link #id()} 两字节类型头开头，
+ *  读取时由 {@link ValueCodecs#decode} 根据类型头分派，因此迁移期间新旧格式的数据可以混合读取。
+ *  0xC1 在合法UTF-8中不会出现，历史的JSON/字符串值不会被误判为带类型头的数据。
+ *
+ *  自定义编解码器可通过 META-INF/services/org.lmx.framework.redis.codec.ValueCodec 注册。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/24 9:10
+ */
+public interface ValueCodec {
+    /**
+     * 类型头魔数
+     */
+    byte MAGIC = (byte) 0xC1;
+
+    /**
+     * 编解码器标识，写入类型头第二个字节，0 保留给JSON，2 保留给压缩数据
+     */
+    byte id();
+
+    /**
+     * 编解码器名称，用于配置项选择
+     */
+    String name();
+
+    /**
+     * 编码
+     *
+     * @param value 值，不能为null
+     * @return 完整的存储字节（带类型头的编解码器需包含类型头）
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码
+     *
+     * @param bytes 完整的存储字节
+     * @param clazz 目标类型
+     * @return 值
+     */
+    <T> T decode(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 按泛型类型解码，如 {@code List<User>}、{@code Map<String, User>}，集合元素同样转换为目标类型。
+     * 默认先按Object解码再由FastJSON转换，解码结果为JSONObject/JSONArray树的编解码器无需覆盖
+     *
+     * @param bytes 完整的存储字节
+     * @param type  目标类型
+     * @return 值
+     */
+    @SuppressWarnings("unchecked")
+    default <T> T decode(byte[] bytes, Type type) {
+        if (type instanceof Class) {
+            return decode(bytes, (Class<T>) type);
+        }
+        return TypeUtils.cast(decode(bytes, Object.class), type, ParserConfig.getGlobalInstance());
+    }
+}
@@ -0,0 +1,197 @@
+package org.lmx.framework.redis.codec;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 功能描述: 编解码器注册表
+ * <pre>
+ *  内置 json、binary 两种编解码器，并通过 {@link ServiceLoader} 加载自定义实现。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/24 9:30
+ */
+public final class ValueCodecs {
+    private static final ValueCodec[] BY_ID = new ValueCodec[256];
+    private static final Map<String, ValueCodec> BY_NAME = new ConcurrentHashMap<>();
+    private static final ReentrantLock REGISTER_LOCK = new ReentrantLock();
+
+    /**
+     * 缓存null值（负缓存）占位的类型标识，不分配给编解码器
+     */
+    public static final byte NULL_ID = (byte) 0xFF;
+
+    /**
+     * 负缓存占位，解码为null；调用方不得修改
+     */
+    private static final byte[] NULL_VALUE = {ValueCodec.MAGIC, NULL_ID};
+
+    /**
+     * 带过期时间条目（{@link #withExpiry}）的类型标识，不分配给编解码器
+     */
+    public static final byte EXPIRING_ID = (byte) 0xFE;
+
+    /**
+     * 带过期时间条目的头部长度：类型头 + 8字节过期时间(毫秒时间戳)
+     */
+    private static final int EXPIRING_HEADER = 10;
+
+    static {
+        register(JsonValueCodec.INSTANCE);
+        register(BinaryValueCodec.INSTANCE);
+        for (ValueCodec codec : ServiceLoader.load(ValueCodec.class)) {
+            register(codec);
+        }
+    }
+
+    private ValueCodecs() {
+    }
+
+    /**
+     * 注册编解码器，标识或名称重复时抛出异常
+     */
+    public static void register(ValueCodec codec) {
+        int id = codec.id() & 0xFF;
+        if (id == ValueCompressor.ID) {
+            throw new IllegalStateException("编解码器标识 " + id + " 保留给压缩数据");
+        }
+        if (id == (NULL_ID & 0xFF)) {
+            throw new IllegalStateException("编解码器标识 " + id + " 保留给负缓存占位");
+        }
+        if (id == (EXPIRING_ID & 0xFF)) {
+            throw new IllegalStateException("编解码器标识 " + id + " 保留给带过期时间的条目");
+        }
+        REGISTER_LOCK.lock();
+        try {
+            if (BY_ID[id] != null && BY_ID[id] != codec) {
+                throw new IllegalStateException("编解码器标识重复：" + id);
+            }
+            ValueCodec existing = BY_NAME.putIfAbsent(codec.name(), codec);
+            if (existing != null && existing != codec) {
+                throw new IllegalStateException("编解码器名称重复：" + codec.name());
+            }
+            BY_ID[id] = codec;
+        } finally {
+            REGISTER_LOCK.unlock();
+        }
+    }
+
+    /**
+     * 按名称获取编解码器
+     */
+    public static ValueCodec forName(String name) {
+        ValueCodec codec = BY_NAME.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("未知的编解码器：" + name);
+        }
+        return codec;
+    }
+
+    /**
+     * 负缓存占位的存储字节，调用方不得修改
+     */
+    public static byte[] nullValue() {
+        return NULL_VALUE;
+    }
+
+    /**
+     * 是否为负缓存占位
+     */
+    public static boolean isNullValue(byte[] bytes) {
+        return bytes != null && bytes.length == 2 && bytes[0] == ValueCodec.MAGIC && bytes[1] == NULL_ID;
+    }
+
+    /**
+     * 功能描述: 在存储字节外包一层过期时间，用于没有单独过期时间的hash field（压缩模式bucket）
+     * <pre>
+     *  格式为 MAGIC + EXPIRING_ID + 8字节过期时间 + 原存储字节（可以是压缩数据或负缓存占位），过期时间取写入方的时钟。
+     * </pre>
+     *
+     * @param bytes          存储字节
+     * @param expireAtMillis 过期时间(毫秒时间戳)
+     */
+    public static byte[] withExpiry(byte[] bytes, long expireAtMillis) {
+        byte[] out = new byte[EXPIRING_HEADER + bytes.length];
+        out[0] = ValueCodec.MAGIC;
+        out[1] = EXPIRING_ID;
+        for (int i = 0; i < 8; i++) {
+            out[2 + i] = (byte) (expireAtMillis >>> (56 - i * 8));
+        }
+        System.arraycopy(bytes, 0, out, EXPIRING_HEADER, bytes.length);
+        return out;
+    }
+
+    /**
+     * 是否为 {@link #withExpiry} 写出的条目
+     */
+    public static boolean isExpiring(byte[] bytes) {
+        return bytes != null && bytes.length >= EXPIRING_HEADER && bytes[0] == ValueCodec.MAGIC && bytes[1] == EXPIRING_ID;
+    }
+
+    /**
+     * {@link #withExpiry} 写入的过期时间(毫秒时间戳)，调用方需先确认 {@link #isExpiring}
+     */
+    public static long expireAt(byte[] bytes) {
+        long expireAt = 0;
+        for (int i = 0; i < 8; i++) {
+            expireAt = (expireAt << 8) | (bytes[2 + i] & 0xFF);
+        }
+        return expireAt;
+    }
+
+    /**
+     * 去掉 {@link #withExpiry} 包的过期时间，其它数据原样返回
+     */
+    public static byte[] unwrapExpiry(byte[] bytes) {
+        if (!isExpiring(bytes)) {
+            return bytes;
+        }
+        byte[] out = new byte[bytes.length - EXPIRING_HEADER];
+        System.arraycopy(bytes, EXPIRING_HEADER, out, 0, out.length);
+        return out;
+    }
+
+    /**
+     * 根据类型头选择编解码器解码，无类型头的历史数据按JSON解码
+     *
+     * @param bytes 存储字节，可以为null
+     * @param clazz 目标类型
+     * @return 值
+     */
+    public static <T> T decode(byte[] bytes, Class<T> clazz) {
+        if (bytes == null || isNullValue(bytes)) {
+            return null;
+        }
+        if (bytes.length >= 2 && bytes[0] == ValueCodec.MAGIC) {
+            ValueCodec codec = BY_ID[bytes[1] & 0xFF];
+            if (codec != null) {
+                return codec.decode(bytes, clazz);
+            }
+        }
+        return JsonValueCodec.INSTANCE.decode(bytes, clazz);
+    }
+
+    /**
+     * 同 {@link #decode(byte[], Class)}，按泛型类型解码
+     *
+     * @param bytes 存储字节，可以为null
+     * @param type  目标类型，如 {@code List<User>}
+     * @return 值
+     */
+    public static <T> T decode(byte[] bytes, Type type) {
+        if (bytes == null || isNullValue(bytes)) {
+            return null;
+        }
+        if (bytes.length >= 2 && bytes[0] == ValueCodec.MAGIC) {
+            ValueCodec codec = BY_ID[bytes[1] & 0xFF];
+            if (codec != null) {
+                return codec.decode(bytes, type);
+            }
+        }
+        return JsonValueCodec.INSTANCE.decode(bytes, type);
+    }
+}
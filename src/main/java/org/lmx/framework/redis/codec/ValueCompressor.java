@@ -0,0 +1,247 @@
+package org.lmx.framework.redis.codec;
+
+import org.lmx.framework.redis.concurrent.VirtualThreads;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 功能描述: 值压缩
+ * <pre>
+ *  编码后的字节超过阈值时使用Deflate（默认BEST_SPEED）压缩，压缩后不变小则保留原值。
+ *
+ *  存储格式：MAGIC(0xC1) + 2 + 变长原始长度 + raw deflate数据，解压后的内容仍是任一编解码器的完整存储字节。
+ *  未压缩的历史数据没有该类型头，读取时原样交给 {@link ValueCodecs#decode}。
+ *
+ *  Deflater/Inflater 按线程复用，避免频繁申请本地内存；虚拟线程随请求创建销毁，按线程缓存无法复用且会堆积本地内存，
+ *  因此虚拟线程上改为从有界的共享池借还，池满时直接释放。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/27 9:40
+ */
+public class ValueCompressor {
+    /**
+     * 压缩数据的类型头标识，编解码器不能占用
+     */
+    public static final byte ID = 2;
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<>();
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final ArrayBlockingQueue<Deflater> DEFLATER_POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final ArrayBlockingQueue<Inflater> INFLATER_POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * 解压后的最大长度，与Redis单个值的上限(512MB)一致
+     */
+    private static final int MAX_LENGTH = 512 * 1024 * 1024;
+    /**
+     * Deflate的理论最大压缩比约为1032:1，声明的原始长度超过 压缩数据长度 * 该值 必然是损坏的数据
+     */
+    private static final int MAX_RATIO = 1032;
+
+    private final boolean enabled;
+    private final int threshold;
+    private final int level;
+
+    private final LongAdder compressCount = new LongAdder();
+    private final LongAdder skipCount = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressCount = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    /**
+     * @param enabled   是否压缩写入的值，关闭时仍可读取压缩数据
+     * @param threshold 压缩阈值(字节)，编码后长度不小于该值才压缩
+     * @param level     Deflate压缩级别 1~9
+     */
+    public ValueCompressor(boolean enabled, int threshold, int level) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * 不压缩写入、仅负责解压的实例
+     */
+    public static ValueCompressor disabled() {
+        return new ValueCompressor(false, Integer.MAX_VALUE, Deflater.BEST_SPEED);
+    }
+
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && bytes[0] == ValueCodec.MAGIC && bytes[1] == ID;
+    }
+
+    /**
+     * 按阈值压缩
+     *
+     * @param bytes 编解码器输出的完整存储字节
+     * @return 压缩后的字节，未达阈值或压缩无收益时返回原数组
+     */
+    public byte[] compress(byte[] bytes) {
+        if (!enabled || bytes.length < threshold) {
+            return bytes;
+        }
+        long start = System.nanoTime();
+        boolean virtual = VirtualThreads.isVirtual();
+        Deflater deflater = virtual ? DEFLATER_POOL.poll() : DEFLATER.get();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            if (!virtual) {
+                DEFLATER.set(deflater);
+            }
+        } else {
+            deflater.reset();
+            deflater.setLevel(level);
+        }
+        try {
+            return deflate(deflater, bytes, start);
+        } finally {
+            if (virtual && !DEFLATER_POOL.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    private byte[] deflate(Deflater deflater, byte[] bytes, long start) {
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        byte[] out = new byte[bytes.length + 7];
+        out[0] = ValueCodec.MAGIC;
+        out[1] = ID;
+        int pos = 2;
+        int length = bytes.length;
+        while ((length & ~0x7F) != 0) {
+            out[pos++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out[pos++] = (byte) length;
+        // 输出缓冲区不大于原长度，写不下即说明压缩无收益
+        int limit = bytes.length;
+        while (!deflater.finished() && pos < limit) {
+            pos += deflater.deflate(out, pos, limit - pos);
+        }
+        compressNanos.add(System.nanoTime() - start);
+        if (!deflater.finished()) {
+            skipCount.increment();
+            return bytes;
+        }
+        compressCount.increment();
+        bytesIn.add(bytes.length);
+        bytesOut.add(pos);
+        return Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * 解压，非压缩数据原样返回
+     *
+     * @throws IllegalStateException 数据已损坏，包括声明的原始长度为负、超过上限或与压缩数据长度不相称（在申请内存前校验）
+     */
+    public byte[] decompress(byte[] bytes) {
+        if (!isCompressed(bytes)) {
+            return bytes;
+        }
+        long start = System.nanoTime();
+        int pos = 2;
+        long length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (pos >= bytes.length || shift > 28) {
+                throw new IllegalStateException("压缩数据已损坏，原始长度格式错误");
+            }
+            b = bytes[pos++];
+            length |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        if (length > MAX_LENGTH || length > (long) (bytes.length - pos) * MAX_RATIO) {
+            throw new IllegalStateException("压缩数据已损坏，原始长度：" + length + "，压缩数据长度：" + (bytes.length - pos));
+        }
+        return inflate(bytes, pos, (int) length, start);
+    }
+
+    private byte[] inflate(byte[] bytes, int pos, int length, long start) {
+
+        boolean virtual = VirtualThreads.isVirtual();
+        Inflater inflater = virtual ? INFLATER_POOL.poll() : INFLATER.get();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        inflater.reset();
+        inflater.setInput(bytes, pos, bytes.length - pos);
+        byte[] out = new byte[length];
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int r = inflater.inflate(out, n, length - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += r;
+            }
+            if (n != length) {
+                throw new IllegalStateException("压缩数据已损坏，期望长度：" + length + "，实际长度：" + n);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("压缩数据已损坏", e);
+        } finally {
+            if (virtual && !INFLATER_POOL.offer(inflater)) {
+                inflater.end();
+            }
+        }
+        decompressCount.increment();
+        decompressNanos.add(System.nanoTime() - start);
+        return out;
+    }
+
+    /**
+     * 已压缩的值个数
+     */
+    public long getCompressCount() {
+        return compressCount.sum();
+    }
+
+    /**
+     * 达到阈值但压缩无收益而保留原值的个数
+     */
+    public long getSkipCount() {
+        return skipCount.sum();
+    }
+
+    /**
+     * 压缩率（压缩后字节数 / 压缩前字节数），越小越好
+     */
+    public double getCompressionRatio() {
+        long in = bytesIn.sum();
+        return in == 0 ? 1.0 : (double) bytesOut.sum() / in;
+    }
+
+    /**
+     * 平均每次压缩耗时(纳秒)，含压缩无收益的尝试
+     */
+    public long getAvgCompressNanos() {
+        long count = compressCount.sum() + skipCount.sum();
+        return count == 0 ? 0 : compressNanos.sum() / count;
+    }
+
+    public long getDecompressCount() {
+        return decompressCount.sum();
+    }
+
+    /**
+     * 平均每次解压耗时(纳秒)
+     */
+    public long getAvgDecompressNanos() {
+        long count = decompressCount.sum();
+        return count == 0 ? 0 : decompressNanos.sum() / count;
+    }
+}
@@ -0,0 +1,113 @@
+package org.lmx.framework.redis.concurrent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 功能描述: 虚拟线程支持
+ * <pre>
+ *  项目按Java 8编译，虚拟线程API（JDK 21+）通过MethodHandle访问：
+ *  低版本JDK上 {@link #isSupported()} 为false，{@link #isVirtual()} 恒为false，不影响原有行为。
+ *
+ *  虚拟线程上应避免：在 synchronized 内阻塞（会钉住载体线程）、按线程缓存持有本地内存的对象（每个请求一个新线程，缓存无法复用）。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/14 9:30
+ */
+public final class VirtualThreads {
+    private static final MethodHandle IS_VIRTUAL;
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle FACTORY;
+    private static final MethodHandle NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle isVirtual = null;
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle factory = null;
+        MethodHandle newExecutor = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass));
+            name = lookup.findVirtual(ofVirtualClass, "name", MethodType.methodType(ofVirtualClass, String.class, long.class));
+            factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+            newExecutor = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+        } catch (ReflectiveOperationException e) {
+            isVirtual = null;
+        }
+        IS_VIRTUAL = isVirtual;
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return IS_VIRTUAL != null;
+    }
+
+    /**
+     * 当前线程是否为虚拟线程
+     */
+    public static boolean isVirtual() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * 功能描述: 虚拟线程工厂，线程名为 prefix + 序号
+     *
+     * @throws IllegalStateException 当前JDK不支持虚拟线程
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        checkSupported();
+        try {
+            Object builder = OF_VIRTUAL.invoke();
+            builder = NAME.invoke(builder, prefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (Throwable e) {
+            throw new IllegalStateException("创建虚拟线程工厂失败", e);
+        }
+    }
+
+    /**
+     * 功能描述: 每个任务一个虚拟线程的执行器，不限制并发数，需要限流时由调用方控制
+     *
+     * @throws IllegalStateException 当前JDK不支持虚拟线程
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        ThreadFactory factory = newThreadFactory(prefix);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(factory);
+        } catch (Throwable e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
+
+    private static void checkSupported() {
+        if (!isSupported()) {
+            throw new IllegalStateException("当前JDK不支持虚拟线程，需要JDK 21+，当前：" + System.getProperty("java.version"));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.lmx.framework.redis.config;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionProvider;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 功能描述: 手动刷新批量写出的Lettuce连接工厂（连接模式 shared-batch）
+ * <pre>
+ *  创建的连接（pub/sub连接除外）关闭自动刷新，命令先积攒在连接的缓冲区中，
+ *  由一个刷新线程每 flushIntervalMicros 微秒对所有连接调用一次 flushCommands()，一次系统调用写出一批命令。
+ *  同步调用的延迟最多增加一个刷新周期；并发越高，每批的命令越多，节省的系统调用与网络包越多。
+ *
+ *  原生连接固定为共享，连接池（若配置）创建的独占连接同样由刷新线程刷新；不支持集群模式。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/17 10:00
+ */
+@Slf4j
+public class BatchingLettuceConnectionFactory extends LettuceConnectionFactory {
+    private final long flushIntervalNanos;
+
+    /**
+     * 关闭了自动刷新、需要定期刷新的连接
+     */
+    private final List<StatefulConnection<?, ?>> connections = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public BatchingLettuceConnectionFactory(RedisStandaloneConfiguration configuration, LettuceClientConfiguration clientConfiguration, long flushIntervalMicros) {
+        super(configuration, clientConfiguration);
+        this.flushIntervalNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(flushIntervalMicros, 1));
+        setShareNativeConnection(true);
+    }
+
+    public BatchingLettuceConnectionFactory(RedisSentinelConfiguration configuration, LettuceClientConfiguration clientConfiguration, long flushIntervalMicros) {
+        super(configuration, clientConfiguration);
+        this.flushIntervalNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(flushIntervalMicros, 1));
+        setShareNativeConnection(true);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        running = true;
+        flusher = new Thread(this::flushLoop, "redis-batch-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        super.afterPropertiesSet();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+        }
+        flush();
+        super.destroy();
+    }
+
+    @Override
+    protected LettuceConnectionProvider doCreateConnectionProvider(AbstractRedisClient client, RedisCodec<?, ?> codec) {
+        return new BatchingConnectionProvider(super.doCreateConnectionProvider(client, codec));
+    }
+
+    /**
+     * 当前需要定期刷新的连接数
+     */
+    public int getBatchingConnectionCount() {
+        return connections.size();
+    }
+
+    private void flushLoop() {
+        while (running) {
+            flush();
+            LockSupport.parkNanos(this, flushIntervalNanos);
+        }
+    }
+
+    private void flush() {
+        for (StatefulConnection<?, ?> connection : connections) {
+            if (!connection.isOpen()) {
+                connections.remove(connection);
+                continue;
+            }
+            try {
+                connection.flushCommands();
+            } catch (RuntimeException e) {
+                log.warn("刷新Redis连接失败", e);
+            }
+        }
+    }
+
+    /**
+     * 为新建的连接关闭自动刷新并登记到刷新线程
+     */
+    private final class BatchingConnectionProvider implements LettuceConnectionProvider, DisposableBean {
+        private final LettuceConnectionProvider delegate;
+
+        private BatchingConnectionProvider(LettuceConnectionProvider delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public <T extends StatefulConnection<?, ?>> T getConnection(Class<T> connectionType) {
+            return manual(delegate.getConnection(connectionType));
+        }
+
+        @Override
+        public <T extends StatefulConnection<?, ?>> CompletionStage<T> getConnectionAsync(Class<T> connectionType) {
+            return delegate.getConnectionAsync(connectionType).thenApply(this::manual);
+        }
+
+        @Override
+        public void release(StatefulConnection<?, ?> connection) {
+            unregister(connection);
+            delegate.release(connection);
+        }
+
+        @Override
+        public CompletableFuture<Void> releaseAsync(StatefulConnection<?, ?> connection) {
+            unregister(connection);
+            return delegate.releaseAsync(connection);
+        }
+
+        @Override
+        public void destroy() throws Exception {
+            if (delegate instanceof DisposableBean) {
+                ((DisposableBean) delegate).destroy();
+            }
+        }
+
+        private <T extends StatefulConnection<?, ?>> T manual(T connection) {
+            // 订阅命令需要立即写出，pub/sub连接保持自动刷新
+            if (!(connection instanceof StatefulRedisPubSubConnection)) {
+                connection.setAutoFlushCommands(false);
+                connections.add(connection);
+            }
+            return connection;
+        }
+
+        /**
+         * 归还前写出剩余命令并恢复自动刷新
+         */
+        private void unregister(StatefulConnection<?, ?> connection) {
+            if (connections.remove(connection)) {
+                connection.flushCommands();
+                connection.setAutoFlushCommands(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.lmx.framework.redis.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lmx.framework.redis.concurrent.VirtualThreads;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 功能描述: 执行器配置
+ * <pre>
+ *  LockAspect 异步加锁未能立即完成时，在专用执行器上执行业务方法，不占用Redis客户端的IO线程与 ForkJoinPool.commonPool()。
+ *  demo.executor.virtual-threads 为true时（需要JDK 21+）使用虚拟线程，否则使用 demo.executor.lock-aspect-threads 个平台线程，
+ *  队列不设上限，避免已拿到的锁因任务被拒绝而无人释放。
+ *
+ *  阻塞式的 RedisClientTemplate / DistributedLock 本身不需要额外配置即可在虚拟线程上调用，
+ *  连接池大小见 application-virtual.yml。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/14 10:00
+ */
+@Slf4j
+@Configuration
+public class ExecutorConfiguration {
+    /**
+     * LockAspect 异步路径执行器的bean名称
+     */
+    public static final String LOCK_ASPECT_EXECUTOR = "lockAspectExecutor";
+
+    /**
+     * @param threads 平台线程数，不大于0时为CPU核数的2倍
+     */
+    @Bean(name = LOCK_ASPECT_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService lockAspectExecutor(@Value("${demo.executor.virtual-threads:false}") boolean virtualThreads,
+                                              @Value("${demo.executor.lock-aspect-threads:0}") int threads) {
+        if (virtualThreads) {
+            ExecutorService executor = VirtualThreads.newExecutor("lock-aspect-");
+            log.info("LockAspect 使用虚拟线程执行器");
+            return executor;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-aspect-");
+        threadFactory.setDaemon(true);
+        return Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors() * 2, threadFactory);
+    }
+}
@@ -0,0 +1,59 @@
+package org.lmx.framework.redis.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+
+/**
+ * 功能描述: 按 demo.redis.connection.mode 调整SpringBoot创建的Lettuce连接工厂
+ * <pre>
+ *  在连接工厂初始化之前处理，主机、密码、超时、连接池等仍由 spring.redis.* 配置：
+ *   shared        默认，不做任何改动，保持SpringBoot原有的共享原生连接；
+ *   pooled        显式配置时才关闭原生连接共享，每个操作借出连接池中的连接；
+ *   shared-batch  以相同配置替换为 {@link BatchingLettuceConnectionFactory}，集群模式下退回 shared。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/17 10:30
+ */
+@Slf4j
+public class LettuceConnectionModePostProcessor implements BeanPostProcessor {
+    private final RedisConnectionMode mode;
+    private final long flushIntervalMicros;
+
+    public LettuceConnectionModePostProcessor(Environment environment) {
+        this.mode = RedisConnectionMode.of(environment.getProperty("demo.redis.connection.mode", RedisConnectionMode.SHARED.getValue()));
+        this.flushIntervalMicros = environment.getProperty("demo.redis.connection.flush-interval-micros", Long.class, 200L);
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (!(bean instanceof LettuceConnectionFactory) || bean instanceof BatchingLettuceConnectionFactory) {
+            return bean;
+        }
+        LettuceConnectionFactory factory = (LettuceConnectionFactory) bean;
+        switch (mode) {
+            case POOLED:
+                if (!(factory.getClientConfiguration() instanceof LettucePoolingClientConfiguration)) {
+                    log.warn("连接模式为pooled，但未配置 spring.redis.lettuce.pool，每个操作将新建连接");
+                }
+                factory.setShareNativeConnection(false);
+                return factory;
+            case SHARED:
+                return factory;
+            default:
+                if (factory.isClusterAware()) {
+                    log.warn("集群模式不支持shared-batch连接模式，使用shared");
+                    factory.setShareNativeConnection(true);
+                    return factory;
+                }
+                log.info("Redis连接模式：shared-batch，刷新周期 {}us", flushIntervalMicros);
+                if (factory.isRedisSentinelAware()) {
+                    return new BatchingLettuceConnectionFactory(factory.getSentinelConfiguration(), factory.getClientConfiguration(), flushIntervalMicros);
+                }
+                return new BatchingLettuceConnectionFactory(factory.getStandaloneConfiguration(), factory.getClientConfiguration(), flushIntervalMicros);
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package org.lmx.framework.redis.config;
 
+import org.lmx.framework.redis.cache.CacheInvalidationBus;
+import org.lmx.framework.redis.cache.NearCache;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 功能描述: Redis连接池配置
@@ -16,11 +29,48 @@ import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 @Configuration
 @ConditionalOnExpression("${demo.redis.enabled:false}")
 public class RedisConfiguration {
+    /**
+     * 需要消息监听器容器的配置：过期事件、原生锁；失效总线使用自己的容器
+     */
+    private static final String LISTENER_CONDITION = "${demo.redis.event-notice:false} or '${demo.lock.locker-type:redis}' == 'native'";
+
+    private static final String LISTENER_EXECUTOR = "redisListenerExecutor";
+
+    /**
+     * Lettuce 连接模式（pooled / shared / shared-batch），通过{demo.redis.connection.mode}配置项选择
+     */
     @Bean
-    @ConditionalOnExpression("${demo.redis.event-notice:false}")
-    RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+    public static LettuceConnectionModePostProcessor lettuceConnectionModePostProcessor(Environment environment) {
+        return new LettuceConnectionModePostProcessor(environment);
+    }
+
+    /**
+     * 消息监听器容器的分发线程池：固定 threads 个线程，队列 queue-capacity，队列满时由接收线程直接执行（反压，不丢消息）。
+     * 未设置时容器默认使用 SimpleAsyncTaskExecutor，每条消息新建一个线程，突发消息下线程数不受控。
+     */
+    @Bean(LISTENER_EXECUTOR)
+    @ConditionalOnExpression(LISTENER_CONDITION)
+    ThreadPoolTaskExecutor redisListenerExecutor(@Value("${demo.redis.listener.threads:4}") int threads,
+                                                 @Value("${demo.redis.listener.queue-capacity:10000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(threads, 1));
+        executor.setMaxPoolSize(Math.max(threads, 1));
+        executor.setQueueCapacity(Math.max(queueCapacity, 0));
+        executor.setThreadNamePrefix("redis-listener-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    @Bean
+    @ConditionalOnExpression(LISTENER_CONDITION)
+    RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                @Qualifier(LISTENER_EXECUTOR) ThreadPoolTaskExecutor redisListenerExecutor) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(redisListenerExecutor);
+        // 订阅任务单独一个线程，不占用分发线程池
+        container.setSubscriptionExecutor(new SimpleAsyncTaskExecutor("redis-subscription-"));
         return container;
     }
 
@@ -31,6 +81,41 @@ public class RedisConfiguration {
         return template;
     }
 
+    /**
+     * 响应式String模板，供 ReactiveRedisClientTemplate 使用，需要引入reactor（Lettuce已依赖）
+     */
+    @Bean
+    @ConditionalOnClass(name = "reactor.core.publisher.Flux")
+    public ReactiveStringRedisTemplate reactiveStringRedisTemplate(ReactiveRedisConnectionFactory reactiveRedisConnectionFactory) {
+        return new ReactiveStringRedisTemplate(reactiveRedisConnectionFactory);
+    }
+
+    /**
+     * 近端缓存（L1），通过{demo.redis.near-cache.enabled}配置项开启
+     */
+    @Bean
+    @ConditionalOnExpression("${demo.redis.near-cache.enabled:false}")
+    public NearCache nearCache(@Value("${demo.redis.near-cache.max-size:10000}") int maxSize,
+                               @Value("${demo.redis.near-cache.ttl:60}") long ttl) {
+        return new NearCache(maxSize, ttl, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 本地缓存失效总线，通过{demo.redis.invalidation-bus.enabled}配置项开启，开启近端缓存时一并开启；
+     * InvalidationListener Bean（包括 NearCache）自动注册
+     */
+    @Bean
+    @ConditionalOnExpression("${demo.redis.invalidation-bus.enabled:false} or ${demo.redis.near-cache.enabled:false}")
+    public CacheInvalidationBus cacheInvalidationBus(StringRedisTemplate stringRedisTemplate,
+                                                     RedisConnectionFactory connectionFactory,
+                                                     @Value("${demo.redis.invalidation-bus.window-millis:10}") long windowMillis,
+                                                     @Value("${demo.redis.invalidation-bus.max-batch:500}") int maxBatch,
+                                                     @Value("${demo.redis.invalidation-bus.heartbeat-millis:5000}") long heartbeatMillis) {
+        CacheInvalidationBus bus = new CacheInvalidationBus(stringRedisTemplate, windowMillis, maxBatch, heartbeatMillis);
+        bus.subscribe(connectionFactory);
+        return bus;
+    }
+
     /**
      * jackson 序列化API
      * @param factory
@@ -0,0 +1,40 @@
+package org.lmx.framework.redis.config;
+
+/**
+ * 功能描述: Lettuce 连接模式，通过 demo.redis.connection.mode 配置
+ * <pre>
+ *  SHARED       默认，所有线程共用一个原生连接，命令多路复用、逐条写出，连接池只用于事务、pipeline与阻塞命令（原有模式）；
+ *  POOLED       每个操作从连接池借出独占连接，并发受 spring.redis.lettuce.pool.max-active 限制，需显式配置；
+ *  SHARED_BATCH 在 SHARED 基础上关闭自动刷新，由刷新线程每 flush-interval-micros 微秒把积攒的命令一次写出，
+ *               以最多一个刷新周期的延迟换取更少的系统调用与网络包。
+ *
+ *  三种模式对 RedisClientTemplate 透明，只影响连接工厂。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/17 9:30
+ */
+public enum RedisConnectionMode {
+    POOLED("pooled"),
+    SHARED("shared"),
+    SHARED_BATCH("shared-batch");
+
+    private final String value;
+
+    RedisConnectionMode(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static RedisConnectionMode of(String value) {
+        for (RedisConnectionMode mode : values()) {
+            if (mode.value.equalsIgnoreCase(value.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("未知的连接模式：" + value + "，可选 pooled、shared、shared-batch");
+    }
+}
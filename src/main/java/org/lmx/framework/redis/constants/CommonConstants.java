@@ -27,4 +27,9 @@ public interface CommonConstants {
      * 锁前缀
      */
     String PREFIX = "lock:";
+
+    /**
+     * 信号量前缀
+     */
+    String SEMAPHORE_PREFIX = "semaphore:";
 }
@@ -0,0 +1,49 @@
+package org.lmx.framework.redis.delay;
+
+/**
+ * 功能描述: 到期被领取的延迟任务
+ *
+ * @author LM.X
+ * @date 2020/8/19 9:30
+ */
+public final class DelayedTask {
+    private final String topic;
+    private final String id;
+    private final String payload;
+    private final long dueAt;
+    private final int attempts;
+
+    DelayedTask(String topic, String id, String payload, long dueAt, int attempts) {
+        this.topic = topic;
+        this.id = id;
+        this.payload = payload;
+        this.dueAt = dueAt;
+        this.attempts = attempts;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * 到期时间（Redis服务端时间，毫秒）；重投的任务为重新入队的时间
+     */
+    public long getDueAt() {
+        return dueAt;
+    }
+
+    /**
+     * 第几次投递，从1开始
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,29 @@
+package org.lmx.framework.redis.delay;
+
+/**
+ * 功能描述: 延迟任务处理器
+ * <pre>
+ *  注册为Spring Bean即可（或调用 {@link DelayedTaskQueue#register}），每个topic一个处理器。
+ *  处理正常返回即确认；抛出异常则不确认，可见性超时后重新投递，超过最大投递次数后转入死信队列。
+ *  投递语义为至少一次，处理需幂等。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/19 9:40
+ */
+public interface DelayedTaskHandler {
+
+    /**
+     * 功能描述: 处理的任务主题
+     *
+     * @return topic
+     */
+    String topic();
+
+    /**
+     * 功能描述: 处理一个到期任务
+     *
+     * @param task 任务
+     */
+    void handle(DelayedTask task);
+}
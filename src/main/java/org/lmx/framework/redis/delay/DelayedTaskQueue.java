@@ -0,0 +1,549 @@
+package org.lmx.framework.redis.delay;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 功能描述: 基于有序集合的可靠延迟任务队列
+ * <pre>
+ *  替代“key过期 + 过期通知”的定时方式（通知不可靠，大keyspace下触发滞后）。每个topic分为 shards 个分片，
+ *  任务按id哈希到分片，每个分片由以下key组成（{topic:分片} 为集群hash tag，同一分片的key在同一节点）：
+ *
+ *      delay:{topic:i}:queue     ZSET 待执行，score为到期时间
+ *      delay:{topic:i}:inflight  ZSET 已领取未确认，score为可见性超时时间
+ *      delay:{topic:i}:data      HASH id -> payload
+ *      delay:{topic:i}:attempts  HASH id -> 投递次数
+ *      delay:{topic:i}:dead      ZSET 超过最大投递次数的任务，score为转入时间（payload保留在data中）
+ *
+ *  领取由一个Lua脚本原子完成：先把可见性超时的任务放回queue（重新投递），再取出最多 batchSize 个到期任务移入inflight，
+ *  并返回最早的下一个到期时间。时间均取Redis服务端的TIME。
+ *  inflight中的score（可见性截止时间）同时作为本次投递的凭证：处理成功后批量确认，只有inflight中的score仍等于本次领取时的值
+ *  才删除inflight与data。处理器内以相同id重新安排的任务（已移回queue）、确认前已超时重投或被其它节点再次领取的任务都不受影响。
+ *
+ *  死信可通过 {@link #deadLetters} 查看、{@link #requeueDead} 重新入队、{@link #cancel} 删除；
+ *  deadLetterTtlMillis 大于0时，转入死信超过该时间的任务在领取时顺带清理。
+ *
+ *  workers 个工作线程各自负责一部分分片，没有到期任务时按下一个到期时间休眠（在 minPollMillis~maxPollMillis 之间），
+ *  领取到整批时立即继续；本节点新增的近期任务会唤醒工作线程。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/19 10:00
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${demo.redis.enabled:false} && ${demo.redis.delay-queue.enabled:false}")
+public class DelayedTaskQueue implements SmartInitializingSingleton, DisposableBean {
+    /**
+     * Key前缀
+     */
+    public static final String PREFIX = "delay:";
+
+    /**
+     * 新增任务，KEYS: queue, inflight, data, attempts, dead；ARGV: 依次为 id, payload, 延迟毫秒 的三元组
+     */
+    private static final RedisScript<Long> SCHEDULE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands(); " +
+                    "local t = redis.call('TIME'); " +
+                    "local now = t[1] * 1000 + math.floor(t[2] / 1000); " +
+                    "for i = 1, #ARGV, 3 do " +
+                    "local id = ARGV[i]; " +
+                    "redis.call('HSET', KEYS[3], id, ARGV[i + 1]); " +
+                    "redis.call('HDEL', KEYS[4], id); " +
+                    "redis.call('ZREM', KEYS[2], id); " +
+                    "redis.call('ZREM', KEYS[5], id); " +
+                    "redis.call('ZADD', KEYS[1], now + tonumber(ARGV[i + 2]), id); " +
+                    "end; " +
+                    "return now;", Long.class);
+
+    /**
+     * 领取到期任务，KEYS: queue, inflight, data, attempts, dead；ARGV: 批大小, 可见性超时毫秒, 最大投递次数, 死信保留毫秒
+     * 返回 { 服务端时间, 下一个到期时间(-1表示没有), id, payload, 到期时间, 投递次数, 可见性截止时间, ... }
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands(); " +
+                    "local batch = tonumber(ARGV[1]); " +
+                    "local visibility = tonumber(ARGV[2]); " +
+                    "local maxAttempts = tonumber(ARGV[3]); " +
+                    "local deadTtl = tonumber(ARGV[4]); " +
+                    "local t = redis.call('TIME'); " +
+                    "local now = t[1] * 1000 + math.floor(t[2] / 1000); " +
+                    "if deadTtl > 0 then " +
+                    "local stale = redis.call('ZRANGEBYSCORE', KEYS[5], '-inf', now - deadTtl, 'LIMIT', 0, batch); " +
+                    "for i = 1, #stale do " +
+                    "redis.call('ZREM', KEYS[5], stale[i]); " +
+                    "redis.call('HDEL', KEYS[3], stale[i]); " +
+                    "end; " +
+                    "end; " +
+                    "local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', now, 'LIMIT', 0, batch); " +
+                    "for i = 1, #expired do " +
+                    "redis.call('ZREM', KEYS[2], expired[i]); " +
+                    "redis.call('ZADD', KEYS[1], now, expired[i]); " +
+                    "end; " +
+                    "local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', now, 'WITHSCORES', 'LIMIT', 0, batch); " +
+                    "local deadline = now + visibility; " +
+                    "local result = { tostring(now), '-1' }; " +
+                    "for i = 1, #due, 2 do " +
+                    "local id = due[i]; " +
+                    "redis.call('ZREM', KEYS[1], id); " +
+                    "local payload = redis.call('HGET', KEYS[3], id); " +
+                    "if payload then " +
+                    "local attempts = redis.call('HINCRBY', KEYS[4], id, 1); " +
+                    "if attempts > maxAttempts then " +
+                    "redis.call('HDEL', KEYS[4], id); " +
+                    "redis.call('ZADD', KEYS[5], now, id); " +
+                    "else " +
+                    "redis.call('ZADD', KEYS[2], deadline, id); " +
+                    "table.insert(result, id); " +
+                    "table.insert(result, payload); " +
+                    "table.insert(result, due[i + 1]); " +
+                    "table.insert(result, tostring(attempts)); " +
+                    "table.insert(result, tostring(deadline)); " +
+                    "end; " +
+                    "end; " +
+                    "end; " +
+                    "local head = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES'); " +
+                    "if #head > 0 then result[2] = head[2]; end; " +
+                    "return result;", List.class);
+
+    /**
+     * 确认，KEYS: queue, inflight, data, attempts；ARGV: 依次为 id, 领取时的可见性截止时间 的二元组
+     * inflight中的score与之不符（已重新安排、超时重投或被再次领取）时不做任何修改，返回确认成功的个数
+     */
+    private static final RedisScript<Long> ACK_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0; " +
+                    "for i = 1, #ARGV, 2 do " +
+                    "local id = ARGV[i]; " +
+                    "local score = redis.call('ZSCORE', KEYS[2], id); " +
+                    "if score and tonumber(score) == tonumber(ARGV[i + 1]) then " +
+                    "redis.call('ZREM', KEYS[2], id); " +
+                    "if not redis.call('ZSCORE', KEYS[1], id) then " +
+                    "redis.call('HDEL', KEYS[3], id); " +
+                    "redis.call('HDEL', KEYS[4], id); " +
+                    "end; " +
+                    "n = n + 1; " +
+                    "end; " +
+                    "end; " +
+                    "return n;", Long.class);
+
+    /**
+     * 取消，KEYS: queue, inflight, data, attempts, dead；ARGV: id...
+     */
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0; " +
+                    "for i = 1, #ARGV do " +
+                    "n = n + redis.call('ZREM', KEYS[1], ARGV[i]) + redis.call('ZREM', KEYS[2], ARGV[i]) + redis.call('ZREM', KEYS[5], ARGV[i]); " +
+                    "redis.call('HDEL', KEYS[3], ARGV[i]); " +
+                    "redis.call('HDEL', KEYS[4], ARGV[i]); " +
+                    "end; " +
+                    "return n;", Long.class);
+
+    /**
+     * 死信重新入队，KEYS: queue, inflight, data, attempts, dead；ARGV: id, 延迟毫秒
+     */
+    private static final RedisScript<Long> REQUEUE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands(); " +
+                    "if redis.call('ZREM', KEYS[5], ARGV[1]) == 0 or redis.call('HEXISTS', KEYS[3], ARGV[1]) == 0 then " +
+                    "return 0; " +
+                    "end; " +
+                    "local t = redis.call('TIME'); " +
+                    "local now = t[1] * 1000 + math.floor(t[2] / 1000); " +
+                    "redis.call('HDEL', KEYS[4], ARGV[1]); " +
+                    "redis.call('ZADD', KEYS[1], now + tonumber(ARGV[2]), ARGV[1]); " +
+                    "return 1;", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final int shards;
+    private final int workers;
+    private final int batchSize;
+    private final long visibilityMillis;
+    private final int maxAttempts;
+    private final long deadLetterTtlMillis;
+    private final long minPollMillis;
+    private final long maxPollMillis;
+
+    /**
+     * topic -> 处理器
+     */
+    private final Map<String, DelayedTaskHandler> handlers = new ConcurrentHashMap<>();
+
+    /**
+     * 已注册处理器的全部分片，第i个分片由第 i % workers 个工作线程负责
+     */
+    private final List<Shard> activeShards = new CopyOnWriteArrayList<>();
+
+    private final List<Thread> workerThreads = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+
+    private final LongAdder scheduledCount = new LongAdder();
+    private final LongAdder firedCount = new LongAdder();
+    private final LongAdder redeliveredCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder staleAckCount = new LongAdder();
+
+    /**
+     * 一个分片的key
+     */
+    private static final class Shard {
+        private final String topic;
+        private final List<String> keys;
+
+        private Shard(String topic, int index) {
+            this.topic = topic;
+            String base = PREFIX + "{" + topic + ":" + index + "}:";
+            this.keys = Arrays.asList(base + "queue", base + "inflight", base + "data", base + "attempts", base + "dead");
+        }
+
+        private List<String> taskKeys() {
+            return keys.subList(0, 4);
+        }
+    }
+
+    /**
+     * @param redisTemplate     StringRedisTemplate
+     * @param shards            每个topic的分片数
+     * @param workers           工作线程数
+     * @param batchSize         单次领取的最大任务数
+     * @param visibilityMillis  领取后未确认的任务经过该时间后重新投递
+     * @param maxAttempts       最大投递次数，超过后转入死信队列
+     * @param deadLetterTtlMillis 死信保留时间，超过后删除，不大于0时一直保留
+     * @param minPollMillis     最短轮询间隔
+     * @param maxPollMillis     最长轮询间隔，也是其它节点新增的任务最晚被发现的时间
+     */
+    @Autowired
+    public DelayedTaskQueue(StringRedisTemplate redisTemplate,
+                            @Value("${demo.redis.delay-queue.shards:8}") int shards,
+                            @Value("${demo.redis.delay-queue.workers:4}") int workers,
+                            @Value("${demo.redis.delay-queue.batch-size:100}") int batchSize,
+                            @Value("${demo.redis.delay-queue.visibility-timeout:30000}") long visibilityMillis,
+                            @Value("${demo.redis.delay-queue.max-attempts:16}") int maxAttempts,
+                            @Value("${demo.redis.delay-queue.dead-letter-ttl:604800000}") long deadLetterTtlMillis,
+                            @Value("${demo.redis.delay-queue.min-poll-millis:10}") long minPollMillis,
+                            @Value("${demo.redis.delay-queue.max-poll-millis:1000}") long maxPollMillis) {
+        this.redisTemplate = redisTemplate;
+        this.shards = Math.max(shards, 1);
+        this.workers = Math.max(workers, 1);
+        this.batchSize = Math.max(batchSize, 1);
+        this.visibilityMillis = visibilityMillis;
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.deadLetterTtlMillis = Math.max(deadLetterTtlMillis, 0);
+        this.minPollMillis = Math.max(minPollMillis, 1);
+        this.maxPollMillis = Math.max(maxPollMillis, this.minPollMillis);
+    }
+
+    @Autowired(required = false)
+    public void setHandlers(List<DelayedTaskHandler> handlers) {
+        for (DelayedTaskHandler handler : handlers) {
+            register(handler);
+        }
+    }
+
+    /**
+     * 功能描述: 注册topic的处理器，本节点开始消费该topic
+     */
+    public void register(DelayedTaskHandler handler) {
+        if (handlers.putIfAbsent(handler.topic(), handler) != null) {
+            throw new IllegalStateException("延迟任务topic重复注册：" + handler.topic());
+        }
+        for (int i = 0; i < shards; i++) {
+            activeShards.add(new Shard(handler.topic(), i));
+        }
+        wakeUp();
+    }
+
+    /**
+     * 功能描述: 新增或重新安排一个延迟任务，id相同的任务会被覆盖
+     *
+     * @param topic   任务主题
+     * @param id      任务id，如订单号
+     * @param payload 任务内容
+     * @param delay   延迟时间
+     * @param unit    时间单位
+     * @return 到期时间（Redis服务端时间，毫秒）
+     */
+    public long schedule(String topic, String id, String payload, long delay, TimeUnit unit) {
+        long delayMillis = Math.max(unit.toMillis(delay), 0);
+        Long now = redisTemplate.execute(SCHEDULE_SCRIPT, shard(topic, id).keys, id, payload, String.valueOf(delayMillis));
+        scheduledCount.increment();
+        if (delayMillis < maxPollMillis) {
+            wakeUp();
+        }
+        return (now == null ? System.currentTimeMillis() : now) + delayMillis;
+    }
+
+    /**
+     * 功能描述: 批量新增延迟时间相同的任务，按分片合并为每个分片一次脚本调用
+     *
+     * @param topic    任务主题
+     * @param payloads id -> payload
+     * @param delay    延迟时间
+     * @param unit     时间单位
+     */
+    public void scheduleAll(String topic, Map<String, String> payloads, long delay, TimeUnit unit) {
+        String delayMillis = String.valueOf(Math.max(unit.toMillis(delay), 0));
+        List<List<String>> args = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            args.add(new ArrayList<>());
+        }
+        for (Map.Entry<String, String> entry : payloads.entrySet()) {
+            List<String> shardArgs = args.get(shardIndex(entry.getKey()));
+            shardArgs.add(entry.getKey());
+            shardArgs.add(entry.getValue());
+            shardArgs.add(delayMillis);
+        }
+        for (int i = 0; i < shards; i++) {
+            List<String> shardArgs = args.get(i);
+            if (!shardArgs.isEmpty()) {
+                redisTemplate.execute(SCHEDULE_SCRIPT, new Shard(topic, i).keys, shardArgs.toArray());
+            }
+        }
+        scheduledCount.add(payloads.size());
+        if (unit.toMillis(delay) < maxPollMillis) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * 功能描述: 取消任务（待执行、已领取未确认或死信）
+     *
+     * @return 任务是否存在
+     */
+    public boolean cancel(String topic, String id) {
+        Long removed = redisTemplate.execute(REMOVE_SCRIPT, shard(topic, id).keys, id);
+        return removed != null && removed > 0;
+    }
+
+    /**
+     * 功能描述: 查看死信，每个分片最多取 limit 个，按转入死信的时间排序
+     *
+     * @return 死信任务，dueAt 为转入死信的时间，attempts 为最大投递次数
+     */
+    public List<DelayedTask> deadLetters(String topic, int limit) {
+        List<DelayedTask> tasks = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            Shard shard = new Shard(topic, i);
+            Set<ZSetOperations.TypedTuple<String>> dead = redisTemplate.opsForZSet().rangeWithScores(shard.keys.get(4), 0, limit - 1);
+            if (dead == null || dead.isEmpty()) {
+                continue;
+            }
+            List<Object> ids = new ArrayList<>(dead.size());
+            for (ZSetOperations.TypedTuple<String> tuple : dead) {
+                ids.add(tuple.getValue());
+            }
+            List<Object> payloads = redisTemplate.opsForHash().multiGet(shard.keys.get(2), ids);
+            int index = 0;
+            for (ZSetOperations.TypedTuple<String> tuple : dead) {
+                Object payload = payloads.get(index++);
+                Double score = tuple.getScore();
+                tasks.add(new DelayedTask(topic, tuple.getValue(), payload == null ? null : String.valueOf(payload),
+                        score == null ? 0 : score.longValue(), maxAttempts));
+            }
+        }
+        tasks.sort(Comparator.comparingLong(DelayedTask::getDueAt));
+        return tasks.size() > limit ? new ArrayList<>(tasks.subList(0, limit)) : tasks;
+    }
+
+    /**
+     * 功能描述: 死信重新入队，投递次数清零
+     *
+     * @return 死信是否存在
+     */
+    public boolean requeueDead(String topic, String id, long delay, TimeUnit unit) {
+        long delayMillis = Math.max(unit.toMillis(delay), 0);
+        Long requeued = redisTemplate.execute(REQUEUE_SCRIPT, shard(topic, id).keys, id, String.valueOf(delayMillis));
+        if (requeued == null || requeued == 0) {
+            return false;
+        }
+        if (delayMillis < maxPollMillis) {
+            wakeUp();
+        }
+        return true;
+    }
+
+    /**
+     * 功能描述: 死信数
+     */
+    public long deadSize(String topic) {
+        long size = 0;
+        for (int i = 0; i < shards; i++) {
+            Long n = redisTemplate.opsForZSet().zCard(new Shard(topic, i).keys.get(4));
+            size += n == null ? 0 : n;
+        }
+        return size;
+    }
+
+    /**
+     * 功能描述: 待执行的任务数（不含已领取未确认的）
+     */
+    public long size(String topic) {
+        long size = 0;
+        for (int i = 0; i < shards; i++) {
+            Long n = redisTemplate.opsForZSet().zCard(new Shard(topic, i).keys.get(0));
+            size += n == null ? 0 : n;
+        }
+        return size;
+    }
+
+    private Shard shard(String topic, String id) {
+        return new Shard(topic, shardIndex(id));
+    }
+
+    private int shardIndex(String id) {
+        return (id.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        start();
+    }
+
+    /**
+     * 功能描述: 启动工作线程，重复调用无效
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            int worker = i;
+            Thread thread = new Thread(() -> work(worker), "redis-delay-queue-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workerThreads.add(thread);
+        }
+    }
+
+    private void wakeUp() {
+        for (Thread thread : workerThreads) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void work(int worker) {
+        while (running) {
+            long sleepMillis = maxPollMillis;
+            boolean full = false;
+            try {
+                List<Shard> snapshot = activeShards;
+                for (int i = worker; i < snapshot.size(); i += workers) {
+                    long[] next = new long[1];
+                    int claimed = poll(snapshot.get(i), next);
+                    full |= claimed >= batchSize;
+                    if (next[0] >= 0) {
+                        sleepMillis = Math.min(sleepMillis, next[0]);
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.error("领取延迟任务失败", e);
+            }
+            if (!full && running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.max(sleepMillis, minPollMillis)));
+            }
+        }
+    }
+
+    /**
+     * 功能描述: 领取一个分片的到期任务并交给处理器
+     *
+     * @param next 输出到下一个任务到期还需等待的毫秒数，没有任务时为-1
+     * @return 领取的任务数
+     */
+    @SuppressWarnings("unchecked")
+    private int poll(Shard shard, long[] next) {
+        List<Object> result = redisTemplate.execute(CLAIM_SCRIPT, shard.keys,
+                String.valueOf(batchSize), String.valueOf(visibilityMillis), String.valueOf(maxAttempts), String.valueOf(deadLetterTtlMillis));
+        if (result == null || result.size() < 2) {
+            next[0] = -1;
+            return 0;
+        }
+        long now = Long.parseLong(String.valueOf(result.get(0)));
+        long nextDue = (long) Double.parseDouble(String.valueOf(result.get(1)));
+        next[0] = nextDue < 0 ? -1 : Math.max(nextDue - now, 0);
+
+        DelayedTaskHandler handler = handlers.get(shard.topic);
+        List<String> acked = new ArrayList<>();
+        int claimed = (result.size() - 2) / 5;
+        for (int i = 2; i + 4 < result.size(); i += 5) {
+            DelayedTask task = new DelayedTask(shard.topic, String.valueOf(result.get(i)), String.valueOf(result.get(i + 1)),
+                    (long) Double.parseDouble(String.valueOf(result.get(i + 2))), Integer.parseInt(String.valueOf(result.get(i + 3))));
+            if (task.getAttempts() > 1) {
+                redeliveredCount.increment();
+            }
+            try {
+                handler.handle(task);
+                acked.add(task.getId());
+                acked.add(String.valueOf(result.get(i + 4)));
+                firedCount.increment();
+            } catch (RuntimeException e) {
+                failedCount.increment();
+                log.error("延迟任务处理失败，topic：{} id：{} 第{}次投递", shard.topic, task.getId(), task.getAttempts(), e);
+            }
+        }
+        if (!acked.isEmpty()) {
+            Long confirmed = redisTemplate.execute(ACK_SCRIPT, shard.taskKeys(), acked.toArray());
+            long stale = acked.size() / 2 - (confirmed == null ? 0 : confirmed);
+            if (stale > 0) {
+                staleAckCount.add(stale);
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        wakeUp();
+    }
+
+    public long getScheduledCount() {
+        return scheduledCount.sum();
+    }
+
+    /**
+     * 处理成功并确认的任务数
+     */
+    public long getFiredCount() {
+        return firedCount.sum();
+    }
+
+    /**
+     * 可见性超时后重新投递的次数
+     */
+    public long getRedeliveredCount() {
+        return redeliveredCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * 确认时已不属于本次投递（处理期间被重新安排、超时重投或再次领取）而未删除的任务数
+     */
+    public long getStaleAckCount() {
+        return staleAckCount.sum();
+    }
+}
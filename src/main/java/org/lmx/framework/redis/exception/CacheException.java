@@ -0,0 +1,15 @@
+package org.lmx.framework.redis.exception;
+
+/**
+ * 功能描述: 缓存注解配置异常
+ *
+ * @author LM.X
+ * @date 2020/8/24 9:50
+ */
+public class CacheException extends RuntimeException {
+    private static final long serialVersionUID = 6127354190683217402L;
+
+    public CacheException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package org.lmx.framework.redis.exception;
+
+/**
+ * 功能描述: 限流异常
+ *
+ * @author LM.X
+ * @date 2020/8/10 9:21
+ */
+public class RateLimitException extends RuntimeException {
+    private static final long serialVersionUID = -3180921378517092356L;
+
+    public RateLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package org.lmx.framework.redis.limiter;
+
+/**
+ * 功能描述: 限流算法
+ *
+ * @author LM.X
+ * @date 2020/8/10 9:30
+ */
+public enum RateLimitAlgorithm {
+    /**
+     * 令牌桶：容量为limit，每个interval匀速补满，允许突发消耗桶内积攒的令牌
+     */
+    TOKEN_BUCKET,
+
+    /**
+     * 滑动窗口：按上一个窗口计数的剩余权重加当前窗口计数估算最近一个interval内的请求数，不超过limit
+     */
+    SLIDING_WINDOW
+}
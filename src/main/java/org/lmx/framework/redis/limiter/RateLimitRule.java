@@ -0,0 +1,69 @@
+package org.lmx.framework.redis.limiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述: 限流规则
+ *
+ * @author LM.X
+ * @date 2020/8/10 9:35
+ */
+public final class RateLimitRule {
+    private final RateLimitAlgorithm algorithm;
+    private final long limit;
+    private final long intervalMillis;
+    private final int prefetch;
+
+    /**
+     * @param algorithm 限流算法
+     * @param limit     每个interval允许通过的请求数
+     * @param interval  时间窗口
+     * @param unit      {@code interval} 的时间单位
+     * @param prefetch  本地预取的令牌数，0表示不预取，每次请求都访问Redis
+     */
+    public RateLimitRule(RateLimitAlgorithm algorithm, long limit, long interval, TimeUnit unit, int prefetch) {
+        if (limit <= 0 || interval <= 0) {
+            throw new IllegalArgumentException("limit and interval must be positive");
+        }
+        this.algorithm = algorithm;
+        this.limit = limit;
+        this.intervalMillis = Math.max(1, unit.toMillis(interval));
+        this.prefetch = Math.max(0, prefetch);
+    }
+
+    public static RateLimitRule tokenBucket(long limit, long interval, TimeUnit unit) {
+        return new RateLimitRule(RateLimitAlgorithm.TOKEN_BUCKET, limit, interval, unit, 0);
+    }
+
+    public static RateLimitRule slidingWindow(long limit, long interval, TimeUnit unit) {
+        return new RateLimitRule(RateLimitAlgorithm.SLIDING_WINDOW, limit, interval, unit, 0);
+    }
+
+    /**
+     * 开启本地预取的同一规则
+     */
+    public RateLimitRule withPrefetch(int prefetch) {
+        return new RateLimitRule(algorithm, limit, intervalMillis, TimeUnit.MILLISECONDS, prefetch);
+    }
+
+    public RateLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + "[" + limit + "/" + intervalMillis + "ms, prefetch=" + prefetch + "]";
+    }
+}
@@ -0,0 +1,35 @@
+package org.lmx.framework.redis.limiter;
+
+/**
+ * 功能描述: 集群限流接口
+ *
+ * @author LM.X
+ * @date 2020/8/10 9:40
+ */
+public interface RateLimiter {
+
+    /**
+     * 功能描述: 尝试获取permits个令牌，不等待
+     *
+     * @param key     限流的key，如租户ID
+     * @param rule    限流规则
+     * @param permits 本次消耗的令牌数
+     * @return 是否放行
+     * @author LM.X
+     * @date 2020/8/10 9:42
+     */
+    boolean tryAcquire(String key, RateLimitRule rule, int permits);
+
+    /**
+     * 功能描述: 尝试获取1个令牌，不等待
+     *
+     * @param key  限流的key，如租户ID
+     * @param rule 限流规则
+     * @return 是否放行
+     * @author LM.X
+     * @date 2020/8/10 9:42
+     */
+    default boolean tryAcquire(String key, RateLimitRule rule) {
+        return tryAcquire(key, rule, 1);
+    }
+}
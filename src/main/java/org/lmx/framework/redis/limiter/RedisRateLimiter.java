@@ -0,0 +1,293 @@
+package org.lmx.framework.redis.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述: 基于Redis Lua脚本的集群限流
+ * <pre>
+ *  每种算法的判断与扣减都在一个Lua脚本内完成，一次往返、原子执行，时间取Redis服务端的TIME，不受各节点时钟差影响。
+ *  脚本一次可以申请“最多N个、至少M个”令牌，返回实际发放的数量。
+ *
+ *  本地预取（rule.prefetch > 0）：本节点令牌用完时向Redis一次租借一批令牌，之后的请求直接在内存中扣减，
+ *  Redis访问量降为原来的 1/prefetch 左右。代价是精度：每个节点最多可能多放行或少放行 prefetch 个请求，
+ *  租借的令牌在一个interval后作废。
+ *  同一key同时只有一个线程向Redis租借，其余未命中的线程等待这次租借完成后再从新批次中扣减；
+ *  租借后仍扣减不到说明Redis上的令牌已经发完，直接拒绝。
+ *  过期的批次在扣减失败时移除，其余长时间未访问的key在租借时顺带清理（最多每秒扫描一次）。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/10 10:00
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${demo.redis.enabled:false}")
+public class RedisRateLimiter implements RateLimiter {
+    /**
+     * Key前缀
+     */
+    public static final String PREFIX = "rate:";
+
+    /**
+     * 令牌桶：hash { tokens, ts }，ARGV: 容量, interval(毫秒), 最多申请数, 最少申请数
+     */
+    private static final RedisScript<Long> TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands(); " +
+                    "local capacity = tonumber(ARGV[1]); " +
+                    "local interval = tonumber(ARGV[2]); " +
+                    "local requested = tonumber(ARGV[3]); " +
+                    "local minimum = tonumber(ARGV[4]); " +
+                    "local t = redis.call('TIME'); " +
+                    "local now = t[1] * 1000 + math.floor(t[2] / 1000); " +
+                    "local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts'); " +
+                    "local tokens = tonumber(state[1]); " +
+                    "local ts = tonumber(state[2]); " +
+                    "if tokens == nil then tokens = capacity; ts = now; end; " +
+                    "tokens = math.min(capacity, tokens + math.max(0, now - ts) * capacity / interval); " +
+                    "local granted = 0; " +
+                    "if tokens >= requested then granted = requested; " +
+                    "elseif tokens >= minimum then granted = math.floor(tokens); end; " +
+                    "redis.call('HMSET', KEYS[1], 'tokens', tokens - granted, 'ts', now); " +
+                    "redis.call('PEXPIRE', KEYS[1], interval * 2); " +
+                    "return granted;", Long.class);
+
+    /**
+     * 滑动窗口：hash { w: 当前窗口序号, c: 当前窗口计数, p: 上一窗口计数 }，ARGV同上
+     */
+    private static final RedisScript<Long> SLIDING_WINDOW_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands(); " +
+                    "local limit = tonumber(ARGV[1]); " +
+                    "local interval = tonumber(ARGV[2]); " +
+                    "local requested = tonumber(ARGV[3]); " +
+                    "local minimum = tonumber(ARGV[4]); " +
+                    "local t = redis.call('TIME'); " +
+                    "local now = t[1] * 1000 + math.floor(t[2] / 1000); " +
+                    "local window = math.floor(now / interval); " +
+                    "local state = redis.call('HMGET', KEYS[1], 'w', 'c', 'p'); " +
+                    "local w = tonumber(state[1]); " +
+                    "local c = tonumber(state[2]) or 0; " +
+                    "local p = tonumber(state[3]) or 0; " +
+                    "if w == nil then c = 0; p = 0; " +
+                    "elseif window == w + 1 then p = c; c = 0; " +
+                    "elseif window > w + 1 then p = 0; c = 0; " +
+                    "else window = w; end; " +
+                    "local weight = 1 - (now - window * interval) / interval; " +
+                    "local available = math.floor(limit - p * math.max(0, weight) - c); " +
+                    "local granted = 0; " +
+                    "if available >= requested then granted = requested; " +
+                    "elseif available >= minimum then granted = available; end; " +
+                    "redis.call('HMSET', KEYS[1], 'w', window, 'c', c + granted, 'p', p); " +
+                    "redis.call('PEXPIRE', KEYS[1], interval * 2); " +
+                    "return granted;", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 过期批次的清理间隔
+     */
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Redis Key -> 本地预取的令牌
+     */
+    private final ConcurrentHashMap<String, LocalBlock> blocks = new ConcurrentHashMap<>();
+
+    /**
+     * Redis Key -> 正在进行的租借
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> leasing = new ConcurrentHashMap<>();
+
+    /**
+     * 下一次清理过期批次的时间（System.nanoTime）
+     */
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+    private final LongAdder redisCallCount = new LongAdder();
+    private final LongAdder localHitCount = new LongAdder();
+    private final LongAdder admittedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public RedisRateLimiter(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 本地预取的一批令牌
+     */
+    private static final class LocalBlock {
+        private final AtomicLong tokens;
+        private final long expireAt;
+
+        private LocalBlock(long tokens, long expireAt) {
+            this.tokens = new AtomicLong(tokens);
+            this.expireAt = expireAt;
+        }
+
+        private boolean expired(long now) {
+            return expireAt - now <= 0;
+        }
+
+        private boolean take(int permits, long now) {
+            if (expired(now)) {
+                return false;
+            }
+            long current;
+            do {
+                current = tokens.get();
+                if (current < permits) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(current, current - permits));
+            return true;
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitRule rule, int permits) {
+        boolean admitted = rule.getPrefetch() > 0 ? tryAcquirePrefetch(redisKey(key, rule), rule, permits)
+                : acquireUpTo(redisKey(key, rule), rule, permits, permits) >= permits;
+        if (admitted) {
+            admittedCount.increment();
+        } else {
+            rejectedCount.increment();
+        }
+        return admitted;
+    }
+
+    private boolean tryAcquirePrefetch(String redisKey, RateLimitRule rule, int permits) {
+        if (takeLocal(redisKey, permits)) {
+            return true;
+        }
+        CompletableFuture<Void> lease = new CompletableFuture<>();
+        CompletableFuture<Void> inFlight = leasing.putIfAbsent(redisKey, lease);
+        if (inFlight != null) {
+            // 其它线程正在租借，等它完成后从新批次中扣减
+            inFlight.join();
+            return takeLocal(redisKey, permits);
+        }
+        try {
+            // 抢到租借权之前可能刚有一次租借完成
+            if (takeLocal(redisKey, permits)) {
+                return true;
+            }
+            return lease(redisKey, rule, permits);
+        } finally {
+            leasing.remove(redisKey, lease);
+            lease.complete(null);
+        }
+    }
+
+    private boolean takeLocal(String redisKey, int permits) {
+        LocalBlock block = blocks.get(redisKey);
+        if (block == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (block.take(permits, now)) {
+            localHitCount.increment();
+            return true;
+        }
+        if (block.expired(now)) {
+            blocks.remove(redisKey, block);
+        }
+        return false;
+    }
+
+    /**
+     * 向Redis租借一批令牌，本次申请的 permits 个直接使用，其余放入本地批次
+     */
+    private boolean lease(String redisKey, RateLimitRule rule, int permits) {
+        long now = System.nanoTime();
+        sweep(now);
+        long granted = acquireUpTo(redisKey, rule, Math.max(rule.getPrefetch(), permits), permits);
+        if (granted < permits) {
+            return false;
+        }
+        long extra = granted - permits;
+        if (extra > 0) {
+            long expireAt = now + TimeUnit.MILLISECONDS.toNanos(rule.getIntervalMillis());
+            // 原批次仍有效时（剩余不足本次申请数）合并，避免丢掉剩余的令牌
+            blocks.compute(redisKey, (k, block) -> {
+                if (block != null && !block.expired(now)) {
+                    block.tokens.addAndGet(extra);
+                    return block;
+                }
+                return new LocalBlock(extra, expireAt);
+            });
+        }
+        return true;
+    }
+
+    /**
+     * 清理过期批次，多个线程同时到期时只有一个执行
+     */
+    private void sweep(long now) {
+        long next = nextSweep.get();
+        if (now - next < 0 || !nextSweep.compareAndSet(next, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        blocks.values().removeIf(block -> block.expired(now));
+    }
+
+    /**
+     * 功能描述: 一次往返申请令牌
+     *
+     * @param redisKey Redis Key
+     * @param rule     限流规则
+     * @param max      最多申请数
+     * @param min      最少申请数，不足时一个也不发放
+     * @return 实际发放的令牌数
+     */
+    private long acquireUpTo(String redisKey, RateLimitRule rule, long max, long min) {
+        RedisScript<Long> script = rule.getAlgorithm() == RateLimitAlgorithm.TOKEN_BUCKET ? TOKEN_BUCKET_SCRIPT : SLIDING_WINDOW_SCRIPT;
+        redisCallCount.increment();
+        Long granted = redisTemplate.execute(script, Collections.singletonList(redisKey),
+                String.valueOf(rule.getLimit()), String.valueOf(rule.getIntervalMillis()), String.valueOf(max), String.valueOf(min));
+        return granted == null ? 0 : granted;
+    }
+
+    private static String redisKey(String key, RateLimitRule rule) {
+        return PREFIX + (rule.getAlgorithm() == RateLimitAlgorithm.TOKEN_BUCKET ? "tb:" : "sw:") + key;
+    }
+
+    /**
+     * 访问Redis的次数
+     */
+    public long getRedisCallCount() {
+        return redisCallCount.sum();
+    }
+
+    /**
+     * 由本地预取令牌直接放行的次数
+     */
+    public long getLocalHitCount() {
+        return localHitCount.sum();
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * 本地持有预取批次的key数
+     */
+    public int getLocalBlockCount() {
+        return blocks.size();
+    }
+}
@@ -0,0 +1,32 @@
+package org.lmx.framework.redis.listener;
+
+import java.util.List;
+
+/**
+ * 功能描述: Key过期处理器
+ * <pre>
+ *  注册为Spring Bean即可（或调用 {@link RedisKeyExpirationListener#register}），按 {@link #prefix()} 分发：
+ *  过期的key以该前缀开头时交给该处理器，多个处理器的前缀都匹配时各自收到一份。
+ *
+ *  处理器在工作线程上被批量调用，同一批key来自同一次出队，可能由多个工作线程并发调用，实现需线程安全。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/18 9:30
+ */
+public interface ExpiredKeyHandler {
+
+    /**
+     * 功能描述: 处理的key前缀，空串表示所有key
+     *
+     * @return key前缀
+     */
+    String prefix();
+
+    /**
+     * 功能描述: 处理一批过期的key
+     *
+     * @param keys 过期的key，按到达顺序
+     */
+    void onExpired(List<String> keys);
+}
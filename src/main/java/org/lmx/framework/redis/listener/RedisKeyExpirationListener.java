@@ -1,7 +1,13 @@
 package org.lmx.framework.redis.listener;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.lmx.framework.redis.base.KeyPrefixTrie;
+import org.lmx.framework.redis.metrics.ExpirationEventStats;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.data.redis.connection.Message;
@@ -13,63 +19,220 @@ import org.springframework.data.redis.listener.Topic;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
 /**
  * 功能描述: Redis Key过期监听
+ * <pre>
+ *  订阅线程只把事件放入有界队列（环形数组，满时丢弃并计数），不做解码、日志与业务处理；
+ *  workers 个工作线程从队列中每次取出最多 batchSize 个事件，解码key后按前缀字典树（{@link KeyPrefixTrie}）
+ *  分发给 {@link ExpiredKeyHandler}，每个处理器每批只调用一次。
+ *
+ *  publishEvents 开启时，工作线程同时为每个key发布 {@link RedisKeyExpiredEvent}（兼容原有的Spring事件方式）。
+ *  队列长度、丢弃数与事件滞后时间见 {@link ExpirationEventStats}。
+ * </pre>
  *
  * @author LM.X
  * @date 2020/7/4 17:11
  */
 @Slf4j
 @Component
-@ConditionalOnBean(RedisMessageListenerContainer.class)
+@ConditionalOnExpression("${demo.redis.enabled:false} and ${demo.redis.event-notice:false}")
 public class RedisKeyExpirationListener extends KeyspaceEventMessageListener implements
-        ApplicationEventPublisherAware {
+        ApplicationEventPublisherAware, SmartInitializingSingleton {
+
+    private final Topic expiredTopic;
+
+    private final ArrayBlockingQueue<ExpiredEvent> queue;
+    private final int workers;
+    private final int batchSize;
+    private final boolean publishEvents;
+    private final BeanFactory beanFactory;
+    private final ExpirationEventStats stats;
+
+    private final List<ExpiredKeyHandler> handlers = new CopyOnWriteArrayList<>();
 
-    private static final Topic KEY_EVENT_EXPIRED_TOPIC = new PatternTopic("__keyevent@0__:expired");
+    /**
+     * 由 handlers 构建，注册处理器时整体替换
+     */
+    private volatile KeyPrefixTrie<ExpiredKeyHandler> handlerTrie = new KeyPrefixTrie<>();
+
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private volatile boolean running;
 
     private @Nullable
     ApplicationEventPublisher publisher;
 
     /**
-     * Creates new {@link org.springframework.data.redis.connection.MessageListener} for {@code __keyevent@*__:expired} messages.
+     * 入队的过期事件，key在工作线程上才解码
+     */
+    private static final class ExpiredEvent {
+        private final byte[] body;
+        private final long receivedNanos;
+
+        private ExpiredEvent(byte[] body, long receivedNanos) {
+            this.body = body;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    /**
+     * Creates new {@link org.springframework.data.redis.connection.MessageListener} for {@code __keyevent@<database>__:expired} messages.
      *
      * @param listenerContainer must not be {@literal null}.
+     * @param database          订阅的库
+     * @param queueSize         队列容量
+     * @param workers           工作线程数
+     * @param batchSize         每批最多处理的事件数
+     * @param publishEvents     是否发布 {@link RedisKeyExpiredEvent}
      */
-    public RedisKeyExpirationListener(RedisMessageListenerContainer listenerContainer) {
+    @Autowired
+    public RedisKeyExpirationListener(RedisMessageListenerContainer listenerContainer,
+                                      @Value("${demo.redis.expiration.database:${spring.redis.database:0}}") int database,
+                                      @Value("${demo.redis.expiration.queue-size:65536}") int queueSize,
+                                      @Value("${demo.redis.expiration.workers:2}") int workers,
+                                      @Value("${demo.redis.expiration.batch-size:256}") int batchSize,
+                                      @Value("${demo.redis.expiration.publish-events:false}") boolean publishEvents,
+                                      BeanFactory beanFactory) {
         super(listenerContainer);
+        this.expiredTopic = new PatternTopic("__keyevent@" + database + "__:expired");
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        this.workers = Math.max(workers, 1);
+        this.batchSize = Math.max(batchSize, 1);
+        this.publishEvents = publishEvents;
+        this.beanFactory = beanFactory;
+        this.stats = new ExpirationEventStats(queue::size);
+    }
+
+    @Autowired(required = false)
+    public void setHandlers(List<ExpiredKeyHandler> handlers) {
+        for (ExpiredKeyHandler handler : handlers) {
+            register(handler);
+        }
+    }
+
+    /**
+     * 功能描述: 注册过期处理器
+     */
+    public void register(ExpiredKeyHandler handler) {
+        handlers.add(handler);
+        KeyPrefixTrie<ExpiredKeyHandler> trie = new KeyPrefixTrie<>();
+        for (ExpiredKeyHandler h : handlers) {
+            trie.put(h.prefix() == null ? "" : h.prefix(), h);
+        }
+        handlerTrie = trie;
+    }
+
+    @Override
+    public void init() {
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, "redis-expired-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workerThreads.add(thread);
+        }
+        super.init();
     }
 
     @Override
     protected void doRegister(RedisMessageListenerContainer listenerContainer) {
-        listenerContainer.addMessageListener(this, KEY_EVENT_EXPIRED_TOPIC);
+        listenerContainer.addMessageListener(this, expiredTopic);
     }
 
+    /**
+     * 订阅线程上只入队
+     */
     @Override
     protected void doHandleMessage(Message message) {
-        publishEvent(new RedisKeyExpiredEvent(message.getBody()));
+        stats.received();
+        if (!queue.offer(new ExpiredEvent(message.getBody(), System.nanoTime()))) {
+            stats.dropped();
+        }
+    }
+
+    private void work() {
+        List<ExpiredEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ExpiredEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                log.error("处理Redis key过期事件失败", e);
+            } finally {
+                batch.clear();
+            }
+        }
     }
 
     /**
-     * Publish the event in case an {@link ApplicationEventPublisher} is set.
-     *
-     * @param event can be {@literal null}.
+     * 按处理器分组后每个处理器调用一次
      */
-    protected void publishEvent(RedisKeyExpiredEvent event) {
+    private void dispatch(List<ExpiredEvent> batch) {
+        KeyPrefixTrie<ExpiredKeyHandler> trie = handlerTrie;
+        Map<ExpiredKeyHandler, List<String>> grouped = new IdentityHashMap<>();
+        List<ExpiredKeyHandler> matched = new ArrayList<>(4);
+        long now = System.nanoTime();
+        for (ExpiredEvent event : batch) {
+            stats.lag(now - event.receivedNanos);
+            String key = new String(event.body, StandardCharsets.UTF_8);
+            log.debug("redis key过期：{}", key);
+            if (publishEvents && publisher != null) {
+                publisher.publishEvent(new RedisKeyExpiredEvent(event.body));
+            }
+            trie.match(key, matched);
+            for (ExpiredKeyHandler handler : matched) {
+                grouped.computeIfAbsent(handler, h -> new ArrayList<>()).add(key);
+            }
+            matched.clear();
+        }
+        for (Map.Entry<ExpiredKeyHandler, List<String>> entry : grouped.entrySet()) {
+            try {
+                entry.getKey().onExpired(entry.getValue());
+                stats.handled(entry.getValue().size());
+            } catch (RuntimeException e) {
+                stats.failed();
+                log.error("Key过期处理器 {} 处理失败，key数量：{}", entry.getKey().getClass().getName(), entry.getValue().size(), e);
+            }
+        }
+    }
 
-        if (publisher != null) {
-            this.publisher.publishEvent(event);
+    @Override
+    public void destroy() throws Exception {
+        super.destroy();
+        running = false;
+        for (Thread thread : workerThreads) {
+            thread.interrupt();
         }
     }
 
+    public ExpirationEventStats getStats() {
+        return stats;
+    }
+
     @Override
     public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
         this.publisher = applicationEventPublisher;
     }
 
     @Override
-    public void onMessage(Message message, byte[] pattern) {
-        String expiredKey = message.toString();
-        log.info("redis key过期：{}", expiredKey);
-        //业务逻辑处理。。。
+    public void afterSingletonsInstantiated() {
+        stats.bind(beanFactory);
     }
-}
\ No newline at end of file
+}
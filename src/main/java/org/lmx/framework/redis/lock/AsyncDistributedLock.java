@@ -0,0 +1,56 @@
+package org.lmx.framework.redis.lock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述: 非阻塞分布式锁接口
+ * <pre>
+ *  加锁、解锁都不占用调用线程，适用于返回 CompletableFuture/Mono 的异步方法。
+ *  异步锁不绑定线程，可以在与加锁不同的线程上解锁；同一线程的多次异步加锁之间不可重入。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/29 9:30
+ */
+public interface AsyncDistributedLock {
+
+    /**
+     * 功能描述: 异步获取锁，直到lock被获取才完成
+     *
+     * @param key       锁的key
+     * @param leaseTime 加锁的时间，超过这个时间后锁便自动解锁；
+     *                  如果leaseTime为-1，则保持锁定直到显式解锁
+     * @param unit      {@code leaseTime} 参数的时间单位
+     * @param isFair    是否公平锁
+     * @return 完成值为锁对象
+     * @author LM.X
+     * @date 2020/7/29 9:32
+     */
+    CompletableFuture<Object> lockAsync(String key, long leaseTime, TimeUnit unit, boolean isFair);
+
+    /**
+     * 功能描述: 异步尝试获取锁，如果锁不可用则等待最多waitTime时间后放弃
+     *
+     * @param key       锁的key
+     * @param waitTime  获取锁的最大尝试时间(单位 {@code unit})
+     * @param leaseTime 加锁的时间，超过这个时间后锁便自动解锁；
+     *                  如果leaseTime为-1，则保持锁定直到显式解锁
+     * @param unit      {@code waitTime} 和 {@code leaseTime} 参数的时间单位
+     * @param isFair    是否公平锁
+     * @return 完成值为锁对象，等待超时为null
+     * @author LM.X
+     * @date 2020/7/29 9:35
+     */
+    CompletableFuture<Object> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit, boolean isFair);
+
+    /**
+     * 异步释放锁
+     *
+     * @param lock lockAsync/tryLockAsync 返回的锁对象
+     * @return 完成值为释放结果
+     * @author LM.X
+     * @date 2020/7/29 9:36
+     */
+    CompletableFuture<Boolean> unlockAsync(Object lock);
+}
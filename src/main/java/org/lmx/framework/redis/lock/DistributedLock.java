@@ -1,5 +1,6 @@
 package org.lmx.framework.redis.lock;
 
+import java.util.Collection;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -111,7 +112,137 @@ public interface DistributedLock {
     Object tryLock(String key, long waitTime, TimeUnit unit);
 
     /**
-     * 释放锁
+     * 功能描述: 同时获取多个key的锁，如果获取不成功则一直等待直到全部获取
+     * <pre>
+     *  key按自然顺序排序去重后加锁，不同调用方以任意顺序传入同一组key也不会死锁。
+     *  默认实现按顺序逐个加锁，实现类可以改为一次往返原子加锁。
+     * </pre>
+     *
+     * @param keys      锁的key集合
+     * @param leaseTime 加锁的时间，超过这个时间后锁便自动解锁；
+     *                  如果leaseTime为-1，则保持锁定直到显式解锁
+     * @param unit      {@code leaseTime} 参数的时间单位
+     * @return 锁对象 {@link MultiLockHandle}
+     * @author LM.X
+     * @date 2020/8/5 10:00
+     */
+    default Object lockAll(Collection<String> keys, long leaseTime, TimeUnit unit) {
+        return MultiLockSupport.acquire(this, keys, -1, leaseTime, unit);
+    }
+
+    /**
+     * 功能描述: 同时获取多个key的锁，如果获取不成功则一直等待直到全部获取
+     *
+     * @param keys 锁的key集合
+     * @return 锁对象 {@link MultiLockHandle}
+     * @author LM.X
+     * @date 2020/8/5 10:00
+     */
+    default Object lockAll(Collection<String> keys) {
+        return lockAll(keys, -1, null);
+    }
+
+    /**
+     * 功能描述: 尝试同时获取多个key的锁，waitTime内未能全部获取则释放已获取的部分并放弃
+     *
+     * @param keys      锁的key集合
+     * @param waitTime  获取锁的最大尝试时间(单位 {@code unit})
+     * @param leaseTime 加锁的时间，超过这个时间后锁便自动解锁；
+     *                  如果leaseTime为-1，则保持锁定直到显式解锁
+     * @param unit      {@code waitTime} 和 {@code leaseTime} 参数的时间单位
+     * @return 锁对象 {@link MultiLockHandle}，超时返回null
+     * @author LM.X
+     * @date 2020/8/5 10:01
+     */
+    default Object tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) {
+        return MultiLockSupport.acquire(this, keys, Math.max(waitTime, 0), leaseTime, unit);
+    }
+
+    /**
+     * 功能描述: 尝试同时获取多个key的锁，waitTime内未能全部获取则释放已获取的部分并放弃
+     *
+     * @param keys     锁的key集合
+     * @param waitTime 获取锁的最大尝试时间(单位 {@code unit})
+     * @param unit     {@code waitTime} 参数的时间单位
+     * @return 锁对象 {@link MultiLockHandle}，超时返回null
+     * @author LM.X
+     * @date 2020/8/5 10:01
+     */
+    default Object tryLockAll(Collection<String> keys, long waitTime, TimeUnit unit) {
+        return tryLockAll(keys, waitTime, -1, unit);
+    }
+
+    /**
+     * 功能描述: 获取读锁，如果获取不成功则一直等待直到lock被获取
+     * <pre>
+     *  同一key的多个读锁可以同时持有，与写锁互斥。
+     *  默认实现退化为互斥锁，正确但读之间不能并发，实现类应覆盖。
+     * </pre>
+     *
+     * @param key       锁的key
+     * @param leaseTime 加锁的时间，超过这个时间后锁便自动解锁；
+     *                  如果leaseTime为-1，则保持锁定直到显式解锁
+     * @param unit      {@code leaseTime} 参数的时间单位
+     * @return 锁对象
+     * @author LM.X
+     * @date 2020/8/6 9:40
+     */
+    default Object readLock(String key, long leaseTime, TimeUnit unit) {
+        return lock(key, leaseTime, unit);
+    }
+
+    /**
+     * 功能描述: 尝试获取读锁，如果锁不可用则等待最多waitTime时间后放弃
+     *
+     * @param key       锁的key
+     * @param waitTime  获取锁的最大尝试时间(单位 {@code unit})
+     * @param leaseTime 加锁的时间，超过这个时间后锁便自动解锁；
+     *                  如果leaseTime为-1，则保持锁定直到显式解锁
+     * @param unit      {@code waitTime} 和 {@code leaseTime} 参数的时间单位
+     * @return 锁对象，超时返回null
+     * @author LM.X
+     * @date 2020/8/6 9:41
+     */
+    default Object tryReadLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return tryLock(key, waitTime, leaseTime, unit);
+    }
+
+    /**
+     * 功能描述: 获取写锁，如果获取不成功则一直等待直到lock被获取
+     * <pre>
+     *  写锁与同一key的读锁、写锁都互斥。默认实现退化为互斥锁。
+     * </pre>
+     *
+     * @param key       锁的key
+     * @param leaseTime 加锁的时间，超过这个时间后锁便自动解锁；
+     *                  如果leaseTime为-1，则保持锁定直到显式解锁
+     * @param unit      {@code leaseTime} 参数的时间单位
+     * @return 锁对象
+     * @author LM.X
+     * @date 2020/8/6 9:42
+     */
+    default Object writeLock(String key, long leaseTime, TimeUnit unit) {
+        return lock(key, leaseTime, unit);
+    }
+
+    /**
+     * 功能描述: 尝试获取写锁，如果锁不可用则等待最多waitTime时间后放弃
+     *
+     * @param key       锁的key
+     * @param waitTime  获取锁的最大尝试时间(单位 {@code unit})
+     * @param leaseTime 加锁的时间，超过这个时间后锁便自动解锁；
+     *                  如果leaseTime为-1，则保持锁定直到显式解锁
+     * @param unit      {@code waitTime} 和 {@code leaseTime} 参数的时间单位
+     * @return 锁对象，超时返回null
+     * @author LM.X
+     * @date 2020/8/6 9:43
+     */
+    default Object tryWriteLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return tryLock(key, waitTime, leaseTime, unit);
+    }
+
+    /**
+     * 释放锁，{@link MultiLockHandle} 一次释放全部key
      *
      * @param key
      * @return 释放结果
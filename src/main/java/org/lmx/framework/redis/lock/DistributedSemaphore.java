@@ -0,0 +1,67 @@
+package org.lmx.framework.redis.lock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述: 分布式信号量接口
+ * <pre>
+ *  同一个key在集群内最多同时发出 permits 个许可，用于保护只能承受N个并发调用方的下游资源。
+ *  许可带租期，持有者宕机或忘记释放时，许可在租期到达后自动归还。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/7 10:00
+ */
+public interface DistributedSemaphore {
+
+    /**
+     * 功能描述: 获取count个许可，如果许可不足则一直等待直到全部获取
+     *
+     * @param key       信号量的key
+     * @param permits   信号量的许可总数，每次获取时同步到Redis，修改后即生效
+     * @param count     本次获取的许可数，全部获取或全部不获取
+     * @param leaseTime 许可的租期，超过这个时间后许可自动归还；
+     *                  如果leaseTime为-1，则许可不会自动归还
+     * @param unit      {@code leaseTime} 参数的时间单位
+     * @return 许可对象
+     * @author LM.X
+     * @date 2020/8/7 10:02
+     */
+    Object acquire(String key, int permits, int count, long leaseTime, TimeUnit unit);
+
+    /**
+     * 功能描述: 尝试获取count个许可，如果许可不足则等待最多waitTime时间后放弃
+     *
+     * @param key       信号量的key
+     * @param permits   信号量的许可总数，每次获取时同步到Redis，修改后即生效
+     * @param count     本次获取的许可数，全部获取或全部不获取
+     * @param waitTime  获取许可的最大尝试时间(单位 {@code unit})
+     * @param leaseTime 许可的租期，超过这个时间后许可自动归还；
+     *                  如果leaseTime为-1，则许可不会自动归还
+     * @param unit      {@code waitTime} 和 {@code leaseTime} 参数的时间单位
+     * @return 许可对象，超时返回null
+     * @author LM.X
+     * @date 2020/8/7 10:03
+     */
+    Object tryAcquire(String key, int permits, int count, long waitTime, long leaseTime, TimeUnit unit);
+
+    /**
+     * 功能描述: 归还许可
+     *
+     * @param permit 许可对象
+     * @return 全部许可都归还成功返回true，许可已过期或不存在返回false
+     * @author LM.X
+     * @date 2020/8/7 10:04
+     */
+    boolean release(Object permit);
+
+    /**
+     * 功能描述: 当前可用的许可数
+     *
+     * @param key 信号量的key
+     * @return 可用许可数
+     * @author LM.X
+     * @date 2020/8/7 10:05
+     */
+    int availablePermits(String key);
+}
@@ -0,0 +1,344 @@
+package org.lmx.framework.redis.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lmx.framework.redis.constants.CommonConstants;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 功能描述: 本地优先的两级分布式锁
+ * <pre>
+ *  同一JVM内竞争同一个key的线程先在本地锁上排队，只有拿到本地锁的线程才去竞争Redis锁，
+ *  本地竞争不再转化为对Redis的轮询/订阅流量。
+ *
+ *  Redis锁以JVM内每个key一个的虚拟线程号持有（Redisson按 连接ID:线程号 识别持有者），因此可以在本地线程间移交：
+ *  leaseTime 为 -1（看门狗续期）且本地仍有等待者时，释放只交出本地锁，Redis锁保持不动，
+ *  连续移交达到 maxLocalHandoff 次后强制释放Redis锁，避免其它节点饥饿。
+ *  指定了 leaseTime 的锁每次都释放Redis锁，保证每个持有者拿到完整的租期。
+ *  看门狗模式的Redis锁登记到 {@link LockRenewalScheduler} 批量续期，移交期间持续续期，直到释放Redis锁。
+ *  同一线程重入只增加本地锁的持有次数，不计为移交，也不再访问Redis；内层释放只退出本地锁，最外层释放时才按上述规则处理Redis锁。
+ *
+ *  通过 demo.lock.locker-type=redis-local 启用。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/28 10:10
+ */
+@Slf4j
+@Component
+@ConditionalOnClass(RedissonClient.class)
+@ConditionalOnProperty(prefix = "demo.lock", name = "locker-type", havingValue = "redis-local")
+public class LocalFirstDistributedLock implements DistributedLock {
+    /**
+     * 虚拟线程号从负数分配，不会与真实线程号冲突
+     */
+    private static final AtomicLong OWNER_SEQUENCE = new AtomicLong();
+
+    private final RedissonClient redisSon;
+
+    private final int maxLocalHandoff;
+
+    private final ConcurrentHashMap<String, LocalQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * 为null时沿用Redisson自身的看门狗
+     */
+    private final RedissonLockRenewer renewer;
+
+    private volatile LockRenewalScheduler renewalScheduler;
+
+    private final LongAdder redisAcquireCount = new LongAdder();
+    private final LongAdder localHandoffCount = new LongAdder();
+
+    public LocalFirstDistributedLock(RedissonClient redisSon, @Value("${demo.lock.max-local-handoff:16}") int maxLocalHandoff) {
+        this.redisSon = redisSon;
+        this.maxLocalHandoff = maxLocalHandoff;
+        this.renewer = RedissonLockRenewer.of(redisSon);
+    }
+
+    @Autowired(required = false)
+    public void setRenewalScheduler(LockRenewalScheduler renewalScheduler) {
+        this.renewalScheduler = renewalScheduler;
+    }
+
+    /**
+     * 未注入调度器时（脱离容器使用）在第一次需要时创建默认调度器
+     */
+    private LockRenewalScheduler renewalScheduler() {
+        LockRenewalScheduler scheduler = renewalScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                if (renewalScheduler == null) {
+                    renewalScheduler = new LockRenewalScheduler();
+                }
+                scheduler = renewalScheduler;
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * 本地排队队列，users 只在 queues.compute 中修改，其余状态由 local 锁保护
+     */
+    private static final class LocalQueue {
+        private final ReentrantLock local;
+        private final long ownerId = OWNER_SEQUENCE.decrementAndGet();
+        private final AtomicInteger users = new AtomicInteger();
+        private RLock rLock;
+        private boolean redisHeld;
+        private boolean renewing;
+        private int handoffs;
+
+        private LocalQueue(boolean isFair) {
+            this.local = new ReentrantLock(isFair);
+        }
+    }
+
+    /**
+     * 锁对象，交给 {@link #unlock(Object)} 释放
+     */
+    public static final class LocalLockHandle {
+        private final String key;
+        private final LocalQueue queue;
+        private final long leaseTime;
+
+        private LocalLockHandle(String key, LocalQueue queue, long leaseTime) {
+            this.key = key;
+            this.queue = queue;
+            this.leaseTime = leaseTime;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return CommonConstants.PREFIX + key;
+        }
+    }
+
+    private LocalQueue retain(String key, boolean isFair) {
+        return queues.compute(key, (k, q) -> {
+            if (q == null) {
+                q = new LocalQueue(isFair);
+            }
+            q.users.incrementAndGet();
+            return q;
+        });
+    }
+
+    private void release(String key, LocalQueue queue) {
+        boolean[] last = new boolean[1];
+        queues.computeIfPresent(key, (k, q) -> {
+            if (q != queue) {
+                return q;
+            }
+            if (q.users.decrementAndGet() == 0) {
+                last[0] = true;
+                return null;
+            }
+            return q;
+        });
+        // 最后一个使用者离开时，移交给已超时放弃的等待者的Redis锁需要在这里释放
+        if (last[0] && queue.local.tryLock()) {
+            try {
+                if (queue.redisHeld) {
+                    unlockRedis(queue);
+                }
+            } finally {
+                queue.local.unlock();
+            }
+        }
+    }
+
+    private RLock getLock(String key, boolean isFair) {
+        if (isFair) {
+            return redisSon.getFairLock(CommonConstants.PREFIX + key);
+        }
+        return redisSon.getLock(CommonConstants.PREFIX + key);
+    }
+
+    /**
+     * @param waitTime 小于0表示一直等待
+     */
+    private LocalLockHandle acquire(String key, long waitTime, long leaseTime, TimeUnit unit, boolean isFair) {
+        LocalQueue queue = retain(key, isFair);
+        boolean locked = false;
+        try {
+            long deadline = waitTime < 0 ? 0 : System.nanoTime() + unit.toNanos(waitTime);
+            if (waitTime < 0) {
+                queue.local.lock();
+            } else if (!queue.local.tryLock(waitTime, unit)) {
+                return null;
+            }
+            locked = true;
+
+            if (queue.local.getHoldCount() > 1) {
+                // 同一线程重入，Redis锁由外层持有
+                return new LocalLockHandle(key, queue, leaseTime);
+            }
+            if (queue.redisHeld) {
+                // 上一个本地持有者移交过来的Redis锁
+                localHandoffCount.increment();
+                return new LocalLockHandle(key, queue, leaseTime);
+            }
+
+            RLock rLock = getLock(key, isFair);
+            redisAcquireCount.increment();
+            boolean batchRenewal = leaseTime < 0 && renewer != null;
+            long leaseMillis = batchRenewal ? renewalScheduler().getLeaseMillis() : leaseTime < 0 ? -1 : unit.toMillis(leaseTime);
+            if (waitTime < 0) {
+                rLock.lockAsync(leaseMillis, TimeUnit.MILLISECONDS, queue.ownerId).syncUninterruptibly();
+            } else {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (!rLock.tryLockAsync(TimeUnit.NANOSECONDS.toMillis(remaining),
+                        leaseMillis, TimeUnit.MILLISECONDS, queue.ownerId).get()) {
+                    return null;
+                }
+            }
+            queue.rLock = rLock;
+            queue.redisHeld = true;
+            queue.handoffs = 0;
+            if (batchRenewal) {
+                // 持有者会在本地线程间移交，不登记线程
+                renewalScheduler().register(rLock.getName(), renewer.owner(queue.ownerId), renewer, null);
+                queue.renewing = true;
+            }
+            return new LocalLockHandle(key, queue, leaseTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("尝试获取Redis锁异常：", e);
+            return null;
+        } catch (Exception e) {
+            log.error("尝试获取Redis锁异常：", e);
+            return null;
+        } finally {
+            if (!locked) {
+                release(key, queue);
+            } else if (!queue.redisHeld) {
+                queue.local.unlock();
+                release(key, queue);
+            }
+        }
+    }
+
+    private void unlockRedis(LocalQueue queue) {
+        queue.redisHeld = false;
+        queue.handoffs = 0;
+        if (queue.renewing) {
+            queue.renewing = false;
+            renewalScheduler().cancel(queue.rLock.getName(), renewer.owner(queue.ownerId));
+        }
+        queue.rLock.unlockAsync(queue.ownerId).syncUninterruptibly();
+    }
+
+    @Override
+    public LocalLockHandle lock(String key, long leaseTime, TimeUnit unit, boolean isFair) {
+        return acquire(key, -1, leaseTime, unit, isFair);
+    }
+
+    @Override
+    public LocalLockHandle lock(String key, long leaseTime, TimeUnit unit) {
+        return lock(key, leaseTime, unit, false);
+    }
+
+    @Override
+    public LocalLockHandle lock(String key, boolean isFair) {
+        return lock(key, -1, null, isFair);
+    }
+
+    @Override
+    public LocalLockHandle lock(String key) {
+        return lock(key, -1, null, false);
+    }
+
+    @Override
+    public LocalLockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit, boolean isFair) {
+        return acquire(key, Math.max(waitTime, 0), leaseTime, unit, isFair);
+    }
+
+    @Override
+    public LocalLockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return tryLock(key, waitTime, leaseTime, unit, false);
+    }
+
+    @Override
+    public LocalLockHandle tryLock(String key, long waitTime, TimeUnit unit, boolean isFair) {
+        return tryLock(key, waitTime, -1, unit, isFair);
+    }
+
+    @Override
+    public LocalLockHandle tryLock(String key, long waitTime, TimeUnit unit) {
+        return tryLock(key, waitTime, -1, unit, false);
+    }
+
+    @Override
+    public boolean unlock(Object lock) {
+        if (lock == null) {
+            return false;
+        }
+        if (lock instanceof MultiLockHandle) {
+            return MultiLockSupport.release(this, (MultiLockHandle) lock);
+        }
+        if (!(lock instanceof LocalLockHandle)) {
+            log.error("解锁锁失败，非LocalLockHandle类型锁。key：{} ", lock);
+            return false;
+        }
+        LocalLockHandle handle = (LocalLockHandle) lock;
+        LocalQueue queue = handle.queue;
+        if (!queue.local.isHeldByCurrentThread()) {
+            log.error("解锁锁失败，没有锁住。");
+            return false;
+        }
+        if (queue.local.getHoldCount() > 1) {
+            // 内层重入的释放，Redis锁留给外层
+            queue.local.unlock();
+            release(handle.key, queue);
+            return true;
+        }
+        boolean success = true;
+        try {
+            if (handle.leaseTime < 0 && queue.users.get() > 1 && queue.handoffs < maxLocalHandoff) {
+                // 本地还有等待者，保留Redis锁直接移交
+                queue.handoffs++;
+            } else {
+                unlockRedis(queue);
+            }
+        } catch (Exception e) {
+            // 租期已过，Redis锁已被自动释放
+            log.error("解锁锁失败，没有锁住。", e);
+            success = false;
+        } finally {
+            queue.local.unlock();
+            release(handle.key, queue);
+        }
+        return success;
+    }
+
+    /**
+     * 实际向Redis发起加锁的次数
+     */
+    public long getRedisAcquireCount() {
+        return redisAcquireCount.sum();
+    }
+
+    /**
+     * 在本地线程间移交、未访问Redis的加锁次数
+     */
+    public long getLocalHandoffCount() {
+        return localHandoffCount.sum();
+    }
+}
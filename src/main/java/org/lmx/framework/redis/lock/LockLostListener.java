@@ -0,0 +1,22 @@
+package org.lmx.framework.redis.lock;
+
+/**
+ * 功能描述: 锁丢失回调
+ * <pre>
+ *  看门狗续期时发现锁已不再由本节点持有（租期已过被自动释放、被其它节点抢占或被人工删除），
+ *  由 {@link LockRenewalScheduler} 在续期线程上回调，实现不应阻塞。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/3 10:20
+ */
+public interface LockLostListener {
+
+    /**
+     * 功能描述: 锁已丢失
+     *
+     * @param lockKey 锁在Redis中的key
+     * @param owner   持有者标识
+     */
+    void onLockLost(String lockKey, String owner);
+}
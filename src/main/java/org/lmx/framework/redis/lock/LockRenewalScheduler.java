@@ -0,0 +1,357 @@
+package org.lmx.framework.redis.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lmx.framework.redis.constants.CommonConstants;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述: 锁续期调度器（看门狗）
+ * <pre>
+ *  leaseTime 为 -1 的锁不再各自启动续期定时器，而是统一登记到这里：
+ *
+ *      1、以固定租期加锁，本JVM持有的全部锁由同一个线程每 interval 续期一次；
+ *      2、每个周期按续期方式（{@link BatchRenewer}）分组，每 batchSize 个锁合并为一次往返（Lua脚本或批量管道）；
+ *      3、续期时发现锁已不再持有，从登记表中移除，回调 {@link LockLostListener}，
+ *         开启 interrupt-on-loss 时同时中断登记的持有线程；
+ *      4、续期请求本身失败（如网络异常）不视为丢失，下个周期重试。
+ *
+ *  同一持有者对同一把锁的重入只登记一次，按次数计数，计数归零时停止续期。
+ *
+ *  续期线程在第一次登记时才创建，登记表为空时停止周期任务，线程空闲 {@link #IDLE_KEEP_ALIVE_SECONDS} 秒后退出，
+ *  未交给容器管理（不会调用 {@link #destroy()}）的实例不加锁时不占用线程。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/3 10:30
+ */
+@Slf4j
+@Component
+public class LockRenewalScheduler implements DisposableBean {
+    /**
+     * 续期线程空闲多久后退出(秒)
+     */
+    private static final long IDLE_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * 批量续期方式
+     */
+    public interface BatchRenewer {
+
+        /**
+         * 功能描述: 续期一批锁
+         *
+         * @param lockKeys    锁在Redis中的key
+         * @param owners      与 lockKeys 一一对应的持有者标识
+         * @param leaseMillis 新的租期
+         * @return 与入参顺序一致，true 表示续期成功，false 表示锁已不再由该持有者持有
+         */
+        boolean[] renew(List<String> lockKeys, List<String> owners, long leaseMillis);
+    }
+
+    /**
+     * 登记的锁
+     */
+    public static final class Lease {
+        private final String lockKey;
+        private final String owner;
+        private final BatchRenewer renewer;
+        private final Thread thread;
+        /**
+         * 只在 leases.compute 中修改
+         */
+        private int holds;
+
+        private Lease(String lockKey, String owner, BatchRenewer renewer, Thread thread) {
+            this.lockKey = lockKey;
+            this.owner = owner;
+            this.renewer = renewer;
+            this.thread = thread;
+        }
+
+        public String getLockKey() {
+            return lockKey;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+    }
+
+    private final long leaseMillis;
+
+    private final long intervalMillis;
+
+    private final int batchSize;
+
+    private final boolean interruptOnLoss;
+
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private final List<LockLostListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 第一次登记时创建，只在持有this锁时读写
+     */
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * 周期续期任务，登记表为空时取消，只在持有this锁时写入
+     */
+    private volatile ScheduledFuture<?> renewTask;
+
+    private boolean destroyed;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder batchSizeTotal = new LongAdder();
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private final LongAdder batchNanosTotal = new LongAdder();
+    private final LongAccumulator maxBatchNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder failedBatchCount = new LongAdder();
+    private final LongAdder renewedCount = new LongAdder();
+    private final LongAdder lostCount = new LongAdder();
+
+    public LockRenewalScheduler() {
+        this(30_000, 0, 500, false);
+    }
+
+    /**
+     * @param leaseMillis     看门狗模式下的租期
+     * @param intervalMillis  续期周期，小于等于0时取租期的1/3
+     * @param batchSize       单次往返续期的最大锁数量
+     * @param interruptOnLoss 锁丢失时是否中断持有线程
+     */
+    @Autowired
+    public LockRenewalScheduler(@Value("${demo.lock.renewal.lease:30000}") long leaseMillis,
+                                @Value("${demo.lock.renewal.interval:0}") long intervalMillis,
+                                @Value("${demo.lock.renewal.batch-size:500}") int batchSize,
+                                @Value("${demo.lock.renewal.interrupt-on-loss:false}") boolean interruptOnLoss) {
+        this.leaseMillis = leaseMillis;
+        this.intervalMillis = intervalMillis > 0 ? intervalMillis : Math.max(1, leaseMillis / 3);
+        this.batchSize = Math.max(1, batchSize);
+        this.interruptOnLoss = interruptOnLoss;
+    }
+
+    @Autowired(required = false)
+    public void setLockLostListeners(List<LockLostListener> listeners) {
+        this.listeners.addAll(listeners);
+    }
+
+    public void addLockLostListener(LockLostListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 看门狗模式下加锁使用的租期
+     */
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * 功能描述: 登记一把已持有的锁，重入时只增加计数
+     *
+     * @param lockKey 锁在Redis中的key
+     * @param owner   持有者标识
+     * @param renewer 续期方式
+     * @param thread  持有线程，锁丢失时可被中断；持有者不固定在某个线程上时传null
+     */
+    public void register(String lockKey, String owner, BatchRenewer renewer, Thread thread) {
+        leases.compute(id(lockKey, owner), (k, lease) -> {
+            if (lease == null) {
+                lease = new Lease(lockKey, owner, renewer, thread);
+            }
+            lease.holds++;
+            return lease;
+        });
+        if (renewTask == null) {
+            start();
+        }
+    }
+
+    private synchronized void start() {
+        if (renewTask != null || destroyed) {
+            return;
+        }
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "redis-lock-renewal");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setKeepAliveTime(IDLE_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            executor.allowCoreThreadTimeOut(true);
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        renewTask = executor.scheduleWithFixedDelay(this::renewAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记表为空时取消周期任务。
+     * register 先登记再检查 renewTask，这里先清空 renewTask 再检查登记表，二者至少有一方看到对方的写入，不会漏掉新登记的锁
+     */
+    private synchronized boolean stopIfIdle() {
+        if (!leases.isEmpty()) {
+            return false;
+        }
+        if (renewTask != null) {
+            renewTask.cancel(false);
+            renewTask = null;
+        }
+        if (!leases.isEmpty()) {
+            start();
+        }
+        return true;
+    }
+
+    /**
+     * 功能描述: 释放一次持有，计数归零时停止续期
+     */
+    public void release(String lockKey, String owner) {
+        leases.computeIfPresent(id(lockKey, owner), (k, lease) -> --lease.holds > 0 ? lease : null);
+    }
+
+    /**
+     * 功能描述: 不论重入次数，立即停止续期
+     */
+    public void cancel(String lockKey, String owner) {
+        leases.remove(id(lockKey, owner));
+    }
+
+    private static String id(String lockKey, String owner) {
+        return lockKey + CommonConstants.SEPARATOR + owner;
+    }
+
+    private void renewAll() {
+        if (stopIfIdle()) {
+            return;
+        }
+        Map<BatchRenewer, List<Lease>> groups = new IdentityHashMap<>();
+        for (Lease lease : leases.values()) {
+            groups.computeIfAbsent(lease.renewer, r -> new ArrayList<>()).add(lease);
+        }
+        for (Map.Entry<BatchRenewer, List<Lease>> group : groups.entrySet()) {
+            List<Lease> all = group.getValue();
+            for (int from = 0; from < all.size(); from += batchSize) {
+                renewBatch(group.getKey(), all.subList(from, Math.min(from + batchSize, all.size())));
+            }
+        }
+    }
+
+    private void renewBatch(BatchRenewer renewer, List<Lease> batch) {
+        List<String> lockKeys = new ArrayList<>(batch.size());
+        List<String> owners = new ArrayList<>(batch.size());
+        for (Lease lease : batch) {
+            lockKeys.add(lease.lockKey);
+            owners.add(lease.owner);
+        }
+        long start = System.nanoTime();
+        boolean[] renewed;
+        try {
+            renewed = renewer.renew(lockKeys, owners, leaseMillis);
+        } catch (Exception e) {
+            failedBatchCount.increment();
+            log.error("锁续期失败，下个周期重试。数量：{}", batch.size(), e);
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        batchCount.increment();
+        batchSizeTotal.add(batch.size());
+        maxBatchSize.accumulate(batch.size());
+        batchNanosTotal.add(nanos);
+        maxBatchNanos.accumulate(nanos);
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (renewed[i]) {
+                renewedCount.increment();
+            } else {
+                lost(batch.get(i));
+            }
+        }
+    }
+
+    private void lost(Lease lease) {
+        // 续期期间已被正常释放的锁不算丢失
+        if (!leases.remove(id(lease.lockKey, lease.owner), lease)) {
+            return;
+        }
+        lostCount.increment();
+        log.warn("锁续期失败，锁已不再持有。key：{} owner：{}", lease.lockKey, lease.owner);
+        for (LockLostListener listener : listeners) {
+            try {
+                listener.onLockLost(lease.lockKey, lease.owner);
+            } catch (Exception e) {
+                log.error("锁丢失回调异常。key：{}", lease.lockKey, e);
+            }
+        }
+        if (interruptOnLoss && lease.thread != null) {
+            lease.thread.interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        destroyed = true;
+        renewTask = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 当前登记的锁数量
+     */
+    public int getHeldCount() {
+        return leases.size();
+    }
+
+    /**
+     * 成功执行的续期批次数
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batchCount.sum();
+        return count == 0 ? 0 : (double) batchSizeTotal.sum() / count;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * 单批续期的平均耗时(纳秒)
+     */
+    public long getAverageBatchNanos() {
+        long count = batchCount.sum();
+        return count == 0 ? 0 : batchNanosTotal.sum() / count;
+    }
+
+    public long getMaxBatchNanos() {
+        return maxBatchNanos.get();
+    }
+
+    /**
+     * 因异常失败、等待下个周期重试的批次数
+     */
+    public long getFailedBatchCount() {
+        return failedBatchCount.sum();
+    }
+
+    public long getRenewedCount() {
+        return renewedCount.sum();
+    }
+
+    public long getLostCount() {
+        return lostCount.sum();
+    }
+}
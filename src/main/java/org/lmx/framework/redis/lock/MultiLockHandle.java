@@ -0,0 +1,45 @@
+package org.lmx.framework.redis.lock;
+
+import java.util.List;
+
+/**
+ * 功能描述: 多key锁对象
+ * <pre>
+ *  {@link DistributedLock#lockAll} / {@link DistributedLock#tryLockAll} 的返回值，交给 {@link DistributedLock#unlock(Object)} 一次释放全部key。
+ *  keys 已按自然顺序排序去重，locks 为与之一一对应的单key锁对象（由实现决定，可为空）。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/5 9:40
+ */
+public final class MultiLockHandle {
+    private final List<String> keys;
+    private final List<Object> locks;
+    private final Object delegate;
+
+    MultiLockHandle(List<String> keys, List<Object> locks, Object delegate) {
+        this.keys = keys;
+        this.locks = locks;
+        this.delegate = delegate;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    List<Object> getLocks() {
+        return locks;
+    }
+
+    /**
+     * 实现相关的整体锁对象（如 RedissonMultiLock），没有时为null
+     */
+    Object getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String toString() {
+        return keys.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package org.lmx.framework.redis.lock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述: 多key加锁的通用实现
+ * <pre>
+ *  所有节点都按key的自然顺序逐个加锁，保证不会相互等待形成死锁；
+ *  任意一个key等待超时，已经拿到的锁按相反顺序全部释放，要么全部持有要么全部不持有。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/5 9:50
+ */
+@Slf4j
+final class MultiLockSupport {
+
+    private MultiLockSupport() {
+    }
+
+    /**
+     * 排序去重后的key
+     */
+    static List<String> sortedKeys(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("keys is empty");
+        }
+        return new ArrayList<>(new TreeSet<>(keys));
+    }
+
+    /**
+     * @param waitTime 小于0表示一直等待
+     */
+    static MultiLockHandle acquire(DistributedLock locker, Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) {
+        List<String> sorted = sortedKeys(keys);
+        List<Object> locks = new ArrayList<>(sorted.size());
+        long deadline = waitTime < 0 ? 0 : System.nanoTime() + unit.toNanos(waitTime);
+        boolean success = false;
+        try {
+            for (String key : sorted) {
+                Object lock;
+                if (waitTime < 0) {
+                    lock = locker.lock(key, leaseTime, unit);
+                } else {
+                    long remaining = Math.max(0, deadline - System.nanoTime());
+                    lock = locker.tryLock(key, remaining, leaseTime < 0 ? -1 : unit.toNanos(leaseTime), TimeUnit.NANOSECONDS);
+                }
+                if (lock == null) {
+                    return null;
+                }
+                locks.add(lock);
+            }
+            success = true;
+            return new MultiLockHandle(sorted, locks, null);
+        } finally {
+            if (!success) {
+                release(locker, locks);
+            }
+        }
+    }
+
+    static boolean release(DistributedLock locker, MultiLockHandle handle) {
+        return release(locker, handle.getLocks());
+    }
+
+    private static boolean release(DistributedLock locker, List<Object> locks) {
+        boolean success = true;
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            try {
+                success &= locker.unlock(locks.get(i));
+            } catch (Exception e) {
+                log.error("解锁锁失败key：{}", locks.get(i), e);
+                success = false;
+            }
+        }
+        return success;
+    }
+}
@@ -1,78 +1,519 @@
 package org.lmx.framework.redis.lock;
 
 import lombok.extern.slf4j.Slf4j;
-import org.lmx.framework.redis.RedisClientTemplate;
 import org.lmx.framework.redis.constants.CommonConstants;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * 功能描述: 原生Redis分布式锁实现（不依赖Redisson）
+ * <pre>
+ *  锁结构为 hash：{ 持有者token: 重入次数 }，token = 节点UUID:线程号，所有操作都是单次往返的Lua脚本：
+ *
+ *      1、加锁：锁不存在或持有者是自己时重入计数+1并设置过期时间，否则返回剩余存活时间；
+ *      2、解锁：只有持有者才能扣减计数，计数归零时删除锁并在 lock:channel:{key} 频道发布解锁消息；
+ *      3、续期：只有持有者才能延长过期时间。
+ *
+ *  等待锁的线程不再固定间隔sleep轮询，而是阻塞在本地信号量上，收到解锁消息或到达锁的剩余存活时间时再重试。
+ *  leaseTime 为 -1 时以看门狗租期加锁并登记到 {@link LockRenewalScheduler}，本JVM持有的全部锁每个周期由一个Lua脚本批量续期。
+ *  多key加锁/解锁同样各是一个Lua脚本：全部key可用时才一起加锁，否则返回第一个被占用的key，等待其解锁消息后重试。
+ *  本实现不区分公平锁，isFair 参数被忽略。
+ *
+ *  通过 demo.lock.locker-type=native 启用。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/7/30 9:20
+ */
 @Slf4j
-public class RedisDistributedLock {
-    private final RedisClientTemplate redisClient;
+@Component
+@ConditionalOnProperty(prefix = "demo.lock", name = "locker-type", havingValue = "native")
+public class RedisDistributedLock implements DistributedLock, MessageListener, DisposableBean {
+    /**
+     * 解锁消息频道前缀
+     */
+    public static final String CHANNEL_PREFIX = "lock:channel:";
+
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('exists', KEYS[1]) == 0) or (redis.call('hexists', KEYS[1], ARGV[2]) == 1) then " +
+                    "redis.call('hincrby', KEYS[1], ARGV[2], 1); " +
+                    "redis.call('pexpire', KEYS[1], ARGV[1]); " +
+                    "return nil; " +
+                    "end; " +
+                    "return redis.call('pttl', KEYS[1]);", Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
+                    "return nil; " +
+                    "end; " +
+                    "local counter = redis.call('hincrby', KEYS[1], ARGV[1], -1); " +
+                    "if (counter > 0) then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]); " +
+                    "return 0; " +
+                    "end; " +
+                    "redis.call('del', KEYS[1]); " +
+                    "redis.call('publish', KEYS[2], ARGV[1]); " +
+                    "return 1;", Long.class);
+
+    /**
+     * 多key加锁：全部可用时一起加锁返回nil，否则返回 {被占用key的下标, 剩余存活时间}
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ACQUIRE_ALL_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #KEYS do " +
+                    "if (redis.call('exists', KEYS[i]) == 1) and (redis.call('hexists', KEYS[i], ARGV[2]) == 0) then " +
+                    "return {i, redis.call('pttl', KEYS[i])}; " +
+                    "end; " +
+                    "end; " +
+                    "for i = 1, #KEYS do " +
+                    "redis.call('hincrby', KEYS[i], ARGV[2], 1); " +
+                    "redis.call('pexpire', KEYS[i], ARGV[1]); " +
+                    "end; " +
+                    "return nil;", List.class);
+
+    /**
+     * 多key解锁：KEYS前一半为锁，后一半为对应的解锁频道，返回不再由该持有者持有的key数量
+     */
+    private static final RedisScript<Long> RELEASE_ALL_SCRIPT = new DefaultRedisScript<>(
+            "local n = #KEYS / 2; " +
+                    "local missing = 0; " +
+                    "for i = 1, n do " +
+                    "if (redis.call('hexists', KEYS[i], ARGV[1]) == 0) then " +
+                    "missing = missing + 1; " +
+                    "elseif (redis.call('hincrby', KEYS[i], ARGV[1], -1) > 0) then " +
+                    "redis.call('pexpire', KEYS[i], ARGV[2]); " +
+                    "else " +
+                    "redis.call('del', KEYS[i]); " +
+                    "redis.call('publish', KEYS[n + i], ARGV[1]); " +
+                    "end; " +
+                    "end; " +
+                    "return missing;", Long.class);
+
+    /**
+     * 批量续期：ARGV[1]为租期，ARGV[i + 1]为KEYS[i]的持有者，返回与KEYS顺序一致的 1/0 列表
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local result = {}; " +
+                    "for i = 1, #KEYS do " +
+                    "if (redis.call('hexists', KEYS[i], ARGV[i + 1]) == 1) then " +
+                    "redis.call('pexpire', KEYS[i], ARGV[1]); " +
+                    "result[i] = 1; " +
+                    "else " +
+                    "result[i] = 0; " +
+                    "end; " +
+                    "end; " +
+                    "return result;", List.class);
+
+    private static final RedisScript<Long> EXTEND_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('hexists', KEYS[1], ARGV[1]) == 1) then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]); " +
+                    "return 1; " +
+                    "end; " +
+                    "return 0;", Long.class);
+
+    /**
+     * 未启用消息监听时的最长等待间隔
+     */
+    private static final long MAX_POLL_MILLIS = 100;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * key -> 本节点的等待者
+     */
+    private final ConcurrentHashMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    private final LockRenewalScheduler.BatchRenewer renewer = this::renew;
+
+    private volatile LockRenewalScheduler renewalScheduler;
 
-    public RedisDistributedLock(RedisClientTemplate redisClient) {
-        this.redisClient = redisClient;
+    @Autowired
+    public RedisDistributedLock(StringRedisTemplate redisTemplate, ObjectProvider<RedisMessageListenerContainer> listenerContainer) {
+        this(redisTemplate, listenerContainer.getIfAvailable());
     }
 
-    public boolean acquire(String key, String value, int waitTime, int expire) {
-        long start = System.currentTimeMillis();
-        do {
-            try {
-                Boolean lock = acquire(key, value, expire);
+    /**
+     * @param listenerContainer 为null时等待者轮询，不订阅解锁消息
+     */
+    public RedisDistributedLock(StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        if (listenerContainer != null) {
+            listenerContainer.addMessageListener(this, new PatternTopic(CHANNEL_PREFIX + "*"));
+        }
+    }
+
+    @Autowired(required = false)
+    public void setRenewalScheduler(LockRenewalScheduler renewalScheduler) {
+        this.renewalScheduler = renewalScheduler;
+    }
 
-                // 获取锁失败
-                if (!lock && waitTime == 0) {
-                    break;
+    /**
+     * 未注入调度器时（脱离容器使用）在第一次需要时创建默认调度器
+     */
+    private LockRenewalScheduler renewalScheduler() {
+        LockRenewalScheduler scheduler = renewalScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                if (renewalScheduler == null) {
+                    renewalScheduler = new LockRenewalScheduler();
                 }
-                Thread.sleep(500);
-            } catch (Exception ex) {
-                log.error("获取锁失败：{}", ex);
+                scheduler = renewalScheduler;
             }
-        } while ((System.currentTimeMillis() - start) < waitTime * 1000);
-
-        log.warn("获取分布式锁失败 key：" + key + " value:" + value);
-        return Boolean.FALSE;
-    }
-
-
-    public boolean acquire(String key, String value, int expire) {
-        key = CommonConstants.PREFIX + key;
-        log.debug("开始获取分布式锁 key：" + key + " lock_key:" + key + " value:" + value);
-
-        boolean isSuccess = redisClient.setNx(key, System.currentTimeMillis() + CommonConstants.SEPARATOR + value, (expire > CommonConstants.MAX_EXPIRE_TIME) ? CommonConstants.MAX_EXPIRE_TIME : expire);
-        if (isSuccess) {
-            log.info("成功获得分布式锁 key：" + key + " value:" + value);
-            return Boolean.TRUE;
-        }
-        // 存在锁,并对死锁进行修复
-        else {
-            String desc = redisClient.get(key);
-
-            // 首次锁检测
-            if (desc != null && desc.indexOf(CommonConstants.SEPARATOR) > 0) {
-                // 上次上锁时间
-                long lastLockTime = Long.parseLong(desc.split("[" + CommonConstants.SEPARATOR + "]")[0]);
-                // 明确死锁,利用setEx复写，再次设定一个合理的解锁时间让系统正常解锁
-                if (System.currentTimeMillis() - lastLockTime > (expire + CommonConstants.OFFSET_TIME) * 1000) {
-                    // 原子操作，只需要一次,【任然会发生小概率事件，多个服务同时发现死锁同时执行此行代码(并发),
-                    // 为什么设置解锁时间为expire（而不是更小的时间），防止在解锁发送错乱造成新锁解锁】
-                    redisClient.setEx(key, value, expire);
-                    log.warn("发现死锁【" + expire + "秒后解锁】key：" + key + " desc:" + desc);
-                } else {
-                    log.debug("没有发现死锁，当前锁key：" + key + " desc:" + desc);
+        }
+        return scheduler;
+    }
+
+    /**
+     * 同一key的等待者共享一个信号量，每条解锁消息放行一个等待者；users 只在 waiters.compute 中修改
+     */
+    private static final class Waiters {
+        private final Semaphore semaphore = new Semaphore(0);
+        private int users;
+    }
+
+    /**
+     * 锁对象，交给 {@link #unlock(Object)} 释放
+     */
+    public static final class NativeLockHandle {
+        private final String key;
+        private final String token;
+        private final long leaseMillis;
+        private final boolean renewing;
+
+        private NativeLockHandle(String key, String token, long leaseMillis, boolean renewing) {
+            this.key = key;
+            this.token = token;
+            this.leaseMillis = leaseMillis;
+            this.renewing = renewing;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return CommonConstants.PREFIX + key;
+        }
+    }
+
+    private String token() {
+        return nodeId + ":" + Thread.currentThread().getId();
+    }
+
+    /**
+     * 执行一次加锁脚本
+     *
+     * @return null 表示加锁成功，否则为锁的剩余存活时间(毫秒)
+     */
+    private Long tryAcquireOnce(String lockKey, String token, long leaseMillis) {
+        return redisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(lockKey),
+                String.valueOf(leaseMillis), token);
+    }
+
+    /**
+     * @param waitMillis 小于0表示一直等待
+     */
+    private NativeLockHandle acquire(String key, long waitMillis, long leaseTime, TimeUnit unit) {
+        String lockKey = CommonConstants.PREFIX + key;
+        String token = token();
+        long leaseMillis = leaseTime > 0 ? unit.toMillis(leaseTime) : renewalScheduler().getLeaseMillis();
+        long deadline = waitMillis < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + waitMillis;
+
+        Long ttl = tryAcquireOnce(lockKey, token, leaseMillis);
+        if (ttl == null) {
+            return onAcquired(key, lockKey, token, leaseTime, leaseMillis);
+        }
+        // 先登记再重试，登记之后发出的解锁消息都不会丢失
+        Waiters w = retain(key);
+        try {
+            while (true) {
+                ttl = tryAcquireOnce(lockKey, token, leaseMillis);
+                if (ttl == null) {
+                    return onAcquired(key, lockKey, token, leaseTime, leaseMillis);
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
                 }
-            } else {
-                log.warn("死锁解锁中key：" + key + " desc:" + desc);
+                long wait = Math.min(remaining, ttl < 0 ? MAX_POLL_MILLIS : ttl);
+                if (listenerContainer == null) {
+                    wait = Math.min(wait, MAX_POLL_MILLIS);
+                }
+                w.semaphore.tryAcquire(Math.max(wait, 1), TimeUnit.MILLISECONDS);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("尝试获取Redis锁异常：", e);
+            return null;
+        } finally {
+            release(key, w);
         }
-        return Boolean.FALSE;
     }
 
-    public boolean release(String key) {
-        String lock_key = CommonConstants.PREFIX + key;
+    /**
+     * @param waitMillis 小于0表示一直等待
+     */
+    private MultiLockHandle acquireAll(Collection<String> keys, long waitMillis, long leaseTime, TimeUnit unit) {
+        List<String> sorted = MultiLockSupport.sortedKeys(keys);
+        List<String> lockKeys = new ArrayList<>(sorted.size());
+        for (String key : sorted) {
+            lockKeys.add(CommonConstants.PREFIX + key);
+        }
+        String token = token();
+        long leaseMillis = leaseTime > 0 ? unit.toMillis(leaseTime) : renewalScheduler().getLeaseMillis();
+        long deadline = waitMillis < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + waitMillis;
+
+        String waitingKey = null;
+        Waiters w = null;
+        try {
+            while (true) {
+                List<?> blocked = redisTemplate.execute(ACQUIRE_ALL_SCRIPT, lockKeys, String.valueOf(leaseMillis), token);
+                if (blocked == null || blocked.isEmpty()) {
+                    List<Object> locks = new ArrayList<>(sorted.size());
+                    for (int i = 0; i < sorted.size(); i++) {
+                        locks.add(onAcquired(sorted.get(i), lockKeys.get(i), token, leaseTime, leaseMillis));
+                    }
+                    return new MultiLockHandle(sorted, locks, token);
+                }
+                String key = sorted.get(((Number) blocked.get(0)).intValue() - 1);
+                if (!key.equals(waitingKey)) {
+                    // 换了等待的key：先登记再重试，登记之后发出的解锁消息都不会丢失
+                    if (w != null) {
+                        release(waitingKey, w);
+                    }
+                    w = retain(key);
+                    waitingKey = key;
+                    continue;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                long ttl = ((Number) blocked.get(1)).longValue();
+                long wait = Math.min(remaining, ttl < 0 ? MAX_POLL_MILLIS : ttl);
+                if (listenerContainer == null) {
+                    wait = Math.min(wait, MAX_POLL_MILLIS);
+                }
+                w.semaphore.tryAcquire(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("尝试获取Redis锁异常：", e);
+            return null;
+        } finally {
+            if (w != null) {
+                release(waitingKey, w);
+            }
+        }
+    }
+
+    private boolean unlockAll(MultiLockHandle handle) {
+        if (!(handle.getDelegate() instanceof String)) {
+            return MultiLockSupport.release(this, handle);
+        }
+        String token = (String) handle.getDelegate();
+        List<String> keys = new ArrayList<>(handle.getKeys().size() * 2);
+        for (String key : handle.getKeys()) {
+            keys.add(CommonConstants.PREFIX + key);
+        }
+        for (String key : handle.getKeys()) {
+            keys.add(CHANNEL_PREFIX + key);
+        }
+        NativeLockHandle first = (NativeLockHandle) handle.getLocks().get(0);
         try {
-            return redisClient.del(lock_key);
+            Long missing = redisTemplate.execute(RELEASE_ALL_SCRIPT, keys, token, String.valueOf(first.leaseMillis));
+            if (first.renewing) {
+                for (Object lock : handle.getLocks()) {
+                    renewalScheduler().release(CommonConstants.PREFIX + ((NativeLockHandle) lock).key, token);
+                }
+            }
+            if (missing != null && missing > 0) {
+                log.error("解锁锁失败，没有锁住。key：{} 数量：{}", handle, missing);
+                return false;
+            }
+            return true;
+        } catch (Exception ex) {
+            log.error("解锁锁失败key：{} Message：", handle, ex);
+            return false;
+        }
+    }
+
+    private Waiters retain(String key) {
+        return waiters.compute(key, (k, w) -> {
+            if (w == null) {
+                w = new Waiters();
+            }
+            w.users++;
+            return w;
+        });
+    }
+
+    private void release(String key, Waiters waiter) {
+        waiters.computeIfPresent(key, (k, w) -> w != waiter || --w.users > 0 ? w : null);
+    }
+
+    private NativeLockHandle onAcquired(String key, String lockKey, String token, long leaseTime, long leaseMillis) {
+        boolean renewing = leaseTime <= 0;
+        if (renewing) {
+            renewalScheduler().register(lockKey, token, renewer, Thread.currentThread());
+        }
+        return new NativeLockHandle(key, token, leaseMillis, renewing);
+    }
+
+    private boolean[] renew(List<String> lockKeys, List<String> owners, long leaseMillis) {
+        Object[] args = new Object[owners.size() + 1];
+        args[0] = String.valueOf(leaseMillis);
+        for (int i = 0; i < owners.size(); i++) {
+            args[i + 1] = owners.get(i);
+        }
+        List<?> result = redisTemplate.execute(RENEW_SCRIPT, lockKeys, args);
+        boolean[] renewed = new boolean[lockKeys.size()];
+        for (int i = 0; i < renewed.length && result != null && i < result.size(); i++) {
+            Object r = result.get(i);
+            renewed[i] = r instanceof Number && ((Number) r).longValue() == 1;
+        }
+        return renewed;
+    }
+
+    /**
+     * 续期，只有持有者才能延长过期时间
+     *
+     * @param lock      锁对象
+     * @param leaseTime 新的租期
+     * @param unit      {@code leaseTime} 参数的时间单位
+     * @return 是否续期成功
+     */
+    public boolean extend(Object lock, long leaseTime, TimeUnit unit) {
+        if (!(lock instanceof NativeLockHandle)) {
+            return false;
+        }
+        NativeLockHandle handle = (NativeLockHandle) lock;
+        Long renewed = redisTemplate.execute(EXTEND_SCRIPT, Collections.singletonList(CommonConstants.PREFIX + handle.key),
+                handle.token, String.valueOf(unit.toMillis(leaseTime)));
+        return renewed != null && renewed == 1;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        Waiters w = waiters.get(channel.substring(CHANNEL_PREFIX.length()));
+        if (w != null) {
+            w.semaphore.release();
+        }
+    }
+
+    @Override
+    public NativeLockHandle lock(String key, long leaseTime, TimeUnit unit, boolean isFair) {
+        return acquire(key, -1, leaseTime, unit);
+    }
+
+    @Override
+    public NativeLockHandle lock(String key, long leaseTime, TimeUnit unit) {
+        return lock(key, leaseTime, unit, false);
+    }
+
+    @Override
+    public NativeLockHandle lock(String key, boolean isFair) {
+        return lock(key, -1, null, isFair);
+    }
+
+    @Override
+    public NativeLockHandle lock(String key) {
+        return lock(key, -1, null, false);
+    }
+
+    @Override
+    public NativeLockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit, boolean isFair) {
+        return acquire(key, Math.max(unit.toMillis(waitTime), 0), leaseTime, unit);
+    }
+
+    @Override
+    public NativeLockHandle tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return tryLock(key, waitTime, leaseTime, unit, false);
+    }
+
+    @Override
+    public NativeLockHandle tryLock(String key, long waitTime, TimeUnit unit, boolean isFair) {
+        return tryLock(key, waitTime, -1, unit, isFair);
+    }
+
+    @Override
+    public NativeLockHandle tryLock(String key, long waitTime, TimeUnit unit) {
+        return tryLock(key, waitTime, -1, unit, false);
+    }
+
+    @Override
+    public MultiLockHandle lockAll(Collection<String> keys, long leaseTime, TimeUnit unit) {
+        return acquireAll(keys, -1, leaseTime, unit);
+    }
+
+    @Override
+    public MultiLockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) {
+        return acquireAll(keys, Math.max(unit.toMillis(waitTime), 0), leaseTime, unit);
+    }
+
+    @Override
+    public boolean unlock(Object lock) {
+        if (lock == null) {
+            return false;
+        }
+        if (lock instanceof MultiLockHandle) {
+            return unlockAll((MultiLockHandle) lock);
+        }
+        if (!(lock instanceof NativeLockHandle)) {
+            log.error("解锁锁失败，非NativeLockHandle类型锁。key：{} ", lock);
+            return false;
+        }
+        NativeLockHandle handle = (NativeLockHandle) lock;
+        String lockKey = CommonConstants.PREFIX + handle.key;
+        List<String> keys = Arrays.asList(lockKey, CHANNEL_PREFIX + handle.key);
+        try {
+            Long released = redisTemplate.execute(RELEASE_SCRIPT, keys, handle.token, String.valueOf(handle.leaseMillis));
+            if (released == null) {
+                renewalScheduler().cancel(lockKey, handle.token);
+                log.error("解锁锁失败，没有锁住。");
+                return false;
+            }
+            if (handle.renewing) {
+                renewalScheduler().release(lockKey, handle.token);
+            }
+            return true;
         } catch (Exception ex) {
-            log.error("解锁锁失败key：{} lock_key：{} Message：", key, lock_key, ex);
+            log.error("解锁锁失败key：{} lock_key：{} Message：", handle.key, lockKey, ex);
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (listenerContainer != null) {
+            listenerContainer.removeMessageListener(this);
         }
-        return Boolean.FALSE;
     }
-}
\ No newline at end of file
+}
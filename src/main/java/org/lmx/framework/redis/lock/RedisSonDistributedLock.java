@@ -1,33 +1,117 @@
 package org.lmx.framework.redis.lock;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.lmx.framework.redis.constants.CommonConstants;
+import org.lmx.framework.redis.metrics.LockMetrics;
+import org.lmx.framework.redis.metrics.LockStats;
+import org.redisson.RedissonMultiLock;
+import org.redisson.api.RFuture;
 import org.redisson.api.RLock;
+import org.redisson.api.RReadWriteLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 功能描述:
  * RedisSon分布式锁实现，基本锁功能的抽象实现
  * 本接口能满足绝大部分的需求，高级的锁功能，请自行扩展或直接使用原生api
+ * 异步加锁以每次加锁唯一的虚拟线程号持有锁，可在任意线程上解锁
+ * leaseTime 为 -1 的锁以固定租期加锁并登记到 {@link LockRenewalScheduler} 批量续期，不再每把锁一个续期定时器
+ * 多key加锁使用 {@link RedissonMultiLock}，key排序后加锁，超时时全部释放
+ * 读写锁使用 {@link RReadWriteLock}，其持有结构与普通锁不同，续期沿用Redisson自身的看门狗
+ * 容器中有 {@link LockMetrics} 时，lock/tryLock 的等待耗时、超时与解锁失败汇总记录在 {@link LockMetrics#LOCKER_NAME} 下，
+ * 覆盖不经过 @Lock 注解直接调用的场景
  *
  * @author LM.X
  * @date 2020/7/10 16:13
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 @ConditionalOnClass(RedissonClient.class)
 @ConditionalOnProperty(prefix = "demo.lock", name = "locker-type", havingValue = "redis", matchIfMissing = true)
-public class RedisSonDistributedLock implements DistributedLock {
+public class RedisSonDistributedLock implements DistributedLock, AsyncDistributedLock {
+    /**
+     * 异步锁的虚拟线程号从负数分配，不会与真实线程号冲突
+     */
+    private static final AtomicLong ASYNC_OWNER_SEQUENCE = new AtomicLong();
+
     private final RedissonClient redisSon;
 
+    /**
+     * 为null时沿用Redisson自身的看门狗
+     */
+    private final RedissonLockRenewer renewer;
+
+    private volatile LockRenewalScheduler renewalScheduler;
+
+    /**
+     * 为null时不记录指标
+     */
+    private LockStats lockerStats;
+
+    public RedisSonDistributedLock(RedissonClient redisSon) {
+        this.redisSon = redisSon;
+        this.renewer = RedissonLockRenewer.of(redisSon);
+    }
+
+    @Autowired(required = false)
+    public void setRenewalScheduler(LockRenewalScheduler renewalScheduler) {
+        this.renewalScheduler = renewalScheduler;
+    }
+
+    /**
+     * 未注入调度器时（脱离容器使用）在第一次需要时创建默认调度器
+     */
+    private LockRenewalScheduler renewalScheduler() {
+        LockRenewalScheduler scheduler = renewalScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                if (renewalScheduler == null) {
+                    renewalScheduler = new LockRenewalScheduler();
+                }
+                scheduler = renewalScheduler;
+            }
+        }
+        return scheduler;
+    }
+
+    @Autowired(required = false)
+    public void setLockMetrics(LockMetrics lockMetrics) {
+        this.lockerStats = lockMetrics.stats(LockMetrics.LOCKER_NAME);
+    }
+
+    /**
+     * 异步锁对象
+     */
+    public static final class AsyncLockHandle {
+        private final RLock lock;
+        private final long ownerId;
+
+        private AsyncLockHandle(RLock lock, long ownerId) {
+            this.lock = lock;
+            this.ownerId = ownerId;
+        }
+
+        public RLock getLock() {
+            return lock;
+        }
+
+        @Override
+        public String toString() {
+            return lock.getName();
+        }
+    }
+
     private RLock getLock(String key, boolean isFair) {
         if (isFair) {
             return redisSon.getFairLock(CommonConstants.PREFIX + key);
@@ -35,10 +119,42 @@ public class RedisSonDistributedLock implements DistributedLock {
         return redisSon.getLock(CommonConstants.PREFIX + key);
     }
 
+    private boolean batchRenewal(long leaseTime) {
+        return leaseTime < 0 && renewer != null;
+    }
+
+    private void register(RLock lock, long ownerId, Thread thread) {
+        renewalScheduler().register(lock.getName(), renewer.owner(ownerId), renewer, thread);
+    }
+
+    private void release(RLock lock, long ownerId) {
+        if (renewer != null) {
+            renewalScheduler().release(lock.getName(), renewer.owner(ownerId));
+        }
+    }
+
     @Override
     public RLock lock(String key, long leaseTime, TimeUnit unit, boolean isFair) {
+        LockStats stats = lockerStats;
+        if (stats == null) {
+            return acquire(key, leaseTime, unit, isFair);
+        }
+        long start = stats.beginAcquire();
+        try {
+            return acquire(key, leaseTime, unit, isFair);
+        } finally {
+            stats.endAcquire(start, true);
+        }
+    }
+
+    private RLock acquire(String key, long leaseTime, TimeUnit unit, boolean isFair) {
         RLock lock = getLock(key, isFair);
-        lock.lock(leaseTime, unit);
+        if (batchRenewal(leaseTime)) {
+            lock.lock(renewalScheduler().getLeaseMillis(), TimeUnit.MILLISECONDS);
+            register(lock, Thread.currentThread().getId(), Thread.currentThread());
+        } else {
+            lock.lock(leaseTime, unit);
+        }
         return lock;
     }
 
@@ -59,12 +175,33 @@ public class RedisSonDistributedLock implements DistributedLock {
 
     @Override
     public RLock tryLock(String key, long waitTime, long leaseTime, TimeUnit unit, boolean isFair) {
+        LockStats stats = lockerStats;
+        if (stats == null) {
+            return tryAcquire(key, waitTime, leaseTime, unit, isFair);
+        }
+        long start = stats.beginAcquire();
+        RLock lock = null;
+        try {
+            lock = tryAcquire(key, waitTime, leaseTime, unit, isFair);
+            return lock;
+        } finally {
+            stats.endAcquire(start, lock != null);
+        }
+    }
+
+    private RLock tryAcquire(String key, long waitTime, long leaseTime, TimeUnit unit, boolean isFair) {
         RLock lock = getLock(key, isFair);
         try {
-            if (lock.tryLock(waitTime, leaseTime, unit)) {
+            if (batchRenewal(leaseTime)) {
+                if (lock.tryLock(unit.toMillis(waitTime), renewalScheduler().getLeaseMillis(), TimeUnit.MILLISECONDS)) {
+                    register(lock, Thread.currentThread().getId(), Thread.currentThread());
+                    return lock;
+                }
+            } else if (lock.tryLock(waitTime, leaseTime, unit)) {
                 return lock;
             }
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             log.error("尝试获取Redis锁异常：", e);
         }
         return null;
@@ -85,20 +222,203 @@ public class RedisSonDistributedLock implements DistributedLock {
         return tryLock(key, waitTime, -1, unit, false);
     }
 
+    private RReadWriteLock getReadWriteLock(String key) {
+        return redisSon.getReadWriteLock(CommonConstants.PREFIX + key);
+    }
+
+    private static RLock doLock(RLock lock, long leaseTime, TimeUnit unit) {
+        lock.lock(leaseTime, unit);
+        return lock;
+    }
+
+    private static RLock doTryLock(RLock lock, long waitTime, long leaseTime, TimeUnit unit) {
+        try {
+            if (lock.tryLock(waitTime, leaseTime, unit)) {
+                return lock;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("尝试获取Redis锁异常：", e);
+        }
+        return null;
+    }
+
+    @Override
+    public RLock readLock(String key, long leaseTime, TimeUnit unit) {
+        return doLock(getReadWriteLock(key).readLock(), leaseTime, unit);
+    }
+
+    @Override
+    public RLock tryReadLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return doTryLock(getReadWriteLock(key).readLock(), waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public RLock writeLock(String key, long leaseTime, TimeUnit unit) {
+        return doLock(getReadWriteLock(key).writeLock(), leaseTime, unit);
+    }
+
+    @Override
+    public RLock tryWriteLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        return doTryLock(getReadWriteLock(key).writeLock(), waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public MultiLockHandle lockAll(Collection<String> keys, long leaseTime, TimeUnit unit) {
+        return acquireAll(keys, -1, leaseTime, unit);
+    }
+
+    @Override
+    public MultiLockHandle tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) {
+        return acquireAll(keys, Math.max(waitTime, 0), leaseTime, unit);
+    }
+
+    /**
+     * @param waitTime 小于0表示一直等待
+     */
+    private MultiLockHandle acquireAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) {
+        List<String> sorted = MultiLockSupport.sortedKeys(keys);
+        List<Object> locks = new ArrayList<>(sorted.size());
+        for (String key : sorted) {
+            locks.add(getLock(key, false));
+        }
+        RedissonMultiLock multiLock = new RedissonMultiLock(locks.toArray(new RLock[0]));
+        boolean batchRenewal = batchRenewal(leaseTime);
+        long leaseMillis = batchRenewal ? renewalScheduler().getLeaseMillis() : leaseTime < 0 ? -1 : unit.toMillis(leaseTime);
+        if (waitTime < 0) {
+            multiLock.lock(leaseMillis, TimeUnit.MILLISECONDS);
+        } else {
+            try {
+                if (!multiLock.tryLock(unit.toMillis(waitTime), leaseMillis, TimeUnit.MILLISECONDS)) {
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("尝试获取Redis锁异常：", e);
+                return null;
+            }
+        }
+        if (batchRenewal) {
+            for (Object lock : locks) {
+                register((RLock) lock, Thread.currentThread().getId(), Thread.currentThread());
+            }
+        }
+        return new MultiLockHandle(sorted, locks, multiLock);
+    }
+
+    private boolean unlockAll(MultiLockHandle handle) {
+        if (!(handle.getDelegate() instanceof RedissonMultiLock)) {
+            return MultiLockSupport.release(this, handle);
+        }
+        for (Object lock : handle.getLocks()) {
+            release((RLock) lock, Thread.currentThread().getId());
+        }
+        try {
+            ((RedissonMultiLock) handle.getDelegate()).unlock();
+            return true;
+        } catch (Exception e) {
+            log.error("解锁锁失败，没有锁住。key：{}", handle, e);
+            unlockFailed();
+            return false;
+        }
+    }
+
     @Override
     public boolean unlock(Object lock) {
+        if (lock instanceof MultiLockHandle) {
+            return unlockAll((MultiLockHandle) lock);
+        }
         if (lock != null) {
             if (lock instanceof RLock) {
                 RLock rLock = (RLock) lock;
                 if (rLock.isLocked()) {
+                    release(rLock, Thread.currentThread().getId());
                     rLock.unlock();
                     return true;
                 }
                 log.error("解锁锁失败，没有锁住。");
+                unlockFailed();
             }else{
                 log.error("解锁锁失败，非RLock类型锁。key：{} ", lock);
             }
         }
         return false;
     }
+
+    private void unlockFailed() {
+        LockStats stats = lockerStats;
+        if (stats != null) {
+            stats.unlockFailed();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Object> lockAsync(String key, long leaseTime, TimeUnit unit, boolean isFair) {
+        RLock lock = getLock(key, isFair);
+        long ownerId = ASYNC_OWNER_SEQUENCE.decrementAndGet();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        boolean batchRenewal = batchRenewal(leaseTime);
+        RFuture<Void> acquire = batchRenewal
+                ? lock.lockAsync(renewalScheduler().getLeaseMillis(), TimeUnit.MILLISECONDS, ownerId)
+                : lock.lockAsync(leaseTime, unit, ownerId);
+        acquire.onComplete((r, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                if (batchRenewal) {
+                    register(lock, ownerId, null);
+                }
+                future.complete(new AsyncLockHandle(lock, ownerId));
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Object> tryLockAsync(String key, long waitTime, long leaseTime, TimeUnit unit, boolean isFair) {
+        RLock lock = getLock(key, isFair);
+        long ownerId = ASYNC_OWNER_SEQUENCE.decrementAndGet();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        boolean batchRenewal = batchRenewal(leaseTime);
+        RFuture<Boolean> acquire = batchRenewal
+                ? lock.tryLockAsync(unit.toMillis(waitTime), renewalScheduler().getLeaseMillis(), TimeUnit.MILLISECONDS, ownerId)
+                : lock.tryLockAsync(waitTime, leaseTime, unit, ownerId);
+        acquire.onComplete((acquired, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else if (acquired) {
+                if (batchRenewal) {
+                    register(lock, ownerId, null);
+                }
+                future.complete(new AsyncLockHandle(lock, ownerId));
+            } else {
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> unlockAsync(Object lock) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        if (!(lock instanceof AsyncLockHandle)) {
+            if (lock != null) {
+                log.error("解锁锁失败，非AsyncLockHandle类型锁。key：{} ", lock);
+            }
+            future.complete(false);
+            return future;
+        }
+        AsyncLockHandle handle = (AsyncLockHandle) lock;
+        release(handle.lock, handle.ownerId);
+        handle.lock.unlockAsync(handle.ownerId).onComplete((r, e) -> {
+            if (e != null) {
+                log.error("解锁锁失败，没有锁住。", e);
+                unlockFailed();
+                future.complete(false);
+            } else {
+                future.complete(true);
+            }
+        });
+        return future;
+    }
 }
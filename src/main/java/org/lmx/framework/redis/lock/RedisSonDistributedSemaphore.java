@@ -0,0 +1,286 @@
+package org.lmx.framework.redis.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lmx.framework.redis.constants.CommonConstants;
+import org.lmx.framework.redis.metrics.SemaphoreStats;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 功能描述: RedisSon分布式信号量实现
+ * <pre>
+ *  每个key由两个Redis Key组成（{key} 为集群hash tag）：
+ *
+ *      semaphore:{key}:holders  ZSET 许可ID -> 到期时间（毫秒，不自动归还的许可为一个极大值）
+ *      semaphore:{key}:permits  许可总数
+ *
+ *  获取与归还各是一个Lua脚本（通过Redisson执行）：获取时先清理已到期的许可，剩余许可不少于count个时一次登记全部许可ID，
+ *  否则一个也不登记，保证要么全部持有要么全部不持有，不会出现两个调用方各持有一部分而相互等待。
+ *  许可不足时按 1~{@link #MAX_BACKOFF_MILLIS} 毫秒的随机退避重试，直到获取成功或超过等待时间。
+ *
+ *  许可总数在每次获取时写入，修改 permits 后下一次获取即生效；已发出的许可不受影响，超出新总数的部分归还后不再发出。
+ *  时间均取Redis服务端的TIME，不受各节点时钟差影响。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/7 10:20
+ */
+@Slf4j
+@Component
+@ConditionalOnClass(RedissonClient.class)
+public class RedisSonDistributedSemaphore implements DistributedSemaphore, SmartInitializingSingleton {
+    /**
+     * 许可不足时的最大退避时间(毫秒)
+     */
+    private static final int MAX_BACKOFF_MILLIS = 50;
+
+    /**
+     * 获取许可，KEYS: holders, permits；ARGV: 许可总数, 租期毫秒(-1为不自动归还), 许可ID...
+     * 返回1表示全部获取，0表示许可不足
+     */
+    private static final String ACQUIRE_SCRIPT =
+            "redis.replicate_commands(); " +
+                    "local t = redis.call('TIME'); " +
+                    "local now = t[1] * 1000 + math.floor(t[2] / 1000); " +
+                    "local permits = tonumber(ARGV[1]); " +
+                    "local lease = tonumber(ARGV[2]); " +
+                    "redis.call('SET', KEYS[2], permits); " +
+                    "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now); " +
+                    "if permits - redis.call('ZCARD', KEYS[1]) < #ARGV - 2 then return 0; end; " +
+                    "local expireAt = lease < 0 and 9007199254740991 or now + lease; " +
+                    "for i = 3, #ARGV do redis.call('ZADD', KEYS[1], expireAt, ARGV[i]); end; " +
+                    "return 1;";
+
+    /**
+     * 归还许可，KEYS: holders；ARGV: 许可ID...，返回实际归还的个数（已到期被清理的不计）
+     */
+    private static final String RELEASE_SCRIPT =
+            "redis.replicate_commands(); " +
+                    "local t = redis.call('TIME'); " +
+                    "local now = t[1] * 1000 + math.floor(t[2] / 1000); " +
+                    "local n = 0; " +
+                    "for i = 1, #ARGV do " +
+                    "local expireAt = redis.call('ZSCORE', KEYS[1], ARGV[i]); " +
+                    "if expireAt and tonumber(expireAt) > now then n = n + 1; end; " +
+                    "redis.call('ZREM', KEYS[1], ARGV[i]); " +
+                    "end; " +
+                    "return n;";
+
+    /**
+     * 可用许可数，KEYS: holders, permits
+     */
+    private static final String AVAILABLE_SCRIPT =
+            "redis.replicate_commands(); " +
+                    "local t = redis.call('TIME'); " +
+                    "local now = t[1] * 1000 + math.floor(t[2] / 1000); " +
+                    "local permits = tonumber(redis.call('GET', KEYS[2]) or '0'); " +
+                    "return math.max(0, permits - redis.call('ZCOUNT', KEYS[1], '(' .. now, '+inf'));";
+
+    private final RedissonClient redisSon;
+
+    /**
+     * key -> 本JVM持有的许可数
+     */
+    private final ConcurrentHashMap<String, AtomicLong> inUse = new ConcurrentHashMap<>();
+
+    private final SemaphoreStats stats = new SemaphoreStats();
+
+    @Autowired(required = false)
+    private BeanFactory beanFactory;
+
+    public RedisSonDistributedSemaphore(RedissonClient redisSon) {
+        this.redisSon = redisSon;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        stats.bind(beanFactory);
+    }
+
+    /**
+     * 许可对象，交给 {@link #release(Object)} 归还
+     */
+    public static final class PermitHandle {
+        private final String key;
+        private final List<String> permitIds;
+
+        private PermitHandle(String key, List<String> permitIds) {
+            this.key = key;
+            this.permitIds = permitIds;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public List<String> getPermitIds() {
+            return Collections.unmodifiableList(permitIds);
+        }
+
+        @Override
+        public String toString() {
+            return CommonConstants.SEMAPHORE_PREFIX + key + permitIds;
+        }
+    }
+
+    private static List<Object> keys(String key) {
+        String base = CommonConstants.SEMAPHORE_PREFIX + "{" + key + "}:";
+        return Arrays.asList(base + "holders", base + "permits");
+    }
+
+    private RScript script() {
+        return redisSon.getScript(StringCodec.INSTANCE);
+    }
+
+    @Override
+    public PermitHandle acquire(String key, int permits, int count, long leaseTime, TimeUnit unit) {
+        return doAcquire(key, permits, count, -1, leaseTime, unit);
+    }
+
+    @Override
+    public PermitHandle tryAcquire(String key, int permits, int count, long waitTime, long leaseTime, TimeUnit unit) {
+        return doAcquire(key, permits, count, Math.max(unit.toMillis(waitTime), 0), leaseTime, unit);
+    }
+
+    /**
+     * @param waitMillis 小于0表示一直等待
+     */
+    private PermitHandle doAcquire(String key, int permits, int count, long waitMillis, long leaseTime, TimeUnit unit) {
+        if (count < 1 || count > permits) {
+            throw new IllegalArgumentException("count must be between 1 and " + permits + ": " + count);
+        }
+        long start = System.nanoTime();
+        long deadline = waitMillis < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + waitMillis;
+        List<String> permitIds = newPermitIds(count);
+        Object[] args = new Object[count + 2];
+        args[0] = String.valueOf(permits);
+        args[1] = String.valueOf(leaseTime < 0 ? -1 : unit.toMillis(leaseTime));
+        for (int i = 0; i < count; i++) {
+            args[i + 2] = permitIds.get(i);
+        }
+        List<Object> keys = keys(key);
+        try {
+            while (true) {
+                Long acquired = script().eval(RScript.Mode.READ_WRITE, ACQUIRE_SCRIPT, RScript.ReturnType.INTEGER, keys, args);
+                if (acquired != null && acquired == 1) {
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    stats.timedOut();
+                    return null;
+                }
+                Thread.sleep(Math.min(remaining, ThreadLocalRandom.current().nextInt(1, MAX_BACKOFF_MILLIS)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("尝试获取Redis信号量异常：", e);
+            stats.timedOut();
+            return null;
+        }
+
+        stats.acquired(count, System.nanoTime() - start);
+        inUse.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(count);
+        return new PermitHandle(key, permitIds);
+    }
+
+    private static List<String> newPermitIds(int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> permitIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            permitIds.add(Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+        }
+        return permitIds;
+    }
+
+    @Override
+    public boolean release(Object permit) {
+        if (!(permit instanceof PermitHandle)) {
+            if (permit != null) {
+                log.error("归还许可失败，非PermitHandle类型许可。key：{} ", permit);
+            }
+            return false;
+        }
+        PermitHandle handle = (PermitHandle) permit;
+        int count = handle.permitIds.size();
+        stats.released(count);
+        inUse.computeIfPresent(handle.key, (k, n) -> n.addAndGet(-count) > 0 ? n : null);
+        try {
+            Long released = script().eval(RScript.Mode.READ_WRITE, RELEASE_SCRIPT, RScript.ReturnType.INTEGER,
+                    keys(handle.key), handle.permitIds.toArray());
+            if (released != null && released == count) {
+                return true;
+            }
+            log.error("归还许可失败，许可已过期。key：{}", handle);
+        } catch (Exception e) {
+            log.error("归还许可失败key：{} Message：", handle, e);
+        }
+        return false;
+    }
+
+    @Override
+    public int availablePermits(String key) {
+        Long available = script().eval(RScript.Mode.READ_WRITE, AVAILABLE_SCRIPT, RScript.ReturnType.INTEGER, keys(key));
+        return available == null ? 0 : available.intValue();
+    }
+
+    public SemaphoreStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 成功获取的次数
+     */
+    public long getAcquireCount() {
+        return stats.getAcquires();
+    }
+
+    /**
+     * 等待超时的次数
+     */
+    public long getTimeoutCount() {
+        return stats.getTimeouts();
+    }
+
+    /**
+     * 成功获取的平均等待时间(纳秒)
+     */
+    public long getAverageWaitNanos() {
+        long count = stats.getAcquires();
+        return count == 0 ? 0 : stats.getWait().totalNanos() / count;
+    }
+
+    public long getMaxWaitNanos() {
+        return stats.getWait().maxNanos();
+    }
+
+    /**
+     * 本JVM当前持有的许可数
+     */
+    public long getPermitsInUse() {
+        return stats.getPermitsInUse();
+    }
+
+    /**
+     * 本JVM当前持有某个key的许可数
+     */
+    public long getPermitsInUse(String key) {
+        AtomicLong n = inUse.get(key);
+        return n == null ? 0 : n.get();
+    }
+}
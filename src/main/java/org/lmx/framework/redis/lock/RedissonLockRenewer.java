@@ -0,0 +1,76 @@
+package org.lmx.framework.redis.lock;
+
+import org.redisson.Redisson;
+import org.redisson.api.*;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 功能描述: Redisson锁的批量续期
+ * <pre>
+ *  Redisson锁是以 连接管理器ID:线程号 为field的hash，续期脚本与Redisson看门狗一致（持有者校验 + pexpire），
+ *  一批锁放进同一个RBatch一次发出，集群模式下按节点分组，每个节点一次往返。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/3 11:10
+ */
+final class RedissonLockRenewer implements LockRenewalScheduler.BatchRenewer {
+
+    private static final String RENEW_SCRIPT =
+            "if (redis.call('hexists', KEYS[1], ARGV[2]) == 1) then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[1]); " +
+                    "return 1; " +
+                    "end; " +
+                    "return 0;";
+
+    private final RedissonClient redisSon;
+
+    private final String id;
+
+    private RedissonLockRenewer(RedissonClient redisSon, String id) {
+        this.redisSon = redisSon;
+        this.id = id;
+    }
+
+    /**
+     * 无法得到持有者标识（非 {@link Redisson} 实现）时返回null，此时沿用Redisson自身的看门狗
+     */
+    static RedissonLockRenewer of(RedissonClient redisSon) {
+        if (redisSon instanceof Redisson) {
+            return new RedissonLockRenewer(redisSon, String.valueOf(((Redisson) redisSon).getConnectionManager().getId()));
+        }
+        return null;
+    }
+
+    /**
+     * 与 RedissonLock#getLockName 一致的持有者标识
+     */
+    String owner(long threadId) {
+        return id + ":" + threadId;
+    }
+
+    @Override
+    public boolean[] renew(List<String> lockKeys, List<String> owners, long leaseMillis) {
+        RBatch batch = redisSon.createBatch(BatchOptions.defaults());
+        RScriptAsync script = batch.getScript(StringCodec.INSTANCE);
+        String lease = String.valueOf(leaseMillis);
+        List<RFuture<Long>> futures = new ArrayList<>(lockKeys.size());
+        for (int i = 0; i < lockKeys.size(); i++) {
+            String lockKey = lockKeys.get(i);
+            futures.add(script.evalAsync(lockKey, RScript.Mode.READ_WRITE, RENEW_SCRIPT, RScript.ReturnType.INTEGER,
+                    Collections.<Object>singletonList(lockKey), lease, owners.get(i)));
+        }
+        batch.execute();
+
+        boolean[] renewed = new boolean[futures.size()];
+        for (int i = 0; i < renewed.length; i++) {
+            Long result = futures.get(i).getNow();
+            renewed[i] = result != null && result == 1;
+        }
+        return renewed;
+    }
+}
@@ -0,0 +1,95 @@
+package org.lmx.framework.redis.metrics;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.util.ClassUtils;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 功能描述: Key过期事件管道的统计
+ * <pre>
+ *  lag 为事件从订阅线程入队到交给处理器的耗时；queueDepth 为队列中等待处理的事件数；
+ *  dropped 为队列已满时丢弃的事件数，handled / failures 为处理器收到的key数与处理器抛出异常的次数。
+ *
+ *  引入了Micrometer时以 demo.redis.expired.lag（FunctionTimer）、demo.redis.expired.queue.depth（Gauge）、
+ *  demo.redis.expired.received / dropped / handled / failures（FunctionCounter）暴露。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/18 10:00
+ */
+public final class ExpirationEventStats {
+    private static final boolean MICROMETER_PRESENT = ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", ExpirationEventStats.class.getClassLoader());
+
+    private final IntSupplier queueDepth;
+    private final HdrLatencyRecorder lag = new HdrLatencyRecorder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param queueDepth 读取当前队列长度
+     */
+    public ExpirationEventStats(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * 功能描述: 容器中有 MeterRegistry 时注册到Micrometer
+     */
+    public void bind(BeanFactory beanFactory) {
+        if (!MICROMETER_PRESENT || beanFactory == null) {
+            return;
+        }
+        Object registry = MicrometerSupport.registry(beanFactory);
+        if (registry != null) {
+            MicrometerSupport.bind(registry, this);
+        }
+    }
+
+    public void received() {
+        received.increment();
+    }
+
+    public void dropped() {
+        dropped.increment();
+    }
+
+    public void lag(long nanos) {
+        lag.record(nanos);
+    }
+
+    public void handled(int keys) {
+        handled.add(keys);
+    }
+
+    public void failed() {
+        failures.increment();
+    }
+
+    public LatencyRecorder getLag() {
+        return lag;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getHandled() {
+        return handled.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+}
@@ -0,0 +1,49 @@
+package org.lmx.framework.redis.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述: 基于HdrHistogram的耗时记录器
+ * <pre>
+ *  未引入Micrometer时使用。以微秒为单位记录，2位有效数字，最大1小时，超出的按1小时计，单个直方图约25KB。
+ *  {@link ConcurrentHistogram} 的写入是wait-free的，不会因读取统计而阻塞加锁路径。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/11 9:40
+ */
+final class HdrLatencyRecorder implements LatencyRecorder {
+    private static final long HIGHEST_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram(1, HIGHEST_MICROS, 2);
+    private final LongAdder totalNanos = new LongAdder();
+
+    @Override
+    public void record(long nanos) {
+        totalNanos.add(nanos);
+        histogram.recordValue(Math.min(Math.max(nanos / 1000, 1), HIGHEST_MICROS));
+    }
+
+    @Override
+    public long count() {
+        return histogram.getTotalCount();
+    }
+
+    @Override
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public long maxNanos() {
+        return histogram.getMaxValue() * 1000;
+    }
+
+    @Override
+    public long percentileNanos(double percentile) {
+        return histogram.getValueAtPercentile(percentile * 100) * 1000;
+    }
+}
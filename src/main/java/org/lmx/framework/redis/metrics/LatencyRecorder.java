@@ -0,0 +1,32 @@
+package org.lmx.framework.redis.metrics;
+
+/**
+ * 功能描述: 耗时分布记录器
+ * <pre>
+ *  引入了Micrometer时由 Timer 实现，否则由HdrHistogram实现，记录端均不加锁。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/11 9:30
+ */
+public interface LatencyRecorder {
+
+    /**
+     * 功能描述: 记录一次耗时
+     *
+     * @param nanos 耗时(纳秒)
+     */
+    void record(long nanos);
+
+    long count();
+
+    long totalNanos();
+
+    long maxNanos();
+
+    /**
+     * @param percentile 0~1，如 0.99
+     * @return 对应分位的耗时(纳秒)
+     */
+    long percentileNanos(double percentile);
+}
@@ -0,0 +1,104 @@
+package org.lmx.framework.redis.metrics;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.util.ClassUtils;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 功能描述: RedisClientTemplate.getOrLoad 的回源统计
+ * <pre>
+ *  invocations 为实际调用loader的次数，latency 为loader耗时；
+ *  coalesced 为本节点并发未命中时等待同一次加载（或提前刷新期间直接返回旧值）而省下的调用，
+ *  remoteHits 为等到分布式锁后发现其它节点已写回而省下的调用，saved = coalesced + remoteHits；
+ *  earlyRefreshes 为XFetch在过期前提前刷新的次数，failures 为loader抛出异常的次数，inFlight 为本节点正在加载的key数。
+ *
+ *  引入了Micrometer时以 demo.redis.load.latency（FunctionTimer）、demo.redis.load.in-flight（Gauge）、
+ *  demo.redis.load.invocations / saved / early-refreshes / failures（FunctionCounter）暴露。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/21 10:00
+ */
+public final class LoadStats {
+    private static final boolean MICROMETER_PRESENT = ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", LoadStats.class.getClassLoader());
+
+    private final IntSupplier inFlight;
+    private final HdrLatencyRecorder latency = new HdrLatencyRecorder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder earlyRefreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param inFlight 读取正在加载的key数
+     */
+    public LoadStats(IntSupplier inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * 功能描述: 容器中有 MeterRegistry 时注册到Micrometer
+     */
+    public void bind(BeanFactory beanFactory) {
+        if (!MICROMETER_PRESENT || beanFactory == null) {
+            return;
+        }
+        Object registry = MicrometerSupport.registry(beanFactory);
+        if (registry != null) {
+            MicrometerSupport.bind(registry, this);
+        }
+    }
+
+    public void loaded(long nanos, boolean early) {
+        latency.record(nanos);
+        if (early) {
+            earlyRefreshes.increment();
+        }
+    }
+
+    public void coalesced() {
+        coalesced.increment();
+    }
+
+    public void remoteHit() {
+        remoteHits.increment();
+    }
+
+    public void failed() {
+        failures.increment();
+    }
+
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+
+    public long getInvocations() {
+        return latency.count();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getRemoteHits() {
+        return remoteHits.sum();
+    }
+
+    public long getSaved() {
+        return coalesced.sum() + remoteHits.sum();
+    }
+
+    public long getEarlyRefreshes() {
+        return earlyRefreshes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public int getInFlight() {
+        return inFlight.getAsInt();
+    }
+}
@@ -0,0 +1,122 @@
+package org.lmx.framework.redis.metrics;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能描述: 分布式锁的竞争与耗时指标
+ * <pre>
+ *  按锁名统计：获取耗时、持有时间、等待超时次数、解锁失败次数、当前等待数。
+ *  锁名是 @Lock 注解上的key模板（如 "order:#{#id}"），而不是求值后的key，指标数量与注解数量相当，不随业务数据增长；
+ *  超过 maxNames 的锁名合并到 {@link #OVERFLOW_NAME}。
+ *
+ *  引入了Micrometer且容器中有 MeterRegistry 时，耗时记录到 Timer（demo.lock.acquire / demo.lock.hold，tag name），
+ *  计数与等待数以 demo.lock.timeouts / demo.lock.unlock.failures / demo.lock.waiters 暴露；否则记录到HdrHistogram。
+ *  两种情况下都可以通过 {@link #topContended(int)} 和 actuator 的 locks 端点查看竞争最激烈的锁。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/11 10:20
+ */
+@Component
+@ConditionalOnProperty(prefix = "demo.lock.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LockMetrics {
+    /**
+     * 锁实现自身（不经过注解）统计的锁名
+     */
+    public static final String LOCKER_NAME = "(locker)";
+
+    /**
+     * 超出数量上限的锁名合并统计
+     */
+    public static final String OVERFLOW_NAME = "(other)";
+
+    private static final boolean MICROMETER_PRESENT = ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", LockMetrics.class.getClassLoader());
+
+    private final int maxNames;
+
+    private final BeanFactory beanFactory;
+
+    private final ConcurrentHashMap<String, LockStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * MeterRegistry，首次创建统计时才从容器中获取，避免过早初始化
+     */
+    private volatile Object meterRegistry;
+    private volatile boolean registryResolved;
+
+    public LockMetrics() {
+        this(1000, null);
+    }
+
+    @Autowired
+    public LockMetrics(@Value("${demo.lock.metrics.max-names:1000}") int maxNames, BeanFactory beanFactory) {
+        this.maxNames = maxNames;
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * 功能描述: 获取锁名对应的统计
+     *
+     * @param name 锁名（key模板）
+     */
+    public LockStats stats(String name) {
+        LockStats lockStats = stats.get(name);
+        if (lockStats != null) {
+            return lockStats;
+        }
+        if (stats.size() >= maxNames) {
+            name = OVERFLOW_NAME;
+        }
+        return stats.computeIfAbsent(name, this::newStats);
+    }
+
+    private LockStats newStats(String name) {
+        Object registry = meterRegistry();
+        LockStats lockStats;
+        if (registry != null) {
+            lockStats = new LockStats(name,
+                    MicrometerSupport.timer(registry, "demo.lock.acquire", name),
+                    MicrometerSupport.timer(registry, "demo.lock.hold", name));
+            MicrometerSupport.bind(registry, lockStats);
+        } else {
+            lockStats = new LockStats(name, new HdrLatencyRecorder(), new HdrLatencyRecorder());
+        }
+        return lockStats;
+    }
+
+    private Object meterRegistry() {
+        if (!registryResolved) {
+            if (MICROMETER_PRESENT && beanFactory != null) {
+                meterRegistry = MicrometerSupport.registry(beanFactory);
+            }
+            registryResolved = true;
+        }
+        return meterRegistry;
+    }
+
+    /**
+     * 功能描述: 竞争最激烈的锁
+     * <pre>
+     *  先按当前等待数，再按累计等待时间降序。
+     * </pre>
+     *
+     * @param top 返回数量
+     */
+    public List<LockStats> topContended(int top) {
+        List<LockStats> list = new ArrayList<>(stats.values());
+        list.sort(Comparator.comparingInt(LockStats::getWaiters)
+                .thenComparingLong(s -> s.getAcquireLatency().totalNanos())
+                .reversed());
+        return list.size() > top ? list.subList(0, top) : list;
+    }
+}
@@ -0,0 +1,65 @@
+package org.lmx.framework.redis.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 功能描述: actuator 端点 /actuator/locks，列出竞争最激烈的锁
+ * <pre>
+ *  GET /actuator/locks?top=20，耗时单位为毫秒。
+ *  需要引入 spring-boot-starter-actuator，并在 management.endpoints.web.exposure.include 中加入 locks。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/11 10:40
+ */
+@Component
+@Endpoint(id = "locks")
+@ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+@ConditionalOnProperty(prefix = "demo.lock.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LockMetricsEndpoint {
+    private static final int DEFAULT_TOP = 20;
+
+    private final LockMetrics lockMetrics;
+
+    public LockMetricsEndpoint(LockMetrics lockMetrics) {
+        this.lockMetrics = lockMetrics;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> contended(@Nullable Integer top) {
+        List<LockStats> list = lockMetrics.topContended(top == null ? DEFAULT_TOP : top);
+        List<Map<String, Object>> result = new ArrayList<>(list.size());
+        for (LockStats stats : list) {
+            LatencyRecorder acquire = stats.getAcquireLatency();
+            LatencyRecorder hold = stats.getHoldTime();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", stats.getName());
+            item.put("waiters", stats.getWaiters());
+            item.put("acquireCount", acquire.count());
+            item.put("timeouts", stats.getTimeouts());
+            item.put("failedUnlocks", stats.getFailedUnlocks());
+            item.put("totalWaitMillis", millis(acquire.totalNanos()));
+            item.put("acquireP50Millis", millis(acquire.percentileNanos(0.5)));
+            item.put("acquireP99Millis", millis(acquire.percentileNanos(0.99)));
+            item.put("acquireMaxMillis", millis(acquire.maxNanos()));
+            item.put("holdP99Millis", millis(hold.percentileNanos(0.99)));
+            item.put("holdMaxMillis", millis(hold.maxNanos()));
+            result.add(item);
+        }
+        return result;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,104 @@
+package org.lmx.framework.redis.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述: 一个锁名（注解上的key模板）的统计
+ * <pre>
+ *  用法：
+ *   long start = stats.beginAcquire();
+ *   Object lock = locker.tryLock(...);
+ *   long acquiredAt = stats.endAcquire(start, lock != null);
+ *   ...
+ *   stats.released(acquiredAt, locker.unlock(lock));
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/11 10:00
+ */
+public final class LockStats {
+    private final String name;
+    private final LatencyRecorder acquireLatency;
+    private final LatencyRecorder holdTime;
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failedUnlocks = new LongAdder();
+
+    LockStats(String name, LatencyRecorder acquireLatency, LatencyRecorder holdTime) {
+        this.name = name;
+        this.acquireLatency = acquireLatency;
+        this.holdTime = holdTime;
+    }
+
+    /**
+     * 功能描述: 开始等待锁
+     *
+     * @return 开始时间(纳秒)
+     */
+    public long beginAcquire() {
+        waiters.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * 功能描述: 等待结束，记录获取耗时
+     *
+     * @param start    {@link #beginAcquire()} 的返回值
+     * @param acquired 是否拿到锁，false记为一次超时
+     * @return 拿到锁的时间(纳秒)
+     */
+    public long endAcquire(long start, boolean acquired) {
+        long now = System.nanoTime();
+        waiters.decrementAndGet();
+        acquireLatency.record(now - start);
+        if (!acquired) {
+            timeouts.increment();
+        }
+        return now;
+    }
+
+    /**
+     * 功能描述: 释放锁，记录持有时间
+     *
+     * @param acquiredAt {@link #endAcquire(long, boolean)} 的返回值
+     * @param unlocked   解锁是否成功，false记为一次解锁失败
+     */
+    public void released(long acquiredAt, boolean unlocked) {
+        holdTime.record(System.nanoTime() - acquiredAt);
+        if (!unlocked) {
+            failedUnlocks.increment();
+        }
+    }
+
+    public void unlockFailed() {
+        failedUnlocks.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 当前正在等待该锁的调用数
+     */
+    public int getWaiters() {
+        return waiters.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getFailedUnlocks() {
+        return failedUnlocks.sum();
+    }
+
+    public LatencyRecorder getAcquireLatency() {
+        return acquireLatency;
+    }
+
+    public LatencyRecorder getHoldTime() {
+        return holdTime;
+    }
+}
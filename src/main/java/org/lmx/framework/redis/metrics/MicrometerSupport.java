@@ -0,0 +1,172 @@
+package org.lmx.framework.redis.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.BeanFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述: Micrometer 支持，独立成类避免未引入Micrometer时加载失败
+ *
+ * @author LM.X
+ * @date 2020/8/11 9:50
+ */
+final class MicrometerSupport {
+
+    private MicrometerSupport() {
+    }
+
+    /**
+     * @return 容器中的 MeterRegistry，没有时为null
+     */
+    static Object registry(BeanFactory beanFactory) {
+        return beanFactory.getBeanProvider(MeterRegistry.class).getIfAvailable();
+    }
+
+    static LatencyRecorder timer(Object registry, String metric, String name) {
+        Timer timer = Timer.builder(metric)
+                .tag("name", name)
+                .publishPercentiles(0.5, 0.99)
+                .register((MeterRegistry) registry);
+        return new TimerLatencyRecorder(timer);
+    }
+
+    /**
+     * 计数类指标直接读取 {@link LockStats} 中的计数器，加锁路径上不再额外记录
+     */
+    static void bind(Object registry, LockStats stats) {
+        MeterRegistry meterRegistry = (MeterRegistry) registry;
+        Gauge.builder("demo.lock.waiters", stats, LockStats::getWaiters)
+                .tag("name", stats.getName())
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.lock.timeouts", stats, LockStats::getTimeouts)
+                .tag("name", stats.getName())
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.lock.unlock.failures", stats, LockStats::getFailedUnlocks)
+                .tag("name", stats.getName())
+                .register(meterRegistry);
+    }
+
+    /**
+     * RedisClientTemplate 操作统计，均为读取时取值的函数式指标
+     */
+    static void bind(Object registry, RedisCommandStats.OperationStats stats) {
+        MeterRegistry meterRegistry = (MeterRegistry) registry;
+        String method = stats.getOperation().getMethod();
+        FunctionTimer.builder("demo.redis.command", stats,
+                s -> s.getLatency().count(), s -> s.getLatency().totalNanos(), TimeUnit.NANOSECONDS)
+                .tag("method", method)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.command.errors", stats, RedisCommandStats.OperationStats::getErrors)
+                .tag("method", method)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.command.bytes.out", stats, RedisCommandStats.OperationStats::getBytesOut)
+                .tag("method", method)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.command.bytes.in", stats, RedisCommandStats.OperationStats::getBytesIn)
+                .tag("method", method)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.command.near.hits", stats, RedisCommandStats.OperationStats::getNearHits)
+                .tag("method", method)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Key过期事件管道统计
+     */
+    static void bind(Object registry, ExpirationEventStats stats) {
+        MeterRegistry meterRegistry = (MeterRegistry) registry;
+        FunctionTimer.builder("demo.redis.expired.lag", stats,
+                s -> s.getLag().count(), s -> s.getLag().totalNanos(), TimeUnit.NANOSECONDS)
+                .register(meterRegistry);
+        Gauge.builder("demo.redis.expired.queue.depth", stats, ExpirationEventStats::getQueueDepth)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.expired.received", stats, ExpirationEventStats::getReceived)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.expired.dropped", stats, ExpirationEventStats::getDropped)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.expired.handled", stats, ExpirationEventStats::getHandled)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.expired.failures", stats, ExpirationEventStats::getFailures)
+                .register(meterRegistry);
+    }
+
+    /**
+     * getOrLoad 回源统计
+     */
+    static void bind(Object registry, LoadStats stats) {
+        MeterRegistry meterRegistry = (MeterRegistry) registry;
+        FunctionTimer.builder("demo.redis.load.latency", stats,
+                s -> s.getLatency().count(), s -> s.getLatency().totalNanos(), TimeUnit.NANOSECONDS)
+                .register(meterRegistry);
+        Gauge.builder("demo.redis.load.in-flight", stats, LoadStats::getInFlight)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.load.invocations", stats, LoadStats::getInvocations)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.load.saved", stats, LoadStats::getSaved)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.load.early-refreshes", stats, LoadStats::getEarlyRefreshes)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.redis.load.failures", stats, LoadStats::getFailures)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 分布式信号量统计
+     */
+    static void bind(Object registry, SemaphoreStats stats) {
+        MeterRegistry meterRegistry = (MeterRegistry) registry;
+        FunctionTimer.builder("demo.semaphore.wait", stats,
+                s -> s.getWait().count(), s -> s.getWait().totalNanos(), TimeUnit.NANOSECONDS)
+                .register(meterRegistry);
+        FunctionCounter.builder("demo.semaphore.timeouts", stats, SemaphoreStats::getTimeouts)
+                .register(meterRegistry);
+        Gauge.builder("demo.semaphore.permits.in-use", stats, SemaphoreStats::getPermitsInUse)
+                .register(meterRegistry);
+    }
+
+    private static final class TimerLatencyRecorder implements LatencyRecorder {
+        private final Timer timer;
+
+        private TimerLatencyRecorder(Timer timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        public void record(long nanos) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public long count() {
+            return timer.count();
+        }
+
+        @Override
+        public long totalNanos() {
+            return (long) timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public long maxNanos() {
+            return (long) timer.max(TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public long percentileNanos(double percentile) {
+            for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+                if (value.percentile() == percentile) {
+                    return (long) value.value(TimeUnit.NANOSECONDS);
+                }
+            }
+            return 0;
+        }
+    }
+}
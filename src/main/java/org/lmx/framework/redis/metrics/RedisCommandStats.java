@@ -0,0 +1,291 @@
+package org.lmx.framework.redis.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述: RedisClientTemplate 按操作类型的耗时、流量与错误统计
+ * <pre>
+ *  用法（模板方法内）：
+ *   long start = commandStats.start();
+ *   try { ... commandStats.bytesOut(op, raw.length); ... }
+ *   catch (Exception e) { commandStats.error(op); ... }
+ *   finally { commandStats.stop(op, key, start); }
+ *
+ *  每种 {@link RedisOperation} 预先分配一个统计槽，按ordinal下标访问，记录路径上不查Map、不分配对象；
+ *  耗时记录到HdrHistogram，计数使用LongAdder。未开启时使用 {@link #DISABLED}，每个方法只多一次final字段判断。
+ *  bytes 只统计模板手中有原始字节的操作（经编解码器读写的值），由StringRedisTemplate序列化的操作不计。
+ *  近端缓存命中不访问Redis，只计入 nearHits：调用方以 {@link #nearHit} 的返回值代替 start()，stop 时不记录耗时，
+ *  耗时与慢命令只反映真实的Redis往返。
+ *
+ *  耗时不小于 slowThresholdMillis 的调用记为慢命令：打印warn日志，并保留最近 slowLogSize 条。
+ *  引入了Micrometer时以 demo.redis.command（FunctionTimer）、demo.redis.command.errors、
+ *  demo.redis.command.bytes.out、demo.redis.command.bytes.in、demo.redis.command.near.hits（tag method）暴露，
+ *  读取时才取值，不影响记录路径。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/12 9:40
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${demo.redis.enabled:false} && ${demo.redis.stats.enabled:true}")
+public class RedisCommandStats implements SmartInitializingSingleton {
+    /**
+     * 未开启统计时使用的实例，所有记录方法直接返回
+     */
+    public static final RedisCommandStats DISABLED = new RedisCommandStats(false, 0, 1, null);
+
+    /**
+     * 未访问Redis的标记，作为开始时间传给 {@link #stop} 时不记录耗时
+     */
+    public static final long NO_ROUND_TRIP = Long.MIN_VALUE;
+
+    private static final boolean MICROMETER_PRESENT = ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", RedisCommandStats.class.getClassLoader());
+
+    private final boolean enabled;
+    private final long slowThresholdNanos;
+    private final BeanFactory beanFactory;
+
+    /**
+     * 下标为 RedisOperation.ordinal()
+     */
+    private final OperationStats[] operations;
+
+    /**
+     * 最近的慢命令，环形覆盖
+     */
+    private final AtomicReferenceArray<SlowCommand> slowLog;
+    private final AtomicLong slowSequence = new AtomicLong();
+
+    @Autowired
+    public RedisCommandStats(@Value("${demo.redis.stats.slow-threshold-millis:100}") long slowThresholdMillis,
+                             @Value("${demo.redis.stats.slow-log-size:128}") int slowLogSize,
+                             BeanFactory beanFactory) {
+        this(true, slowThresholdMillis, slowLogSize, beanFactory);
+    }
+
+    private RedisCommandStats(boolean enabled, long slowThresholdMillis, int slowLogSize, BeanFactory beanFactory) {
+        this.enabled = enabled;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.beanFactory = beanFactory;
+        RedisOperation[] values = RedisOperation.values();
+        this.operations = new OperationStats[enabled ? values.length : 0];
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new OperationStats(values[i]);
+        }
+        this.slowLog = new AtomicReferenceArray<>(Math.max(slowLogSize, 1));
+    }
+
+    /**
+     * 一种操作的统计
+     */
+    public static final class OperationStats {
+        private final RedisOperation operation;
+        private final HdrLatencyRecorder latency = new HdrLatencyRecorder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder nearHits = new LongAdder();
+
+        private OperationStats(RedisOperation operation) {
+            this.operation = operation;
+        }
+
+        public RedisOperation getOperation() {
+            return operation;
+        }
+
+        public LatencyRecorder getLatency() {
+            return latency;
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * 写入Redis的值字节数
+         */
+        public long getBytesOut() {
+            return bytesOut.sum();
+        }
+
+        /**
+         * 从Redis读取的值字节数
+         */
+        public long getBytesIn() {
+            return bytesIn.sum();
+        }
+
+        /**
+         * 近端缓存命中、未访问Redis的次数（批量操作按条计）
+         */
+        public long getNearHits() {
+            return nearHits.sum();
+        }
+    }
+
+    /**
+     * 慢命令记录
+     */
+    public static final class SlowCommand {
+        private final RedisOperation operation;
+        private final String key;
+        private final long elapsedNanos;
+        private final long timestamp;
+
+        private SlowCommand(RedisOperation operation, String key, long elapsedNanos, long timestamp) {
+            this.operation = operation;
+            this.key = key;
+            this.elapsedNanos = elapsedNanos;
+            this.timestamp = timestamp;
+        }
+
+        public RedisOperation getOperation() {
+            return operation;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return 开始时间(纳秒)，未开启时为0
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 功能描述: 记录一次调用的耗时
+     *
+     * @param operation 操作类型
+     * @param key       键，仅用于慢命令日志，可为null
+     * @param start     {@link #start()} 的返回值
+     */
+    public void stop(RedisOperation operation, String key, long start) {
+        if (!enabled || start == NO_ROUND_TRIP) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        operations[operation.ordinal()].latency.record(elapsed);
+        if (elapsed >= slowThresholdNanos) {
+            slow(operation, key, elapsed);
+        }
+    }
+
+    /**
+     * 功能描述: 记录一次近端缓存命中
+     *
+     * @param operation 操作类型
+     * @return {@link #NO_ROUND_TRIP}，调用方以此代替 {@link #start()} 的返回值
+     */
+    public long nearHit(RedisOperation operation) {
+        return nearHits(operation, 1);
+    }
+
+    /**
+     * 功能描述: 记录批量操作中近端缓存命中的条数
+     *
+     * @return {@link #NO_ROUND_TRIP}，全部命中时调用方以此代替 {@link #start()} 的返回值
+     */
+    public long nearHits(RedisOperation operation, int hits) {
+        if (enabled && hits > 0) {
+            operations[operation.ordinal()].nearHits.add(hits);
+        }
+        return NO_ROUND_TRIP;
+    }
+
+    public void error(RedisOperation operation) {
+        if (enabled) {
+            operations[operation.ordinal()].errors.increment();
+        }
+    }
+
+    public void bytesOut(RedisOperation operation, long bytes) {
+        if (enabled) {
+            operations[operation.ordinal()].bytesOut.add(bytes);
+        }
+    }
+
+    public void bytesIn(RedisOperation operation, long bytes) {
+        if (enabled) {
+            operations[operation.ordinal()].bytesIn.add(bytes);
+        }
+    }
+
+    private void slow(RedisOperation operation, String key, long elapsed) {
+        log.warn("Redis慢命令：{} key：{} 耗时：{}ms", operation.getMethod(), key, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        long sequence = slowSequence.getAndIncrement();
+        slowLog.set((int) (sequence % slowLog.length()), new SlowCommand(operation, key, elapsed, System.currentTimeMillis()));
+    }
+
+    /**
+     * 功能描述: 全部操作的统计，未开启时为空
+     */
+    public List<OperationStats> getOperations() {
+        return Collections.unmodifiableList(Arrays.asList(operations));
+    }
+
+    public OperationStats getOperation(RedisOperation operation) {
+        return enabled ? operations[operation.ordinal()] : null;
+    }
+
+    /**
+     * 功能描述: 最近的慢命令，由新到旧
+     */
+    public List<SlowCommand> getSlowLog() {
+        int size = slowLog.length();
+        long last = slowSequence.get();
+        List<SlowCommand> list = new ArrayList<>(size);
+        for (long i = last - 1; i >= 0 && i >= last - size; i--) {
+            SlowCommand command = slowLog.get((int) (i % size));
+            if (command != null) {
+                list.add(command);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled || !MICROMETER_PRESENT || beanFactory == null) {
+            return;
+        }
+        Object registry = MicrometerSupport.registry(beanFactory);
+        if (registry != null) {
+            for (OperationStats stats : operations) {
+                MicrometerSupport.bind(registry, stats);
+            }
+        }
+    }
+}
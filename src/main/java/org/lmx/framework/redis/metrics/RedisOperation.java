@@ -0,0 +1,62 @@
+package org.lmx.framework.redis.metrics;
+
+/**
+ * 功能描述: {@link org.lmx.framework.redis.RedisClientTemplate} 的操作类型
+ * <pre>
+ *  每个模板方法（重载合并）对应一个类型，指标按类型统计；method 为指标与日志中使用的方法名。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/12 9:30
+ */
+public enum RedisOperation {
+    EXPIRE("expire"),
+    GET_EXPIRE("getExpire"),
+    HAS_KEY("hasKey"),
+    DEL("del"),
+    SET_NX("setNx"),
+    SET_EX("setEx"),
+    GET("get"),
+    SET("set"),
+    INCR("incr"),
+    DECR("decr"),
+    H_GET("hGet"),
+    HM_GET("hmGet"),
+    HM_SET("hmSet"),
+    H_SET("hSet"),
+    H_DEL("hDel"),
+    H_HAS_KEY("hHasKey"),
+    H_INCR("hIncr"),
+    H_DECR("hDecr"),
+    S_GET("sGet"),
+    S_HAS_KEY("sHasKey"),
+    S_GET_SET_SIZE("sGetSetSize"),
+    SET_REMOVE("setRemove"),
+    L_GET("lGet"),
+    L_GET_LIST_SIZE("lGetListSize"),
+    L_GET_INDEX("lGetIndex"),
+    L_SET("lSet"),
+    L_UPDATE_INDEX("lUpdateIndex"),
+    L_REMOVE("lRemove"),
+    PIPELINE_HM_SET("pipelineHMSet"),
+    PIPELINE_HM_SET_BY_ZIP("pipelineHMSetByZip"),
+    PIPELINE_H_SET("pipelineHSet"),
+    SET_BY_ZIP("setByZip"),
+    GET_BY_ZIP("getByZip"),
+    DEL_BY_ZIP("delByZip"),
+    M_GET("mGet"),
+    M_SET("mSet"),
+    H_GET_MULTI("hGetMulti"),
+    M_GET_BY_ZIP("mGetByZip"),
+    ZIP_BULK_FLUSH("zipBulkFlush");
+
+    private final String method;
+
+    RedisOperation(String method) {
+        this.method = method;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+}
@@ -0,0 +1,82 @@
+package org.lmx.framework.redis.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 功能描述: actuator 端点 /actuator/redis-stats，按占用的Redis总耗时列出模板方法
+ * <pre>
+ *  operations 按总耗时降序，timeShare 为该方法占全部模板方法总耗时的百分比；slowLog 为最近的慢命令。耗时单位为毫秒。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/12 10:30
+ */
+@Component
+@Endpoint(id = "redis-stats")
+@ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+@ConditionalOnExpression("${demo.redis.enabled:false} && ${demo.redis.stats.enabled:true}")
+public class RedisStatsEndpoint {
+    private final RedisCommandStats commandStats;
+
+    public RedisStatsEndpoint(RedisCommandStats commandStats) {
+        this.commandStats = commandStats;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        List<RedisCommandStats.OperationStats> operations = new ArrayList<>(commandStats.getOperations());
+        operations.removeIf(s -> s.getLatency().count() == 0 && s.getNearHits() == 0);
+        operations.sort(Comparator.comparingLong((RedisCommandStats.OperationStats s) -> s.getLatency().totalNanos()).reversed());
+        long totalNanos = 0;
+        for (RedisCommandStats.OperationStats stats : operations) {
+            totalNanos += stats.getLatency().totalNanos();
+        }
+
+        List<Map<String, Object>> operationList = new ArrayList<>(operations.size());
+        for (RedisCommandStats.OperationStats stats : operations) {
+            LatencyRecorder latency = stats.getLatency();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("method", stats.getOperation().getMethod());
+            item.put("calls", latency.count());
+            item.put("errors", stats.getErrors());
+            item.put("totalMillis", millis(latency.totalNanos()));
+            item.put("timeShare", totalNanos == 0 ? 0 : latency.totalNanos() * 100.0 / totalNanos);
+            item.put("p50Millis", millis(latency.percentileNanos(0.5)));
+            item.put("p99Millis", millis(latency.percentileNanos(0.99)));
+            item.put("maxMillis", millis(latency.maxNanos()));
+            item.put("bytesOut", stats.getBytesOut());
+            item.put("bytesIn", stats.getBytesIn());
+            item.put("nearHits", stats.getNearHits());
+            operationList.add(item);
+        }
+
+        List<Map<String, Object>> slowList = new ArrayList<>();
+        for (RedisCommandStats.SlowCommand command : commandStats.getSlowLog()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("method", command.getOperation().getMethod());
+            item.put("key", command.getKey());
+            item.put("elapsedMillis", millis(command.getElapsedNanos()));
+            item.put("timestamp", command.getTimestamp());
+            slowList.add(item);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("operations", operationList);
+        result.put("slowLog", slowList);
+        return result;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
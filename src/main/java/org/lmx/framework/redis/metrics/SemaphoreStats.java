@@ -0,0 +1,68 @@
+package org.lmx.framework.redis.metrics;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.util.ClassUtils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述: 分布式信号量统计
+ * <pre>
+ *  wait 为成功获取的等待耗时，timeouts 为等待超时（或被中断）放弃的次数，permitsInUse 为本JVM当前持有的许可数。
+ *
+ *  引入了Micrometer时以 demo.semaphore.wait（FunctionTimer）、demo.semaphore.timeouts（FunctionCounter）、
+ *  demo.semaphore.permits.in-use（Gauge）暴露。
+ * </pre>
+ *
+ * @author LM.X
+ * @date 2020/8/25 10:00
+ */
+public final class SemaphoreStats {
+    private static final boolean MICROMETER_PRESENT = ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", SemaphoreStats.class.getClassLoader());
+
+    private final HdrLatencyRecorder wait = new HdrLatencyRecorder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder permitsInUse = new LongAdder();
+
+    /**
+     * 功能描述: 容器中有 MeterRegistry 时注册到Micrometer
+     */
+    public void bind(BeanFactory beanFactory) {
+        if (!MICROMETER_PRESENT || beanFactory == null) {
+            return;
+        }
+        Object registry = MicrometerSupport.registry(beanFactory);
+        if (registry != null) {
+            MicrometerSupport.bind(registry, this);
+        }
+    }
+
+    public void acquired(int count, long waitNanos) {
+        wait.record(waitNanos);
+        permitsInUse.add(count);
+    }
+
+    public void released(int count) {
+        permitsInUse.add(-count);
+    }
+
+    public void timedOut() {
+        timeouts.increment();
+    }
+
+    public LatencyRecorder getWait() {
+        return wait;
+    }
+
+    public long getAcquires() {
+        return wait.count();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getPermitsInUse() {
+        return permitsInUse.sum();
+    }
+}
@@ -0,0 +1,173 @@
+package org.lmx.framework.redis;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：测试用的内存Redis
+ * <pre>
+ *  RedisCallback 拿到的 RedisConnection 由Mockito按方法名应答，读写内存中的Map：
+ *  GET/SET/PTTL、HGET/HSET、RPUSH/LRANGE/LINDEX/LSET/LREM、SADD/SISMEMBER（集合按列表保存），其它命令返回null。
+ *  pipeline按调用顺序返回结果；GET请求过的Key按顺序记录在 requested 中。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-28 15:00
+ **/
+public class InMemoryRedisTemplate extends StringRedisTemplate {
+    private final Map<String, byte[]> strings = new ConcurrentHashMap<>();
+    private final Map<String, Long> ttls = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, byte[]>> hashes = new ConcurrentHashMap<>();
+    private final Map<String, List<byte[]>> lists = new ConcurrentHashMap<>();
+    private final List<String> requested = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * String类型的值
+     */
+    public Map<String, byte[]> strings() {
+        return strings;
+    }
+
+    /**
+     * 剩余过期时间(毫秒)，没有记录的Key不过期
+     */
+    public Map<String, Long> ttls() {
+        return ttls;
+    }
+
+    /**
+     * Key -> field -> 值
+     */
+    public Map<String, Map<String, byte[]>> hashes() {
+        return hashes;
+    }
+
+    /**
+     * List与Set类型的值
+     */
+    public Map<String, List<byte[]>> lists() {
+        return lists;
+    }
+
+    /**
+     * GET请求过的Key
+     */
+    public List<String> requested() {
+        return requested;
+    }
+
+    /**
+     * 直接写入String值（UTF-8，与JSON编解码器写字符串的格式一致）
+     */
+    public void put(String key, String value, long ttlMillis) {
+        strings.put(key, value.getBytes(StandardCharsets.UTF_8));
+        ttls.put(key, ttlMillis);
+    }
+
+    private RedisConnection connection(List<Object> results) {
+        return Mockito.mock(RedisConnection.class, invocation -> {
+            Object result = answer(invocation);
+            if (results != null) {
+                results.add(result);
+            }
+            return result;
+        });
+    }
+
+    private List<byte[]> list(String key) {
+        return lists.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    private Object answer(InvocationOnMock invocation) {
+        // 可变参数已展开
+        Object[] args = invocation.getArguments();
+        String key = args.length > 0 && args[0] instanceof byte[] ? string(args[0]) : null;
+        switch (invocation.getMethod().getName()) {
+            case "get":
+                requested.add(key);
+                return strings.get(key);
+            case "pTtl":
+                return strings.containsKey(key) ? ttls.getOrDefault(key, -1L) : -2L;
+            case "set":
+                strings.put(key, (byte[]) args[1]);
+                if (args.length > 2) {
+                    ttls.put(key, ((Expiration) args[2]).getExpirationTimeInMilliseconds());
+                } else {
+                    ttls.remove(key);
+                }
+                return true;
+            case "hGet":
+                return hashes.getOrDefault(key, Collections.emptyMap()).get(string(args[1]));
+            case "hSet":
+                hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(string(args[1]), (byte[]) args[2]);
+                return true;
+            case "rPush":
+            case "sAdd": {
+                List<byte[]> list = list(key);
+                for (int i = 1; i < args.length; i++) {
+                    list.add((byte[]) args[i]);
+                }
+                return (long) list.size();
+            }
+            case "lRange": {
+                List<byte[]> list = list(key);
+                long end = (Long) args[2];
+                return new ArrayList<>(list.subList((int) (long) (Long) args[1], (int) (end < 0 ? list.size() + end + 1 : end + 1)));
+            }
+            case "lIndex":
+                return list(key).get((int) (long) (Long) args[1]);
+            case "lSet":
+                list(key).set((int) (long) (Long) args[1], (byte[]) args[2]);
+                return null;
+            case "lRem": {
+                List<byte[]> list = list(key);
+                long removed = list.stream().filter(item -> Arrays.equals(item, (byte[]) args[2])).count();
+                list.removeIf(item -> Arrays.equals(item, (byte[]) args[2]));
+                return removed;
+            }
+            case "sIsMember":
+                return list(key).stream().anyMatch(item -> Arrays.equals(item, (byte[]) args[1]));
+            default:
+                return null;
+        }
+    }
+
+    private static String string(Object bytes) {
+        return new String((byte[]) bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T execute(RedisCallback<T> action) {
+        return action.doInRedis(connection(null));
+    }
+
+    @Override
+    public List<Object> executePipelined(RedisCallback<?> action, RedisSerializer<?> resultSerializer) {
+        List<Object> results = new ArrayList<>();
+        action.doInRedis(connection(results));
+        return results;
+    }
+
+    @Override
+    public Boolean expire(String key, long timeout, TimeUnit unit) {
+        if (!strings.containsKey(key)) {
+            return false;
+        }
+        ttls.put(key, unit.toMillis(timeout));
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package org.lmx.framework.redis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.lmx.framework.redis.codec.JsonValueCodec;
+import org.lmx.framework.redis.metrics.LoadStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：getOrLoad 的本节点合并回源（single-flight）与XFetch提前刷新
+ * <pre>
+ *  Redis由 {@link InMemoryRedisTemplate} 模拟。
+ *  loader等到其余调用方都已合并等待后才返回，保证并发未命中同时发生。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-27 14:00
+ **/
+public class RedisClientTemplateLoadTests {
+    private static final int THREADS = 16;
+
+    private final InMemoryRedisTemplate redisTemplate = new InMemoryRedisTemplate();
+
+    private final RedisClientTemplate template = new RedisClientTemplate(false, 0, redisTemplate);
+
+    private final LoadStats loadStats = template.getLoadStats();
+
+    private final AtomicInteger loaderCalls = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * 其余调用方都已合并等待（或超时）后才返回的loader
+     */
+    private String loadAfterCoalesced(long waiters, String value) {
+        loaderCalls.incrementAndGet();
+        try {
+            eventually(() -> loadStats.getCoalesced() >= waiters);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+
+    private List<Future<String>> concurrentLoads(Supplier<String> loader) {
+        List<Future<String>> futures = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> template.getOrLoad("hot", 60, String.class, loader)));
+        }
+        return futures;
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        for (Future<String> future : concurrentLoads(() -> loadAfterCoalesced(THREADS - 1, "v1"))) {
+            Assert.assertEquals("v1", future.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, loaderCalls.get());
+        Assert.assertEquals(1, loadStats.getInvocations());
+        Assert.assertEquals(THREADS - 1, loadStats.getCoalesced());
+        Assert.assertEquals(0, loadStats.getInFlight());
+
+        // 写回值与回源耗时，之后直接命中
+        Assert.assertEquals("v1", JsonValueCodec.INSTANCE.decode(redisTemplate.strings().get("hot"), String.class));
+        Assert.assertEquals(60000L, (long) redisTemplate.ttls().get("hot"));
+        Assert.assertTrue(redisTemplate.strings().containsKey("hot:load-delta"));
+        Assert.assertEquals("v1", template.getOrLoad("hot", 60, String.class, () -> "v2"));
+        Assert.assertEquals(1, loaderCalls.get());
+    }
+
+    @Test
+    public void loaderFailureReachesEveryWaiter() throws Exception {
+        for (Future<String> future : concurrentLoads(() -> {
+            loadAfterCoalesced(THREADS - 1, null);
+            throw new IllegalStateException("source down");
+        })) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertEquals("source down", e.getCause().getMessage());
+            }
+        }
+        Assert.assertEquals(1, loaderCalls.get());
+        Assert.assertEquals(1, loadStats.getFailures());
+        Assert.assertFalse(redisTemplate.strings().containsKey("hot"));
+    }
+
+    @Test
+    public void nullIsNotStored() {
+        Assert.assertNull(template.getOrLoad("hot", 60, String.class, () -> null));
+        Assert.assertFalse(redisTemplate.strings().containsKey("hot"));
+    }
+
+    @Test
+    public void freshValueIsNotRefreshedEarly() {
+        // 剩余60s远大于回源耗时1ms，-ln(random) 不可能达到60000
+        redisTemplate.put("hot", "old", 60000);
+        redisTemplate.put("hot:load-delta", "1", 60000);
+
+        Assert.assertEquals("old", template.getOrLoad("hot", 60, String.class, () -> "new"));
+        Assert.assertEquals(0, loadStats.getInvocations());
+    }
+
+    @Test
+    public void nearExpiryRefreshesEarlyOnce() throws Exception {
+        // 剩余1ms而回源耗时很长，几乎必然提前刷新
+        redisTemplate.put("hot", "old", 1);
+        redisTemplate.put("hot:load-delta", String.valueOf(Integer.MAX_VALUE), 1);
+
+        List<Future<String>> futures = concurrentLoads(() -> loadAfterCoalesced(THREADS - 1, "new"));
+        int stale = 0;
+        for (Future<String> future : futures) {
+            // 刷新期间其余调用方直接返回旧值
+            if ("old".equals(future.get(5, TimeUnit.SECONDS))) {
+                stale++;
+            }
+        }
+        Assert.assertEquals(THREADS - 1, stale);
+        Assert.assertEquals(1, loaderCalls.get());
+        Assert.assertEquals(1, loadStats.getEarlyRefreshes());
+        Assert.assertEquals("new", JsonValueCodec.INSTANCE.decode(redisTemplate.strings().get("hot"), String.class));
+        Assert.assertEquals(60000L, (long) redisTemplate.ttls().get("hot"));
+    }
+}
@@ -0,0 +1,209 @@
+package org.lmx.framework.redis.aspect;
+
+import lombok.Data;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.Assert;
+import org.junit.Test;
+import org.lmx.framework.redis.InMemoryRedisTemplate;
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.annotation.RedisCacheable;
+import org.lmx.framework.redis.codec.BinaryValueCodec;
+import org.lmx.framework.redis.codec.ValueCodecs;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 功能描述：缓存注解切面的读写、泛型返回值的解码、调用方线程上的提前刷新与zip模式的过期时间
+ * <pre>
+ *  Redis由 {@link InMemoryRedisTemplate} 模拟。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-26 15:00
+ **/
+public class RedisCacheAspectTests {
+    private final InMemoryRedisTemplate redisTemplate = new InMemoryRedisTemplate();
+
+    private final RedisClientTemplate template = new RedisClientTemplate(false, 0, redisTemplate);
+
+    private final RedisCacheAspect aspect = new RedisCacheAspect();
+
+    private final Service service = new Service();
+
+    private final AtomicInteger invocations = new AtomicInteger();
+
+    public RedisCacheAspectTests() {
+        ReflectionTestUtils.setField(aspect, "redisClientTemplate", template);
+    }
+
+    public static class Service {
+        @RedisCacheable(key = "'user:' + #p0", ttl = 60, refreshAhead = 0.5)
+        public String user(Long id) {
+            return null;
+        }
+
+        @RedisCacheable(key = "'zip:' + #p0", ttl = 60, zip = true, cacheNull = true, nullTtl = 5)
+        public String zipped(Long id) {
+            return null;
+        }
+
+        @RedisCacheable(key = "#p0", ttl = 60)
+        public String raw(Long id) {
+            return null;
+        }
+
+        @RedisCacheable(key = "'items:' + #p0", ttl = 60)
+        public List<Item> items(Long id) {
+            return null;
+        }
+    }
+
+    @Data
+    public static class Item {
+        private Long id;
+        private String name;
+    }
+
+    private Object call(String methodName, Long id, Callable<Object> body) throws Throwable {
+        Method method = Service.class.getMethod(methodName, Long.class);
+        MethodSignature signature = Mockito.mock(MethodSignature.class);
+        Mockito.when(signature.getMethod()).thenReturn(method);
+        ProceedingJoinPoint point = Mockito.mock(ProceedingJoinPoint.class);
+        Mockito.when(point.getSignature()).thenReturn(signature);
+        Mockito.when(point.getTarget()).thenReturn(service);
+        Mockito.when(point.getArgs()).thenReturn(new Object[]{id});
+        Mockito.when(point.proceed()).thenAnswer(invocation -> {
+            invocations.incrementAndGet();
+            return body.call();
+        });
+        return aspect.aroundCacheable(point, method.getAnnotation(RedisCacheable.class));
+    }
+
+    @Test
+    public void missLoadsAndHitServesFromCache() throws Throwable {
+        Assert.assertEquals("u1", call("user", 1L, () -> "u1"));
+        Assert.assertEquals(60000L, (long) redisTemplate.ttls().get("user:1"));
+
+        Assert.assertEquals("u1", call("user", 1L, () -> "changed"));
+        Assert.assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void refreshAheadRunsOnCallerThread() throws Throwable {
+        call("user", 1L, () -> "old");
+        // 剩余时间低于 60s * 0.5
+        redisTemplate.ttls().put("user:1", 1000L);
+
+        Thread caller = Thread.currentThread();
+        Assert.assertEquals("new", call("user", 1L, () -> {
+            Assert.assertSame(caller, Thread.currentThread());
+            return "new";
+        }));
+        Assert.assertEquals(2, invocations.get());
+        Assert.assertEquals(60000L, (long) redisTemplate.ttls().get("user:1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void concurrentRefreshReturnsCachedValue() throws Throwable {
+        call("user", 1L, () -> "old");
+        redisTemplate.ttls().put("user:1", 1000L);
+        // 其它调用方正在刷新
+        ((Set<String>) ReflectionTestUtils.getField(aspect, "refreshing")).add("user:1");
+
+        Assert.assertEquals("old", call("user", 1L, () -> "new"));
+        Assert.assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void failedRefreshReturnsCachedValue() throws Throwable {
+        call("user", 1L, () -> "old");
+        redisTemplate.ttls().put("user:1", 1000L);
+
+        Assert.assertEquals("old", call("user", 1L, () -> {
+            throw new IllegalStateException("source down");
+        }));
+        Assert.assertTrue(((Set<?>) ReflectionTestUtils.getField(aspect, "refreshing")).isEmpty());
+    }
+
+    @Test
+    public void zipEntryCarriesTtl() throws Throwable {
+        Assert.assertEquals("z1", call("zipped", 1L, () -> "z1"));
+        byte[] stored = redisTemplate.hashes().get("zip:1").values().iterator().next();
+        Assert.assertTrue(ValueCodecs.isExpiring(stored));
+        long ttl = ValueCodecs.expireAt(stored) - System.currentTimeMillis();
+        Assert.assertTrue(ttl > 55000 && ttl <= 60000);
+
+        Assert.assertEquals("z1", call("zipped", 1L, () -> "changed"));
+        Assert.assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void expiredZipEntryIsMiss() throws Throwable {
+        call("zipped", 1L, () -> "old");
+        Map<String, byte[]> bucket = redisTemplate.hashes().get("zip:1");
+        String field = bucket.keySet().iterator().next();
+        bucket.put(field, ValueCodecs.withExpiry(ValueCodecs.unwrapExpiry(bucket.get(field)), System.currentTimeMillis() - 1));
+
+        Assert.assertEquals("new", call("zipped", 1L, () -> "new"));
+        Assert.assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void zipNullUsesNullTtl() throws Throwable {
+        Assert.assertNull(call("zipped", 2L, () -> null));
+        byte[] stored = redisTemplate.hashes().get("zip:2").values().iterator().next();
+        Assert.assertTrue(ValueCodecs.isNullValue(ValueCodecs.unwrapExpiry(stored)));
+        Assert.assertTrue(ValueCodecs.expireAt(stored) - System.currentTimeMillis() <= 5000);
+
+        Assert.assertNull(call("zipped", 2L, () -> "loaded"));
+        Assert.assertEquals(1, invocations.get());
+    }
+
+    private static List<Item> items(String... names) {
+        List<Item> items = new ArrayList<>();
+        for (String name : names) {
+            Item item = new Item();
+            item.setId((long) items.size());
+            item.setName(name);
+            items.add(item);
+        }
+        return items;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void genericReturnTypeDecodesElements() throws Throwable {
+        Assert.assertEquals(items("a", "b"), call("items", 1L, () -> items("a", "b")));
+        // 命中时元素按List<Item>的泛型参数解码，而不是JSONObject
+        List<Item> cached = (List<Item>) call("items", 1L, () -> items("changed"));
+        Assert.assertEquals("b", cached.get(1).getName());
+        Assert.assertEquals(items("a", "b"), cached);
+
+        template.setCodec(BinaryValueCodec.INSTANCE);
+        call("items", 2L, () -> items("c"));
+        cached = (List<Item>) call("items", 2L, () -> items("changed"));
+        Assert.assertEquals("c", cached.get(0).getName());
+        Assert.assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void nullKeyNamesAnnotationAndExpression() throws Throwable {
+        try {
+            call("raw", null, () -> "r");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("@RedisCacheable key表达式的值为null：#p0"));
+        }
+        Assert.assertEquals(0, invocations.get());
+    }
+}
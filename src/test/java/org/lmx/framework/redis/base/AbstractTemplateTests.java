@@ -0,0 +1,51 @@
+package org.lmx.framework.redis.base;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * 功能描述：hashKey/BKDRHashCode 与历史实现的bucket分配一致性测试
+ *
+ * @author: LM.X
+ * @create: 2020-07-23 11:02
+ **/
+public class AbstractTemplateTests {
+    private static final int KEY_COUNT = 30000;
+
+    private final AbstractTemplate template = new AbstractTemplate(true, KEY_COUNT) {
+    };
+
+    @Test
+    public void sameAssignmentAsLegacy() {
+        Random random = new Random(20200723);
+        for (int n = 0; n < 100000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(64);
+            for (int i = 0; i < length; i++) {
+                // 混入非ASCII及代理字符
+                sb.append((char) (random.nextInt(4) == 0 ? random.nextInt(0x10000) : random.nextInt(0x80)));
+            }
+            String key = sb.toString();
+            Assert.assertEquals(key, legacyHashKey(key), template.hashKey(key));
+            Assert.assertEquals(key, legacyBKDRHashCode(key), template.BKDRHashCode(key));
+        }
+    }
+
+    private static String legacyHashKey(String key) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(key.getBytes());
+        return crc32.getValue() % KEY_COUNT + "";
+    }
+
+    private static String legacyBKDRHashCode(String field) {
+        int seed = 31;
+        int hash = 0;
+        for (int i = 0; i < field.length(); i++) {
+            hash = hash * seed + field.charAt(i);
+        }
+        return String.valueOf(hash);
+    }
+}
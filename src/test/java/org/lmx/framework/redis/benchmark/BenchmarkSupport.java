@@ -0,0 +1,46 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 功能描述：基准测试公共组件
+ * <pre>
+ *  连接本地Redis（或兼容的替身服务），可通过 -Dredis.host / -Dredis.port 指定。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-07-20 14:05
+ **/
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    static RedisStandaloneConfiguration standaloneConfiguration() {
+        return new RedisStandaloneConfiguration(System.getProperty("redis.host", "127.0.0.1"), Integer.getInteger("redis.port", 6379));
+    }
+
+    static LettuceConnectionFactory connectionFactory() {
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(standaloneConfiguration());
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    static StringRedisTemplate stringRedisTemplate(LettuceConnectionFactory factory) {
+        StringRedisTemplate template = new StringRedisTemplate();
+        template.setConnectionFactory(factory);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    static RedissonClient redissonClient() {
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://" + System.getProperty("redis.host", "127.0.0.1") + ":" + Integer.getInteger("redis.port", 6379));
+        return Redisson.create(config);
+    }
+}
@@ -0,0 +1,103 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.cache.CacheInvalidationBus;
+import org.lmx.framework.redis.cache.InvalidationListener;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述：缓存失效总线基准测试
+ * <pre>
+ *  发布方与订阅方各一个总线（各自的连接与消息监听器容器），测量发布吞吐（invalidations/s），
+ *  结束时输出实际发送的消息数、合并掉的重复key数与订阅方每秒收到的key数。
+ *  keySpace 越小，合并窗口内的重复越多，发送的消息越少。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-20 15:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CacheInvalidationBusBenchmark {
+
+    @Param({"1000", "1000000"})
+    private int keySpace;
+
+    @Param({"10"})
+    private long windowMillis;
+
+    private LettuceConnectionFactory publisherFactory;
+    private LettuceConnectionFactory subscriberFactory;
+
+    private CacheInvalidationBus publisher;
+    private CacheInvalidationBus subscriber;
+
+    private final LongAdder delivered = new LongAdder();
+    private long startNanos;
+
+    @Setup
+    public void setup() throws Exception {
+        publisherFactory = BenchmarkSupport.connectionFactory();
+        subscriberFactory = BenchmarkSupport.connectionFactory();
+        publisher = new CacheInvalidationBus(BenchmarkSupport.stringRedisTemplate(publisherFactory), windowMillis, 500, 5000);
+        subscriber = new CacheInvalidationBus(BenchmarkSupport.stringRedisTemplate(subscriberFactory), windowMillis, 500, 5000);
+        subscriber.register(new InvalidationListener() {
+            @Override
+            public String prefix() {
+                return "benchmark:";
+            }
+
+            @Override
+            public void invalidate(List<String> keys) {
+                delivered.add(keys.size());
+            }
+
+            @Override
+            public void invalidateAll() {
+            }
+        });
+
+        subscriber.subscribe(subscriberFactory);
+        startNanos = System.nanoTime();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        publisher.destroy();
+        // 等待订阅方收完最后一个窗口
+        Thread.sleep(500);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.printf("%npublished=%d sent=%d coalesced=%d messages=%d received=%d gaps=%d delivered=%.0f keys/s%n",
+                publisher.getPublishedCount(), publisher.getSentKeyCount(),
+                publisher.getPublishedCount() - publisher.getSentKeyCount(), publisher.getSentMessageCount(),
+                subscriber.getReceivedKeyCount(), subscriber.getGapCount(),
+                delivered.sum() * 1e9 / elapsedNanos);
+        subscriber.destroy();
+        publisherFactory.destroy();
+        subscriberFactory.destroy();
+    }
+
+    @Benchmark
+    public void publish() {
+        publisher.publish("benchmark:" + ThreadLocalRandom.current().nextInt(keySpace));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CacheInvalidationBusBenchmark.class.getSimpleName())
+                .threads(Integer.getInteger("threads", 8))
+                .timeUnit(TimeUnit.SECONDS)
+                .build()).run();
+    }
+}
@@ -0,0 +1,110 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.lock.RedisSonDistributedLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：缓存击穿压测
+ * <pre>
+ *  -Dthreads（默认200）个线程分布在 -Dnodes（默认2）个模拟节点（各自的 RedisClientTemplate）上，持续读取同一个热点key，
+ *  key的过期时间为 -Dttl（默认2）秒，回源耗时 -DloadMillis（默认50）毫秒，每种模式运行 -Dseconds（默认30）秒。
+ *  输出每个过期周期的回源次数（backend calls / expiry）、读取耗时的 p50/p99/max 与 getOrLoad 省下的回源次数。
+ *
+ *  模式（-Dmodes 逗号分隔）：
+ *  naive              get 未命中时直接回源并 set，即原有写法
+ *  single-flight      getOrLoad，本节点合并
+ *  xfetch             getOrLoad，本节点合并 + XFetch提前刷新
+ *  distributed-xfetch getOrLoad，分布式锁跨节点合并 + XFetch提前刷新
+ *  该测试需要较长时间，单独以main方法运行而非JMH。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-21 14:00
+ **/
+public class CacheStampedeBenchmark {
+    private static final String KEY = "benchmark:stampede:hot";
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Integer.getInteger("threads", 200);
+        int nodes = Integer.getInteger("nodes", 2);
+        int seconds = Integer.getInteger("seconds", 30);
+        long ttl = Long.getLong("ttl", 2);
+        long loadMillis = Long.getLong("loadMillis", 50);
+
+        LettuceConnectionFactory factory = BenchmarkSupport.connectionFactory();
+        RedissonClient redissonClient = BenchmarkSupport.redissonClient();
+        RedisSonDistributedLock distributedLock = new RedisSonDistributedLock(redissonClient);
+
+        for (String mode : System.getProperty("modes", "naive,single-flight,xfetch,distributed-xfetch").split(",")) {
+            mode = mode.trim();
+            List<RedisClientTemplate> templates = new ArrayList<>(nodes);
+            for (int i = 0; i < nodes; i++) {
+                RedisClientTemplate template = new RedisClientTemplate(false, 0, BenchmarkSupport.stringRedisTemplate(factory));
+                template.configureLoad("distributed-xfetch".equals(mode), 3000, 10000, mode.endsWith("xfetch") ? 1.0 : 0);
+                template.setDistributedLock(distributedLock);
+                templates.add(template);
+            }
+            templates.get(0).del(KEY);
+
+            LongAdder backendCalls = new LongAdder();
+            Supplier<String> loader = () -> {
+                backendCalls.increment();
+                try {
+                    Thread.sleep(loadMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "value-" + System.nanoTime();
+            };
+            ConcurrentHistogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 2);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            boolean naive = "naive".equals(mode);
+
+            List<Thread> workers = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                RedisClientTemplate template = templates.get(t % nodes);
+                Thread worker = new Thread(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        if (naive) {
+                            String value = template.get(KEY, String.class);
+                            if (value == null) {
+                                template.set(KEY, loader.get(), ttl);
+                            }
+                        } else {
+                            template.getOrLoad(KEY, ttl, String.class, loader);
+                        }
+                        latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), TimeUnit.MINUTES.toMicros(1)));
+                    }
+                }, "stampede-" + t);
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            long saved = 0;
+            long early = 0;
+            for (RedisClientTemplate template : templates) {
+                saved += template.getLoadStats().getSaved();
+                early += template.getLoadStats().getEarlyRefreshes();
+            }
+            System.out.printf("%-18s backend calls=%d, backend calls/expiry=%.2f, saved=%d, early refreshes=%d, "
+                            + "reads=%d, p50=%dus p99=%dus max=%dus%n",
+                    mode, backendCalls.sum(), backendCalls.sum() / (seconds / (double) ttl), saved, early,
+                    latency.getTotalCount(), latency.getValueAtPercentile(50), latency.getValueAtPercentile(99), latency.getMaxValue());
+        }
+        redissonClient.shutdown();
+        factory.destroy();
+    }
+}
@@ -0,0 +1,99 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.config.LettuceConnectionModePostProcessor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：连接模式基准测试
+ * <pre>
+ *  pooled / shared / shared-batch 三种连接模式下 RedisClientTemplate.get / set 的吞吐（ops/s）与耗时分布（p99），
+ *  连接池按 application.yml 配置为8个连接，连接工厂经 LettuceConnectionModePostProcessor 处理，与应用中一致。
+ *  main 方法依次以 1、8、64、512 个并发调用方运行，可通过 -Dthreads=1,16 覆盖。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-17 14:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ConnectionModeBenchmark {
+    private static final int KEYS = 1024;
+
+    @Param({"pooled", "shared", "shared-batch"})
+    private String mode;
+
+    @Param({"200"})
+    private long flushIntervalMicros;
+
+    private LettuceConnectionFactory factory;
+
+    private RedisClientTemplate template;
+
+    @Setup
+    public void setup() {
+        GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(8);
+        poolConfig.setMaxIdle(8);
+        LettuceConnectionFactory pooled = new LettuceConnectionFactory(BenchmarkSupport.standaloneConfiguration(),
+                LettucePoolingClientConfiguration.builder().poolConfig(poolConfig).build());
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("demo.redis.connection.mode", mode)
+                .withProperty("demo.redis.connection.flush-interval-micros", String.valueOf(flushIntervalMicros));
+        factory = (LettuceConnectionFactory) new LettuceConnectionModePostProcessor(environment)
+                .postProcessBeforeInitialization(pooled, "redisConnectionFactory");
+        factory.afterPropertiesSet();
+        template = new RedisClientTemplate(false, 0, BenchmarkSupport.stringRedisTemplate(factory));
+        for (int i = 0; i < KEYS; i++) {
+            template.set(key(i), "value-" + i, 600);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = key(i);
+        }
+        template.del(keys);
+        factory.destroy();
+    }
+
+    @Benchmark
+    public String get() {
+        return template.get(key(ThreadLocalRandom.current().nextInt(KEYS)));
+    }
+
+    @Benchmark
+    public boolean set() {
+        int i = ThreadLocalRandom.current().nextInt(KEYS);
+        return template.set(key(i), "value-" + i, 600);
+    }
+
+    private static String key(int i) {
+        return "benchmark:connection:" + i;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (String threads : System.getProperty("threads", "1,8,64,512").split(",")) {
+            new Runner(new OptionsBuilder()
+                    .include(ConnectionModeBenchmark.class.getSimpleName())
+                    .threads(Integer.parseInt(threads.trim()))
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .build()).run();
+        }
+    }
+}
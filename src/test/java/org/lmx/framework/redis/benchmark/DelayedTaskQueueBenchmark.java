@@ -0,0 +1,93 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.lmx.framework.redis.delay.DelayedTask;
+import org.lmx.framework.redis.delay.DelayedTaskHandler;
+import org.lmx.framework.redis.delay.DelayedTaskQueue;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述：延迟任务队列压测
+ * <pre>
+ *  安排 -Dtasks（默认100万）个任务，到期时间均匀分布在 -DspreadSeconds（默认60）秒内，
+ *  输出安排吞吐、触发吞吐（tasks/s）与触发延迟（处理时刻 - 到期时刻）的 p50/p99/p999/max。
+ *  触发延迟用本机时钟与Redis服务端时钟相减，Redis（或兼容的替身服务）需运行在本机。
+ *
+ *  -Dshards=8 -Dworkers=4 -DbatchSize=100
+ *  该测试需要较长时间，单独以main方法运行而非JMH。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-19 15:00
+ **/
+public class DelayedTaskQueueBenchmark {
+    private static final String TOPIC = "benchmark";
+
+    public static void main(String[] args) throws InterruptedException {
+        int tasks = Integer.getInteger("tasks", 1_000_000);
+        int spreadSeconds = Integer.getInteger("spreadSeconds", 60);
+        int chunk = 1000;
+
+        LettuceConnectionFactory factory = BenchmarkSupport.connectionFactory();
+        StringRedisTemplate redisTemplate = BenchmarkSupport.stringRedisTemplate(factory);
+        DelayedTaskQueue queue = new DelayedTaskQueue(redisTemplate,
+                Integer.getInteger("shards", 8), Integer.getInteger("workers", 4), Integer.getInteger("batchSize", 100),
+                30000, 16, 604800000, 10, 1000);
+
+        ConcurrentHistogram delays = new ConcurrentHistogram(TimeUnit.HOURS.toMillis(1), 2);
+        LongAdder fired = new LongAdder();
+        queue.register(new DelayedTaskHandler() {
+            @Override
+            public String topic() {
+                return TOPIC;
+            }
+
+            @Override
+            public void handle(DelayedTask task) {
+                delays.recordValue(Math.min(Math.max(System.currentTimeMillis() - task.getDueAt(), 0), TimeUnit.HOURS.toMillis(1)));
+                fired.increment();
+            }
+        });
+
+        long scheduleStart = System.nanoTime();
+        long spreadMillis = TimeUnit.SECONDS.toMillis(spreadSeconds);
+        Map<String, String> payloads = new HashMap<>(chunk * 2);
+        for (int i = 0; i < tasks; i += chunk) {
+            payloads.clear();
+            for (int j = i; j < Math.min(i + chunk, tasks); j++) {
+                payloads.put("task-" + j, "order-" + j);
+            }
+            // 越靠后的批次到期越晚，到期时间均匀分布在spreadSeconds内
+            long delayMillis = spreadMillis * i / tasks;
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduleStart);
+            queue.scheduleAll(TOPIC, payloads, Math.max(delayMillis - elapsedMillis, 0), TimeUnit.MILLISECONDS);
+        }
+        long scheduleNanos = System.nanoTime() - scheduleStart;
+        System.out.printf("scheduled %d tasks in %dms: %.0f tasks/s%n",
+                tasks, TimeUnit.NANOSECONDS.toMillis(scheduleNanos), tasks * 1e9 / scheduleNanos);
+
+        long fireStart = System.nanoTime();
+        queue.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(spreadSeconds + 120L);
+        while (fired.sum() < tasks && System.nanoTime() < deadline) {
+            Thread.sleep(1000);
+            System.out.printf("fired %d / %d, pending %d%n", fired.sum(), tasks, queue.size(TOPIC));
+        }
+        long fireNanos = System.nanoTime() - fireStart;
+        queue.destroy();
+
+        System.out.printf("fired %d tasks in %dms: %.0f tasks/s, redelivered=%d, failed=%d%n",
+                fired.sum(), TimeUnit.NANOSECONDS.toMillis(fireNanos), fired.sum() * 1e9 / fireNanos,
+                queue.getRedeliveredCount(), queue.getFailedCount());
+        System.out.printf("firing delay: p50=%dms p99=%dms p999=%dms max=%dms%n",
+                delays.getValueAtPercentile(50), delays.getValueAtPercentile(99),
+                delays.getValueAtPercentile(99.9), delays.getMaxValue());
+        factory.destroy();
+    }
+}
@@ -0,0 +1,103 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.lock.DistributedLock;
+import org.lmx.framework.redis.lock.LocalFirstDistributedLock;
+import org.lmx.framework.redis.lock.RedisDistributedLock;
+import org.lmx.framework.redis.lock.RedisSonDistributedLock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：分布式锁基准测试
+ * <pre>
+ *  N个线程（@Threads）× M个key（keys）竞争加锁，SampleTime模式输出加锁+解锁耗时的p99；
+ *  TearDown时输出redis-local模式下每次加锁实际访问Redis的比例；
+ *  native为Lua脚本实现的原生锁，与redis（RedisSon）对比吞吐。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-07-28 15:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class DistributedLockBenchmark {
+
+    @Param({"redis", "redis-local", "native"})
+    private String lockerType;
+
+    @Param({"1", "16"})
+    private int keys;
+
+    private RedissonClient redissonClient;
+
+    private DistributedLock locker;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Setup
+    public void setup() {
+        redissonClient = BenchmarkSupport.redissonClient();
+        switch (lockerType) {
+            case "redis-local":
+                locker = new LocalFirstDistributedLock(redissonClient, 16);
+                break;
+            case "native":
+                connectionFactory = BenchmarkSupport.connectionFactory();
+                listenerContainer = new RedisMessageListenerContainer();
+                listenerContainer.setConnectionFactory(connectionFactory);
+                listenerContainer.afterPropertiesSet();
+                locker = new RedisDistributedLock(BenchmarkSupport.stringRedisTemplate(connectionFactory), listenerContainer);
+                listenerContainer.start();
+                break;
+            default:
+                locker = new RedisSonDistributedLock(redissonClient);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (locker instanceof LocalFirstDistributedLock) {
+            LocalFirstDistributedLock local = (LocalFirstDistributedLock) locker;
+            long redis = local.getRedisAcquireCount();
+            long total = redis + local.getLocalHandoffCount();
+            System.out.println("redis acquires/lock: " + (total == 0 ? 0 : (double) redis / total));
+        }
+        if (locker instanceof RedisDistributedLock) {
+            ((RedisDistributedLock) locker).destroy();
+        }
+        if (listenerContainer != null) {
+            listenerContainer.stop();
+            connectionFactory.destroy();
+        }
+        redissonClient.shutdown();
+    }
+
+    private String nextKey() {
+        return "benchmark:" + ThreadLocalRandom.current().nextInt(keys);
+    }
+
+    @Benchmark
+    public boolean lockUnlock() {
+        Object lock = locker.lock(nextKey());
+        return locker.unlock(lock);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DistributedLockBenchmark.class.getSimpleName()).build()).run();
+    }
+}
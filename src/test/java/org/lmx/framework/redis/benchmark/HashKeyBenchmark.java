@@ -0,0 +1,76 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.base.AbstractTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.profile.GCProfiler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 功能描述：hashKey/BKDRHashCode 基准测试
+ * <pre>
+ *  对比历史实现（每次new CRC32 + getBytes + 字符串拼接）与当前实现，
+ *  main方法默认附加 -prof gc，关注 gc.alloc.rate.norm（每次操作分配字节数）。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-07-23 11:20
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashKeyBenchmark {
+    private static final int KEY_COUNT = 25000;
+
+    @Param({"user:account:860000000000001", "mall:sale:freq:ctrl:{860000000000001}:商品"})
+    private String key;
+
+    private AbstractTemplate template;
+
+    @Setup
+    public void setup() {
+        template = new AbstractTemplate(true, KEY_COUNT) {
+        };
+    }
+
+    @Benchmark
+    public String hashKeyLegacy() {
+        CRC32 crc32 = new CRC32();
+        crc32.update(key.getBytes());
+        return crc32.getValue() % KEY_COUNT + "";
+    }
+
+    @Benchmark
+    public String hashKey() {
+        return template.hashKey(key);
+    }
+
+    @Benchmark
+    public byte[] hashKeyBytes() {
+        return template.hashKeyBytes(key);
+    }
+
+    @Benchmark
+    public String bkdrHashCode() {
+        return template.BKDRHashCode(key);
+    }
+
+    @Benchmark
+    public int bkdrHash() {
+        return AbstractTemplate.BKDRHash(key);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HashKeyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,156 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.annotation.Lock;
+import org.lmx.framework.redis.aspect.LockAspect;
+import org.lmx.framework.redis.lock.DistributedLock;
+import org.lmx.framework.redis.metrics.LockMetrics;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：@Lock 切面单次调用开销基准测试
+ * <pre>
+ *  使用不访问Redis的空实现 DistributedLock，只测量代理 + 注解解析 + key表达式求值的开销：
+ *  direct 为不经过切面的直接调用，literalKey 为固定key，spelKey 为含参数引用的key；
+ *  metrics=true 时切面同时记录锁指标（HdrHistogram实现），用于衡量指标记录的开销。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-04 10:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LockAspectBenchmark {
+
+    public static class OrderService {
+        @Lock(key = "order:literal")
+        public long literal(long orderId) {
+            return orderId;
+        }
+
+        @Lock(key = "'order:' + #orderId + ':' + #user.id")
+        public long spel(long orderId, User user) {
+            return orderId;
+        }
+    }
+
+    public static class User {
+        private final long id;
+
+        public User(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+
+    /**
+     * 不访问Redis的锁实现
+     */
+    private static final class NoopDistributedLock implements DistributedLock {
+        private static final Object LOCK = new Object();
+
+        @Override
+        public Object lock(String key, long leaseTime, TimeUnit unit, boolean isFair) {
+            return LOCK;
+        }
+
+        @Override
+        public Object lock(String key, long leaseTime, TimeUnit unit) {
+            return LOCK;
+        }
+
+        @Override
+        public Object lock(String key, boolean isFair) {
+            return LOCK;
+        }
+
+        @Override
+        public Object lock(String key) {
+            return LOCK;
+        }
+
+        @Override
+        public Object tryLock(String key, long waitTime, long leaseTime, TimeUnit unit, boolean isFair) {
+            return LOCK;
+        }
+
+        @Override
+        public Object tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+            return LOCK;
+        }
+
+        @Override
+        public Object tryLock(String key, long waitTime, TimeUnit unit, boolean isFair) {
+            return LOCK;
+        }
+
+        @Override
+        public Object tryLock(String key, long waitTime, TimeUnit unit) {
+            return LOCK;
+        }
+
+        @Override
+        public boolean unlock(Object lock) {
+            return lock == LOCK;
+        }
+    }
+
+    @Param({"false", "true"})
+    private boolean metrics;
+
+    private OrderService target;
+
+    private OrderService proxy;
+
+    private User user;
+
+    private long orderId;
+
+    @Setup
+    public void setup() {
+        LockAspect aspect = new LockAspect();
+        ReflectionTestUtils.setField(aspect, "locker", new NoopDistributedLock());
+        if (metrics) {
+            ReflectionTestUtils.setField(aspect, "lockMetrics", new LockMetrics());
+        }
+
+        target = new OrderService();
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        proxy = factory.getProxy();
+        user = new User(8);
+    }
+
+    @Benchmark
+    public long direct() {
+        return target.spel(orderId++, user);
+    }
+
+    @Benchmark
+    public long literalKey() {
+        return proxy.literal(orderId++);
+    }
+
+    @Benchmark
+    public long spelKey() {
+        return proxy.spel(orderId++, user);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LockAspectBenchmark.class.getSimpleName()).build()).run();
+    }
+}
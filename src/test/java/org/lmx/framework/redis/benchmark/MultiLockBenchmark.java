@@ -0,0 +1,106 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.lock.DistributedLock;
+import org.lmx.framework.redis.lock.RedisDistributedLock;
+import org.lmx.framework.redis.lock.RedisSonDistributedLock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：多key加锁竞争基准测试
+ * <pre>
+ *  模拟两个账户间转账：每次随机取两个不同账户同时加锁。
+ *  lockAll 为一次性多key加锁；nested 为嵌套的单key加锁（已按key排序，否则会死锁）。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-05 14:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class MultiLockBenchmark {
+
+    @Param({"redis", "native"})
+    private String lockerType;
+
+    @Param({"4", "64"})
+    private int accounts;
+
+    private RedissonClient redissonClient;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    private DistributedLock locker;
+
+    @Setup
+    public void setup() {
+        if ("native".equals(lockerType)) {
+            connectionFactory = BenchmarkSupport.connectionFactory();
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(connectionFactory);
+            listenerContainer.afterPropertiesSet();
+            locker = new RedisDistributedLock(BenchmarkSupport.stringRedisTemplate(connectionFactory), listenerContainer);
+            listenerContainer.start();
+        } else {
+            redissonClient = BenchmarkSupport.redissonClient();
+            locker = new RedisSonDistributedLock(redissonClient);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (listenerContainer != null) {
+            ((RedisDistributedLock) locker).destroy();
+            listenerContainer.stop();
+            connectionFactory.destroy();
+        }
+        if (redissonClient != null) {
+            redissonClient.shutdown();
+        }
+    }
+
+    private String[] nextPair() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(accounts);
+        int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+        return new String[]{"benchmark:account:" + Math.min(from, to), "benchmark:account:" + Math.max(from, to)};
+    }
+
+    @Benchmark
+    public boolean lockAll() {
+        Object lock = locker.lockAll(Arrays.asList(nextPair()));
+        return locker.unlock(lock);
+    }
+
+    @Benchmark
+    public boolean nested() {
+        String[] pair = nextPair();
+        Object outer = locker.lock(pair[0]);
+        try {
+            Object inner = locker.lock(pair[1]);
+            return locker.unlock(inner);
+        } finally {
+            locker.unlock(outer);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MultiLockBenchmark.class.getSimpleName()).build()).run();
+    }
+}
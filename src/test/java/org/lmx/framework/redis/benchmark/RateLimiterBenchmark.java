@@ -0,0 +1,67 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.limiter.RateLimitAlgorithm;
+import org.lmx.framework.redis.limiter.RateLimitRule;
+import org.lmx.framework.redis.limiter.RedisRateLimiter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：集群限流基准测试
+ * <pre>
+ *  限额远大于实际请求量，全部放行，测量吞吐；
+ *  TearDown时输出每次Redis访问放行的请求数（prefetch=0时约为1）。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-10 14:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    @Param({"TOKEN_BUCKET", "SLIDING_WINDOW"})
+    private RateLimitAlgorithm algorithm;
+
+    @Param({"0", "100"})
+    private int prefetch;
+
+    private LettuceConnectionFactory factory;
+
+    private RedisRateLimiter rateLimiter;
+
+    private RateLimitRule rule;
+
+    @Setup
+    public void setup() {
+        factory = BenchmarkSupport.connectionFactory();
+        rateLimiter = new RedisRateLimiter(BenchmarkSupport.stringRedisTemplate(factory));
+        rule = new RateLimitRule(algorithm, 100_000_000, 1, TimeUnit.SECONDS, prefetch);
+    }
+
+    @TearDown
+    public void tearDown() {
+        long calls = rateLimiter.getRedisCallCount();
+        System.out.println("admitted/redis op: " + (calls == 0 ? 0 : (double) rateLimiter.getAdmittedCount() / calls));
+        factory.destroy();
+    }
+
+    @Benchmark
+    public boolean tryAcquire() {
+        return rateLimiter.tryAcquire("benchmark:tenant", rule);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RateLimiterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,81 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.ReactiveRedisClientTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：响应式模板批量读取基准测试
+ * <pre>
+ *  blockingMGet 为 RedisClientTemplate.mGet（按pipelineBatchSize分批pipeline），
+ *  reactiveMGet 为 ReactiveRedisClientTemplate.mGet（Flux输入，最多maxInFlight条命令同时在途），
+ *  两者读取同一批由阻塞模板写入的数据。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-13 11:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReactiveRedisClientTemplateBenchmark {
+    private static final int BATCH_KEYS = 1000;
+
+    private LettuceConnectionFactory factory;
+
+    private RedisClientTemplate blocking;
+
+    private ReactiveRedisClientTemplate reactive;
+
+    private List<String> batchKeys;
+
+    @Setup
+    public void setup() {
+        factory = BenchmarkSupport.connectionFactory();
+        blocking = new RedisClientTemplate(false, 0, BenchmarkSupport.stringRedisTemplate(factory));
+        reactive = new ReactiveRedisClientTemplate(false, 0, new ReactiveStringRedisTemplate(factory));
+
+        batchKeys = new ArrayList<>(BATCH_KEYS);
+        Map<String, Object> values = new HashMap<>(BATCH_KEYS);
+        for (int i = 0; i < BATCH_KEYS; i++) {
+            batchKeys.add("benchmark:reactive:" + i);
+            values.put("benchmark:reactive:" + i, i);
+        }
+        blocking.mSet(values, 600);
+    }
+
+    @TearDown
+    public void tearDown() {
+        blocking.del(batchKeys.toArray(new String[0]));
+        factory.destroy();
+    }
+
+    @Benchmark
+    public List<Integer> blockingMGet() {
+        return blocking.mGet(batchKeys, Integer.class);
+    }
+
+    @Benchmark
+    public Long reactiveMGet() {
+        return reactive.mGet(Flux.fromIterable(batchKeys), Integer.class).count().block();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ReactiveRedisClientTemplateBenchmark.class.getSimpleName()).build()).run();
+    }
+}
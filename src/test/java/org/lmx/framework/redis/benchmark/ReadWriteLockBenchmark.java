@@ -0,0 +1,80 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.lock.RedisSonDistributedLock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.redisson.api.RedissonClient;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：读写锁吞吐基准测试
+ * <pre>
+ *  16个线程竞争同一个key，writePercent% 的调用为写，其余为读，持有锁期间消耗 holdTokens 的CPU；
+ *  exclusive 为全部使用互斥锁（现状），readWrite 为读用读锁、写用写锁。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-06 10:30
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class ReadWriteLockBenchmark {
+    private static final String KEY = "benchmark:account";
+
+    @Param({"exclusive", "readWrite"})
+    private String mode;
+
+    @Param({"5"})
+    private int writePercent;
+
+    @Param({"1000"})
+    private long holdTokens;
+
+    private RedissonClient redissonClient;
+
+    private RedisSonDistributedLock locker;
+
+    @Setup
+    public void setup() {
+        redissonClient = BenchmarkSupport.redissonClient();
+        locker = new RedisSonDistributedLock(redissonClient);
+    }
+
+    @TearDown
+    public void tearDown() {
+        redissonClient.shutdown();
+    }
+
+    @Benchmark
+    public boolean mixed() {
+        boolean write = ThreadLocalRandom.current().nextInt(100) < writePercent;
+        Object lock;
+        if ("exclusive".equals(mode)) {
+            lock = locker.lock(KEY, -1, null);
+        } else if (write) {
+            lock = locker.writeLock(KEY, -1, null);
+        } else {
+            lock = locker.readLock(KEY, -1, null);
+        }
+        try {
+            Blackhole.consumeCPU(holdTokens);
+        } finally {
+            locker.unlock(lock);
+        }
+        return write;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ReadWriteLockBenchmark.class.getSimpleName()).build()).run();
+    }
+}
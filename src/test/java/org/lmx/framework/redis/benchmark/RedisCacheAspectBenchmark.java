@@ -0,0 +1,116 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.annotation.RedisCacheable;
+import org.lmx.framework.redis.aspect.RedisCacheAspect;
+import org.lmx.framework.redis.cache.NearCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：@RedisCacheable 切面命中时的单次调用开销基准测试
+ * <pre>
+ *  全部为缓存命中：manual 为手写的 get + 未命中时 set，cached / cachedZip 为经过切面的调用，
+ *  两者之差即代理 + 元数据查找 + key表达式求值 + 负缓存判断的开销。
+ *  nearCache=true 时命中由进程内近端缓存返回，不访问Redis，开销占比最明显；false 时包含一次Redis往返。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-24 15:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisCacheAspectBenchmark {
+    private static final int IDS = 1024;
+
+    public static class UserService {
+        @RedisCacheable(key = "'benchmark:user:' + #id", ttl = 600)
+        public String find(long id) {
+            return "user-" + id;
+        }
+
+        @RedisCacheable(key = "'benchmark:user-zip:' + #id", zip = true)
+        public String findZip(long id) {
+            return "user-" + id;
+        }
+    }
+
+    @Param({"true", "false"})
+    private boolean nearCache;
+
+    private LettuceConnectionFactory factory;
+
+    private RedisClientTemplate template;
+
+    private UserService proxy;
+
+    private long id;
+
+    @Setup
+    public void setup() {
+        factory = BenchmarkSupport.connectionFactory();
+        template = new RedisClientTemplate(false, 0, BenchmarkSupport.stringRedisTemplate(factory));
+        if (nearCache) {
+            ReflectionTestUtils.setField(template, "nearCache", new NearCache(IDS * 4, 600, TimeUnit.SECONDS));
+        }
+        RedisCacheAspect aspect = new RedisCacheAspect();
+        ReflectionTestUtils.setField(aspect, "redisClientTemplate", template);
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new UserService());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(aspect);
+        proxy = proxyFactory.getProxy();
+        for (int i = 0; i < IDS; i++) {
+            proxy.find(i);
+            proxy.findZip(i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        String[] keys = new String[IDS];
+        for (int i = 0; i < IDS; i++) {
+            keys[i] = "benchmark:user:" + i;
+            template.del("benchmark:user-zip:" + i);
+        }
+        template.del(keys);
+        factory.destroy();
+    }
+
+    @Benchmark
+    public String manual() {
+        long userId = id++ & (IDS - 1);
+        String key = "benchmark:user:" + userId;
+        String user = template.get(key, String.class);
+        if (user == null) {
+            user = "user-" + userId;
+            template.set(key, user, 600);
+        }
+        return user;
+    }
+
+    @Benchmark
+    public String cached() {
+        return proxy.find(id++ & (IDS - 1));
+    }
+
+    @Benchmark
+    public String cachedZip() {
+        return proxy.findZip(id++ & (IDS - 1));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RedisCacheAspectBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,109 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.cache.CacheInvalidationBus;
+import org.lmx.framework.redis.cache.NearCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：RedisClientTemplate 读写基准测试
+ *
+ * @author: LM.X
+ * @create: 2020-07-20 14:10
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisClientTemplateBenchmark {
+    private static final String KEY = "benchmark:config";
+
+    private static final int BATCH_KEYS = 200;
+
+    private LettuceConnectionFactory factory;
+
+    private RedisClientTemplate uncached;
+
+    private RedisClientTemplate cached;
+
+    private CacheInvalidationBus invalidationBus;
+
+    private List<String> batchKeys;
+
+    @Setup
+    public void setup() {
+        factory = BenchmarkSupport.connectionFactory();
+        StringRedisTemplate redisTemplate = BenchmarkSupport.stringRedisTemplate(factory);
+
+        uncached = new RedisClientTemplate(false, 0, redisTemplate);
+
+        NearCache nearCache = new NearCache(10000, 60, TimeUnit.SECONDS);
+        cached = new RedisClientTemplate(false, 0, redisTemplate);
+        ReflectionTestUtils.setField(cached, "nearCache", nearCache);
+        invalidationBus = new CacheInvalidationBus(redisTemplate, 10, 500, 5000);
+        invalidationBus.register(nearCache);
+        ReflectionTestUtils.setField(cached, "invalidationBus", invalidationBus);
+
+        uncached.set(KEY, "{\"id\":8,\"nickname\":\"13566669999\"}");
+
+        batchKeys = new ArrayList<>(BATCH_KEYS);
+        Map<String, Object> values = new HashMap<>(BATCH_KEYS);
+        for (int i = 0; i < BATCH_KEYS; i++) {
+            batchKeys.add("benchmark:batch:" + i);
+            values.put("benchmark:batch:" + i, i);
+        }
+        uncached.mSet(values, 600);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        invalidationBus.destroy();
+        uncached.del(KEY);
+        uncached.del(batchKeys.toArray(new String[0]));
+        factory.destroy();
+    }
+
+    @Benchmark
+    public String getUncached() {
+        return uncached.get(KEY);
+    }
+
+    @Benchmark
+    public String getNearCached() {
+        return cached.get(KEY);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_KEYS)
+    public List<Integer> getLoop() {
+        List<Integer> values = new ArrayList<>(BATCH_KEYS);
+        for (String key : batchKeys) {
+            values.add(uncached.get(key, Integer.class));
+        }
+        return values;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_KEYS)
+    public List<Integer> mGetPipelined() {
+        return uncached.mGet(batchKeys, Integer.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RedisClientTemplateBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,55 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.metrics.RedisCommandStats;
+import org.lmx.framework.redis.metrics.RedisOperation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：RedisClientTemplate 方法统计的记录开销基准测试
+ * <pre>
+ *  不访问Redis，只测量模板方法内 start/bytesIn/stop 一组探针的开销：
+ *  enabled=false 为未开启统计（RedisCommandStats.DISABLED），enabled=true 为开启统计。
+ *  以 -prof gc 运行可确认记录路径不分配对象（gc.alloc.rate.norm 为0）。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-12 11:00
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RedisCommandStatsBenchmark {
+    private static final String KEY = "benchmark:stats";
+
+    @Param({"false", "true"})
+    private boolean enabled;
+
+    private RedisCommandStats commandStats;
+
+    @Setup
+    public void setup() {
+        // 慢命令阈值取足够大，避免基准中触发慢命令日志
+        commandStats = enabled ? new RedisCommandStats(60_000, 128, null) : RedisCommandStats.DISABLED;
+    }
+
+    @Benchmark
+    public long record() {
+        long start = commandStats.start();
+        commandStats.bytesIn(RedisOperation.GET, 128);
+        commandStats.stop(RedisOperation.GET, KEY, start);
+        return start;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RedisCommandStatsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,122 @@
+package org.lmx.framework.redis.benchmark;
+
+import lombok.Data;
+import org.lmx.framework.redis.codec.ValueCodec;
+import org.lmx.framework.redis.codec.ValueCodecs;
+import org.lmx.framework.redis.codec.ValueCompressor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：值编解码器及大值压缩基准测试，encode/decode ns/op，bytes/value 在Setup阶段输出
+ *
+ * @author: LM.X
+ * @create: 2020-07-24 15:10
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueCodecBenchmark {
+
+    @Data
+    public static class Account {
+        private Long id;
+        private String clientType;
+        private String countryCode;
+        private String mobileNumber;
+        private String nickname;
+        private Integer level;
+        private Boolean enabled;
+        private List<Order> orders;
+    }
+
+    @Data
+    public static class Order {
+        private Long orderId;
+        private Double amount;
+        private String status;
+    }
+
+    @Param({"json", "binary"})
+    private String codecName;
+
+    private ValueCodec codec;
+
+    private Account account;
+
+    private byte[] encoded;
+
+    private final ValueCompressor compressor = new ValueCompressor(true, 4096, 1);
+
+    private Account largeAccount;
+
+    private byte[] largeCompressed;
+
+    @Setup
+    public void setup() {
+        codec = ValueCodecs.forName(codecName);
+        account = new Account();
+        account.setId(8L);
+        account.setClientType("APP");
+        account.setCountryCode("+86");
+        account.setMobileNumber("13566669999");
+        account.setNickname("13566669999");
+        account.setLevel(3);
+        account.setEnabled(true);
+        account.setOrders(orders(10));
+        encoded = codec.encode(account);
+        System.out.println(codecName + " bytes/value: " + encoded.length);
+
+        largeAccount = new Account();
+        largeAccount.setId(9L);
+        largeAccount.setOrders(orders(500));
+        byte[] largeEncoded = codec.encode(largeAccount);
+        largeCompressed = compressor.compress(largeEncoded);
+        System.out.println(codecName + " large bytes/value: " + largeEncoded.length + " -> compressed: " + largeCompressed.length);
+    }
+
+    private static List<Order> orders(int count) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setOrderId(2020072400000L + i);
+            order.setAmount(99.5 * i);
+            order.setStatus("PAID");
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(account);
+    }
+
+    @Benchmark
+    public Account decode() {
+        return ValueCodecs.decode(encoded, Account.class);
+    }
+
+    @Benchmark
+    public byte[] encodeLargeCompressed() {
+        return compressor.compress(codec.encode(largeAccount));
+    }
+
+    @Benchmark
+    public Account decodeLargeCompressed() {
+        return ValueCodecs.decode(compressor.decompress(largeCompressed), Account.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ValueCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
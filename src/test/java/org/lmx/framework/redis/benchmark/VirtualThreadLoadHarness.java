@@ -0,0 +1,166 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.concurrent.VirtualThreads;
+import org.lmx.framework.redis.lock.DistributedLock;
+import org.lmx.framework.redis.lock.RedisSonDistributedLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 功能描述：平台线程与虚拟线程的并发压测
+ * <pre>
+ *  JMH的测试线程都是平台线程，无法模拟上万个并发调用方，因此单独提供main方法：
+ *  callers个调用方（默认10000）同时循环执行一次Redis操作 + thinkMillis的模拟下游IO，
+ *  先后以平台线程（每个调用方一个线程）和虚拟线程运行，输出吞吐（ops/s）与操作耗时的p50/p99。
+ *
+ *  -Dscenario=get   RedisClientTemplate.get（默认）
+ *  -Dscenario=lock  RedisSon分布式锁 tryLock + unlock，key在 -Dkeys 个之间随机
+ *  -Dcallers=10000 -Dseconds=30 -DthinkMillis=10 -Dmodes=platform,virtual
+ *
+ *  运行：mvn -Pvirtual-threads test-compile exec:java -Dexec.classpathScope=test
+ *       -Dexec.mainClass=org.lmx.framework.redis.benchmark.VirtualThreadLoadHarness -Djdk.tracePinnedThreads=short
+ *  平台线程模式需要足够的线程数上限，必要时加 -Xss256k。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-14 14:00
+ **/
+public class VirtualThreadLoadHarness {
+    private final String scenario = System.getProperty("scenario", "get");
+    private final int callers = Integer.getInteger("callers", 10000);
+    private final int seconds = Integer.getInteger("seconds", 30);
+    private final int thinkMillis = Integer.getInteger("thinkMillis", 10);
+    private final int keys = Integer.getInteger("keys", 1024);
+
+    private LettuceConnectionFactory factory;
+    private RedissonClient redissonClient;
+    private RedisClientTemplate template;
+    private DistributedLock locker;
+
+    public static void main(String[] args) throws Exception {
+        VirtualThreadLoadHarness harness = new VirtualThreadLoadHarness();
+        harness.setup();
+        try {
+            for (String mode : System.getProperty("modes", "platform,virtual").split(",")) {
+                harness.run(mode.trim());
+            }
+        } finally {
+            harness.tearDown();
+        }
+    }
+
+    private void setup() {
+        if ("lock".equals(scenario)) {
+            redissonClient = BenchmarkSupport.redissonClient();
+            locker = new RedisSonDistributedLock(redissonClient);
+        } else {
+            factory = BenchmarkSupport.connectionFactory();
+            template = new RedisClientTemplate(false, 0, BenchmarkSupport.stringRedisTemplate(factory));
+            for (int i = 0; i < keys; i++) {
+                template.set(key(i), "value-" + i, 600);
+            }
+        }
+    }
+
+    private void tearDown() {
+        if (template != null) {
+            String[] all = new String[keys];
+            for (int i = 0; i < keys; i++) {
+                all[i] = key(i);
+            }
+            template.del(all);
+        }
+        if (factory != null) {
+            factory.destroy();
+        }
+        if (redissonClient != null) {
+            redissonClient.shutdown();
+        }
+    }
+
+    private void run(String mode) throws InterruptedException {
+        ExecutorService executor;
+        if ("virtual".equals(mode)) {
+            if (!VirtualThreads.isSupported()) {
+                System.out.println("virtual: 当前JDK不支持虚拟线程，跳过");
+                return;
+            }
+            executor = VirtualThreads.newExecutor("harness-");
+        } else {
+            executor = Executors.newFixedThreadPool(callers);
+        }
+
+        ConcurrentHistogram histogram = new ConcurrentHistogram(TimeUnit.SECONDS.toMicros(10), 2);
+        LongAdder ops = new LongAdder();
+        LongAdder errors = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(callers);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(callers);
+        long[] deadline = new long[1];
+
+        for (int i = 0; i < callers; i++) {
+            executor.execute(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    while (System.nanoTime() < deadline[0]) {
+                        long start = System.nanoTime();
+                        if (call()) {
+                            histogram.recordValue(Math.max(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), 1));
+                            ops.increment();
+                        } else {
+                            errors.increment();
+                        }
+                        if (thinkMillis > 0) {
+                            Thread.sleep(thinkMillis);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        deadline[0] = begin + TimeUnit.SECONDS.toNanos(seconds);
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        System.out.printf("%s scenario=%s callers=%d think=%dms: %.0f ops/s, p50=%dus, p99=%dus, max=%dus, errors=%d%n",
+                mode, scenario, callers, thinkMillis, ops.sum() * 1e9 / elapsed,
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99), histogram.getMaxValue(), errors.sum());
+    }
+
+    /**
+     * @return 操作是否成功，锁等待超时或异常为失败
+     */
+    private boolean call() {
+        int i = ThreadLocalRandom.current().nextInt(keys);
+        try {
+            if (template != null) {
+                return template.get(key(i)) != null;
+            }
+            Object lock = locker.tryLock(key(i), 3, 10, TimeUnit.SECONDS);
+            return lock != null && locker.unlock(lock);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static String key(int i) {
+        return "benchmark:harness:" + i;
+    }
+}
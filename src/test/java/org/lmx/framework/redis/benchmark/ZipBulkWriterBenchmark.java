@@ -0,0 +1,70 @@
+package org.lmx.framework.redis.benchmark;
+
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.ZipBulkWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：压缩模式写入吞吐基准测试，逐条setByZip 对比 ZipBulkWriter（结果单位：keys/s）
+ *
+ * @author: LM.X
+ * @create: 2020-07-22 10:20
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ZipBulkWriterBenchmark {
+    private static final int KEYS = 10000;
+
+    private LettuceConnectionFactory factory;
+
+    private RedisClientTemplate template;
+
+    private int round;
+
+    @Setup
+    public void setup() {
+        factory = BenchmarkSupport.connectionFactory();
+        template = new RedisClientTemplate(true, 25000, BenchmarkSupport.stringRedisTemplate(factory));
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public void setByZipPerKey() {
+        int base = round++ * KEYS;
+        for (int i = 0; i < KEYS; i++) {
+            template.setByZip("benchmark:zip:" + (base + i), "v", base + i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public long zipBulkWriter() {
+        int base = round++ * KEYS;
+        try (ZipBulkWriter writer = template.zipBulkWriter()) {
+            for (int i = 0; i < KEYS; i++) {
+                writer.write("benchmark:zip:" + (base + i), "v", base + i);
+            }
+            writer.flush();
+            return writer.getWrittenCommands();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZipBulkWriterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,152 @@
+package org.lmx.framework.redis.cache;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 功能描述：缓存失效总线的序号检测、按序接收与合并发送
+ *
+ * @author: LM.X
+ * @create: 2020-08-25 16:00
+ **/
+public class CacheInvalidationBusTests {
+    private final StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+
+    private final CacheInvalidationBus bus = new CacheInvalidationBus(redisTemplate, 1000, 500, 5000);
+
+    private final RecordingListener listener = new RecordingListener("user:");
+
+    private static final class RecordingListener implements InvalidationListener {
+        private final String prefix;
+        private final List<List<String>> invalidated = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger cleared = new AtomicInteger();
+
+        private RecordingListener(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public String prefix() {
+            return prefix;
+        }
+
+        @Override
+        public void invalidate(List<String> keys) {
+            invalidated.add(new ArrayList<>(keys));
+        }
+
+        @Override
+        public void invalidateAll() {
+            cleared.incrementAndGet();
+        }
+    }
+
+    private static DefaultMessage message(String nodeId, long seq, String... keys) {
+        StringBuilder body = new StringBuilder(nodeId).append('\u0000').append(seq);
+        for (String key : keys) {
+            body.append('\u0000').append(key);
+        }
+        return new DefaultMessage(CacheInvalidationBus.CHANNEL.getBytes(StandardCharsets.UTF_8), body.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bus.destroy();
+    }
+
+    @Test
+    public void dispatchesByPrefixInArrivalOrder() throws InterruptedException {
+        bus.register(listener);
+        bus.onMessage(message("node-a", 1, "user:1", "order:1"), null);
+        bus.onMessage(message("node-a", 2, "user:2"), null);
+
+        Assert.assertTrue(eventually(() -> bus.getReceivedKeyCount() == 3));
+        Assert.assertEquals(Arrays.asList(Collections.singletonList("user:1"), Collections.singletonList("user:2")), listener.invalidated);
+        Assert.assertEquals(0, bus.getGapCount());
+    }
+
+    @Test
+    public void sequentialMessagesNeverReportGap() throws InterruptedException {
+        bus.register(listener);
+        for (int i = 1; i <= 2000; i++) {
+            bus.onMessage(message("node-a", i, "user:" + i), null);
+        }
+
+        Assert.assertTrue(eventually(() -> bus.getReceivedKeyCount() == 2000));
+        Assert.assertEquals(0, bus.getGapCount());
+        Assert.assertEquals(0, listener.cleared.get());
+        Assert.assertEquals(Collections.singletonList("user:2000"), listener.invalidated.get(1999));
+    }
+
+    @Test
+    public void missingSequenceClearsCaches() throws InterruptedException {
+        bus.register(listener);
+        bus.onMessage(message("node-a", 1, "user:1"), null);
+        bus.onMessage(message("node-a", 3, "user:3"), null);
+
+        Assert.assertTrue(eventually(() -> bus.getReceivedKeyCount() == 2));
+        Assert.assertEquals(1, bus.getGapCount());
+        Assert.assertEquals(1, listener.cleared.get());
+    }
+
+    @Test
+    public void heartbeatRevealsLostMessage() throws InterruptedException {
+        bus.register(listener);
+        bus.onMessage(message("node-a", 1, "user:1"), null);
+        bus.onMessage(message("node-a", 1), null);
+        bus.onMessage(message("node-a", 2), null);
+
+        Assert.assertTrue(eventually(() -> bus.getGapCount() == 1));
+        Assert.assertEquals(1, listener.cleared.get());
+    }
+
+    @Test
+    public void ignoresOwnMessages() throws InterruptedException {
+        bus.register(listener);
+        String nodeId = (String) ReflectionTestUtils.getField(bus, "nodeId");
+        bus.onMessage(message(nodeId, 5, "user:1"), null);
+        bus.onMessage(message("node-a", 1, "user:2"), null);
+
+        Assert.assertTrue(eventually(() -> bus.getReceivedKeyCount() == 1));
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList("user:2")), listener.invalidated);
+    }
+
+    @Test
+    public void publishInvalidatesLocallyAndCoalesces() throws Exception {
+        bus.register(listener);
+        bus.publish("user:1");
+        bus.publish(Arrays.asList("user:1", "user:2"));
+        Assert.assertEquals(2, listener.invalidated.size());
+
+        bus.destroy();
+        String nodeId = (String) ReflectionTestUtils.getField(bus, "nodeId");
+        Mockito.verify(redisTemplate).convertAndSend(CacheInvalidationBus.CHANNEL, nodeId + "\u00001\u0000user:1\u0000user:2");
+        Assert.assertEquals(3, bus.getPublishedCount());
+        Assert.assertEquals(2, bus.getSentKeyCount());
+    }
+}
@@ -0,0 +1,142 @@
+package org.lmx.framework.redis.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lmx.framework.redis.InMemoryRedisTemplate;
+import org.lmx.framework.redis.RedisClientTemplate;
+import org.lmx.framework.redis.codec.JsonValueCodec;
+import org.lmx.framework.redis.metrics.RedisCommandStats;
+import org.lmx.framework.redis.metrics.RedisOperation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：近端缓存的失效戳、按Key索引的整Key失效，以及 RedisClientTemplate 批量读、expire与命令统计对近端缓存的使用
+ * <pre>
+ *  Redis由 {@link InMemoryRedisTemplate} 模拟，按其记录的GET请求校验哪些Key访问了Redis。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-26 10:00
+ **/
+public class NearCacheTests {
+    private static final byte[] V1 = {1};
+    private static final byte[] V2 = {2};
+
+    private final NearCache nearCache = new NearCache(1000, 60, TimeUnit.SECONDS);
+
+    @Test
+    public void fillAfterInvalidationIsDropped() {
+        long stamp = nearCache.stamp("user:1");
+        // 读取Redis期间另一个线程写入并失效
+        nearCache.invalidateKey("user:1");
+        nearCache.put("user:1", null, V1, stamp);
+
+        Assert.assertNull(nearCache.get("user:1", null));
+        Assert.assertEquals(1, nearCache.staleFillCount());
+
+        nearCache.put("user:1", null, V2, nearCache.stamp("user:1"));
+        Assert.assertArrayEquals(V2, nearCache.get("user:1", null));
+    }
+
+    @Test
+    public void fieldInvalidationDropsKeyFill() {
+        long stamp = nearCache.stamp("user:1");
+        nearCache.invalidate(Collections.singletonList(NearCache.entryKey("user:1", "name")));
+        nearCache.put("user:1", "age", V1, stamp);
+
+        Assert.assertNull(nearCache.get("user:1", "age"));
+    }
+
+    @Test
+    public void invalidateAllDropsPendingFills() {
+        long stamp = nearCache.stamp("user:1");
+        nearCache.invalidateAll();
+        nearCache.put("user:1", null, V1, stamp);
+
+        Assert.assertEquals(0, nearCache.size());
+    }
+
+    @Test
+    public void invalidateKeyRemovesOnlyItsFields() {
+        nearCache.put("user:1", null, V1, nearCache.stamp("user:1"));
+        nearCache.put("user:1", "name", V1, nearCache.stamp("user:1"));
+        nearCache.put("user:1", "age", V1, nearCache.stamp("user:1"));
+        nearCache.put("user:10", "name", V2, nearCache.stamp("user:10"));
+
+        nearCache.invalidate(Collections.singletonList(NearCache.entryKey("user:1", null)));
+
+        Assert.assertNull(nearCache.get("user:1", null));
+        Assert.assertNull(nearCache.get("user:1", "name"));
+        Assert.assertNull(nearCache.get("user:1", "age"));
+        Assert.assertArrayEquals(V2, nearCache.get("user:10", "name"));
+        Assert.assertEquals(1, nearCache.size());
+    }
+
+    @Test
+    public void evictedFieldLeavesIndex() {
+        NearCache small = new NearCache(16, 60, TimeUnit.SECONDS);
+        small.put("user:1", "name", V1, small.stamp("user:1"));
+        // 单个分段容量为1，同分段的其它Key挤出user:1的field
+        for (int i = 0; i < 64; i++) {
+            small.put("other:" + i, null, V2, small.stamp("other:" + i));
+        }
+        Assert.assertNull(small.get("user:1", "name"));
+
+        small.put("user:1", "age", V1, small.stamp("user:1"));
+        small.invalidateKey("user:1");
+        Assert.assertNull(small.get("user:1", "age"));
+    }
+
+    @Test
+    public void mGetServesHitsAndFetchesMisses() {
+        InMemoryRedisTemplate redisTemplate = new InMemoryRedisTemplate();
+        redisTemplate.strings().put("user:1", JsonValueCodec.INSTANCE.encode("a"));
+        redisTemplate.strings().put("user:2", JsonValueCodec.INSTANCE.encode("b"));
+        RedisClientTemplate template = new RedisClientTemplate(false, 0, redisTemplate);
+        ReflectionTestUtils.setField(template, "nearCache", nearCache);
+
+        Assert.assertEquals(Arrays.asList("a", "b", null), template.mGet(Arrays.asList("user:1", "user:2", "user:3"), String.class));
+        Assert.assertEquals(Arrays.asList("user:1", "user:2", "user:3"), redisTemplate.requested());
+
+        redisTemplate.requested().clear();
+        Assert.assertEquals(Arrays.asList("a", "b", null), template.mGet(Arrays.asList("user:1", "user:2", "user:3"), String.class));
+        // 不存在的Key不缓存
+        Assert.assertEquals(Collections.singletonList("user:3"), redisTemplate.requested());
+
+        redisTemplate.requested().clear();
+        Assert.assertTrue(template.expire("user:1", 10));
+        template.mGet(Arrays.asList("user:1", "user:2"), String.class);
+        Assert.assertEquals(Collections.singletonList("user:1"), redisTemplate.requested());
+    }
+
+    @Test
+    public void nearHitsAreNotRedisLatency() {
+        InMemoryRedisTemplate redisTemplate = new InMemoryRedisTemplate();
+        redisTemplate.strings().put("user:1", JsonValueCodec.INSTANCE.encode("a"));
+        redisTemplate.strings().put("user:2", JsonValueCodec.INSTANCE.encode("b"));
+        RedisClientTemplate template = new RedisClientTemplate(false, 0, redisTemplate);
+        ReflectionTestUtils.setField(template, "nearCache", nearCache);
+        RedisCommandStats stats = new RedisCommandStats(100, 16, null);
+        template.setCommandStats(stats);
+
+        template.mGet(Arrays.asList("user:1", "user:2"), String.class);
+        RedisCommandStats.OperationStats mGet = stats.getOperation(RedisOperation.M_GET);
+        Assert.assertEquals(1, mGet.getLatency().count());
+        Assert.assertEquals(0, mGet.getNearHits());
+
+        // 部分命中：仍有一次Redis往返
+        nearCache.invalidateKey("user:2");
+        template.mGet(Arrays.asList("user:1", "user:2"), String.class);
+        Assert.assertEquals(2, mGet.getLatency().count());
+        Assert.assertEquals(1, mGet.getNearHits());
+
+        // 全部命中：只计命中数
+        template.mGet(Arrays.asList("user:1", "user:2"), String.class);
+        Assert.assertEquals(2, mGet.getLatency().count());
+        Assert.assertEquals(3, mGet.getNearHits());
+    }
+}
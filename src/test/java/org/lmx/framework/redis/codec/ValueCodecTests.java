@@ -0,0 +1,207 @@
+package org.lmx.framework.redis.codec;
+
+import com.alibaba.fastjson.JSON;
+import lombok.Data;
+import org.junit.Assert;
+import org.junit.Test;
+import org.lmx.framework.redis.InMemoryRedisTemplate;
+import org.lmx.framework.redis.RedisClientTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 功能描述：编解码器的往返一致性、混合格式读取，以及 RedisClientTemplate 的list/set操作使用模板编解码器
+ * <pre>
+ *  Redis由 {@link InMemoryRedisTemplate} 模拟。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-27 10:00
+ **/
+public class ValueCodecTests {
+
+    public enum Status {
+        PAID, CLOSED
+    }
+
+    @Data
+    public static class Account {
+        private Long id;
+        private String nickname;
+        private Integer level;
+        private Boolean enabled;
+        private BigDecimal balance;
+        private Date created;
+        private Status status;
+        private String remark;
+        private transient String session;
+        private List<Order> orders;
+    }
+
+    @Data
+    public static class Order {
+        private Long orderId;
+        private Double amount;
+    }
+
+    private static Account account() {
+        Account account = new Account();
+        account.setId(8L);
+        account.setNickname("小明😀");
+        account.setLevel(-3);
+        account.setEnabled(true);
+        account.setBalance(new BigDecimal("12.50"));
+        account.setCreated(new Date(1598493600000L));
+        account.setStatus(Status.PAID);
+        account.setSession("secret");
+        List<Order> orders = new ArrayList<>();
+        for (long i = 0; i < 3; i++) {
+            Order order = new Order();
+            order.setOrderId(i);
+            order.setAmount(i * 1.5);
+            orders.add(order);
+        }
+        account.setOrders(orders);
+        return account;
+    }
+
+    private static void assertAccount(Account decoded) {
+        Account expected = account();
+        expected.setSession(null);
+        Assert.assertEquals(expected, decoded);
+    }
+
+    @Test
+    public void beanRoundTrip() {
+        for (ValueCodec codec : Arrays.asList(JsonValueCodec.INSTANCE, BinaryValueCodec.INSTANCE)) {
+            assertAccount(codec.decode(codec.encode(account()), Account.class));
+            assertAccount(ValueCodecs.decode(codec.encode(account()), Account.class));
+        }
+    }
+
+    @Test
+    public void binaryBeanMatchesJsonTree() {
+        // 直接读取属性与先转换为JSONObject树写出的内容一致（属性顺序可以不同）
+        Assert.assertEquals(ValueCodecs.decode(BinaryValueCodec.INSTANCE.encode(JSON.toJSON(account())), Object.class),
+                ValueCodecs.decode(BinaryValueCodec.INSTANCE.encode(account()), Object.class));
+    }
+
+    @Test
+    public void scalarRoundTrip() {
+        List<Object> values = Arrays.asList("", "abc", Integer.MIN_VALUE, Long.MAX_VALUE, -1.25d, 0.5f, true,
+                new BigDecimal("-0.001"), new byte[]{0, -1, 127});
+        for (Object value : values) {
+            byte[] bytes = BinaryValueCodec.INSTANCE.encode(value);
+            if (value instanceof byte[]) {
+                Assert.assertArrayEquals((byte[]) value, ValueCodecs.decode(bytes, byte[].class));
+            } else {
+                Assert.assertEquals(value, ValueCodecs.decode(bytes, value.getClass()));
+            }
+        }
+        Assert.assertNull(ValueCodecs.decode(BinaryValueCodec.INSTANCE.encode(null), Account.class));
+    }
+
+    @Test
+    public void mixedFormatsDecode() {
+        // 无类型头的历史JSON
+        assertAccount(ValueCodecs.decode(JSON.toJSONString(account()).getBytes(StandardCharsets.UTF_8), Account.class));
+        Assert.assertEquals("plain", ValueCodecs.decode("plain".getBytes(StandardCharsets.UTF_8), String.class));
+
+        ValueCompressor compressor = new ValueCompressor(true, 16, 1);
+        byte[] compressed = compressor.compress(BinaryValueCodec.INSTANCE.encode(account()));
+        Assert.assertTrue(ValueCompressor.isCompressed(compressed));
+        assertAccount(ValueCodecs.decode(compressor.decompress(compressed), Account.class));
+
+        byte[] expiring = ValueCodecs.withExpiry(BinaryValueCodec.INSTANCE.encode(account()), 1L);
+        assertAccount(ValueCodecs.decode(ValueCodecs.unwrapExpiry(expiring), Account.class));
+        Assert.assertNull(ValueCodecs.decode(ValueCodecs.nullValue(), Account.class));
+    }
+
+    @Test
+    public void corruptLengthRejectedBeforeAllocation() {
+        ValueCompressor compressor = ValueCompressor.disabled();
+        List<byte[]> corrupt = Arrays.asList(
+                // 声明约2GB，远超压缩数据能表示的长度
+                new byte[]{ValueCodec.MAGIC, ValueCompressor.ID, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0},
+                // 变长长度超过5字节
+                new byte[]{ValueCodec.MAGIC, ValueCompressor.ID, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01},
+                // 变长长度被截断
+                new byte[]{ValueCodec.MAGIC, ValueCompressor.ID, (byte) 0x80});
+        for (byte[] bytes : corrupt) {
+            try {
+                compressor.decompress(bytes);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertTrue(e.getMessage().startsWith("压缩数据已损坏"));
+            }
+        }
+    }
+
+    @Data
+    public static class Node {
+        private String name;
+        private Node next;
+    }
+
+    @Test
+    public void binaryRejectsCircularReference() {
+        Node node = new Node();
+        node.setName("loop");
+        node.setNext(node);
+        try {
+            BinaryValueCodec.INSTANCE.encode(node);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(Node.class.getName()));
+        }
+
+        List<Object> list = new ArrayList<>();
+        list.add(list);
+        try {
+            BinaryValueCodec.INSTANCE.encode(list);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(ArrayList.class.getName()));
+        }
+
+        // 同一对象在不同分支重复出现不是循环，照常写出
+        Node shared = new Node();
+        shared.setName("shared");
+        Assert.assertEquals(2, ValueCodecs.decode(BinaryValueCodec.INSTANCE.encode(Arrays.asList(shared, shared)), List.class).size());
+        // 异常后缓冲区可继续使用
+        assertAccount(BinaryValueCodec.INSTANCE.decode(BinaryValueCodec.INSTANCE.encode(account()), Account.class));
+    }
+
+    @Test
+    public void listOperationsUseTemplateCodec() {
+        InMemoryRedisTemplate redisTemplate = new InMemoryRedisTemplate();
+        RedisClientTemplate template = new RedisClientTemplate(false, 0, redisTemplate);
+        template.setCodec(BinaryValueCodec.INSTANCE);
+
+        Assert.assertTrue(template.lSet("accounts", account()));
+        Assert.assertTrue(template.lSet("accounts", Arrays.asList("a", "b")));
+        Assert.assertTrue(ValueCodecs.decode(redisTemplate.lists().get("accounts").get(0), Object.class) instanceof Map);
+
+        assertAccount(template.lGet("accounts", 0, 0, Account.class).get(0));
+        Assert.assertEquals(Arrays.asList("a", "b"), template.lGet("accounts", 1, -1));
+        assertAccount(template.lGetIndex("accounts", 0, Account.class));
+        Assert.assertEquals("b", template.lGetIndex("accounts", 2));
+
+        Assert.assertTrue(template.lUpdateIndex("accounts", 1, 42L));
+        Assert.assertEquals(Long.valueOf(42), template.lGetIndex("accounts", 1, Long.class));
+
+        Assert.assertEquals(1, template.lRemove("accounts", 0, account()));
+        Assert.assertEquals(2, redisTemplate.lists().get("accounts").size());
+
+        redisTemplate.lists().put("tags", new ArrayList<>(Collections.singletonList(BinaryValueCodec.INSTANCE.encode("hot"))));
+        Assert.assertTrue(template.sHasKey("tags", "hot"));
+        Assert.assertFalse(template.sHasKey("tags", "cold"));
+    }
+}
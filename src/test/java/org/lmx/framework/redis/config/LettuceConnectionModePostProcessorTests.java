@@ -0,0 +1,54 @@
+package org.lmx.framework.redis.config;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+/**
+ * 功能描述：连接模式对连接工厂的调整
+ *
+ * @author: LM.X
+ * @create: 2020-08-25 10:00
+ **/
+public class LettuceConnectionModePostProcessorTests {
+
+    private static LettuceConnectionFactory factory() {
+        return new LettuceConnectionFactory(new RedisStandaloneConfiguration(), LettuceClientConfiguration.defaultConfiguration());
+    }
+
+    private static Object process(MockEnvironment environment, LettuceConnectionFactory factory) {
+        return new LettuceConnectionModePostProcessor(environment).postProcessBeforeInitialization(factory, "redisConnectionFactory");
+    }
+
+    @Test
+    public void defaultKeepsSharedNativeConnection() {
+        LettuceConnectionFactory factory = factory();
+        Assert.assertSame(factory, process(new MockEnvironment(), factory));
+        Assert.assertTrue(factory.getShareNativeConnection());
+    }
+
+    @Test
+    public void sharedLeavesFactoryUntouched() {
+        LettuceConnectionFactory factory = factory();
+        factory.setShareNativeConnection(false);
+        process(new MockEnvironment().withProperty("demo.redis.connection.mode", "shared"), factory);
+        Assert.assertFalse(factory.getShareNativeConnection());
+    }
+
+    @Test
+    public void pooledOnlyWhenExplicit() {
+        LettuceConnectionFactory factory = factory();
+        process(new MockEnvironment().withProperty("demo.redis.connection.mode", "pooled"), factory);
+        Assert.assertFalse(factory.getShareNativeConnection());
+    }
+
+    @Test
+    public void sharedBatchReplacesFactory() {
+        Object processed = process(new MockEnvironment().withProperty("demo.redis.connection.mode", "shared-batch"), factory());
+        Assert.assertTrue(processed instanceof BatchingLettuceConnectionFactory);
+        Assert.assertTrue(((LettuceConnectionFactory) processed).getShareNativeConnection());
+    }
+}
@@ -0,0 +1,210 @@
+package org.lmx.framework.redis.delay;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * 功能描述：延迟队列的领取、按投递凭证确认与死信接口
+ * <pre>
+ *  Lua脚本由 ScriptedRedisTemplate 按预设结果返回，只验证Java侧传给脚本的参数与对结果的处理。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-25 14:00
+ **/
+public class DelayedTaskQueueTests {
+    private static final String TOPIC = "order";
+
+    private final ScriptedRedisTemplate redisTemplate = new ScriptedRedisTemplate();
+
+    private final DelayedTaskQueue queue = new DelayedTaskQueue(redisTemplate, 1, 1, 10, 30000, 3, 60000, 1, 10);
+
+    /**
+     * 按脚本返回预设结果并记录每次调用的参数
+     */
+    private static final class ScriptedRedisTemplate extends StringRedisTemplate {
+        private final Map<RedisScript<?>, Queue<Object>> results = new ConcurrentHashMap<>();
+        private final Map<RedisScript<?>, Queue<List<Object>>> calls = new ConcurrentHashMap<>();
+        private final Map<RedisScript<?>, CountDownLatch> latches = new ConcurrentHashMap<>();
+
+        private void willReturn(String script, Object result) {
+            results.computeIfAbsent(script(script), k -> new ConcurrentLinkedQueue<>()).add(result);
+        }
+
+        private CountDownLatch latch(String script) {
+            return latches.computeIfAbsent(script(script), k -> new CountDownLatch(1));
+        }
+
+        private List<List<Object>> calls(String script) {
+            return new ArrayList<>(calls.getOrDefault(script(script), new ConcurrentLinkedQueue<>()));
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            calls.computeIfAbsent(script, k -> new ConcurrentLinkedQueue<>()).add(Arrays.asList(args));
+            Queue<Object> queue = results.get(script);
+            Object result = queue == null ? null : queue.poll();
+            CountDownLatch latch = latches.get(script);
+            if (latch != null) {
+                latch.countDown();
+            }
+            return (T) result;
+        }
+
+        private static RedisScript<?> script(String name) {
+            return (RedisScript<?>) ReflectionTestUtils.getField(DelayedTaskQueue.class, name);
+        }
+    }
+
+    private static List<Object> claimed(String... task) {
+        List<Object> result = new ArrayList<>(Arrays.asList("1000000", "-1"));
+        result.addAll(Arrays.asList(task));
+        return result;
+    }
+
+    private static DelayedTaskHandler handler(Consumer<DelayedTask> consumer) {
+        return new DelayedTaskHandler() {
+            @Override
+            public String topic() {
+                return TOPIC;
+            }
+
+            @Override
+            public void handle(DelayedTask task) {
+                consumer.accept(task);
+            }
+        };
+    }
+
+    private static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @After
+    public void tearDown() {
+        queue.destroy();
+    }
+
+    @Test
+    public void ackCarriesClaimDeadline() throws InterruptedException {
+        redisTemplate.willReturn("CLAIM_SCRIPT", claimed("a", "p-a", "999000", "1", "1030000"));
+        redisTemplate.willReturn("ACK_SCRIPT", 1L);
+        CountDownLatch acked = redisTemplate.latch("ACK_SCRIPT");
+        List<DelayedTask> handled = Collections.synchronizedList(new ArrayList<>());
+        queue.register(handler(handled::add));
+        queue.start();
+
+        Assert.assertTrue(acked.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("a", "1030000"), redisTemplate.calls("ACK_SCRIPT").get(0));
+        Assert.assertEquals("p-a", handled.get(0).getPayload());
+        Assert.assertEquals(1, queue.getFiredCount());
+        Assert.assertEquals(0, queue.getStaleAckCount());
+    }
+
+    @Test
+    public void failedTaskIsNotAcked() throws InterruptedException {
+        redisTemplate.willReturn("CLAIM_SCRIPT", claimed("a", "p-a", "999000", "1", "1030000", "b", "p-b", "999000", "2", "1030000"));
+        redisTemplate.willReturn("ACK_SCRIPT", 1L);
+        CountDownLatch acked = redisTemplate.latch("ACK_SCRIPT");
+        queue.register(handler(task -> {
+            if ("b".equals(task.getId())) {
+                throw new IllegalStateException("failed");
+            }
+        }));
+        queue.start();
+
+        Assert.assertTrue(acked.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("a", "1030000"), redisTemplate.calls("ACK_SCRIPT").get(0));
+        Assert.assertEquals(1, queue.getFailedCount());
+        Assert.assertEquals(1, queue.getRedeliveredCount());
+    }
+
+    @Test
+    public void staleAckIsCounted() throws InterruptedException {
+        redisTemplate.willReturn("CLAIM_SCRIPT", claimed("a", "p-a", "999000", "1", "1030000"));
+        // 处理期间被重新安排，inflight中已没有本次投递，脚本返回0
+        redisTemplate.willReturn("ACK_SCRIPT", 0L);
+        CountDownLatch acked = redisTemplate.latch("ACK_SCRIPT");
+        queue.register(handler(task -> queue.schedule(TOPIC, task.getId(), "again", 1, TimeUnit.MINUTES)));
+        queue.start();
+
+        Assert.assertTrue(acked.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("a", "again", "60000"), redisTemplate.calls("SCHEDULE_SCRIPT").get(0));
+        Assert.assertTrue(eventually(() -> queue.getStaleAckCount() == 1));
+    }
+
+    @Test
+    public void claimPassesDeadLetterTtl() throws InterruptedException {
+        CountDownLatch claimed = redisTemplate.latch("CLAIM_SCRIPT");
+        queue.register(handler(task -> {
+        }));
+        queue.start();
+
+        Assert.assertTrue(claimed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("10", "30000", "3", "60000"), redisTemplate.calls("CLAIM_SCRIPT").get(0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deadLettersReadPayloads() {
+        ZSetOperations<String, String> zSetOps = Mockito.mock(ZSetOperations.class);
+        HashOperations<String, Object, Object> hashOps = Mockito.mock(HashOperations.class);
+        StringRedisTemplate template = Mockito.spy(new StringRedisTemplate());
+        Mockito.doReturn(zSetOps).when(template).opsForZSet();
+        Mockito.doReturn(hashOps).when(template).opsForHash();
+        Set<ZSetOperations.TypedTuple<String>> dead = new LinkedHashSet<>();
+        dead.add(new DefaultTypedTuple<>("b", 2000d));
+        dead.add(new DefaultTypedTuple<>("a", 1000d));
+        Mockito.when(zSetOps.rangeWithScores("delay:{order:0}:dead", 0, 9)).thenReturn(dead);
+        Mockito.when(hashOps.multiGet("delay:{order:0}:data", Arrays.asList("b", "a"))).thenReturn(Arrays.asList("p-b", null));
+
+        List<DelayedTask> tasks = new DelayedTaskQueue(template, 1, 1, 10, 30000, 3, 60000, 1, 10).deadLetters(TOPIC, 10);
+        Assert.assertEquals(2, tasks.size());
+        Assert.assertEquals("a", tasks.get(0).getId());
+        Assert.assertNull(tasks.get(0).getPayload());
+        Assert.assertEquals("p-b", tasks.get(1).getPayload());
+        Assert.assertEquals(2000, tasks.get(1).getDueAt());
+        Assert.assertEquals(3, tasks.get(1).getAttempts());
+    }
+
+    @Test
+    public void requeueDead() {
+        redisTemplate.willReturn("REQUEUE_SCRIPT", 1L);
+        Assert.assertTrue(queue.requeueDead(TOPIC, "a", 5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("a", "5000"), redisTemplate.calls("REQUEUE_SCRIPT").get(0));
+
+        redisTemplate.willReturn("REQUEUE_SCRIPT", 0L);
+        Assert.assertFalse(queue.requeueDead(TOPIC, "missing", 0, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,156 @@
+package org.lmx.framework.redis.limiter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 功能描述：限流器本地预取的租借次数与过期批次清理
+ * <pre>
+ *  Redis上的令牌由 StubRedisTemplate 模拟：按“最多N个、至少M个”从剩余令牌中发放。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-25 17:00
+ **/
+public class RedisRateLimiterTests {
+
+    private static final class StubRedisTemplate extends StringRedisTemplate {
+        private final AtomicLong available;
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile CountDownLatch gate;
+
+        private StubRedisTemplate(long available) {
+            this.available = new AtomicLong(available);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            calls.incrementAndGet();
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            long max = Long.parseLong((String) args[2]);
+            long min = Long.parseLong((String) args[3]);
+            synchronized (available) {
+                long left = available.get();
+                long granted = left >= max ? max : left >= min ? left : 0;
+                available.addAndGet(-granted);
+                return (T) Long.valueOf(granted);
+            }
+        }
+    }
+
+    private static RateLimitRule rule(long intervalMillis, int prefetch) {
+        return RateLimitRule.tokenBucket(1000, intervalMillis, TimeUnit.MILLISECONDS).withPrefetch(prefetch);
+    }
+
+    @Test
+    public void prefetchedTokensServeLocally() {
+        StubRedisTemplate redisTemplate = new StubRedisTemplate(1000);
+        RedisRateLimiter limiter = new RedisRateLimiter(redisTemplate);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.tryAcquire("api", rule(60000, 10)));
+        }
+        Assert.assertEquals(1, redisTemplate.calls.get());
+        Assert.assertEquals(9, limiter.getLocalHitCount());
+    }
+
+    @Test
+    public void concurrentMissesLeaseOnce() throws InterruptedException {
+        StubRedisTemplate redisTemplate = new StubRedisTemplate(1000);
+        redisTemplate.gate = new CountDownLatch(1);
+        RedisRateLimiter limiter = new RedisRateLimiter(redisTemplate);
+        RateLimitRule rule = rule(60000, 100);
+        AtomicInteger admitted = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread(() -> {
+                if (limiter.tryAcquire("api", rule)) {
+                    admitted.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        // 让其余线程都进入等待
+        Thread.sleep(100);
+        redisTemplate.gate.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(16, admitted.get());
+        Assert.assertEquals(1, redisTemplate.calls.get());
+        Assert.assertEquals(1, limiter.getRedisCallCount());
+    }
+
+    @Test
+    public void waitersRejectedWhenLeaseIsShort() throws InterruptedException {
+        StubRedisTemplate redisTemplate = new StubRedisTemplate(3);
+        redisTemplate.gate = new CountDownLatch(1);
+        RedisRateLimiter limiter = new RedisRateLimiter(redisTemplate);
+        RateLimitRule rule = rule(60000, 100);
+        AtomicInteger admitted = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                if (limiter.tryAcquire("api", rule)) {
+                    admitted.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        Thread.sleep(100);
+        redisTemplate.gate.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(3, admitted.get());
+        Assert.assertEquals(5, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void expiredBlockRemovedOnMiss() throws InterruptedException {
+        RedisRateLimiter limiter = new RedisRateLimiter(new StubRedisTemplate(10));
+        Assert.assertTrue(limiter.tryAcquire("api", rule(1, 10)));
+        Assert.assertEquals(1, limiter.getLocalBlockCount());
+
+        Thread.sleep(5);
+        // Redis上已没有令牌，过期批次被移除且不再放入新批次
+        Assert.assertFalse(limiter.tryAcquire("api", rule(1, 10)));
+        Assert.assertEquals(0, limiter.getLocalBlockCount());
+    }
+
+    @Test
+    public void idleExpiredBlocksAreSwept() throws InterruptedException {
+        RedisRateLimiter limiter = new RedisRateLimiter(new StubRedisTemplate(1000));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(limiter.tryAcquire("idle-" + i, rule(1, 10)));
+        }
+        Assert.assertEquals(3, limiter.getLocalBlockCount());
+
+        Thread.sleep(5);
+        ((AtomicLong) ReflectionTestUtils.getField(limiter, "nextSweep")).set(System.nanoTime() - 1);
+        Assert.assertTrue(limiter.tryAcquire("active", rule(60000, 10)));
+        Assert.assertEquals(1, limiter.getLocalBlockCount());
+    }
+}
@@ -0,0 +1,63 @@
+package org.lmx.framework.redis.lock;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：本地优先锁的同线程重入
+ * <pre>
+ *  RLock 以Mockito深度桩模拟，加锁/解锁的RFuture直接完成，只校验访问Redis的次数。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-28 10:00
+ **/
+public class LocalFirstDistributedLockTests {
+    private final RLock rLock = Mockito.mock(RLock.class, Mockito.RETURNS_DEEP_STUBS);
+
+    private final LocalFirstDistributedLock lock;
+
+    public LocalFirstDistributedLockTests() {
+        RedissonClient redisSon = Mockito.mock(RedissonClient.class);
+        Mockito.when(redisSon.getLock(Mockito.anyString())).thenReturn(rLock);
+        lock = new LocalFirstDistributedLock(redisSon, 16);
+    }
+
+    @Test
+    public void reentrantLockWithLeaseKeepsRedisLockUntilOuterUnlock() {
+        LocalFirstDistributedLock.LocalLockHandle outer = lock.lock("order", 10, TimeUnit.SECONDS);
+        LocalFirstDistributedLock.LocalLockHandle inner = lock.lock("order", 10, TimeUnit.SECONDS);
+        Assert.assertNotNull(outer);
+        Assert.assertNotNull(inner);
+        Assert.assertEquals(1, lock.getRedisAcquireCount());
+        Assert.assertEquals(0, lock.getLocalHandoffCount());
+
+        Assert.assertTrue(lock.unlock(inner));
+        Mockito.verify(rLock, Mockito.never()).unlockAsync(Mockito.anyLong());
+
+        Assert.assertTrue(lock.unlock(outer));
+        Mockito.verify(rLock, Mockito.times(1)).unlockAsync(Mockito.anyLong());
+        Assert.assertFalse(lock.unlock(outer));
+    }
+
+    @Test
+    public void reentrantWatchdogLockReleasesRedisOnOuterUnlock() {
+        LocalFirstDistributedLock.LocalLockHandle outer = lock.lock("order");
+        LocalFirstDistributedLock.LocalLockHandle inner = lock.tryLock("order", 1, TimeUnit.SECONDS);
+        Assert.assertNotNull(inner);
+        Assert.assertEquals(0, lock.getLocalHandoffCount());
+
+        Assert.assertTrue(lock.unlock(inner));
+        // 内层的使用者计数已归还，外层释放时没有本地等待者，不会误判为移交
+        Assert.assertTrue(lock.unlock(outer));
+        Mockito.verify(rLock, Mockito.times(1)).unlockAsync(Mockito.anyLong());
+
+        Assert.assertNotNull(lock.lock("order"));
+        Assert.assertEquals(2, lock.getRedisAcquireCount());
+    }
+}
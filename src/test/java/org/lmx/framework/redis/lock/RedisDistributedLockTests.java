@@ -0,0 +1,174 @@
+package org.lmx.framework.redis.lock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 功能描述：Redis原生锁的看门狗续期、释放与锁丢失，以及续期调度器的延迟创建
+ * <pre>
+ *  Lua脚本由 ScriptedRedisTemplate 按预设结果返回；未预设时加锁成功（nil），续期全部成功。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-26 11:00
+ **/
+public class RedisDistributedLockTests {
+    private final ScriptedRedisTemplate redisTemplate = new ScriptedRedisTemplate();
+
+    private final LockRenewalScheduler scheduler = new LockRenewalScheduler(300, 20, 500, false);
+
+    private final RedisDistributedLock locker = new RedisDistributedLock(redisTemplate, (RedisMessageListenerContainer) null);
+
+    public RedisDistributedLockTests() {
+        locker.setRenewalScheduler(scheduler);
+    }
+
+    private static final class ScriptedRedisTemplate extends StringRedisTemplate {
+        private final Map<RedisScript<?>, Queue<Object>> results = new ConcurrentHashMap<>();
+        private final Map<RedisScript<?>, Queue<List<Object>>> calls = new ConcurrentHashMap<>();
+
+        private void willReturn(String script, Object result) {
+            results.computeIfAbsent(script(script), k -> new ConcurrentLinkedQueue<>()).add(result);
+        }
+
+        private List<List<Object>> calls(String script) {
+            return new ArrayList<>(calls.getOrDefault(script(script), new ConcurrentLinkedQueue<>()));
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            List<Object> call = new ArrayList<>(keys);
+            call.addAll(Arrays.asList(args));
+            calls.computeIfAbsent(script, k -> new ConcurrentLinkedQueue<>()).add(call);
+            Queue<Object> queue = results.get(script);
+            Object result = queue == null ? null : queue.poll();
+            if (result == null && script == script("RENEW_SCRIPT")) {
+                return (T) Collections.nCopies(keys.size(), 1L);
+            }
+            return (T) result;
+        }
+
+        private static RedisScript<?> script(String name) {
+            return (RedisScript<?>) ReflectionTestUtils.getField(RedisDistributedLock.class, name);
+        }
+    }
+
+    private static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.destroy();
+    }
+
+    @Test
+    public void watchdogLockRenewsUntilUnlocked() throws InterruptedException {
+        Object lock = locker.lock("order");
+        Assert.assertNotNull(lock);
+        Assert.assertEquals("300", redisTemplate.calls("ACQUIRE_SCRIPT").get(0).get(1));
+        Assert.assertEquals(1, scheduler.getHeldCount());
+
+        Assert.assertTrue(eventually(() -> scheduler.getRenewedCount() >= 2));
+        List<Object> renew = redisTemplate.calls("RENEW_SCRIPT").get(0);
+        Assert.assertEquals(Arrays.asList("lock:order", "300"), renew.subList(0, 2));
+
+        redisTemplate.willReturn("RELEASE_SCRIPT", 1L);
+        Assert.assertTrue(locker.unlock(lock));
+        Assert.assertEquals(0, scheduler.getHeldCount());
+        // 登记表为空后停止周期任务
+        Assert.assertTrue(eventually(() -> ReflectionTestUtils.getField(scheduler, "renewTask") == null));
+    }
+
+    @Test
+    public void reentrantLockRenewsUntilLastUnlock() {
+        Object outer = locker.lock("order");
+        Object inner = locker.lock("order");
+
+        redisTemplate.willReturn("RELEASE_SCRIPT", 0L);
+        Assert.assertTrue(locker.unlock(inner));
+        Assert.assertEquals(1, scheduler.getHeldCount());
+
+        redisTemplate.willReturn("RELEASE_SCRIPT", 1L);
+        Assert.assertTrue(locker.unlock(outer));
+        Assert.assertEquals(0, scheduler.getHeldCount());
+    }
+
+    @Test
+    public void fixedLeaseLockIsNotRenewed() {
+        Object lock = locker.lock("order", 5, TimeUnit.SECONDS);
+        Assert.assertEquals("5000", redisTemplate.calls("ACQUIRE_SCRIPT").get(0).get(1));
+        Assert.assertEquals(0, scheduler.getHeldCount());
+
+        redisTemplate.willReturn("RELEASE_SCRIPT", 1L);
+        Assert.assertTrue(locker.unlock(lock));
+    }
+
+    @Test
+    public void lostLockStopsRenewalAndNotifies() throws InterruptedException {
+        List<String> lost = Collections.synchronizedList(new ArrayList<>());
+        scheduler.addLockLostListener((lockKey, owner) -> lost.add(lockKey));
+        redisTemplate.willReturn("RENEW_SCRIPT", Collections.singletonList(0L));
+        Object lock = locker.lock("order");
+
+        Assert.assertTrue(eventually(() -> scheduler.getLostCount() == 1));
+        Assert.assertEquals(Collections.singletonList("lock:order"), lost);
+        Assert.assertEquals(0, scheduler.getHeldCount());
+
+        // 已丢失的锁解锁失败
+        Assert.assertFalse(locker.unlock(lock));
+    }
+
+    @Test
+    public void schedulerCreatedOnlyWhenNeeded() {
+        RedisDistributedLock standalone = new RedisDistributedLock(redisTemplate, (RedisMessageListenerContainer) null);
+        redisTemplate.willReturn("RELEASE_SCRIPT", 1L);
+        standalone.unlock(standalone.lock("order", 5, TimeUnit.SECONDS));
+        Assert.assertNull(ReflectionTestUtils.getField(standalone, "renewalScheduler"));
+
+        LockRenewalScheduler idle = new LockRenewalScheduler();
+        Assert.assertNull(ReflectionTestUtils.getField(idle, "executor"));
+        idle.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void listenerContainerResolvedFromProvider() {
+        RedisMessageListenerContainer container = Mockito.mock(RedisMessageListenerContainer.class);
+        ObjectProvider<RedisMessageListenerContainer> provider = Mockito.mock(ObjectProvider.class);
+        Mockito.when(provider.getIfAvailable()).thenReturn(container);
+
+        RedisDistributedLock subscribed = new RedisDistributedLock(redisTemplate, provider);
+        Mockito.verify(container).addMessageListener(Mockito.eq(subscribed), Mockito.any(Topic.class));
+
+        Mockito.when(provider.getIfAvailable()).thenReturn(null);
+        Assert.assertNull(ReflectionTestUtils.getField(new RedisDistributedLock(redisTemplate, provider), "listenerContainer"));
+    }
+}
@@ -0,0 +1,117 @@
+package org.lmx.framework.redis.lock;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：分布式信号量的原子多许可获取、许可总数同步与计数
+ * <pre>
+ *  RScript 以Mockito默认应答模拟：按预设结果依次返回，并记录每次eval的参数（许可总数、租期、许可ID...）。
+ * </pre>
+ *
+ * @author: LM.X
+ * @create: 2020-08-25 18:00
+ **/
+public class RedisSonDistributedSemaphoreTests {
+    private final Queue<Long> results = new ConcurrentLinkedQueue<>();
+
+    private final List<List<Object>> evalArgs = Collections.synchronizedList(new ArrayList<>());
+
+    private final RedisSonDistributedSemaphore semaphore;
+
+    public RedisSonDistributedSemaphoreTests() {
+        RScript script = Mockito.mock(RScript.class, invocation -> {
+            if (!"eval".equals(invocation.getMethod().getName())) {
+                return null;
+            }
+            Object[] arguments = invocation.getArguments();
+            evalArgs.add(new ArrayList<>(Arrays.asList(arguments).subList(4, arguments.length)));
+            Long result = results.poll();
+            return result == null ? 0L : result;
+        });
+        RedissonClient redisSon = Mockito.mock(RedissonClient.class);
+        Mockito.when(redisSon.getScript(StringCodec.INSTANCE)).thenReturn(script);
+        semaphore = new RedisSonDistributedSemaphore(redisSon);
+    }
+
+    @Test
+    public void multiplePermitsInOneScriptCall() {
+        results.add(1L);
+        RedisSonDistributedSemaphore.PermitHandle handle = semaphore.acquire("report", 5, 3, 10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, evalArgs.size());
+        List<Object> args = evalArgs.get(0);
+        Assert.assertEquals("5", args.get(0));
+        Assert.assertEquals("10000", args.get(1));
+        Assert.assertEquals(handle.getPermitIds(), args.subList(2, 5));
+        Assert.assertEquals(3, new HashSet<>(handle.getPermitIds()).size());
+        Assert.assertEquals(3, semaphore.getPermitsInUse());
+        Assert.assertEquals(3, semaphore.getPermitsInUse("report"));
+        Assert.assertEquals(1, semaphore.getAcquireCount());
+    }
+
+    @Test
+    public void retriesWithSamePermitIdsUntilAvailable() {
+        results.addAll(Arrays.asList(0L, 0L, 1L));
+        RedisSonDistributedSemaphore.PermitHandle handle = semaphore.acquire("report", 2, 2, -1, TimeUnit.SECONDS);
+
+        Assert.assertEquals(3, evalArgs.size());
+        Assert.assertEquals("-1", evalArgs.get(2).get(1));
+        Assert.assertEquals(evalArgs.get(0), evalArgs.get(2));
+        Assert.assertEquals(2, handle.getPermitIds().size());
+    }
+
+    @Test
+    public void tryAcquireTimesOut() {
+        Assert.assertNull(semaphore.tryAcquire("report", 2, 2, 20, 1000, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, semaphore.getTimeoutCount());
+        Assert.assertEquals(0, semaphore.getPermitsInUse());
+    }
+
+    @Test
+    public void changedPermitsAppliedOnNextAcquire() {
+        results.addAll(Arrays.asList(1L, 1L));
+        semaphore.acquire("report", 5, 1, 10, TimeUnit.SECONDS);
+        semaphore.acquire("report", 8, 1, 10, TimeUnit.SECONDS);
+
+        Assert.assertEquals("5", evalArgs.get(0).get(0));
+        Assert.assertEquals("8", evalArgs.get(1).get(0));
+    }
+
+    @Test
+    public void releaseReportsExpiredPermits() {
+        results.add(1L);
+        RedisSonDistributedSemaphore.PermitHandle handle = semaphore.acquire("report", 5, 3, 10, TimeUnit.SECONDS);
+        // 其中一个许可已到期被清理
+        results.add(2L);
+
+        Assert.assertFalse(semaphore.release(handle));
+        Assert.assertEquals(handle.getPermitIds(), evalArgs.get(1));
+        Assert.assertEquals(0, semaphore.getPermitsInUse());
+        Assert.assertEquals(0, semaphore.getPermitsInUse("report"));
+    }
+
+    @Test
+    public void releaseAllPermits() {
+        results.addAll(Arrays.asList(1L, 2L));
+        Assert.assertTrue(semaphore.release(semaphore.acquire("report", 5, 2, 10, TimeUnit.SECONDS)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void countMustNotExceedPermits() {
+        semaphore.acquire("report", 2, 3, 10, TimeUnit.SECONDS);
+    }
+}